@@ -0,0 +1,119 @@
+package edu.ucdenver.ccp.nlp.pipelines.benchmarks;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.benchmarks.Fixtures.Ontology;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.EntityFinder;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.SentenceSplitter;
+
+/**
+ * Measures the time taken to find the concepts of an ontology in the sample article: sentence
+ * detection, ConceptMapper matching, conversion to the CCP type system and token removal, as run
+ * by the EntityFinder for each document
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConceptMapperBenchmark {
+
+	@Param({ "CL", "DOID" })
+	private Ontology ontology;
+
+	private File dictionaryDirectory;
+	private String documentText;
+	private AnalysisEngine engine;
+	private JCas jcas;
+
+	@Setup
+	public void setUp() throws IOException, UIMAException {
+		dictionaryDirectory = Fixtures.createTemporaryDirectory();
+		documentText = Fixtures.getDocumentText();
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		List<AnalysisEngineDescription> descs = new ArrayList<AnalysisEngineDescription>();
+		descs.add(SentenceSplitter.OPENNLP.createAnalysisEngineDescription(tsd));
+		descs.addAll(EntityFinder.initConceptMapperAggregateDescriptions(tsd, ontology.getEntityFinderOntology(),
+				ontology.getOboFile(), dictionaryDirectory, true));
+		engine = AnalysisEngineFactory.createAggregate(AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()])));
+		jcas = engine.newJCas();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		engine.destroy();
+		Fixtures.delete(dictionaryDirectory);
+	}
+
+	@Benchmark
+	public JCas annotateDocument() throws AnalysisEngineProcessException {
+		jcas.reset();
+		jcas.setDocumentText(documentText);
+		engine.process(jcas);
+		return jcas;
+	}
+
+}
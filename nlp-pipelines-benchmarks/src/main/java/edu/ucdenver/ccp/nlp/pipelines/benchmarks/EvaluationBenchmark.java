@@ -0,0 +1,129 @@
+package edu.ucdenver.ccp.nlp.pipelines.benchmarks;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.craft.CraftConceptType;
+import edu.ucdenver.ccp.nlp.pipelines.evaluation.EvaluationPipeline;
+import edu.ucdenver.ccp.nlp.pipelines.evaluation.GenericAnnotationLoader;
+import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.MentionComparatorType;
+import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.SpanComparatorType;
+import edu.ucdenver.ccp.nlp.uima.annotators.filter.SlotRemovalFilter_AE.SlotRemovalOption;
+import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * Measures the time taken by the {@link EvaluationPipeline} to compare the annotations of one
+ * document. All generic CL annotations of the document are loaded as the gold standard and those
+ * with a score of at least {@value #EVALUATED_SCORE_CUTOFF} as the annotations being evaluated,
+ * as CraftRunGenericComparison does with a cutoff.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+	private static final int EVALUATED_SCORE_CUTOFF = 900;
+
+	private List<String> documentIds;
+	private String documentText;
+	private AnalysisEngine engine;
+	private JCas jcas;
+	private int nextDocument = 0;
+
+	@Setup
+	public void setUp() throws IOException, UIMAException {
+		documentIds = Fixtures.getGenericAnnotationDocumentIds();
+		documentText = Fixtures.getGenericAnnotationPlaceholderText();
+		TypeSystemDescription tsd = TypeSystemUtil.getCcpTypeSystem();
+		String annotationDirectory = Fixtures.getGenericAnnotationDirectory().getPath();
+		EvaluationPipeline evalPipeline = new EvaluationPipeline(tsd, null,
+				CollectionsUtil.createList(GenericAnnotationLoader.createAnalysisEngineDescription(tsd,
+						annotationDirectory)), SpanComparatorType.STRICT, MentionComparatorType.IDENTICAL,
+				CraftConceptType.CL.conceptTypeRegexes());
+		evalPipeline.addPipelineComponent(GenericAnnotationLoader.createAnalysisEngineDescription(tsd,
+				annotationDirectory, EVALUATED_SCORE_CUTOFF));
+		List<AnalysisEngineDescription> descs = evalPipeline
+				.getAnalysisEngineDescriptions(SlotRemovalOption.REMOVE_ALL);
+		engine = AnalysisEngineFactory.createAggregate(AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()])));
+		jcas = engine.newJCas();
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.destroy();
+	}
+
+	@Benchmark
+	public JCas compareDocumentAnnotations() throws AnalysisEngineProcessException {
+		jcas.reset();
+		jcas.setDocumentText(documentText);
+		UIMA_Util.setDocumentID(jcas, documentIds.get(nextDocument));
+		nextDocument = (nextDocument + 1) % documentIds.size();
+		engine.process(jcas);
+		return jcas;
+	}
+
+}
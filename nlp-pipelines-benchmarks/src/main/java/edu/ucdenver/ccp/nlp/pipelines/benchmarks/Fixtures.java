@@ -0,0 +1,182 @@
+package edu.ucdenver.ccp.nlp.pipelines.benchmarks;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Locates the test fixtures of the other modules that the benchmarks run on. Paths are resolved
+ * against the root of the repository, which is the value of the {@value #ROOT_PROPERTY} system
+ * property or, if it is not set, whichever of the current directory and its parent contains the
+ * conceptmapper module.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public final class Fixtures {
+
+	static final String ROOT_PROPERTY = "nlp.pipelines.root";
+
+	private static final String CONCEPTMAPPER_RESOURCES = "nlp-pipelines-conceptmapper/src/test/resources";
+	private static final String EVALUATION_RESOURCES = "nlp-pipelines-evaluation/src/test/resources";
+
+	private Fixtures() {
+		// static helpers only
+	}
+
+	/**
+	 * The ontologies that dictionaries are built from
+	 */
+	public enum Ontology {
+		/**
+		 * the Cell Ontology, annotated with the tuned CL parameters
+		 */
+		CL("CL", "cl-basic.obo"),
+		/**
+		 * the Disease Ontology, annotated with the parameters used for any other ontology
+		 */
+		DOID("OBO", "doid.obo");
+
+		private final String entityFinderOntology;
+		private final String fileName;
+
+		private Ontology(String entityFinderOntology, String fileName) {
+			this.entityFinderOntology = entityFinderOntology;
+			this.fileName = fileName;
+		}
+
+		/**
+		 * @return the ontology name passed to EntityFinder.initConceptMapperAggregateDescriptions
+		 */
+		String getEntityFinderOntology() {
+			return entityFinderOntology;
+		}
+
+		File getOboFile() {
+			return getFixture(CONCEPTMAPPER_RESOURCES + "/oboFiles/" + fileName);
+		}
+	}
+
+	/**
+	 * @return the text of the sample article (PMID 17608565)
+	 */
+	static String getDocumentText() throws IOException {
+		File file = getFixture(CONCEPTMAPPER_RESOURCES + "/testInputTextFile/17608565.txt");
+		return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * @return the directory of tab-separated generic CL annotation files, one per document
+	 */
+	static File getGenericAnnotationDirectory() {
+		return getFixture(EVALUATION_RESOURCES + "/genericCLAnnotations");
+	}
+
+	/**
+	 * @return the names of the generic annotation files, which are also the document ids, in order
+	 */
+	static List<String> getGenericAnnotationDocumentIds() {
+		String[] names = getGenericAnnotationDirectory().list();
+		Arrays.sort(names);
+		return new ArrayList<String>(Arrays.asList(names));
+	}
+
+	/**
+	 * The generic annotation files have no accompanying text, so their documents are given a
+	 * placeholder text that is long enough for every annotation span
+	 * 
+	 * @return a blank text as long as the furthest annotation end offset in the generic annotation
+	 *         files
+	 */
+	static String getGenericAnnotationPlaceholderText() throws IOException {
+		int length = 0;
+		for (File file : getGenericAnnotationDirectory().listFiles()) {
+			for (String line : Files.readAllLines(file.toPath(), Charset.forName("UTF-8"))) {
+				String[] columns = line.split("\t");
+				if (columns.length >= 4) {
+					length = Math.max(length, Integer.parseInt(columns[3]));
+				}
+			}
+		}
+		char[] text = new char[length];
+		Arrays.fill(text, ' ');
+		return new String(text);
+	}
+
+	private static File getFixture(String path) {
+		File fixture = new File(getRoot(), path);
+		if (!fixture.exists()) {
+			throw new IllegalStateException("Unable to find benchmark fixture " + fixture.getAbsolutePath()
+					+ "; set -D" + ROOT_PROPERTY + " to the root of the nlp-pipelines repository.");
+		}
+		return fixture;
+	}
+
+	private static File getRoot() {
+		String root = System.getProperty(ROOT_PROPERTY);
+		if (root != null) {
+			return new File(root);
+		}
+		File current = new File(".").getAbsoluteFile();
+		return new File(current, CONCEPTMAPPER_RESOURCES).exists() ? current : current.getParentFile();
+	}
+
+	/**
+	 * @return a new empty temporary directory
+	 */
+	static File createTemporaryDirectory() throws IOException {
+		return Files.createTempDirectory("nlp-pipelines-benchmark").toFile();
+	}
+
+	/**
+	 * Deletes the directory and everything in it
+	 */
+	static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		Files.deleteIfExists(file.toPath());
+	}
+
+}
@@ -0,0 +1,121 @@
+package edu.ucdenver.ccp.nlp.pipelines.benchmarks;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucdenver.ccp.nlp.pipelines.evaluation.GenericAnnotationParser;
+
+/**
+ * Compares the line splitting that {@link GenericAnnotationParser} replaced (readLine, split on
+ * tabs, parseInt and a boxed score) with the parser, over the contents of all of the generic CL
+ * annotation files, held in memory so that only parsing is measured. Run with
+ * <code>-prof gc</code> to compare the allocation per operation as well.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericAnnotationParserBenchmark {
+
+	private List<String> fileContents;
+	private GenericAnnotationParser parser;
+
+	@Setup
+	public void setUp() throws IOException {
+		fileContents = new ArrayList<String>();
+		for (String documentId : Fixtures.getGenericAnnotationDocumentIds()) {
+			File file = new File(Fixtures.getGenericAnnotationDirectory(), documentId);
+			fileContents.add(new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+		}
+		parser = new GenericAnnotationParser();
+	}
+
+	@Benchmark
+	public long splitLines() throws IOException {
+		long checksum = 0;
+		for (String content : fileContents) {
+			BufferedReader reader = new BufferedReader(new StringReader(content));
+			String text;
+			while ((text = reader.readLine()) != null) {
+				String[] elements = text.split("\t");
+				String id = elements[0];
+				int spanStart = Integer.parseInt(elements[2]);
+				int spanEnd = Integer.parseInt(elements[3]);
+				Integer score = (elements.length == 5) ? Integer.parseInt(elements[4]) : 0;
+				checksum += id.hashCode() + spanStart + spanEnd + score;
+			}
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public long scanLines() throws IOException {
+		long checksum = 0;
+		for (String content : fileContents) {
+			parser.reset(new StringReader(content));
+			while (parser.next()) {
+				checksum += parser.getConceptId().hashCode() + parser.getSpanStart() + parser.getSpanEnd()
+						+ parser.getScore();
+			}
+		}
+		return checksum;
+	}
+
+}
@@ -0,0 +1,121 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.jcas.tcas.DocumentAnnotation;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * Removes every annotation from the CAS except the document annotation and annotations of the
+ * types (or subtypes of the types) to retain. When several ConceptMapper pipelines are run one
+ * after the other over the same CAS, this filter is placed between them so that each pipeline sees
+ * the same CAS contents (e.g. only the sentences) it would see if it were run on its own.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class AnnotationRetentionFilter_AE extends JCasAnnotator_ImplBase {
+
+	public static final String PARAM_TYPES_TO_RETAIN = ConfigurationParameterFactory
+			.createConfigurationParameterName(AnnotationRetentionFilter_AE.class, "typesToRetain");
+	@ConfigurationParameter(description = "names of the annotation types that are kept; all other annotations are removed", mandatory = true)
+	private String[] typesToRetain;
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		TypeSystem typeSystem = jcas.getTypeSystem();
+		List<Type> retainedTypes = new ArrayList<Type>();
+		retainedTypes.add(typeSystem.getType(DocumentAnnotation.class.getName()));
+		for (String typeName : typesToRetain) {
+			Type type = typeSystem.getType(typeName);
+			if (type == null) {
+				throw new AnalysisEngineProcessException(new IllegalArgumentException(
+						"Type to retain is not in the type system: " + typeName));
+			}
+			retainedTypes.add(type);
+		}
+
+		List<Annotation> annotationsToRemove = new ArrayList<Annotation>();
+		for (Annotation annotation : jcas.getAnnotationIndex()) {
+			if (!isRetained(annotation.getType(), retainedTypes, typeSystem)) {
+				annotationsToRemove.add(annotation);
+			}
+		}
+		for (Annotation annotation : annotationsToRemove) {
+			annotation.removeFromIndexes();
+		}
+	}
+
+	private static boolean isRetained(Type type, List<Type> retainedTypes, TypeSystem typeSystem) {
+		for (Type retainedType : retainedTypes) {
+			if (typeSystem.subsumes(retainedType, type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param tsd
+	 * @param typesToRetain
+	 * @return a description of a filter that removes all annotations that are not of the specified
+	 *         types
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			List<Class<? extends Annotation>> typesToRetain) throws ResourceInitializationException {
+		String[] typeNames = new String[typesToRetain.size()];
+		for (int i = 0; i < typeNames.length; i++) {
+			typeNames[i] = typesToRetain.get(i).getName();
+		}
+		return AnalysisEngineFactory.createPrimitiveDescription(AnnotationRetentionFilter_AE.class, tsd,
+				PARAM_TYPES_TO_RETAIN, typeNames);
+	}
+
+}
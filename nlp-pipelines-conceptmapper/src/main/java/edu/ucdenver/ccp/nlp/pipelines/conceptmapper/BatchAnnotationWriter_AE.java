@@ -0,0 +1,175 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.AnnotationBatchWriter;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * Writes the concept annotations in the CAS, in BioNLP A1 format, to the part files of an
+ * {@link AnnotationBatchWriter} instead of to one file per document. All instances of this AE in a
+ * JVM that write to the same directory and base name (i.e. the replicas of a parallel pipeline)
+ * share a single writer, which is closed when the last of them is destroyed. A document's record has
+ * been forced to disk by the time {@link #process(JCas)} returns, so a {@link CheckpointCommit_AE}
+ * later in the pipeline may record the document as complete.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class BatchAnnotationWriter_AE extends JCasAnnotator_ImplBase {
+
+	private static final Logger logger = Logger.getLogger(BatchAnnotationWriter_AE.class);
+
+	public static final String FILE_EXTENSION = ".a1";
+
+	public static final String PARAM_OUTPUT_DIRECTORY = ConfigurationParameterFactory
+			.createConfigurationParameterName(BatchAnnotationWriter_AE.class, "outputDirectory");
+	@ConfigurationParameter(description = "the directory the batch files are written to", mandatory = true)
+	private String outputDirectory;
+
+	public static final String PARAM_BASE_NAME = ConfigurationParameterFactory.createConfigurationParameterName(
+			BatchAnnotationWriter_AE.class, "baseName");
+	@ConfigurationParameter(description = "the base name of the batch files, see AnnotationBatchWriter.getBaseName()", mandatory = false, defaultValue = AnnotationBatchWriter.DEFAULT_BASE_NAME)
+	private String baseName;
+
+	public static final String PARAM_COMPRESS = ConfigurationParameterFactory.createConfigurationParameterName(
+			BatchAnnotationWriter_AE.class, "compress");
+	@ConfigurationParameter(description = "if true, each document's annotations are written as a separate gzip member", mandatory = false, defaultValue = "false")
+	private boolean compress;
+
+	public static final String PARAM_MAX_PART_MB = ConfigurationParameterFactory.createConfigurationParameterName(
+			BatchAnnotationWriter_AE.class, "maxPartMb");
+	@ConfigurationParameter(description = "a new batch file is started once the current one reaches this size", mandatory = false, defaultValue = "1024")
+	private int maxPartMb;
+
+	/**
+	 * writers shared by the AE instances in this JVM, keyed by output path
+	 */
+	private static final Map<String, SharedWriter> SHARED_WRITERS = new HashMap<String, SharedWriter>();
+
+	private static class SharedWriter {
+		private final AnnotationBatchWriter writer;
+		private int referenceCount = 0;
+
+		private SharedWriter(AnnotationBatchWriter writer) {
+			this.writer = writer;
+		}
+	}
+
+	private String writerKey;
+	private AnnotationBatchWriter writer;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		File directory = new File(outputDirectory);
+		writerKey = new File(directory, baseName).getAbsolutePath();
+		synchronized (SHARED_WRITERS) {
+			SharedWriter shared = SHARED_WRITERS.get(writerKey);
+			if (shared == null) {
+				try {
+					shared = new SharedWriter(new AnnotationBatchWriter(directory, baseName, FILE_EXTENSION, compress,
+							maxPartMb * 1024L * 1024L));
+				} catch (IOException e) {
+					throw new ResourceInitializationException(e);
+				}
+				SHARED_WRITERS.put(writerKey, shared);
+			}
+			shared.referenceCount++;
+			writer = shared.writer;
+		}
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		try {
+			writer.write(UIMA_Util.getDocumentID(jcas), ConceptAnnotation.toA1(ConceptAnnotation.select(jcas)));
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		synchronized (SHARED_WRITERS) {
+			SharedWriter shared = SHARED_WRITERS.get(writerKey);
+			if (shared != null && --shared.referenceCount == 0) {
+				SHARED_WRITERS.remove(writerKey);
+				try {
+					shared.writer.close();
+				} catch (IOException e) {
+					logger.error("Error while closing annotation batch file " + writerKey, e);
+				}
+			}
+		}
+		super.destroy();
+	}
+
+	/**
+	 * @param tsd
+	 * @param outputDirectory
+	 * @param batchNumber
+	 *            may be null; used in the name of the batch files
+	 * @param compress
+	 *            if true, the batch files are gzipped
+	 * @return a description of an AE that appends the concept annotations of each document to the
+	 *         batch files in the output directory
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			File outputDirectory, Integer batchNumber, boolean compress) throws ResourceInitializationException {
+		return AnalysisEngineFactory.createPrimitiveDescription(BatchAnnotationWriter_AE.class, tsd,
+				PARAM_OUTPUT_DIRECTORY, outputDirectory.getAbsolutePath(), PARAM_BASE_NAME,
+				AnnotationBatchWriter.getBaseName(batchNumber), PARAM_COMPRESS, compress);
+	}
+
+}
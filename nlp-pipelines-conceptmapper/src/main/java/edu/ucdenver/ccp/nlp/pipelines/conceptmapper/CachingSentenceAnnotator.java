@@ -0,0 +1,150 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import opennlp.tools.sentdetect.SentenceDetectorME;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.token.type.Sentence;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.BoundaryCache;
+
+/**
+ * Adds {@link Sentence} annotations using any {@link SentenceSplitter}, keeping the sentence
+ * offsets of every document text in a persistent {@link BoundaryCache}. When the same text is seen
+ * again, e.g. when a corpus is annotated with another ontology or other ConceptMapper parameters,
+ * its sentences are read from the cache instead of being detected again. The cache namespace is the
+ * splitter (and, for OpenNLP, the sentence model), so one cache directory can serve all splitters.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CachingSentenceAnnotator extends JCasAnnotator_ImplBase {
+
+	public static final String PARAM_SPLITTER = ConfigurationParameterFactory.createConfigurationParameterName(
+			CachingSentenceAnnotator.class, "splitter");
+	@ConfigurationParameter(description = "the name of the SentenceSplitter whose sentences are cached", mandatory = false, defaultValue = "OPENNLP")
+	private String splitter;
+
+	public static final String PARAM_CACHE_DIRECTORY = ConfigurationParameterFactory
+			.createConfigurationParameterName(CachingSentenceAnnotator.class, "cacheDirectory");
+	@ConfigurationParameter(description = "the directory of the sentence boundary cache", mandatory = true)
+	private String cacheDirectory;
+
+	private SentenceSplitter sentenceSplitter;
+	private SentenceDetectorME sentenceDetector;
+	private BoundaryCache cache;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		try {
+			sentenceSplitter = SentenceSplitter.valueOf(splitter);
+		} catch (IllegalArgumentException e) {
+			throw new ResourceInitializationException(e);
+		}
+		String namespace = sentenceSplitter.name();
+		try {
+			if (sentenceSplitter == SentenceSplitter.OPENNLP) {
+				String modelPath = SharedModelSentenceAnnotator.DEFAULT_SENTENCE_MODEL_PATH;
+				sentenceDetector = new SentenceDetectorME(SharedModelSentenceAnnotator.getSentenceModel(modelPath));
+				/* the offsets were once those of the detector run over the whole text */
+				namespace += ":" + modelPath + ":paragraphs";
+			}
+			cache = new BoundaryCache(new File(cacheDirectory), namespace);
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		String text = jcas.getDocumentText();
+		int[] offsets = cache.get(text);
+		if (offsets == null) {
+			offsets = getSentenceOffsets(text);
+			try {
+				cache.put(text, offsets);
+			} catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
+		}
+		for (int i = 0; i + 1 < offsets.length; i += 2) {
+			new Sentence(jcas, offsets[i], offsets[i + 1]).addToIndexes();
+		}
+	}
+
+	/**
+	 * @return the begin and end offset of each sentence of the text, in order
+	 */
+	private int[] getSentenceOffsets(String text) {
+		List<int[]> spans = (sentenceDetector != null) ? SharedModelSentenceAnnotator.getSentenceSpans(text,
+				sentenceDetector) : RuleBasedSentenceAnnotator.getSentenceSpans(text, sentenceSplitter);
+		int[] offsets = new int[spans.size() * 2];
+		for (int i = 0; i < spans.size(); i++) {
+			offsets[2 * i] = spans.get(i)[0];
+			offsets[2 * i + 1] = spans.get(i)[1];
+		}
+		return offsets;
+	}
+
+	/**
+	 * @param tsd
+	 * @param splitter
+	 * @param cacheDirectory
+	 * @return a description of a sentence annotator that caches its sentence offsets in the
+	 *         directory
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			SentenceSplitter splitter, File cacheDirectory) throws ResourceInitializationException {
+		return AnalysisEngineFactory.createPrimitiveDescription(CachingSentenceAnnotator.class, tsd, PARAM_SPLITTER,
+				splitter.name(), PARAM_CACHE_DIRECTORY, cacheDirectory.getAbsolutePath());
+	}
+
+}
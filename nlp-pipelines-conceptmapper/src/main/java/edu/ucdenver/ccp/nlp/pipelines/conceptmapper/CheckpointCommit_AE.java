@@ -0,0 +1,250 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.CheckpointManifest;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * Completes the output of a document: the files written for the document to each staging
+ * directory are atomically moved to the corresponding output directory, after which the document
+ * id is appended to the {@link CheckpointManifest}. Output writers are pointed at the staging
+ * directories, so a crash can leave partially written files only in a staging directory, never in
+ * an output directory.
+ * <p>
+ * A file belongs to a document if its name, without its final extension, is the document id or
+ * the document id without its extension, e.g. 12345.a1 or 12345.txt.a1 for document 12345.txt.
+ * The output writers write a file for every document, so if no file was staged for a document in
+ * one of the staging directories its output has been lost, and the document is not recorded as
+ * complete.
+ * <p>
+ * Batches (shards) of a corpus may share an output directory, so each batch stages its output in
+ * its own staging directory (see {@link #getStagingDirectoryName(Integer)}); a batch that starts
+ * only clears its own staging directory, never the files in flight of another batch.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CheckpointCommit_AE extends JCasAnnotator_ImplBase {
+
+	/**
+	 * the name of the staging directory that is created inside each output directory when the
+	 * corpus is not processed in batches
+	 */
+	public static final String STAGING_DIRECTORY_NAME = ".staging";
+	private static final String BATCH_STAGING_DIRECTORY_NAME_PREFIX = STAGING_DIRECTORY_NAME + ".batch-";
+
+	public static final String PARAM_OUTPUT_DIRECTORIES = ConfigurationParameterFactory
+			.createConfigurationParameterName(CheckpointCommit_AE.class, "outputDirectories");
+	@ConfigurationParameter(description = "the output directories; each one's staging directory is its subdirectory named "
+			+ "by the staging directory name; if not set, no files are moved", mandatory = false)
+	private String[] outputDirectories;
+
+	public static final String PARAM_STAGING_DIRECTORY_NAME = ConfigurationParameterFactory
+			.createConfigurationParameterName(CheckpointCommit_AE.class, "stagingDirectoryName");
+	@ConfigurationParameter(description = "the name of the staging directory inside each output directory", mandatory = false, defaultValue = STAGING_DIRECTORY_NAME)
+	private String stagingDirectoryName;
+
+	public static final String PARAM_MANIFEST_FILE = ConfigurationParameterFactory.createConfigurationParameterName(
+			CheckpointCommit_AE.class, "manifestFile");
+	@ConfigurationParameter(description = "the checkpoint manifest that completed document ids are appended to", mandatory = true)
+	private String manifestFile;
+
+	private File[] outputDirs;
+	private File[] stagingDirs;
+	private File manifest;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		if (outputDirectories == null) {
+			outputDirectories = new String[0];
+		}
+		outputDirs = new File[outputDirectories.length];
+		stagingDirs = new File[outputDirectories.length];
+		for (int i = 0; i < outputDirectories.length; i++) {
+			outputDirs[i] = new File(outputDirectories[i]);
+			stagingDirs[i] = new File(outputDirs[i], stagingDirectoryName);
+		}
+		manifest = new File(manifestFile);
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		String documentId = UIMA_Util.getDocumentID(jcas);
+		try {
+			for (int i = 0; i < outputDirs.length; i++) {
+				File stagingDir = stagingDirs[i];
+				File[] stagedFiles = stagingDir.listFiles();
+				if (stagedFiles == null) {
+					throw new IOException("Unable to list staging directory: " + stagingDir);
+				}
+				int movedCount = 0;
+				for (File stagedFile : stagedFiles) {
+					if (belongsToDocument(stagedFile.getName(), documentId)) {
+						Files.move(stagedFile.toPath(), new File(outputDirs[i], stagedFile.getName()).toPath(),
+								StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						movedCount++;
+					}
+				}
+				if (movedCount == 0) {
+					throw new IOException("No output was staged in " + stagingDir + " for document " + documentId
+							+ "; it is not recorded as complete.");
+				}
+			}
+			CheckpointManifest.append(manifest, documentId);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	static boolean belongsToDocument(String fileName, String documentId) {
+		int dot = fileName.lastIndexOf('.');
+		String fileBase = (dot < 0) ? fileName : fileName.substring(0, dot);
+		if (fileBase.equals(documentId)) {
+			return true;
+		}
+		int docDot = documentId.lastIndexOf('.');
+		return docDot > 0 && fileBase.equals(documentId.substring(0, docDot));
+	}
+
+	/**
+	 * @param batchNumber
+	 *            may be null if the corpus is not processed in batches
+	 * @return the name of the staging directory of the batch, e.g. .staging.batch-3
+	 */
+	public static String getStagingDirectoryName(Integer batchNumber) {
+		return (batchNumber == null) ? STAGING_DIRECTORY_NAME : BATCH_STAGING_DIRECTORY_NAME_PREFIX + batchNumber;
+	}
+
+	/**
+	 * @param outputDirectory
+	 * @return the staging directory that output destined for the output directory is written to
+	 *         when the corpus is not processed in batches
+	 */
+	public static File getStagingDirectory(File outputDirectory) {
+		return getStagingDirectory(outputDirectory, null);
+	}
+
+	/**
+	 * @param outputDirectory
+	 * @param batchNumber
+	 *            may be null
+	 * @return the staging directory that the batch writes output destined for the output directory
+	 *         to
+	 */
+	public static File getStagingDirectory(File outputDirectory, Integer batchNumber) {
+		return new File(outputDirectory, getStagingDirectoryName(batchNumber));
+	}
+
+	/**
+	 * Creates the batch's staging directory in each output directory, deleting any files left behind
+	 * in it by an earlier run of the batch that did not complete. The staging directories of other
+	 * batches are left alone. Must be called before the pipeline is run.
+	 * 
+	 * @param outputDirectories
+	 * @param batchNumber
+	 *            may be null
+	 * @throws IOException
+	 */
+	public static void prepareStagingDirectories(Iterable<File> outputDirectories, Integer batchNumber)
+			throws IOException {
+		for (File outputDirectory : outputDirectories) {
+			File stagingDir = getStagingDirectory(outputDirectory, batchNumber);
+			Files.createDirectories(stagingDir.toPath());
+			File[] leftovers = stagingDir.listFiles();
+			if (leftovers != null) {
+				for (File leftover : leftovers) {
+					Files.delete(leftover.toPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the batch's staging directories once the pipeline has completed, leaving any that are
+	 * not empty
+	 * 
+	 * @param outputDirectories
+	 * @param batchNumber
+	 *            may be null
+	 */
+	public static void removeStagingDirectories(Iterable<File> outputDirectories, Integer batchNumber) {
+		for (File outputDirectory : outputDirectories) {
+			getStagingDirectory(outputDirectory, batchNumber).delete();
+		}
+	}
+
+	/**
+	 * @param tsd
+	 * @param outputDirectories
+	 * @param batchNumber
+	 *            the batch whose staging directories are committed; may be null
+	 * @param manifestFile
+	 * @return a description of an AE that commits the output of each document to the output
+	 *         directories and records it in the manifest
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			Iterable<File> outputDirectories, Integer batchNumber, File manifestFile)
+			throws ResourceInitializationException {
+		List<String> paths = new ArrayList<String>();
+		for (File outputDirectory : outputDirectories) {
+			paths.add(outputDirectory.getAbsolutePath());
+		}
+		return AnalysisEngineFactory.createPrimitiveDescription(CheckpointCommit_AE.class, tsd,
+				PARAM_OUTPUT_DIRECTORIES, paths.toArray(new String[paths.size()]), PARAM_STAGING_DIRECTORY_NAME,
+				getStagingDirectoryName(batchNumber), PARAM_MANIFEST_FILE, manifestFile.getAbsolutePath());
+	}
+
+}
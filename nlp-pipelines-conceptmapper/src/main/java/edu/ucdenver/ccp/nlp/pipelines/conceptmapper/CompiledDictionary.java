@@ -0,0 +1,501 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource.DictEntries;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource.DictEntriesByLength;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource.DictEntry;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource_impl.DictEntriesImpl;
+import org.apache.uima.conceptMapper.support.dictionaryResource.EntryProperties;
+import org.apache.uima.conceptMapper.support.dictionaryResource.EntryPropertiesRoot;
+
+/**
+ * A ConceptMapper dictionary in a versioned binary format that is read through a read-only memory
+ * mapping, so opening even a very large dictionary is fast and its pages are shared through the
+ * page cache by all processes on a node that use the same file.
+ * <p>
+ * The file holds the dictionary as ConceptMapper has loaded it, i.e. with the variant terms
+ * already tokenized and normalized. It starts with a magic number, {@link #FORMAT_VERSION}, the
+ * content hash it was compiled for (see {@link MappedDictionaryResource}) and the entry property
+ * names. Then follows one record per lookup key (the key, followed by its entries grouped by token
+ * count), a table of the record offsets in unsigned UTF-8 byte order of the keys and finally the
+ * offset of that table and the number of keys. All offsets are longs, and the file is mapped in
+ * segments of at most {@link #SEGMENT_SIZE} bytes, so files larger than 2GB are supported.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CompiledDictionary {
+
+	/**
+	 * Increment if the layout of the file changes
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x434d4442;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final long SEGMENT_SIZE = 1L << 30;
+
+	private static final int TRAILER_LENGTH = 12;
+
+	private final File file;
+	private final long segmentSize;
+	private final MappedByteBuffer[] segments;
+	private final long size;
+	private final String contentHash;
+	private final EntryPropertiesRoot entryPropertiesRoot;
+	private final String[] propertyNames;
+	private final long keyTableOffset;
+	private final int keyCount;
+
+	private CompiledDictionary(File file, long segmentSize, MappedByteBuffer[] segments, long size)
+			throws IOException {
+		this.file = file;
+		this.segmentSize = segmentSize;
+		this.segments = segments;
+		this.size = size;
+		if (size < 8 + TRAILER_LENGTH || getInt(0) != MAGIC) {
+			throw new IOException("Not a compiled ConceptMapper dictionary: " + file);
+		}
+		int version = getInt(4);
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Compiled dictionary " + file + " has format version " + version + ", expected "
+					+ FORMAT_VERSION);
+		}
+		long[] position = new long[] { 8 };
+		contentHash = readString(position);
+		propertyNames = new String[getInt(position[0])];
+		position[0] += 4;
+		for (int i = 0; i < propertyNames.length; i++) {
+			propertyNames[i] = readString(position);
+		}
+		entryPropertiesRoot = new EntryPropertiesRoot(propertyNames);
+		keyTableOffset = getLong(size - TRAILER_LENGTH);
+		keyCount = getInt(size - 4);
+		if (keyTableOffset < 0 || keyTableOffset + (long) keyCount * 8 != size - TRAILER_LENGTH) {
+			throw new IOException("Compiled dictionary " + file + " is truncated or corrupt");
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return the compiled dictionary, mapped read-only
+	 * @throws IOException
+	 *             if the file is not a compiled dictionary of the current {@link #FORMAT_VERSION}
+	 */
+	public static CompiledDictionary open(File file) throws IOException {
+		return open(file, SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param segmentSize
+	 *            the maximum size of each mapped segment of the file
+	 * @return the compiled dictionary, mapped read-only
+	 * @throws IOException
+	 */
+	static CompiledDictionary open(File file, long segmentSize) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = i * segmentSize;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+			}
+			/* the mapping remains valid after the channel is closed */
+			return new CompiledDictionary(file, segmentSize, segments, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the entries of a loaded dictionary in the compiled format
+	 * 
+	 * @param file
+	 * @param contentHash
+	 *            identifies the dictionary content and the settings it was loaded with
+	 * @param dictionary
+	 *            a loaded dictionary
+	 * @throws IOException
+	 */
+	public static void write(File file, String contentHash, DictionaryResource dictionary) throws IOException {
+		final List<String> keys = Collections.list(dictionary.keys());
+		final List<byte[]> keyBytes = new ArrayList<byte[]>(keys.size());
+		List<Integer> order = new ArrayList<Integer>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			keyBytes.add(keys.get(i).getBytes(UTF_8));
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return compareUnsigned(keyBytes.get(index1), keyBytes.get(index2));
+			}
+		});
+
+		String[] propertyNames = dictionary.getEntryPropertiesRoot().propertyNames();
+		FileOutputStream fileStream = new FileOutputStream(file);
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(fileStream, 1024 * 1024));
+		DataOutputStream out = new DataOutputStream(counter);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			writeString(out, contentHash);
+			out.writeInt(propertyNames.length);
+			for (String propertyName : propertyNames) {
+				writeString(out, propertyName);
+			}
+			long[] offsets = new long[keys.size()];
+			for (int i = 0; i < order.size(); i++) {
+				int index = order.get(i);
+				offsets[i] = counter.count;
+				out.writeInt(keyBytes.get(index).length);
+				out.write(keyBytes.get(index));
+				writeEntries(out, dictionary.getEntries(keys.get(index)), propertyNames);
+			}
+			long keyTableOffset = counter.count;
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+			out.writeLong(keyTableOffset);
+			out.writeInt(keys.size());
+			out.flush();
+			fileStream.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeEntries(DataOutputStream out, DictEntriesByLength entriesByLength,
+			String[] propertyNames) throws IOException {
+		List<Integer> lengths = new ArrayList<Integer>();
+		for (int length = entriesByLength.getLongest(); length >= entriesByLength.getShortest(); length--) {
+			if (entriesByLength.getEntries(length) != null) {
+				lengths.add(length);
+			}
+		}
+		out.writeInt(lengths.size());
+		for (int length : lengths) {
+			List<DictEntry> entries = entriesByLength.getEntries(length).getEntries();
+			out.writeInt(length);
+			out.writeInt(entries.size());
+			for (DictEntry entry : entries) {
+				String[] elements = entry.getElements();
+				out.writeInt(elements.length);
+				for (String element : elements) {
+					writeString(out, element);
+				}
+				writeString(out, entry.getUnsorted());
+				for (String propertyName : propertyNames) {
+					writeString(out, (entry.getProperties() == null) ? null : entry.getProperties().getProperty(
+							propertyName));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the content hash this dictionary was compiled for
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public EntryPropertiesRoot getEntryPropertiesRoot() {
+		return entryPropertiesRoot;
+	}
+
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param key
+	 *            a normalized token
+	 * @return the dictionary entries whose lookup key is the specified token, or null if there are
+	 *         none
+	 */
+	public DictEntriesByLength getEntries(String key) {
+		byte[] keyBytes = key.getBytes(UTF_8);
+		int low = 0;
+		int high = keyCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long recordOffset = getLong(keyTableOffset + (long) mid * 8);
+			int comparison = compareKey(recordOffset, keyBytes);
+			if (comparison < 0) {
+				low = mid + 1;
+			} else if (comparison > 0) {
+				high = mid - 1;
+			} else {
+				return readEntries(recordOffset + 4 + keyBytes.length);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the lookup keys, in unsigned UTF-8 byte order
+	 */
+	public Enumeration<String> keys() {
+		return new Enumeration<String>() {
+			private int index = 0;
+
+			@Override
+			public boolean hasMoreElements() {
+				return index < keyCount;
+			}
+
+			@Override
+			public String nextElement() {
+				if (index >= keyCount) {
+					throw new NoSuchElementException();
+				}
+				long[] position = new long[] { getLong(keyTableOffset + (long) index++ * 8) };
+				return readString(position);
+			}
+		};
+	}
+
+	private DictEntriesByLength readEntries(long offset) {
+		long[] position = new long[] { offset };
+		MappedEntriesByLength entriesByLength = new MappedEntriesByLength();
+		int lengthCount = readInt(position);
+		for (int i = 0; i < lengthCount; i++) {
+			int length = readInt(position);
+			int entryCount = readInt(position);
+			for (int j = 0; j < entryCount; j++) {
+				String[] elements = new String[readInt(position)];
+				for (int k = 0; k < elements.length; k++) {
+					elements[k] = readString(position);
+				}
+				String unsorted = readString(position);
+				EntryProperties properties = entryPropertiesRoot.newEntryProperties();
+				for (String propertyName : propertyNames) {
+					properties.setProperty(propertyName, readString(position));
+				}
+				entriesByLength.putEntry(length, elements, unsorted, properties);
+			}
+		}
+		return entriesByLength;
+	}
+
+	/**
+	 * @return the comparison of the key of the record at the specified offset with the specified
+	 *         key, comparing the UTF-8 bytes as unsigned values
+	 */
+	private int compareKey(long recordOffset, byte[] keyBytes) {
+		int length = getInt(recordOffset);
+		long start = recordOffset + 4;
+		int common = Math.min(length, keyBytes.length);
+		for (int i = 0; i < common; i++) {
+			int difference = (getByte(start + i) & 0xff) - (keyBytes[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - keyBytes.length;
+	}
+
+	private static int compareUnsigned(byte[] bytes1, byte[] bytes2) {
+		int common = Math.min(bytes1.length, bytes2.length);
+		for (int i = 0; i < common; i++) {
+			int difference = (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return bytes1.length - bytes2.length;
+	}
+
+	private int readInt(long[] position) {
+		int value = getInt(position[0]);
+		position[0] += 4;
+		return value;
+	}
+
+	private String readString(long[] position) {
+		int length = readInt(position);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		get(position[0], bytes);
+		position[0] += length;
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private byte getByte(long position) {
+		return segments[(int) (position / segmentSize)].get((int) (position % segmentSize));
+	}
+
+	private int getInt(long position) {
+		int segmentOffset = (int) (position % segmentSize);
+		if (segmentOffset <= segmentSize - 4) {
+			return segments[(int) (position / segmentSize)].getInt(segmentOffset);
+		}
+		/* the value spans two segments */
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (getByte(position + i) & 0xff);
+		}
+		return value;
+	}
+
+	private long getLong(long position) {
+		return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xffffffffL);
+	}
+
+	private void get(long position, byte[] bytes) {
+		int copied = 0;
+		while (copied < bytes.length) {
+			long current = position + copied;
+			ByteBuffer segment = segments[(int) (current / segmentSize)].duplicate();
+			segment.position((int) (current % segmentSize));
+			int length = Math.min(bytes.length - copied, segment.remaining());
+			segment.get(bytes, copied, length);
+			copied += length;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledDictionary [file=" + file + ", size=" + size + ", keyCount=" + keyCount + "]";
+	}
+
+	/**
+	 * Entries by token count, longest first, as ConceptMapper expects
+	 */
+	private static class MappedEntriesByLength implements DictEntriesByLength {
+		private static final long serialVersionUID = 1L;
+
+		private final TreeMap<Integer, DictEntries> entries = new TreeMap<Integer, DictEntries>(
+				Collections.reverseOrder());
+
+		@Override
+		public DictEntries getEntries(int length) {
+			return entries.get(length);
+		}
+
+		@Override
+		public void putEntry(int length, String[] elements, String unsorted, EntryProperties props) {
+			DictEntries lengthEntries = entries.get(length);
+			if (lengthEntries == null) {
+				lengthEntries = new DictEntriesImpl();
+				entries.put(length, lengthEntries);
+			}
+			lengthEntries.putEntry(elements, unsorted, props);
+		}
+
+		@Override
+		public Integer getLongest() {
+			return entries.firstKey();
+		}
+
+		@Override
+		public Integer getShortest() {
+			return entries.lastKey();
+		}
+
+		@Override
+		public String toString() {
+			return entries.toString();
+		}
+	}
+
+	/**
+	 * Tracks the number of bytes written, as {@link DataOutputStream#size()} is limited to 2GB
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.uima.jcas.JCas;
+import org.uimafit.util.JCasUtil;
+
+import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
+
+/**
+ * A concept found in a document by a {@link ConceptAnnotator}: the span of text and the identifier
+ * of the ontology concept it refers to
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ConceptAnnotation {
+
+	private final int begin;
+	private final int end;
+	private final String coveredText;
+	private final String conceptId;
+
+	public ConceptAnnotation(int begin, int end, String coveredText, String conceptId) {
+		this.begin = begin;
+		this.end = end;
+		this.coveredText = coveredText;
+		this.conceptId = conceptId;
+	}
+
+	/**
+	 * @return the character offset at which the annotation starts
+	 */
+	public int getBegin() {
+		return begin;
+	}
+
+	/**
+	 * @return the character offset at which the annotation ends (exclusive)
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	public String getCoveredText() {
+		return coveredText;
+	}
+
+	public String getConceptId() {
+		return conceptId;
+	}
+
+	/**
+	 * Orders annotations by begin offset, longer annotations first
+	 */
+	static final Comparator<ConceptAnnotation> SPAN_ORDER = new Comparator<ConceptAnnotation>() {
+		@Override
+		public int compare(ConceptAnnotation a1, ConceptAnnotation a2) {
+			if (a1.getBegin() != a2.getBegin()) {
+				return a1.getBegin() < a2.getBegin() ? -1 : 1;
+			}
+			return a1.getEnd() == a2.getEnd() ? 0 : (a1.getEnd() > a2.getEnd() ? -1 : 1);
+		}
+	};
+
+	/**
+	 * @param jcas
+	 * @return the concept annotations in the CAS, ordered by span
+	 */
+	static List<ConceptAnnotation> select(JCas jcas) {
+		List<ConceptAnnotation> annotations = new ArrayList<ConceptAnnotation>();
+		for (CCPTextAnnotation ccpTa : JCasUtil.select(jcas, CCPTextAnnotation.class)) {
+			annotations.add(new ConceptAnnotation(ccpTa.getBegin(), ccpTa.getEnd(), ccpTa.getCoveredText(), ccpTa
+					.getClassMention().getMentionName()));
+		}
+		Collections.sort(annotations, SPAN_ORDER);
+		return annotations;
+	}
+
+	/**
+	 * @param annotations
+	 *            ordered by span
+	 * @return the annotations in BioNLP A1 format, byte for byte as the file that
+	 *         BionlpFormatPrinter_AE writes for a document with these annotations (see
+	 *         EntityFinderTest)
+	 */
+	static String toA1(List<ConceptAnnotation> annotations) {
+		StringBuilder sb = new StringBuilder();
+		int index = 1;
+		for (ConceptAnnotation annotation : annotations) {
+			sb.append("T").append(index).append("\tontology_term ").append(annotation.getBegin()).append(" ")
+					.append(annotation.getEnd()).append("\t").append(annotation.getCoveredText()).append("\n");
+			sb.append("N").append(index).append("\tReference T").append(index).append(" ")
+					.append(annotation.getConceptId()).append("\t\n");
+			index++;
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 31 * begin + end;
+		result = 31 * result + coveredText.hashCode();
+		return 31 * result + conceptId.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ConceptAnnotation)) {
+			return false;
+		}
+		ConceptAnnotation other = (ConceptAnnotation) obj;
+		return begin == other.begin && end == other.end && coveredText.equals(other.coveredText)
+				&& conceptId.equals(other.conceptId);
+	}
+
+	@Override
+	public String toString() {
+		return conceptId + " [" + begin + ".." + end + "] " + coveredText;
+	}
+
+}
@@ -0,0 +1,250 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * An in-memory, thread-safe entry point to the {@link EntityFinder} pipeline. The pipeline
+ * (sentence detection and ConceptMapper for one or more ontologies) is constructed once; each call
+ * to {@link #annotate(String)} borrows one of a fixed number of pipeline replicas, together with
+ * the CAS it owns, so no pipeline construction, CAS creation or file I/O happens per document. The
+ * replicas share their dictionaries and sentence model. Calls block while all replicas are busy.
+ * <p>
+ * Call {@link #close()} to release the pipeline replicas; it waits for the documents being
+ * annotated, and later calls to {@link #annotate(String)} fail.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ConceptAnnotator implements AutoCloseable {
+
+	private static final String DEFAULT_DOCUMENT_ID = "document";
+
+	private final List<AnalysisEngine> replicas;
+	private final BlockingQueue<Replica> availableReplicas;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param pipelineDesc
+	 *            the annotation pipeline; the concept annotations it leaves in the CAS are returned
+	 * @param numReplicas
+	 *            the number of documents that can be annotated concurrently
+	 * @throws ResourceInitializationException
+	 */
+	public ConceptAnnotator(AnalysisEngineDescription pipelineDesc, int numReplicas)
+			throws ResourceInitializationException {
+		if (numReplicas < 1) {
+			throw new IllegalArgumentException("The number of replicas must be positive: " + numReplicas);
+		}
+		replicas = ParallelPipeline.createReplicas(pipelineDesc, numReplicas,
+				UIMAFramework.newDefaultResourceManager());
+		availableReplicas = new ArrayBlockingQueue<Replica>(numReplicas);
+		try {
+			for (AnalysisEngine replica : replicas) {
+				availableReplicas.add(new Replica(replica, CasCreationUtils.createCas(
+						replica.getAnalysisEngineMetaData()).getJCas()));
+			}
+		} catch (UIMAException e) {
+			destroyReplicas();
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * @param ontology
+	 *            one of the ontologies supported by
+	 *            {@link EntityFinder#initConceptMapperAggregateDescriptions(TypeSystemDescription, String, File, File, boolean)}
+	 * @param oboFile
+	 * @param dictionaryDirectory
+	 * @param numReplicas
+	 * @return an annotator for concepts from the specified ontology
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static ConceptAnnotator create(String ontology, File oboFile, File dictionaryDirectory, int numReplicas)
+			throws UIMAException, IOException {
+		return create(Collections.singletonList(ontology), Collections.singletonList(oboFile), dictionaryDirectory,
+				false, numReplicas);
+	}
+
+	/**
+	 * @param ontologies
+	 * @param oboFiles
+	 *            the ontology file for each ontology, in the same order
+	 * @param dictionaryDirectory
+	 * @param cleanDictionaryFile
+	 *            if true, dictionaries are rebuilt even if they already exist
+	 * @param numReplicas
+	 * @return an annotator for concepts from all of the specified ontologies
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static ConceptAnnotator create(List<String> ontologies, List<File> oboFiles, File dictionaryDirectory,
+			boolean cleanDictionaryFile, int numReplicas) throws UIMAException, IOException {
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		List<AnalysisEngineDescription> descs = EntityFinder.createPipelineDescriptions(tsd, ontologies, oboFiles,
+				null, dictionaryDirectory, cleanDictionaryFile, true);
+		AnalysisEngineDescription pipelineDesc = AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()]));
+		return new ConceptAnnotator(pipelineDesc, numReplicas);
+	}
+
+	/**
+	 * @param documentText
+	 * @return the concepts found in the text, ordered by span
+	 * @throws AnalysisEngineProcessException
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a pipeline replica
+	 */
+	public List<ConceptAnnotation> annotate(String documentText) throws AnalysisEngineProcessException,
+			InterruptedException {
+		return annotate(DEFAULT_DOCUMENT_ID, documentText);
+	}
+
+	/**
+	 * @param documentId
+	 *            stored in the CAS, for pipelines that make use of it
+	 * @param documentText
+	 * @return the concepts found in the text, ordered by span
+	 * @throws AnalysisEngineProcessException
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a pipeline replica
+	 * @throws IllegalStateException
+	 *             if the annotator has been closed
+	 */
+	public List<ConceptAnnotation> annotate(String documentId, String documentText)
+			throws AnalysisEngineProcessException, InterruptedException {
+		Replica replica = availableReplicas.take();
+		try {
+			if (closed) {
+				throw new IllegalStateException("The annotator has been closed");
+			}
+			JCas jcas = replica.jcas;
+			jcas.reset();
+			jcas.setDocumentText(documentText);
+			jcas.setDocumentLanguage("en");
+			UIMA_Util.setDocumentID(jcas, documentId);
+			replica.engine.process(jcas);
+			return ConceptAnnotation.select(jcas);
+		} finally {
+			availableReplicas.add(replica);
+		}
+	}
+
+	/**
+	 * @return the number of documents that can be annotated concurrently
+	 */
+	public int getNumReplicas() {
+		return replicas.size();
+	}
+
+	/**
+	 * @return true once {@link #close()} has been called
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Waits until every replica has been returned by the documents being annotated, then releases
+	 * them
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		List<Replica> returnedReplicas = new ArrayList<Replica>();
+		boolean interrupted = false;
+		while (returnedReplicas.size() < replicas.size()) {
+			try {
+				returnedReplicas.add(availableReplicas.take());
+			} catch (InterruptedException e) {
+				/* the replicas must not be destroyed while they are in use */
+				interrupted = true;
+			}
+		}
+		destroyReplicas();
+		/* callers that are waiting for a replica take one, see that the annotator is closed and fail */
+		availableReplicas.addAll(returnedReplicas);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void destroyReplicas() {
+		for (AnalysisEngine replica : replicas) {
+			replica.destroy();
+		}
+	}
+
+	/**
+	 * A pipeline replica and the CAS it processes documents with
+	 */
+	private static class Replica {
+		private final AnalysisEngine engine;
+		private final JCas jcas;
+
+		public Replica(AnalysisEngine engine, JCas jcas) {
+			this.engine = engine;
+			this.jcas = jcas;
+		}
+	}
+
+}
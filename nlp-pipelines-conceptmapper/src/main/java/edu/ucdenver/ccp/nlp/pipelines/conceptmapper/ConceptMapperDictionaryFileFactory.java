@@ -42,7 +42,6 @@ import org.apache.log4j.Logger;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
-import edu.ucdenver.ccp.common.file.FileUtil;
 import edu.ucdenver.ccp.common.file.FileUtil.CleanDirectory;
 import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil;
 import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
@@ -79,6 +78,23 @@ public class ConceptMapperDictionaryFileFactory {
 	 */
 	public static File createDictionaryFile(DictionaryNamespace dictNamespace, File outputDirectory,
 			CleanDirectory outputDirectoryOp, SynonymType synonymType) {
+		return createDictionaryFile(dictNamespace, outputDirectory, outputDirectoryOp, synonymType,
+				DictionaryCache.getCacheDirectory(outputDirectory));
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param outputDirectory
+	 *            the directory into which the ontology file is downloaded
+	 * @param outputDirectoryOp
+	 * @param synonymType
+	 * @param cacheDirectory
+	 *            the {@link DictionaryCache} directory for dictionaries built from
+	 *            OBO files
+	 * @return a reference to a newly created Concept Mapper dictionary file
+	 */
+	public static File createDictionaryFile(DictionaryNamespace dictNamespace, File outputDirectory,
+			CleanDirectory outputDirectoryOp, SynonymType synonymType, File cacheDirectory) {
 		try {
 			boolean cleanOutputDirectory = outputDirectoryOp.equals(CleanDirectory.YES);
 			// if we are downloading new source files, then we want to create a
@@ -100,15 +116,15 @@ public class ConceptMapperDictionaryFileFactory {
 				return GoDictionaryFactory.buildConceptMapperDictionary(EnumSet.of(GoNamespace.MF), outputDirectory,
 						outputDirectoryOp, synonymType);
 			case CHEBI:
-				return buildChebiDictionary(outputDirectory, cleanDictFile, synonymType);
+				return buildChebiDictionary(outputDirectory, cacheDirectory, cleanDictFile, synonymType);
 			case CL:
-				return buildCellTypeDictionary(outputDirectory, cleanDictFile, synonymType);
+				return buildCellTypeDictionary(outputDirectory, cacheDirectory, cleanDictFile, synonymType);
 			case NCBI_TAXON:
-				return buildNcbiTaxonDictionary(outputDirectory, cleanDictFile, synonymType);
+				return buildNcbiTaxonDictionary(outputDirectory, cacheDirectory, cleanDictFile, synonymType);
 			case PR:
-				return buildProteinOntologyDictionary(outputDirectory, cleanDictFile, synonymType);
+				return buildProteinOntologyDictionary(outputDirectory, cacheDirectory, cleanDictFile, synonymType);
 			case SO:
-				return buildSequenceOntologyDictionary(outputDirectory, cleanDictFile, synonymType);
+				return buildSequenceOntologyDictionary(outputDirectory, cacheDirectory, cleanDictFile, synonymType);
 			case EG:
 				return EntrezGeneDictionaryFactory.buildModelOrganismConceptMapperDictionary(outputDirectory,
 						outputDirectoryOp);
@@ -129,9 +145,10 @@ public class ConceptMapperDictionaryFileFactory {
 	 * @param outputDirectory
 	 * @param cleanDictFile
 	 *            if true, an already existing dictionary file is overwritten.
-	 *            If false, then the pre-existing dictionary file is used and
+	 *            If false, then a pre-existing dictionary file built from the
+	 *            same ontology content, namespace and synonym type is used and
 	 *            the dictionary building step is therefore skipped
-	 * @return a reference to a newly created Concept Mapper dictionary file
+	 * @return a reference to a Concept Mapper dictionary file
 	 */
 	public static File createDictionaryFileFromOBO(DictionaryNamespace dictNamespace, File inputFile,
 			File outputDirectory, boolean cleanDictFile, SynonymType synonymType) {
@@ -151,20 +168,16 @@ public class ConceptMapperDictionaryFileFactory {
 				return GoDictionaryFactory.buildConceptMapperDictionary(EnumSet.of(GoNamespace.MF), outputDirectory,
 						inputFile, cleanDictFile, synonymType);
 			case CHEBI:
-				return buildChebiDictionary(inputFile, outputDirectory, cleanDictFile, synonymType);
 			case CL:
-				return buildCellTypeDictionary(inputFile, outputDirectory, cleanDictFile, synonymType);
 			case NCBI_TAXON:
-				return buildNcbiTaxonDictionary(inputFile, outputDirectory, cleanDictFile, synonymType);
 			case PR:
-				return buildProteinOntologyDictionary(inputFile, outputDirectory, cleanDictFile, synonymType);
 			case SO:
-				return buildSequenceOntologyDictionary(inputFile, outputDirectory, cleanDictFile, synonymType);
+			case OBO:
+				return buildDictionaryFromOBO(dictNamespace, inputFile,
+						DictionaryCache.getCacheDirectory(outputDirectory), cleanDictFile, synonymType);
 			case EG:
 				return EntrezGeneDictionaryFactory.buildModelOrganismConceptMapperDictionary(inputFile,
 						outputDirectory, cleanDictFile);
-			case OBO:
-				return buildDictionaryFromOBO(inputFile, outputDirectory, cleanDictFile, synonymType);
 
 			default:
 				throw new IllegalArgumentException("Unknown concept mapper dictionary namespace: "
@@ -179,241 +192,94 @@ public class ConceptMapperDictionaryFileFactory {
 
 	/**
 	 * @param outputDirectory
-	 * @param soIter
-	 * @return
-	 * @throws IOException
-	 * @throws OWLOntologyCreationException
-	 * @throws OBOParseException
+	 * @param cleanDictFile
+	 * @param synonymType
+	 * @return a reference to a Concept Mapper dictionary file built from a
+	 *         freshly downloaded (or previously downloaded, if cleanDictFile is
+	 *         false) Sequence Ontology OBO file
 	 */
-	private static File buildSequenceOntologyDictionary(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File soCmDictFile = new File(outputDirectory, "cmDict-SO.xml");
-		if (soCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(soCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + soCmDictFile);
-				return soCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + soCmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(soCmDictFile, ontUtil, null, synonymType);
-		return soCmDictFile;
-	}
-
-	private static File buildSequenceOntologyDictionary(File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException, IllegalArgumentException,
-			IllegalAccessException {
-		File soCmDictFile = new File(outputDirectory, "cmDict-SO.xml");
-		if (soCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(soCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + soCmDictFile);
-				return soCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + soCmDictFile);
+	private static File buildSequenceOntologyDictionary(File outputDirectory, File cacheDirectory,
+			boolean cleanDictFile, SynonymType synonymType) throws IOException, OWLOntologyCreationException,
+			IllegalArgumentException, IllegalAccessException {
 		SequenceOntologyClassIterator soIter = new SequenceOntologyClassIterator(outputDirectory, cleanDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(soIter.getOboFile());
+		File oboFile = soIter.getOboFile();
 		soIter.close();
-		OboToDictionary.buildDictionary(soCmDictFile, ontUtil, null, synonymType);
-		return soCmDictFile;
-	}
-
-	/**
-	 * @param outputDirectory
-	 * @param prIter
-	 * @return
-	 * @throws IOException
-	 * @throws OWLOntologyCreationException
-	 * @throws OBOParseException
-	 */
-	private static File buildProteinOntologyDictionary(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File prCmDictFile = new File(outputDirectory, "cmDict-PR.xml");
-		if (prCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(prCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + prCmDictFile);
-				return prCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + prCmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(prCmDictFile, ontUtil, null, synonymType);
-		return prCmDictFile;
+		return buildDictionaryFromOBO(DictionaryNamespace.SO, oboFile, cacheDirectory, cleanDictFile, synonymType);
 	}
 
-	private static File buildProteinOntologyDictionary(File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException, IllegalArgumentException,
-			IllegalAccessException {
-		File prCmDictFile = new File(outputDirectory, "cmDict-PR.xml");
-		if (prCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(prCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + prCmDictFile);
-				return prCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + prCmDictFile);
+	private static File buildProteinOntologyDictionary(File outputDirectory, File cacheDirectory,
+			boolean cleanDictFile, SynonymType synonymType) throws IOException, OWLOntologyCreationException,
+			IllegalArgumentException, IllegalAccessException {
 		ProOntologyClassIterator prIter = new ProOntologyClassIterator(outputDirectory, cleanDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(prIter.getProOntologyOboFile());
+		File oboFile = prIter.getProOntologyOboFile();
 		prIter.close();
-		OboToDictionary.buildDictionary(prCmDictFile, ontUtil, null, synonymType);
-		return prCmDictFile;
-	}
-
-	/**
-	 * @param outputDirectory
-	 * @param taxonIter
-	 * @return
-	 * @throws IOException
-	 * @throws OWLOntologyCreationException
-	 * @throws OBOParseException
-	 */
-	private static File buildNcbiTaxonDictionary(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File taxonCmDictFile = new File(outputDirectory, "cmDict-NCBITAXON.xml");
-		if (taxonCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(taxonCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + taxonCmDictFile);
-				return taxonCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + taxonCmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(taxonCmDictFile, ontUtil, null, synonymType);
-		return taxonCmDictFile;
+		return buildDictionaryFromOBO(DictionaryNamespace.PR, oboFile, cacheDirectory, cleanDictFile, synonymType);
 	}
 
-	private static File buildNcbiTaxonDictionary(File outputDirectory, boolean cleanDictFile, SynonymType synonymType)
-			throws IOException, OWLOntologyCreationException, IllegalArgumentException, IllegalAccessException {
-		File taxonCmDictFile = new File(outputDirectory, "cmDict-NCBITAXON.xml");
-		if (taxonCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(taxonCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + taxonCmDictFile);
-				return taxonCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + taxonCmDictFile);
+	private static File buildNcbiTaxonDictionary(File outputDirectory, File cacheDirectory, boolean cleanDictFile,
+			SynonymType synonymType) throws IOException, OWLOntologyCreationException, IllegalArgumentException,
+			IllegalAccessException {
 		NcbiTaxonomyClassIterator taxonIter = new NcbiTaxonomyClassIterator(outputDirectory, cleanDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(taxonIter.getOboFile());
+		File oboFile = taxonIter.getOboFile();
 		taxonIter.close();
-		OboToDictionary.buildDictionary(taxonCmDictFile, ontUtil, null, synonymType);
-		return taxonCmDictFile;
+		return buildDictionaryFromOBO(DictionaryNamespace.NCBI_TAXON, oboFile, cacheDirectory, cleanDictFile,
+				synonymType);
 	}
 
-	/**
-	 * @param outputDirectory
-	 * @param clIter
-	 * @return
-	 * @throws IOException
-	 * @throws OWLOntologyCreationException
-	 * @throws OBOParseException
-	 */
-	private static File buildCellTypeDictionary(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File clCmDictFile = new File(outputDirectory, "cmDict-CL.xml");
-		if (clCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(clCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + clCmDictFile);
-				return clCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + clCmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(clCmDictFile, ontUtil, null, synonymType);
-		return clCmDictFile;
-	}
-
-	private static File buildCellTypeDictionary(File outputDirectory, boolean cleanDictFile, SynonymType synonymType)
-			throws IOException, OWLOntologyCreationException, IllegalArgumentException, IllegalAccessException {
-		File clCmDictFile = new File(outputDirectory, "cmDict-CL.xml");
-		if (clCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(clCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + clCmDictFile);
-				return clCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + clCmDictFile);
+	private static File buildCellTypeDictionary(File outputDirectory, File cacheDirectory, boolean cleanDictFile,
+			SynonymType synonymType) throws IOException, OWLOntologyCreationException, IllegalArgumentException,
+			IllegalAccessException {
 		CellTypeOntologyClassIterator clIter = new CellTypeOntologyClassIterator(outputDirectory, cleanDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(clIter.getOboFile());
+		File oboFile = clIter.getOboFile();
 		clIter.close();
-		OboToDictionary.buildDictionary(clCmDictFile, ontUtil, null, synonymType);
-		return clCmDictFile;
-	}
-
-	/**
-	 * @param outputDirectory
-	 * @param chebiIter
-	 * @return
-	 * @throws IOException
-	 * @throws OWLOntologyCreationException
-	 * @throws OBOParseException
-	 */
-	private static File buildChebiDictionary(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File chebiCmDictFile = new File(outputDirectory, "cmDict-CHEBI.xml");
-		if (chebiCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(chebiCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + chebiCmDictFile);
-				return chebiCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + chebiCmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(chebiCmDictFile, ontUtil, null, synonymType);
-		return chebiCmDictFile;
+		return buildDictionaryFromOBO(DictionaryNamespace.CL, oboFile, cacheDirectory, cleanDictFile, synonymType);
 	}
 
-	private static File buildChebiDictionary(File outputDirectory, boolean cleanDictFile, SynonymType synonymType)
-			throws IOException, OWLOntologyCreationException, IllegalArgumentException, IllegalAccessException {
-		File chebiCmDictFile = new File(outputDirectory, "cmDict-CHEBI.xml");
-		if (chebiCmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(chebiCmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + chebiCmDictFile);
-				return chebiCmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + chebiCmDictFile);
+	private static File buildChebiDictionary(File outputDirectory, File cacheDirectory, boolean cleanDictFile,
+			SynonymType synonymType) throws IOException, OWLOntologyCreationException, IllegalArgumentException,
+			IllegalAccessException {
 		ChebiOntologyClassIterator chebiIter = new ChebiOntologyClassIterator(outputDirectory, cleanDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(chebiIter.getOboFile());
+		File oboFile = chebiIter.getOboFile();
 		chebiIter.close();
-		OboToDictionary.buildDictionary(chebiCmDictFile, ontUtil, null, synonymType);
-		return chebiCmDictFile;
+		return buildDictionaryFromOBO(DictionaryNamespace.CHEBI, oboFile, cacheDirectory, cleanDictFile,
+				synonymType);
 	}
 
-	private static File buildDictionaryFromOBO(File inputOboFile, File outputDirectory, boolean cleanDictFile,
-			SynonymType synonymType) throws IOException, OWLOntologyCreationException {
-		File CmDictFile = new File(outputDirectory, "cmDict-OBO.xml");
-		if (CmDictFile.exists()) {
-			if (cleanDictFile) {
-				FileUtil.deleteFile(CmDictFile);
-			} else {
-				logger.info("Using pre-existing dictionary file: " + CmDictFile);
-				return CmDictFile;
-			}
-		}
-		logger.info("Building dictionary file: " + CmDictFile);
-		OntologyUtil ontUtil = new OntologyUtil(inputOboFile);
-		OboToDictionary.buildDictionary(CmDictFile, ontUtil, null, synonymType);
-		return CmDictFile;
+	/**
+	 * Returns the dictionary for the specified ontology file from the
+	 * {@link DictionaryCache}, building it only if no dictionary has been built
+	 * from the same ontology content, {@link DictionaryNamespace} and
+	 * {@link SynonymType}. OBO files are streamed by
+	 * {@link StreamingOboToDictionary}; other (OWL) files are loaded through
+	 * {@link OntologyUtil}.
+	 * 
+	 * @param dictNamespace
+	 * @param inputOboFile
+	 * @param cacheDirectory
+	 * @param cleanDictFile
+	 *            if true, the dictionary is rebuilt even if it is cached
+	 * @param synonymType
+	 * @return a reference to the Concept Mapper dictionary file
+	 * @throws IOException
+	 * @throws OWLOntologyCreationException
+	 */
+	private static File buildDictionaryFromOBO(DictionaryNamespace dictNamespace, File inputOboFile,
+			File cacheDirectory, boolean cleanDictFile, final SynonymType synonymType) throws IOException,
+			OWLOntologyCreationException {
+		DictionaryCache cache = new DictionaryCache(cacheDirectory);
+		return cache.getDictionaryFile(dictNamespace, inputOboFile, synonymType, cleanDictFile,
+				new DictionaryCache.DictionaryBuilder() {
+					@Override
+					public void buildDictionary(File oboFile, File dictFile) throws IOException,
+							OWLOntologyCreationException {
+						if (StreamingOboToDictionary.isOboFile(oboFile)) {
+							StreamingOboToDictionary.buildDictionary(oboFile, dictFile, null, synonymType);
+						} else {
+							OntologyUtil ontUtil = new OntologyUtil(oboFile);
+							OboToDictionary.buildDictionary(dictFile, ontUtil, null, synonymType);
+						}
+					}
+				});
 	}
 
 }
@@ -94,6 +94,21 @@ public class ConceptMapperPipelineCmdOpts extends PipelineCmdOptsBase {
 		this.cmSpanClassName = spanClass.getName();
 	}
 
+	@Option(name = "-xmlDictionary", usage = "load the dictionary from its XML file on every run instead of compiling it once to a memory-mapped file next to the XML file")
+	private boolean xmlDictionary = false;
+
+	/**
+	 * @return true if ConceptMapper should load the XML dictionary itself rather than through a
+	 *         {@link MappedDictionaryResource}
+	 */
+	public boolean isXmlDictionary() {
+		return xmlDictionary;
+	}
+
+	public void setXmlDictionary(boolean xmlDictionary) {
+		this.xmlDictionary = xmlDictionary;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -101,7 +116,8 @@ public class ConceptMapperPipelineCmdOpts extends PipelineCmdOptsBase {
 	 */
 	@Override
 	public String toString() {
-		return "ConceptMapperPipelineCmdOpts [cmDictionaryFile=" + cmDictionaryFile + ", getNumToSkip()="
+		return "ConceptMapperPipelineCmdOpts [cmDictionaryFile=" + cmDictionaryFile + ", xmlDictionary="
+				+ xmlDictionary + ", getNumToSkip()="
 				+ getNumToSkip() + ", getNumToProcess()=" + getNumToProcess() + ", getBatchNumber()="
 				+ getBatchNumber() + ", getInputFileOrDirectoryPath()=" + getInputFileOrDirectoryPath()
 				+ ", getOutputFileOrDirectoryPath()=" + getOutputFileOrDirectoryPath()
@@ -132,6 +132,10 @@ public class ConceptMapperPipelineFactory {
 		AnalysisEngineDescription conceptMapperAggregateDesc = ConceptMapperPermutationFactory
 				.buildConceptMapperAggregatePermutation(parameterValuesIndex, tsd, cmDictionaryFile,
 						cmdOptions.getSpanClass());
+		if (!cmdOptions.isXmlDictionary()) {
+			/* parse the XML dictionary only once, then memory-map its compiled form */
+			MappedDictionaryResource.useMappedDictionary(conceptMapperAggregateDesc);
+		}
 
 		/* Converts from the CM OntologyTerm annotation class to CCPTextAnnotation classes */
 		AnalysisEngineDescription cmToCcpTypeSystemConverterDesc = ConceptMapper2CCPTypeSystemConverter_AE
@@ -268,11 +272,19 @@ public class ConceptMapperPipelineFactory {
 			throws UIMAException, IOException {
 
 		File workDirectory = null;
+		File cacheDirectory = null;
 		if (dictParamOp.equals(DictionaryParameterOperation.IGNORE)) {
+			/*
+			 * download into a private directory, as the work directory may be cleaned, but cache
+			 * the dictionary in a directory that is the same for every invocation so that it is
+			 * only built once for a given ontology file
+			 */
 			workDirectory = FileUtil.createTemporaryDirectory("cmDictBuildDirectory");
+			cacheDirectory = DictionaryCache.getDefaultCacheDirectory();
 		} else if (dictParamOp.equals(DictionaryParameterOperation.TREAT_AS_DIRECTORY)) {
 			workDirectory = cmdOptions.getDictionaryFile();
 			FileUtil.validateDirectory(workDirectory);
+			cacheDirectory = DictionaryCache.getCacheDirectory(workDirectory);
 		}
 
 		/*
@@ -283,7 +295,7 @@ public class ConceptMapperPipelineFactory {
 			logger.info("Creating ConceptMapper dictionary file in " + workDirectory.getAbsolutePath());
 			SynonymType synonymType = ConceptMapperPermutationFactory.getSynonymType(parameterCombinationIndex);
 			File cmDictFile = ConceptMapperDictionaryFileFactory.createDictionaryFile(dictNamespace, workDirectory,
-					workDirectoryOp, synonymType);
+					workDirectoryOp, synonymType, cacheDirectory);
 			logger.info("Concept Mapper dictionary file: " + cmDictFile);
 			cmdOptions.setDictionaryFile(cmDictFile);
 		}
@@ -0,0 +1,526 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import edu.ucdenver.ccp.common.file.FileUtil.CleanDirectory;
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+
+/**
+ * Builds the ConceptMapper dictionaries for a set of {@link DictionaryNamespace}s concurrently.
+ * Builds run on a bounded thread pool and are admitted against a heap budget, using an estimate of
+ * the memory needed to build each dictionary (see
+ * {@link #estimateMemoryMb(DictionaryNamespace, File)}). Independent of the budget, the very large
+ * ontologies (see {@link #LARGE_NAMESPACES}) are never loaded at the same time, and builds that
+ * read the same source file (e.g. GO_CC, GO_BP and GO_MF, which all download go.obo into the
+ * dictionary directory) are run one after the other so that one build never downloads or deletes
+ * the file while another is reading it. A build is only handed to the thread pool once it can start,
+ * so a pool thread never waits for another build to finish: builds are considered in the order in
+ * which they were specified, and one that cannot start yet is passed over in favour of a later one
+ * that can. When all builds have finished, the time taken and the peak heap observed while each
+ * dictionary was being built are logged.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DictionaryBatchBuilder {
+
+	private static final Logger logger = Logger.getLogger(DictionaryBatchBuilder.class);
+
+	private static final long MB = 1024 * 1024;
+
+	/**
+	 * Namespaces whose source files are large enough that loading two of them at once risks
+	 * exhausting the heap
+	 */
+	public static final Set<DictionaryNamespace> LARGE_NAMESPACES = Collections.unmodifiableSet(EnumSet.of(
+			DictionaryNamespace.PR, DictionaryNamespace.NCBI_TAXON, DictionaryNamespace.EG));
+
+	/**
+	 * Namespaces whose dictionaries are built by {@link StreamingOboToDictionary} when an OBO file
+	 * is specified
+	 */
+	private static final Set<DictionaryNamespace> STREAMED_NAMESPACES = Collections.unmodifiableSet(EnumSet.of(
+			DictionaryNamespace.CHEBI, DictionaryNamespace.CL, DictionaryNamespace.NCBI_TAXON, DictionaryNamespace.PR,
+			DictionaryNamespace.SO, DictionaryNamespace.OBO));
+
+	/**
+	 * The heap needed to stream an OBO file into a dictionary, which holds a single term at a time,
+	 * plus the buffers of the reader and writer
+	 */
+	static final long STREAMED_BUILD_MEMORY_MB = 256;
+
+	/**
+	 * How often the heap is sampled to determine the peak usage of each running build
+	 */
+	private static final long HEAP_SAMPLING_INTERVAL_MS = 100;
+
+	private final File dictionaryDirectory;
+	private final SynonymType synonymType;
+	private final boolean cleanDictFiles;
+	private final int numThreads;
+	private final long memoryBudgetMb;
+
+	/**
+	 * @param dictionaryDirectory
+	 *            the directory where dictionaries (and downloaded source files) are stored
+	 * @param synonymType
+	 * @param cleanDictFiles
+	 *            if true, dictionaries are rebuilt even if they already exist
+	 * @param numThreads
+	 *            the maximum number of dictionaries built at the same time
+	 * @param memoryBudgetMb
+	 *            the heap (in MB) that may be committed to concurrently running builds
+	 */
+	public DictionaryBatchBuilder(File dictionaryDirectory, SynonymType synonymType, boolean cleanDictFiles,
+			int numThreads, long memoryBudgetMb) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive: " + numThreads);
+		}
+		if (memoryBudgetMb < 1) {
+			throw new IllegalArgumentException("The memory budget must be positive: " + memoryBudgetMb);
+		}
+		this.dictionaryDirectory = dictionaryDirectory;
+		this.synonymType = synonymType;
+		this.cleanDictFiles = cleanDictFiles;
+		this.numThreads = numThreads;
+		this.memoryBudgetMb = memoryBudgetMb;
+	}
+
+	/**
+	 * @return the default memory budget: 80% of the maximum heap
+	 */
+	public static long getDefaultMemoryBudgetMb() {
+		return Math.max(1, Runtime.getRuntime().maxMemory() * 8 / 10 / MB);
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 *            the ontology file the dictionary is built from, or null if the source file is
+	 *            downloaded
+	 * @return true if the dictionary is built by streaming the ontology file rather than by loading
+	 *         the whole ontology. Downloads go through the datasource class iterators and GO and EG
+	 *         through their own factories, all of which load the whole source.
+	 */
+	static boolean isStreamedBuild(DictionaryNamespace dictNamespace, File ontologyFile) {
+		return ontologyFile != null && STREAMED_NAMESPACES.contains(dictNamespace)
+				&& StreamingOboToDictionary.isOboFile(ontologyFile);
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 *            may be null, see {@link #isStreamedBuild(DictionaryNamespace, File)}
+	 * @return a rough estimate of the heap (in MB) needed to build the dictionary for the specified
+	 *         namespace: {@link #STREAMED_BUILD_MEMORY_MB} for a streamed build, otherwise the
+	 *         heap needed to hold the loaded source
+	 */
+	public static long estimateMemoryMb(DictionaryNamespace dictNamespace, File ontologyFile) {
+		if (isStreamedBuild(dictNamespace, ontologyFile)) {
+			return STREAMED_BUILD_MEMORY_MB;
+		}
+		switch (dictNamespace) {
+		case PR:
+		case NCBI_TAXON:
+			return 6 * 1024;
+		case EG:
+		case CHEBI:
+			return 3 * 1024;
+		case GO:
+		case GO_BP:
+		case GO_CC:
+		case GO_MF:
+			return 1536;
+		default:
+			return 1024;
+		}
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 *            may be null
+	 * @return true if the build loads a source that is too large to be loaded at the same time as
+	 *         another large source
+	 */
+	static boolean isLargeBuild(DictionaryNamespace dictNamespace, File ontologyFile) {
+		return LARGE_NAMESPACES.contains(dictNamespace) && !isStreamedBuild(dictNamespace, ontologyFile);
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 *            may be null
+	 * @return identifies the source file that the build reads; builds with the same source are not
+	 *         run at the same time
+	 */
+	static String getSourceKey(DictionaryNamespace dictNamespace, File ontologyFile) {
+		if (ontologyFile != null) {
+			return ontologyFile.getAbsoluteFile().toPath().normalize().toString();
+		}
+		switch (dictNamespace) {
+		case GO:
+		case GO_BP:
+		case GO_CC:
+		case GO_MF:
+			return "download:GO";
+		default:
+			return "download:" + dictNamespace.name();
+		}
+	}
+
+	/**
+	 * Builds the dictionaries for the specified namespaces. If an ontology file is specified for a
+	 * namespace then the dictionary is built from that file, otherwise the source file is
+	 * downloaded. All builds are attempted even if some of them fail.
+	 * 
+	 * @param dictNamespaces
+	 * @param ontologyFiles
+	 *            optional ontology files keyed by namespace; required for
+	 *            {@link DictionaryNamespace#OBO}
+	 * @return the outcome of each build, in the order in which the namespaces were specified
+	 * @throws InterruptedException
+	 */
+	public List<BuildResult> buildDictionaries(Set<DictionaryNamespace> dictNamespaces,
+			Map<DictionaryNamespace, File> ontologyFiles) throws InterruptedException {
+		for (DictionaryNamespace ns : dictNamespaces) {
+			if (ns == DictionaryNamespace.OBO && !ontologyFiles.containsKey(ns)) {
+				throw new IllegalArgumentException("An ontology file must be specified for the OBO namespace.");
+			}
+		}
+		if (dictNamespaces.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final List<BuildResult> running = new CopyOnWriteArrayList<BuildResult>();
+		final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				long used = memoryBean.getHeapMemoryUsage().getUsed();
+				for (BuildResult result : running) {
+					result.recordHeapUsage(used);
+				}
+			}
+		}, 0, HEAP_SAMPLING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+		int poolSize = Math.min(numThreads, dictNamespaces.size());
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		Scheduler scheduler = new Scheduler(poolSize, memoryBudgetMb);
+		List<BuildTask> pending = new ArrayList<BuildTask>();
+		for (DictionaryNamespace ns : dictNamespaces) {
+			pending.add(new BuildTask(pending.size(), ns, ontologyFiles.get(ns), scheduler, running));
+		}
+		List<Future<BuildResult>> futures = new ArrayList<Future<BuildResult>>(Collections
+				.<Future<BuildResult>> nCopies(pending.size(), null));
+		try {
+			synchronized (scheduler) {
+				while (!pending.isEmpty()) {
+					for (Iterator<BuildTask> iter = pending.iterator(); iter.hasNext();) {
+						BuildTask task = iter.next();
+						if (scheduler.tryStart(task)) {
+							iter.remove();
+							futures.set(task.index, executor.submit(task));
+						}
+					}
+					if (!pending.isEmpty()) {
+						scheduler.wait();
+					}
+				}
+			}
+			List<BuildResult> results = new ArrayList<BuildResult>();
+			for (Future<BuildResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					/* BuildTask records its own failures, so this is unexpected */
+					throw new IllegalStateException("Dictionary build task failed.", e.getCause());
+				}
+			}
+			logReport(results);
+			return results;
+		} finally {
+			executor.shutdownNow();
+			sampler.shutdownNow();
+		}
+	}
+
+	private static void logReport(List<BuildResult> results) {
+		StringBuilder sb = new StringBuilder("Dictionary build report:\n");
+		sb.append(String.format("%-12s%-8s%12s%16s  %s%n", "NAMESPACE", "STATUS", "TIME (ms)", "PEAK HEAP (MB)",
+				"DICTIONARY"));
+		for (BuildResult result : results) {
+			sb.append(String.format("%-12s%-8s%12d%16d  %s%n", result.getNamespace().name(),
+					result.isSuccess() ? "OK" : "FAILED", result.getElapsedMillis(), result.getPeakHeapBytes() / MB,
+					result.isSuccess() ? result.getDictionaryFile() : result.getError()));
+		}
+		logger.info(sb.toString());
+	}
+
+	/**
+	 * Keeps track of what the running builds use: their source files, the large-ontology slot, the
+	 * memory budget and the pool threads. Guarded by its own monitor, which is notified whenever a
+	 * build finishes.
+	 */
+	private static class Scheduler {
+		private final Set<String> sourcesInUse = new HashSet<String>();
+		private boolean largeBuildRunning = false;
+		private long freeMemoryMb;
+		private int freeThreads;
+
+		private Scheduler(int numThreads, long memoryBudgetMb) {
+			this.freeThreads = numThreads;
+			this.freeMemoryMb = memoryBudgetMb;
+		}
+
+		/**
+		 * @return true if the build could start, in which case what it uses is reserved for it
+		 */
+		private boolean tryStart(BuildTask task) {
+			if (freeThreads == 0 || sourcesInUse.contains(task.sourceKey) || (task.large && largeBuildRunning)
+					|| task.memoryMb > freeMemoryMb) {
+				return false;
+			}
+			freeThreads--;
+			sourcesInUse.add(task.sourceKey);
+			largeBuildRunning |= task.large;
+			freeMemoryMb -= task.memoryMb;
+			return true;
+		}
+
+		private synchronized void finish(BuildTask task) {
+			freeThreads++;
+			sourcesInUse.remove(task.sourceKey);
+			if (task.large) {
+				largeBuildRunning = false;
+			}
+			freeMemoryMb += task.memoryMb;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Builds a single dictionary; submitted once the {@link Scheduler} has reserved what the build
+	 * uses, which is released when it finishes
+	 */
+	private class BuildTask implements Callable<BuildResult> {
+		private final int index;
+		private final DictionaryNamespace dictNamespace;
+		private final File ontologyFile;
+		private final String sourceKey;
+		private final boolean large;
+		private final long memoryMb;
+		private final Scheduler scheduler;
+		private final List<BuildResult> running;
+
+		public BuildTask(int index, DictionaryNamespace dictNamespace, File ontologyFile, Scheduler scheduler,
+				List<BuildResult> running) {
+			this.index = index;
+			this.dictNamespace = dictNamespace;
+			this.ontologyFile = ontologyFile;
+			this.sourceKey = getSourceKey(dictNamespace, ontologyFile);
+			this.large = isLargeBuild(dictNamespace, ontologyFile);
+			/* a build that needs more than the whole budget runs on its own */
+			this.memoryMb = Math.min(estimateMemoryMb(dictNamespace, ontologyFile), memoryBudgetMb);
+			this.scheduler = scheduler;
+			this.running = running;
+		}
+
+		@Override
+		public BuildResult call() {
+			try {
+				return build();
+			} finally {
+				scheduler.finish(this);
+			}
+		}
+
+		private BuildResult build() {
+			BuildResult result = new BuildResult(dictNamespace);
+			running.add(result);
+			logger.info("Building " + dictNamespace.name() + " dictionary...");
+			long start = System.currentTimeMillis();
+			try {
+				result.setDictionaryFile(buildDictionary(dictNamespace, ontologyFile));
+			} catch (RuntimeException e) {
+				logger.error("Error while building the " + dictNamespace.name() + " dictionary.", e);
+				result.setError(e);
+			} finally {
+				running.remove(result);
+				result.setElapsedMillis(System.currentTimeMillis() - start);
+			}
+			logger.info("Finished " + dictNamespace.name() + " dictionary in " + result.getElapsedMillis() + "ms");
+			return result;
+		}
+	}
+
+	/**
+	 * Builds a single dictionary; called concurrently for different namespaces
+	 * 
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 *            if null, the source file is downloaded
+	 * @return the dictionary file
+	 */
+	File buildDictionary(DictionaryNamespace dictNamespace, File ontologyFile) {
+		if (ontologyFile == null) {
+			return ConceptMapperDictionaryFileFactory.createDictionaryFile(dictNamespace, dictionaryDirectory,
+					cleanDictFiles ? CleanDirectory.YES : CleanDirectory.NO, synonymType);
+		}
+		return ConceptMapperDictionaryFileFactory.createDictionaryFileFromOBO(dictNamespace, ontologyFile,
+				dictionaryDirectory, cleanDictFiles, synonymType);
+	}
+
+	/**
+	 * The outcome of building a single dictionary
+	 */
+	public static class BuildResult {
+		private final DictionaryNamespace namespace;
+		private final AtomicLong peakHeapBytes = new AtomicLong();
+		private volatile File dictionaryFile;
+		private volatile Throwable error;
+		private volatile long elapsedMillis;
+
+		public BuildResult(DictionaryNamespace namespace) {
+			this.namespace = namespace;
+		}
+
+		void recordHeapUsage(long usedBytes) {
+			long peak;
+			while (usedBytes > (peak = peakHeapBytes.get())) {
+				if (peakHeapBytes.compareAndSet(peak, usedBytes)) {
+					break;
+				}
+			}
+		}
+
+		public DictionaryNamespace getNamespace() {
+			return namespace;
+		}
+
+		/**
+		 * @return the peak JVM heap usage observed while this dictionary was being built. If other
+		 *         dictionaries were built at the same time, their usage is included.
+		 */
+		public long getPeakHeapBytes() {
+			return peakHeapBytes.get();
+		}
+
+		public File getDictionaryFile() {
+			return dictionaryFile;
+		}
+
+		void setDictionaryFile(File dictionaryFile) {
+			this.dictionaryFile = dictionaryFile;
+		}
+
+		public Throwable getError() {
+			return error;
+		}
+
+		void setError(Throwable error) {
+			this.error = error;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		void setElapsedMillis(long elapsedMillis) {
+			this.elapsedMillis = elapsedMillis;
+		}
+	}
+
+	/**
+	 * See {@link DictionaryBatchBuilderCmdOpts} for the arguments
+	 * 
+	 * @param args
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		DictionaryBatchBuilderCmdOpts options = new DictionaryBatchBuilderCmdOpts();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+			options.validate();
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+
+		DictionaryBatchBuilder builder = new DictionaryBatchBuilder(options.getDictionaryDirectory(),
+				options.getSynonymType(), options.cleanDictionaryFiles(), options.getNumThreads(),
+				options.getMemoryBudgetMb());
+		List<BuildResult> results = builder.buildDictionaries(options.getNamespaces(), options.getOntologyFiles());
+		for (BuildResult result : results) {
+			if (!result.isSuccess()) {
+				System.exit(1);
+			}
+		}
+	}
+
+}
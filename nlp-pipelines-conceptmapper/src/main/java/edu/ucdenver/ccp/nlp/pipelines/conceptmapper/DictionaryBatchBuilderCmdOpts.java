@@ -0,0 +1,143 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Command line options for the {@link DictionaryBatchBuilder}
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DictionaryBatchBuilderCmdOpts {
+
+	@Option(name = "-d", usage = "the directory where dictionaries are stored", required = true)
+	private File dictionaryDirectory;
+
+	@Option(name = "-ns", usage = "comma-separated list of dictionary namespaces to build, e.g. GO_CC,CL,PR", required = true)
+	private String namespaces;
+
+	@Option(name = "-ont", metaVar = "NAMESPACE=FILE", usage = "the ontology file to build a namespace from (may be repeated); if not specified for a namespace, its source file is downloaded")
+	private List<String> ontologyFiles = new ArrayList<String>();
+
+	@Option(name = "-synonymType", usage = "the synonym scope(s) to include in the dictionaries (default EXACT)")
+	private SynonymType synonymType = SynonymType.EXACT;
+
+	@Option(name = "-clean", usage = "rebuild dictionaries even if they already exist")
+	private boolean cleanDictionaryFiles = false;
+
+	@Option(name = "-threads", usage = "the maximum number of dictionaries to build concurrently (defaults to the number of available processors)")
+	private int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+
+	@Option(name = "-memoryBudgetMb", usage = "the heap (in MB) that may be used by concurrent builds (defaults to 80% of the maximum heap)")
+	private long memoryBudgetMb = DictionaryBatchBuilder.getDefaultMemoryBudgetMb();
+
+	/**
+	 * @throws CmdLineException
+	 *             if a namespace or ontology file specification cannot be parsed
+	 */
+	public void validate() throws CmdLineException {
+		try {
+			getNamespaces();
+		} catch (IllegalArgumentException e) {
+			throw new CmdLineException("Invalid namespace list: " + namespaces);
+		}
+		for (String spec : ontologyFiles) {
+			int index = spec.indexOf('=');
+			if (index < 1) {
+				throw new CmdLineException("Expected NAMESPACE=FILE but observed: " + spec);
+			}
+			try {
+				DictionaryNamespace.valueOf(spec.substring(0, index).trim());
+			} catch (IllegalArgumentException e) {
+				throw new CmdLineException("Invalid namespace in ontology file specification: " + spec);
+			}
+		}
+	}
+
+	public File getDictionaryDirectory() {
+		return dictionaryDirectory;
+	}
+
+	public Set<DictionaryNamespace> getNamespaces() {
+		Set<DictionaryNamespace> set = EnumSet.noneOf(DictionaryNamespace.class);
+		for (String ns : namespaces.split(",")) {
+			if (!ns.trim().isEmpty()) {
+				set.add(DictionaryNamespace.valueOf(ns.trim()));
+			}
+		}
+		return set;
+	}
+
+	public Map<DictionaryNamespace, File> getOntologyFiles() {
+		Map<DictionaryNamespace, File> map = new EnumMap<DictionaryNamespace, File>(DictionaryNamespace.class);
+		for (String spec : ontologyFiles) {
+			int index = spec.indexOf('=');
+			map.put(DictionaryNamespace.valueOf(spec.substring(0, index).trim()), new File(spec.substring(index + 1)));
+		}
+		return map;
+	}
+
+	public SynonymType getSynonymType() {
+		return synonymType;
+	}
+
+	public boolean cleanDictionaryFiles() {
+		return cleanDictionaryFiles;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public long getMemoryBudgetMb() {
+		return memoryBudgetMb;
+	}
+
+}
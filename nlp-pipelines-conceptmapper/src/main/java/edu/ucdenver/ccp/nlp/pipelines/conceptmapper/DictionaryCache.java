@@ -0,0 +1,252 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+import edu.ucdenver.ccp.common.file.FileUtil;
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+
+/**
+ * A content-addressed store of ConceptMapper dictionary files. A dictionary is identified by a
+ * SHA-256 hash of the ontology file contents, the {@link DictionaryNamespace}, the
+ * {@link SynonymType} and {@link #CACHE_FORMAT_VERSION}, so a cached dictionary is only ever reused
+ * for exactly the inputs it was built from. Dictionaries are built into a temporary file and then
+ * moved into place, and concurrent builds of the same dictionary (from different threads or JVMs)
+ * are serialized using a file lock, so a partially written dictionary is never served.
+ * <p>
+ * The cache directory can be shared between runs and jobs by setting the
+ * {@link #CACHE_DIRECTORY_PROPERTY} system property. Dictionaries built from freshly downloaded
+ * ontology files are otherwise cached in {@link #getDefaultCacheDirectory()}.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DictionaryCache {
+
+	private static final Logger logger = Logger.getLogger(DictionaryCache.class);
+
+	/**
+	 * System property naming a directory in which dictionaries are cached
+	 */
+	public static final String CACHE_DIRECTORY_PROPERTY = "ccp.cmdict.cache.dir";
+
+	/**
+	 * Part of every cache key; increment if the way dictionaries are built changes so that
+	 * previously cached dictionaries are no longer used
+	 */
+	public static final int CACHE_FORMAT_VERSION = 2;
+
+	private static final int HASH_PREFIX_LENGTH = 16;
+
+	/**
+	 * Builds a dictionary file from an ontology file
+	 */
+	public interface DictionaryBuilder {
+		void buildDictionary(File ontologyFile, File dictionaryFile) throws IOException,
+				OWLOntologyCreationException;
+	}
+
+	private static final ConcurrentMap<String, Object> JVM_LOCKS = new ConcurrentHashMap<String, Object>();
+
+	private final File cacheDirectory;
+
+	/**
+	 * @param cacheDirectory
+	 */
+	public DictionaryCache(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @param defaultDirectory
+	 * @return the directory named by the {@link #CACHE_DIRECTORY_PROPERTY} system property if it is
+	 *         set, otherwise the specified default directory
+	 */
+	public static File getCacheDirectory(File defaultDirectory) {
+		String cacheDirectoryPath = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+		return (cacheDirectoryPath != null) ? new File(cacheDirectoryPath) : defaultDirectory;
+	}
+
+	/**
+	 * @return the directory named by the {@link #CACHE_DIRECTORY_PROPERTY} system property if it is
+	 *         set, otherwise a directory in the home directory of the current user that is the same
+	 *         for every run, e.g. ~/.ccp/cmdict-cache
+	 */
+	public static File getDefaultCacheDirectory() {
+		return getCacheDirectory(new File(new File(System.getProperty("user.home"), ".ccp"), "cmdict-cache"));
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 * @param synonymType
+	 * @param rebuild
+	 *            if true, the dictionary is rebuilt even if it is already cached
+	 * @param builder
+	 *            used to build the dictionary if it is not already cached
+	 * @return a reference to the cached dictionary file for the specified inputs
+	 * @throws IOException
+	 * @throws OWLOntologyCreationException
+	 */
+	public File getDictionaryFile(DictionaryNamespace dictNamespace, File ontologyFile, SynonymType synonymType,
+			boolean rebuild, DictionaryBuilder builder) throws IOException, OWLOntologyCreationException {
+		Files.createDirectories(cacheDirectory.toPath());
+		String key = computeKey(dictNamespace, ontologyFile, synonymType);
+		String baseName = "cmDict-" + dictNamespace.name() + "-" + synonymType.name() + "-"
+				+ key.substring(0, HASH_PREFIX_LENGTH);
+		File dictFile = new File(cacheDirectory, baseName + ".xml");
+		if (dictFile.exists() && !rebuild) {
+			logger.info("Using pre-existing dictionary file: " + dictFile);
+			return dictFile;
+		}
+
+		/*
+		 * A FileLock is held on behalf of the whole JVM, so threads in this JVM must first be
+		 * serialized on their own
+		 */
+		Object jvmLock = JVM_LOCKS.putIfAbsent(dictFile.getAbsolutePath(), new Object());
+		if (jvmLock == null) {
+			jvmLock = JVM_LOCKS.get(dictFile.getAbsolutePath());
+		}
+		synchronized (jvmLock) {
+			return buildDictionaryFile(dictFile, baseName, ontologyFile, rebuild, builder);
+		}
+	}
+
+	private File buildDictionaryFile(File dictFile, String baseName, File ontologyFile, boolean rebuild,
+			DictionaryBuilder builder) throws IOException, OWLOntologyCreationException {
+		RandomAccessFile lockFile = new RandomAccessFile(new File(cacheDirectory, baseName + ".lock"), "rw");
+		try {
+			FileLock lock = lockFile.getChannel().lock();
+			try {
+				/* another thread or process may have built the dictionary while we waited */
+				if (dictFile.exists() && !rebuild) {
+					logger.info("Using dictionary file built concurrently: " + dictFile);
+					return dictFile;
+				}
+				logger.info("Building dictionary file: " + dictFile);
+				File tmpFile = File.createTempFile(baseName, ".xml.tmp", cacheDirectory);
+				try {
+					builder.buildDictionary(ontologyFile, tmpFile);
+					Files.move(tmpFile.toPath(), dictFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					if (tmpFile.exists()) {
+						FileUtil.deleteFile(tmpFile);
+					}
+				}
+				return dictFile;
+			} finally {
+				lock.release();
+			}
+		} finally {
+			lockFile.close();
+		}
+	}
+
+	/**
+	 * @param dictNamespace
+	 * @param ontologyFile
+	 * @param synonymType
+	 * @return the hex-encoded SHA-256 hash identifying the dictionary built from the specified
+	 *         inputs
+	 * @throws IOException
+	 */
+	static String computeKey(DictionaryNamespace dictNamespace, File ontologyFile, SynonymType synonymType)
+			throws IOException {
+		String header = CACHE_FORMAT_VERSION + "\t" + dictNamespace.name() + "\t" + synonymType.name() + "\n";
+		return computeSha256(header, ontologyFile);
+	}
+
+	/**
+	 * @param file
+	 * @return the hex-encoded SHA-256 hash of the content of the file
+	 * @throws IOException
+	 */
+	public static String computeSha256(File file) throws IOException {
+		return computeSha256("", file);
+	}
+
+	/**
+	 * @param header
+	 *            hashed (as UTF-8) ahead of the file content
+	 * @param file
+	 * @return the hex-encoded SHA-256 hash of the header followed by the content of the file
+	 * @throws IOException
+	 */
+	public static String computeSha256(String header, File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(header.getBytes(Charset.forName("UTF-8")));
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			is.close();
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+}
@@ -0,0 +1,271 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.CheckpointManifest;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentIdFilter;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentSources;
+import edu.ucdenver.ccp.nlp.pipelines.io.MedlineDocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.ReadAheadDocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.ShardSpec;
+import edu.ucdenver.ccp.nlp.pipelines.io.SourceDocument;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * Reads documents from a {@link DocumentSource} into the CAS, setting the document id as the
+ * FileSystemCollectionReader does. The input may be a directory or a .zip, .tar, .tar.gz or .tgz
+ * archive (see {@link DocumentSources}), or, if the input format is {@link InputFormat#MEDLINE}, a
+ * MEDLINE XML file or directory of them (see {@link MedlineDocumentSource}). Only the documents
+ * selected by the {@link ShardSpec} are read. Documents are read ahead on a separate thread (see
+ * {@link ReadAheadDocumentSource}) so that the pipeline does not wait on the file system.
+ * If a checkpoint manifest is specified, documents it lists as completed are skipped without being
+ * read.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentSourceCollectionReader extends JCasCollectionReader_ImplBase {
+
+	private static final Logger logger = Logger.getLogger(DocumentSourceCollectionReader.class);
+
+	public enum InputFormat {
+		/**
+		 * one document per file
+		 */
+		TEXT,
+		/**
+		 * one document (title and abstract) per MEDLINE citation
+		 */
+		MEDLINE
+	}
+
+	public static final String PARAM_INPUT_DIRECTORY = ConfigurationParameterFactory
+			.createConfigurationParameterName(DocumentSourceCollectionReader.class, "inputDirectory");
+	@ConfigurationParameter(description = "the directory or archive containing the documents to process", mandatory = true)
+	private String inputDirectory;
+
+	public static final String PARAM_FILE_SUFFIX = ConfigurationParameterFactory.createConfigurationParameterName(
+			DocumentSourceCollectionReader.class, "fileSuffix");
+	@ConfigurationParameter(description = "only files with this suffix are processed", mandatory = false, defaultValue = ".txt")
+	private String fileSuffix;
+
+	public static final String PARAM_ENCODING = ConfigurationParameterFactory.createConfigurationParameterName(
+			DocumentSourceCollectionReader.class, "encoding");
+	@ConfigurationParameter(description = "the character encoding of the documents", mandatory = false, defaultValue = "UTF-8")
+	private String encoding;
+
+	public static final String PARAM_LANGUAGE = ConfigurationParameterFactory.createConfigurationParameterName(
+			DocumentSourceCollectionReader.class, "language");
+	@ConfigurationParameter(description = "the document language", mandatory = false, defaultValue = "en")
+	private String language;
+
+	public static final String PARAM_CHECKPOINT_MANIFEST_FILE = ConfigurationParameterFactory
+			.createConfigurationParameterName(DocumentSourceCollectionReader.class, "checkpointManifestFile");
+	@ConfigurationParameter(description = "if set, documents listed in this checkpoint manifest are skipped", mandatory = false)
+	private String checkpointManifestFile;
+
+	public static final String PARAM_SHARD_SPEC = ConfigurationParameterFactory.createConfigurationParameterName(
+			DocumentSourceCollectionReader.class, "shardSpec");
+	@ConfigurationParameter(description = "the part of the input to read, see ShardSpec.toString()", mandatory = false, defaultValue = "ALL:0:-1")
+	private String shardSpec;
+
+	public static final String PARAM_INPUT_FORMAT = ConfigurationParameterFactory.createConfigurationParameterName(
+			DocumentSourceCollectionReader.class, "inputFormat");
+	@ConfigurationParameter(description = "the format of the input, see InputFormat", mandatory = false, defaultValue = "TEXT")
+	private String inputFormat;
+
+	public static final String PARAM_REQUIRE_ABSTRACT = ConfigurationParameterFactory
+			.createConfigurationParameterName(DocumentSourceCollectionReader.class, "requireAbstract");
+	@ConfigurationParameter(description = "if true, MEDLINE citations without an abstract are skipped", mandatory = false, defaultValue = "false")
+	private boolean requireAbstract;
+
+	public static final String PARAM_READ_AHEAD_SIZE = ConfigurationParameterFactory
+			.createConfigurationParameterName(DocumentSourceCollectionReader.class, "readAheadSize");
+	@ConfigurationParameter(description = "the number of documents read ahead on a separate I/O thread (0 to read on the calling thread)", mandatory = false, defaultValue = "64")
+	private int readAheadSize;
+
+	private DocumentSource documentSource;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		try {
+			DocumentIdFilter filter = DocumentIdFilter.ACCEPT_ALL;
+			if (checkpointManifestFile != null) {
+				CheckpointManifest manifest = CheckpointManifest.load(new File(checkpointManifestFile));
+				if (manifest.getCompletedCount() > 0) {
+					logger.info("Skipping " + manifest.getCompletedCount()
+							+ " documents that were completed by a previous run");
+				}
+				filter = manifest;
+			}
+			switch (InputFormat.valueOf(inputFormat)) {
+			case TEXT:
+				documentSource = DocumentSources.open(new File(inputDirectory), fileSuffix, Charset.forName(encoding),
+						ShardSpec.parse(shardSpec), filter);
+				break;
+			case MEDLINE:
+				documentSource = new MedlineDocumentSource(new File(inputDirectory), requireAbstract,
+						ShardSpec.parse(shardSpec), filter);
+				break;
+			default:
+				throw new IllegalArgumentException("Unhandled input format: " + inputFormat);
+			}
+			if (readAheadSize > 0) {
+				documentSource = new ReadAheadDocumentSource(documentSource, readAheadSize);
+			}
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public boolean hasNext() throws IOException, CollectionException {
+		return documentSource.hasNext();
+	}
+
+	@Override
+	public void getNext(JCas jcas) throws IOException, CollectionException {
+		SourceDocument document = documentSource.next();
+		jcas.setDocumentText(document.getText());
+		jcas.setDocumentLanguage(language);
+		UIMA_Util.setDocumentID(jcas, document.getDocumentId());
+	}
+
+	@Override
+	public Progress[] getProgress() {
+		return new Progress[] { new ProgressImpl(documentSource.getDocumentsReturnedCount(),
+				documentSource.getDocumentCount(), Progress.ENTITIES) };
+	}
+
+	@Override
+	public void close() throws IOException {
+		documentSource.close();
+	}
+
+	/**
+	 * @param tsd
+	 * @param inputDirectory
+	 * @param fileSuffix
+	 * @param encoding
+	 * @param checkpointManifestFile
+	 *            may be null, in which case all documents are read
+	 * @return a description of a reader for the files with the specified suffix in the input
+	 *         directory
+	 * @throws ResourceInitializationException
+	 */
+	public static CollectionReaderDescription createDescription(TypeSystemDescription tsd, File inputDirectory,
+			String fileSuffix, Charset encoding, File checkpointManifestFile) throws ResourceInitializationException {
+		return createDescription(tsd, inputDirectory, fileSuffix, encoding, ShardSpec.ALL, checkpointManifestFile);
+	}
+
+	/**
+	 * @param tsd
+	 * @param inputDirectory
+	 * @param fileSuffix
+	 * @param encoding
+	 * @param shardSpec
+	 *            the part of the input directory to read
+	 * @param checkpointManifestFile
+	 *            may be null, in which case all documents in the shard are read
+	 * @return a description of a reader for the files with the specified suffix in the input
+	 *         directory
+	 * @throws ResourceInitializationException
+	 */
+	public static CollectionReaderDescription createDescription(TypeSystemDescription tsd, File inputDirectory,
+			String fileSuffix, Charset encoding, ShardSpec shardSpec, File checkpointManifestFile)
+			throws ResourceInitializationException {
+		List<Object> params = new ArrayList<Object>(Arrays.<Object> asList(PARAM_INPUT_DIRECTORY,
+				inputDirectory.getAbsolutePath(), PARAM_FILE_SUFFIX, fileSuffix, PARAM_ENCODING, encoding.name(),
+				PARAM_SHARD_SPEC, shardSpec.toString()));
+		if (checkpointManifestFile != null) {
+			params.add(PARAM_CHECKPOINT_MANIFEST_FILE);
+			params.add(checkpointManifestFile.getAbsolutePath());
+		}
+		return CollectionReaderFactory.createDescription(DocumentSourceCollectionReader.class, tsd,
+				params.toArray());
+	}
+
+	/**
+	 * @param tsd
+	 * @param medlineInput
+	 *            a MEDLINE XML file (optionally gzipped) or a directory of them
+	 * @param requireAbstract
+	 *            if true, citations without an abstract are skipped
+	 * @param shardSpec
+	 *            the part of the input to read; RANGE positions refer to the order of the citations
+	 *            in the input
+	 * @param checkpointManifestFile
+	 *            may be null, in which case all documents in the shard are read
+	 * @return a description of a reader that produces one document per MEDLINE citation
+	 * @throws ResourceInitializationException
+	 */
+	public static CollectionReaderDescription createMedlineDescription(TypeSystemDescription tsd, File medlineInput,
+			boolean requireAbstract, ShardSpec shardSpec, File checkpointManifestFile)
+			throws ResourceInitializationException {
+		List<Object> params = new ArrayList<Object>(Arrays.<Object> asList(PARAM_INPUT_DIRECTORY,
+				medlineInput.getAbsolutePath(), PARAM_INPUT_FORMAT, InputFormat.MEDLINE.name(),
+				PARAM_REQUIRE_ABSTRACT, requireAbstract, PARAM_SHARD_SPEC, shardSpec.toString()));
+		if (checkpointManifestFile != null) {
+			params.add(PARAM_CHECKPOINT_MANIFEST_FILE);
+			params.add(checkpointManifestFile.getAbsolutePath());
+		}
+		return CollectionReaderFactory.createDescription(DocumentSourceCollectionReader.class, tsd,
+				params.toArray());
+	}
+
+}
@@ -36,8 +36,10 @@ package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -48,23 +50,26 @@ import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
-import org.cleartk.syntax.opennlp.SentenceAnnotator;
 import org.cleartk.token.type.Sentence;
-import org.uimafit.factory.AnalysisEngineFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
 import org.uimafit.factory.CollectionReaderFactory;
 import org.uimafit.factory.TypeSystemDescriptionFactory;
-import org.uimafit.pipeline.SimplePipeline;
 
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
-import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
 import edu.ucdenver.ccp.nlp.core.annotation.Span;
 import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
 import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.io.CheckpointManifest;
+import edu.ucdenver.ccp.nlp.pipelines.io.ShardSpec;
+import edu.ucdenver.ccp.nlp.pipelines.runner.MetricsReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ProgressReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+import edu.ucdenver.ccp.nlp.pipelines.runner.StageTimer_AE;
 //import edu.ucdenver.ccp.nlp.uima.annotators.filter.DuplicateAnnotationRemovalFilter_AE;
 import edu.ucdenver.ccp.nlp.uima.annotators.filter.SlotRemovalFilter_AE;
 import edu.ucdenver.ccp.nlp.uima.annotators.filter.SlotRemovalFilter_AE.SlotRemovalOption;
-import edu.ucdenver.ccp.nlp.uima.collections.file.FileSystemCollectionReader;
 import edu.ucdenver.ccp.nlp.uima.serialization.bionlp.BionlpFormatPrinter_AE;
 import edu.ucdenver.ccp.nlp.uima.serialization.inline.InlineTag;
 import edu.ucdenver.ccp.nlp.uima.serialization.inline.InlineTag.InlinePostfixTag;
@@ -72,32 +77,360 @@ import edu.ucdenver.ccp.nlp.uima.serialization.inline.InlineTag.InlinePrefixTag;
 import edu.ucdenver.ccp.nlp.uima.serialization.inline.InlineTagExtractor_ImplBase;
 import edu.ucdenver.ccp.nlp.uima.shims.annotation.impl.CcpAnnotationDataExtractor;
 import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
-import edu.ucdenver.ccp.nlp.uima.util.View;
 import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.ConceptMapperPermutationFactory;
 
 public class EntityFinder {
 
 	private static final Logger logger = Logger.getLogger(EntityFinder.class);
-	private static final CharacterEncoding ENCODING = CharacterEncoding.UTF_8;
+	private static final Charset ENCODING = Charset.forName("UTF-8");
+	/**
+	 * How annotation output is written
+	 */
+	public enum OutputMode {
+		/**
+		 * one BioNLP file per document, see {@link BionlpFormatPrinter_AE}
+		 */
+		FILE_PER_DOCUMENT,
+		/**
+		 * the annotations for all documents are appended to a few large batch files with an index,
+		 * see {@link BatchAnnotationWriter_AE}
+		 */
+		BATCH,
+		/**
+		 * as {@link #BATCH}, with each document's annotations gzipped
+		 */
+		COMPRESSED_BATCH
+	}
+
 	private static final String SENTENCE_DETECTOR_TYPE_SYSTEM_STR = "org.cleartk.token.type.Sentence"; // "edu.ucdenver.ccp.nlp.ext.uima.annotators.sentencedetectors.TypeSystem";
 
-	private static void runEntityFinder(TypeSystemDescription tsd, String ontology, String inputDir, String outputDir,
-			File oboFile, File oboDir, boolean cleanDictionaryFile) throws UIMAException, IOException {
+	/**
+	 * Annotates the documents in the input directory with concepts from each of the specified
+	 * ontologies. Documents are read and split into sentences once; the ConceptMapper pipeline for
+	 * each ontology is then run over the same CAS.
+	 * 
+	 * @param tsd
+	 * @param ontologies
+	 * @param oboFiles
+	 *            the ontology file for each ontology, in the same order
+	 * @param inputDir
+	 * @param outputDir
+	 * @param oboDir
+	 * @param cleanDictionaryFile
+	 * @param numThreads
+	 * @param combinedOutput
+	 *            if true, the annotations for all ontologies are written to a single file per
+	 *            document in the output directory; otherwise the annotations for each ontology are
+	 *            written to a subdirectory of the output directory named after the ontology, see
+	 *            {@link #getOutputDirectoryNames(List, List)} (unless only one ontology is
+	 *            specified, in which case they are written to the output directory itself)
+	 * @param shardSpec
+	 *            the part of the input directory to process
+	 * @param batchNumber
+	 *            if not null, progress is recorded in a batch-specific checkpoint manifest
+	 * @param fresh
+	 *            if true, the checkpoint manifest of an earlier run is discarded and every document
+	 *            is processed again; otherwise the documents recorded in it are skipped, and the
+	 *            run is refused if the earlier run used different arguments
+	 * @param medlineInput
+	 *            if true, the input is a MEDLINE XML file (or a directory of them) rather than a
+	 *            directory of text files
+	 * @param requireAbstract
+	 *            if true, MEDLINE citations without an abstract are not processed
+	 * @param outputMode
+	 * @param writeBehindCapacity
+	 *            if greater than 0, the final output components run on separate threads (as many
+	 *            as there are annotation threads) and up to this many annotated documents can wait
+	 *            for them; see
+	 *            {@link ParallelPipeline#runPipeline(CollectionReader, int, int, int, List, List)}
+	 * @param maxWindowSize
+	 *            if greater than 0, documents are analyzed in windows of at most this many
+	 *            characters so that memory use does not grow with the size of a document
+	 * @param windowOverlap
+	 *            the number of characters by which adjacent windows overlap
+	 * @param sentenceSplitter
+	 * @param sentenceCacheDirectory
+	 *            if not null, the directory in which sentence offsets are cached
+	 * @param metricsDirectory
+	 *            if not null, each pipeline stage is timed and its metrics are written to this
+	 *            directory every metricsPeriodSeconds, see {@link MetricsReporter}
+	 * @param metricsPeriodSeconds
+	 * @param statusFile
+	 *            if not null, the file that the progress of the run is written to, see
+	 *            {@link ProgressReporter}
+	 * @param progressPeriodSeconds
+	 *            the number of seconds between progress reports
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	private static void runEntityFinder(TypeSystemDescription tsd, List<String> ontologies, List<File> oboFiles,
+			String inputDir, String outputDir, File oboDir, boolean cleanDictionaryFile, int numThreads,
+			boolean combinedOutput, ShardSpec shardSpec, Integer batchNumber, boolean fresh, boolean medlineInput,
+			boolean requireAbstract, OutputMode outputMode, int writeBehindCapacity, int maxWindowSize,
+			int windowOverlap, SentenceSplitter sentenceSplitter, File sentenceCacheDirectory, File metricsDirectory,
+			int metricsPeriodSeconds, File statusFile, int progressPeriodSeconds) throws UIMAException, IOException {
 		File inputDirectory = new File(inputDir);
 		File outputDirectory = new File(outputDir);
 
-		List<AnalysisEngineDescription> pipeline = new ArrayList<AnalysisEngineDescription>();
-
-		// Collection Reader for directory of text files
-		CollectionReaderDescription CRdesc = FileSystemCollectionReader.createDescription(tsd, inputDirectory, false,
-				ENCODING, "en", false, 100000000, 0, View.DEFAULT.viewName(), ".txt");
+		/*
+		 * Collection Reader for directory of text files or for MEDLINE XML. Unless the run is
+		 * started fresh, documents recorded in the checkpoint manifest by an earlier run with the
+		 * same output directory and arguments are skipped.
+		 */
+		File manifestFile = new File(outputDirectory, CheckpointManifest.getFileName(batchNumber));
+		CheckpointManifest.prepare(manifestFile, createRunFingerprint(ontologies, oboFiles, combinedOutput,
+				medlineInput, requireAbstract, outputMode, maxWindowSize, windowOverlap, sentenceSplitter), fresh);
+		CollectionReaderDescription CRdesc = medlineInput ? DocumentSourceCollectionReader.createMedlineDescription(
+				tsd, inputDirectory, requireAbstract, shardSpec, manifestFile) : DocumentSourceCollectionReader
+				.createDescription(tsd, inputDirectory, ".txt", ENCODING, shardSpec, manifestFile);
 		CollectionReader cr = CollectionReaderFactory.createCollectionReader(CRdesc);
 
-		AnalysisEngineDescription sentenceDetectorDesc = getSentenceDetectorDescription(tsd);
+		List<File> stagedOutputDirectories = getStagedOutputDirectories(ontologies, oboFiles, outputDirectory,
+				combinedOutput, outputMode);
+		CheckpointCommit_AE.prepareStagingDirectories(stagedOutputDirectories, batchNumber);
 
-		List<AnalysisEngineDescription> cmDesc = initConceptMapperAggregateDescriptions(tsd, ontology, oboFile, oboDir,
-				cleanDictionaryFile);
+		List<AnalysisEngineDescription> pipeline = createPipelineDescriptions(tsd, ontologies, oboFiles,
+				outputDirectory, oboDir, cleanDictionaryFile, combinedOutput, batchNumber, outputMode, maxWindowSize,
+				windowOverlap, sentenceSplitter, sentenceCacheDirectory);
+		/*
+		 * the writers at the end of the pipeline and the checkpoint commit form the write-behind
+		 * output stage
+		 */
+		int analysisStageSize = pipeline.size()
+				- getOutputDescriptions(tsd, outputDirectory, batchNumber, outputMode).size() - 1;
+		List<AnalysisEngineDescription> analysisStage = pipeline.subList(0, analysisStageSize);
+		List<AnalysisEngineDescription> outputStage = pipeline.subList(analysisStageSize, pipeline.size());
+		MetricsReporter metricsReporter = null;
+		if (metricsDirectory != null) {
+			/* stage names are assigned over the whole pipeline so that they are unique */
+			List<String> stageNames = StageTimer_AE.getStageNames(pipeline);
+			analysisStage = StageTimer_AE.instrument(tsd, analysisStage, stageNames.subList(0, analysisStageSize));
+			outputStage = StageTimer_AE.instrument(tsd, outputStage,
+					stageNames.subList(analysisStageSize, pipeline.size()));
+			metricsReporter = new MetricsReporter(metricsDirectory, metricsPeriodSeconds);
+			metricsReporter.start();
+		}
+		ProgressReporter progressReporter = new ProgressReporter(cr, statusFile, progressPeriodSeconds);
+		progressReporter.start();
+		boolean completed = false;
+		try {
+			ParallelPipeline.runPipeline(cr, numThreads, numThreads, writeBehindCapacity, analysisStage, outputStage,
+					progressReporter);
+			completed = true;
+		} finally {
+			progressReporter.stop(completed);
+			if (metricsReporter != null) {
+				metricsReporter.stop();
+			}
+			CheckpointManifest.close(manifestFile);
+		}
+		CheckpointCommit_AE.removeStagingDirectories(stagedOutputDirectories, batchNumber);
+	}
 
+	/**
+	 * @return a description of the arguments that determine the output of a run: the ontologies,
+	 *         the content of their ontology files, their ConceptMapper parameters and how the
+	 *         documents are read, split and written; see
+	 *         {@link CheckpointManifest#prepare(File, String, boolean)}
+	 * @throws IOException
+	 */
+	static String createRunFingerprint(List<String> ontologies, List<File> oboFiles, boolean combinedOutput,
+			boolean medlineInput, boolean requireAbstract, OutputMode outputMode, int maxWindowSize,
+			int windowOverlap, SentenceSplitter sentenceSplitter) throws IOException {
+		StringBuilder fingerprint = new StringBuilder();
+		for (int i = 0; i < ontologies.size(); i++) {
+			String ontology = ontologies.get(i);
+			fingerprint.append("ontology=" + ontology + "\tparamValuesIndex=" + getParamValuesIndex(ontology)
+					+ "\toboFileSha256=" + DictionaryCache.computeSha256(oboFiles.get(i)) + "\n");
+		}
+		fingerprint.append("combinedOutput=" + combinedOutput + "\n");
+		fingerprint.append("medlineInput=" + medlineInput + "\trequireAbstract=" + requireAbstract + "\n");
+		fingerprint.append("outputMode=" + outputMode.name() + "\n");
+		fingerprint.append("maxWindowSize=" + maxWindowSize + "\twindowOverlap="
+				+ ((maxWindowSize > 0) ? windowOverlap : 0) + "\n");
+		fingerprint.append("sentenceSplitter=" + sentenceSplitter.name() + "\n");
+		return fingerprint.toString();
+	}
+
+	/**
+	 * @param ontologies
+	 * @param oboFiles
+	 *            the ontology file for each ontology, in the same order
+	 * @return the name of the output subdirectory of each ontology: the ontology itself or, if the
+	 *         same ontology is specified more than once (e.g. OBO for several ontology files), the
+	 *         ontology followed by the name of its ontology file up to the first '.', e.g.
+	 *         OBO-doid. The names are not necessarily unique, see
+	 *         {@link EntityFinderCmdOpts#validate()}.
+	 */
+	static List<String> getOutputDirectoryNames(List<String> ontologies, List<File> oboFiles) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < ontologies.size(); i++) {
+			String ontology = ontologies.get(i);
+			if (Collections.frequency(ontologies, ontology) > 1) {
+				String fileName = oboFiles.get(i).getName();
+				int extensionStart = fileName.indexOf('.');
+				names.add(ontology + "-" + ((extensionStart > 0) ? fileName.substring(0, extensionStart) : fileName));
+			} else {
+				names.add(ontology);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return the directories that annotation files are written to
+	 */
+	private static List<File> getAnnotationOutputDirectories(List<String> ontologies, List<File> oboFiles,
+			File outputDirectory, boolean combinedOutput) {
+		List<File> directories = new ArrayList<File>();
+		if (combinedOutput || ontologies.size() == 1) {
+			directories.add(outputDirectory);
+		} else {
+			for (String name : getOutputDirectoryNames(ontologies, oboFiles)) {
+				directories.add(new File(outputDirectory, name));
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * @return the directories whose output is staged and committed per document; batch output is
+	 *         appended directly to the batch files
+	 */
+	private static List<File> getStagedOutputDirectories(List<String> ontologies, List<File> oboFiles,
+			File outputDirectory, boolean combinedOutput, OutputMode outputMode) {
+		if (outputMode == OutputMode.FILE_PER_DOCUMENT) {
+			return getAnnotationOutputDirectories(ontologies, oboFiles, outputDirectory, combinedOutput);
+		}
+		return new ArrayList<File>();
+	}
+
+	/**
+	 * @param outputDirectory
+	 *            if null, no output is written and the concept annotations for all ontologies are
+	 *            left in the CAS
+	 * @return the sentence detector followed by, for each ontology, its ConceptMapper pipeline.
+	 *         Between ontologies, all annotations other than the sentences (and, if the output is
+	 *         combined, the concept annotations found so far) are removed so that each ontology's
+	 *         pipeline sees the same CAS it would see if it were run on its own. If output is
+	 *         written, annotation files are first written to staging directories and then
+	 *         committed by a {@link CheckpointCommit_AE}. Output is written one file per document.
+	 */
+	static List<AnalysisEngineDescription> createPipelineDescriptions(TypeSystemDescription tsd,
+			List<String> ontologies, List<File> oboFiles, File outputDirectory, File oboDir,
+			boolean cleanDictionaryFile, boolean combinedOutput) throws UIMAException, IOException {
+		return createPipelineDescriptions(tsd, ontologies, oboFiles, outputDirectory, oboDir, cleanDictionaryFile,
+				combinedOutput, null);
+	}
+
+	/**
+	 * @param batchNumber
+	 *            selects the checkpoint manifest that completed documents are recorded in, see
+	 *            {@link CheckpointManifest#getFileName(Integer)}
+	 * @see #createPipelineDescriptions(TypeSystemDescription, List, List, File, File, boolean,
+	 *      boolean)
+	 */
+	static List<AnalysisEngineDescription> createPipelineDescriptions(TypeSystemDescription tsd,
+			List<String> ontologies, List<File> oboFiles, File outputDirectory, File oboDir,
+			boolean cleanDictionaryFile, boolean combinedOutput, Integer batchNumber) throws UIMAException,
+			IOException {
+		return createPipelineDescriptions(tsd, ontologies, oboFiles, outputDirectory, oboDir, cleanDictionaryFile,
+				combinedOutput, batchNumber, OutputMode.FILE_PER_DOCUMENT, 0, 0, SentenceSplitter.OPENNLP, null);
+	}
+
+	/**
+	 * @param batchNumber
+	 *            selects the checkpoint manifest that completed documents are recorded in and, for
+	 *            batch output, the name of the batch files
+	 * @param outputMode
+	 * @param maxWindowSize
+	 *            if greater than 0, each ontology's sentence detection and ConceptMapper pipeline is
+	 *            run over windows of at most this many characters, see {@link WindowedAnalysis_AE}
+	 * @param windowOverlap
+	 *            the number of characters by which adjacent windows overlap
+	 * @param sentenceSplitter
+	 *            how the documents are split into the sentences that concepts are found within
+	 * @param sentenceCacheDirectory
+	 *            if not null, sentence offsets are cached in this directory, keyed by document
+	 *            content, and reused by later runs over the same documents
+	 * @see #createPipelineDescriptions(TypeSystemDescription, List, List, File, File, boolean,
+	 *      boolean)
+	 */
+	static List<AnalysisEngineDescription> createPipelineDescriptions(TypeSystemDescription tsd,
+			List<String> ontologies, List<File> oboFiles, File outputDirectory, File oboDir,
+			boolean cleanDictionaryFile, boolean combinedOutput, Integer batchNumber, OutputMode outputMode,
+			int maxWindowSize, int windowOverlap, SentenceSplitter sentenceSplitter, File sentenceCacheDirectory)
+			throws UIMAException, IOException {
+		boolean writeOutput = outputDirectory != null;
+		boolean retainConcepts = combinedOutput || !writeOutput;
+		List<File> annotationOutputDirectories = writeOutput ? getAnnotationOutputDirectories(ontologies,
+				oboFiles, outputDirectory, combinedOutput) : null;
+		boolean windowed = maxWindowSize > 0;
+		List<AnalysisEngineDescription> pipeline = new ArrayList<AnalysisEngineDescription>();
+		if (!windowed) {
+			pipeline.add(sentenceSplitter.createAnalysisEngineDescription(tsd, sentenceCacheDirectory));
+		}
+
+		List<Class<? extends Annotation>> typesToRetain = new ArrayList<Class<? extends Annotation>>();
+		typesToRetain.add(Sentence.class);
+		if (retainConcepts) {
+			typesToRetain.add(CCPTextAnnotation.class);
+		}
+		AnalysisEngineDescription retentionFilter = AnnotationRetentionFilter_AE.createAnalysisEngineDescription(tsd,
+				typesToRetain);
+
+		for (int i = 0; i < ontologies.size(); i++) {
+			if (i > 0) {
+				pipeline.add(retentionFilter);
+			}
+			List<AnalysisEngineDescription> conceptMapperDescs = initConceptMapperAggregateDescriptions(tsd,
+					ontologies.get(i), oboFiles.get(i), oboDir, cleanDictionaryFile);
+			if (windowed) {
+				/* each window is split into sentences in its own CAS */
+				List<AnalysisEngineDescription> windowDescs = new ArrayList<AnalysisEngineDescription>();
+				windowDescs.add(sentenceSplitter.createAnalysisEngineDescription(tsd, sentenceCacheDirectory));
+				windowDescs.addAll(conceptMapperDescs);
+				pipeline.add(WindowedAnalysis_AE.createAnalysisEngineDescription(tsd, windowDescs, maxWindowSize,
+						windowOverlap));
+			} else {
+				pipeline.addAll(conceptMapperDescs);
+			}
+			if (writeOutput && !combinedOutput) {
+				pipeline.addAll(getOutputDescriptions(tsd, annotationOutputDirectories.get(i), batchNumber,
+						outputMode));
+			}
+		}
+		if (writeOutput) {
+			if (combinedOutput) {
+				pipeline.addAll(getOutputDescriptions(tsd, outputDirectory, batchNumber, outputMode));
+			}
+			pipeline.add(CheckpointCommit_AE.createAnalysisEngineDescription(tsd,
+					getStagedOutputDirectories(ontologies, oboFiles, outputDirectory, combinedOutput, outputMode),
+					batchNumber, new File(outputDirectory, CheckpointManifest.getFileName(batchNumber))));
+		}
+		return pipeline;
+	}
+
+	/**
+	 * @return descriptions that write the concept annotations in the CAS to the output directory:
+	 *         either to the output directory's staging directory, one file per document, or to the
+	 *         batch files in the output directory
+	 */
+	private static List<AnalysisEngineDescription> getOutputDescriptions(TypeSystemDescription tsd,
+			File outputDirectory, Integer batchNumber, OutputMode outputMode) throws ResourceInitializationException {
+		if (outputMode == OutputMode.FILE_PER_DOCUMENT) {
+			return getOutputDescriptions(tsd, CheckpointCommit_AE.getStagingDirectory(outputDirectory, batchNumber));
+		}
+		return CollectionsUtil.createList(BatchAnnotationWriter_AE.createAnalysisEngineDescription(tsd,
+				outputDirectory, batchNumber, outputMode == OutputMode.COMPRESSED_BATCH));
+	}
+
+	/**
+	 * @return descriptions that write the concept annotations in the CAS to BioNLP files in the
+	 *         specified directory
+	 */
+	private static List<AnalysisEngineDescription> getOutputDescriptions(TypeSystemDescription tsd,
+			File outputDirectory) throws ResourceInitializationException {
 		AnalysisEngineDescription removeSlot = SlotRemovalFilter_AE.getDescription(tsd, SlotRemovalOption.REMOVE_ALL);
 
 		// AnalysisEngineDescription removeDuplicateAnnotations =
@@ -114,52 +447,71 @@ public class EntityFinder {
 		// CAS.NAME_DEFAULT_SOFA, CcpDocumentMetadataHandler.class,
 		// SimpleInlineAnnotationExtractor.class);
 
-		pipeline.add(sentenceDetectorDesc);
-		pipeline.addAll(cmDesc);
-		pipeline.add(removeSlot);
-		// pipeline.add(removeDuplicateAnnotations);
-		// pipeline.add(XmiPrinter);
-		pipeline.add(BionlpPrinter);
-		// pipeline.add(inlinePrinterAe);
-		SimplePipeline.runPipeline(cr, pipeline.toArray(new AnalysisEngineDescription[pipeline.size()]));
+		List<AnalysisEngineDescription> descs = new ArrayList<AnalysisEngineDescription>();
+		descs.add(removeSlot);
+		// descs.add(removeDuplicateAnnotations);
+		// descs.add(XmiPrinter);
+		descs.add(BionlpPrinter);
+		// descs.add(inlinePrinterAe);
+		return descs;
+	}
+
+	/**
+	 * @param ontology
+	 * @return the index of the ConceptMapper parameter combination used for the ontology, see
+	 *         {@link ConceptMapperPermutationFactory}; 0 if the ontology is not known
+	 */
+	static int getParamValuesIndex(String ontology) {
+		if (ontology.equals("GO_CC")) {
+			return 31;
+		} else if (ontology.equals("GO_MF")) {
+			return 111;
+		} else if (ontology.equals("GO_BP")) {
+			return 28;
+		} else if (ontology.equals("GO")) {
+			return 30;
+		} else if (ontology.equals("SO")) {
+			return 31;
+		} else if (ontology.equals("PR")) {
+			return 478;
+		} else if (ontology.equals("CL")) {
+			return 31;
+		} else if (ontology.equals("NCBI_TAXON")) {
+			return 535;
+		} else if (ontology.equals("CHEBI")) {
+			return 13;
+		} else if (ontology.equals("OBO")) {
+			return 31;
+		}
+		return 0;
 	}
 
 	public static List<AnalysisEngineDescription> initConceptMapperAggregateDescriptions(TypeSystemDescription tsd,
 			String ontology, File oboFile, File oboDir, boolean cleanDictionaryFile) throws IOException, UIMAException {
-		int paramValuesIndex = 0;
+		int paramValuesIndex = getParamValuesIndex(ontology);
 		DictionaryNamespace dictName = null;
 
 		if (ontology.equals("GO_CC")) {
-			paramValuesIndex = 31;
 			dictName = DictionaryNamespace.GO_CC;
 		} else if (ontology.equals("GO_MF")) {
-			paramValuesIndex = 111;
 			dictName = DictionaryNamespace.GO_MF;
 		} else if (ontology.equals("GO_BP")) {
-			paramValuesIndex = 28;
 			dictName = DictionaryNamespace.GO_BP;
 		} else if (ontology.equals("GO")) {
-			paramValuesIndex = 30;
 			dictName = DictionaryNamespace.OBO;
 		} else if (ontology.equals("SO")) {
-			paramValuesIndex = 31;
 			dictName = DictionaryNamespace.SO;
 		} else if (ontology.equals("PR")) {
-			paramValuesIndex = 478;
 			dictName = DictionaryNamespace.PR;
 		} else if (ontology.equals("CL")) {
-			paramValuesIndex = 31;
 			dictName = DictionaryNamespace.CL;
 		} else if (ontology.equals("NCBI_TAXON")) {
-			paramValuesIndex = 535;
 			dictName = DictionaryNamespace.NCBI_TAXON;
 		} else if (ontology.equals("CHEBI")) {
-			paramValuesIndex = 13;
 			dictName = DictionaryNamespace.CHEBI;
 		} else if (ontology.equals("OBO")) { // Using for any ontology, so using
 												// best ConceptMapper parameters
 												// for unknown ontology
-			paramValuesIndex = 31;
 			dictName = DictionaryNamespace.OBO;
 		} else {
 			System.err
@@ -218,19 +570,14 @@ public class EntityFinder {
 
 	/**
 	 * @param tsd
-	 * @return a sentence detector {@link AnalysisEngineDescription}
+	 * @return a sentence detector {@link AnalysisEngineDescription}. The
+	 *         OpenNLP sentence model is loaded once per JVM and shared by all
+	 *         pipeline replicas.
 	 * @throws ResourceInitializationException
 	 */
-	private static AnalysisEngineDescription getSentenceDetectorDescription(TypeSystemDescription tsd)
+	static AnalysisEngineDescription getSentenceDetectorDescription(TypeSystemDescription tsd)
 			throws ResourceInitializationException {
-		return AnalysisEngineFactory.createPrimitiveDescription(SentenceAnnotator.class,
-				SentenceAnnotator.PARAM_SENTENCE_MODEL_PATH, "/models/en-sent.bin",
-				SentenceAnnotator.PARAM_WINDOW_CLASS_NAMES, null, SentenceAnnotator.PARAM_SENTENCE_TYPE_NAME,
-				Sentence.class.getName());
-		// return SentenceAnnotator.getDescription();
-		// return
-		// LingPipeSentenceDetector_AE.createAnalysisEngineDescription(tsd,
-		// ExplicitSentenceCasInserter.class);
+		return SentenceSplitter.OPENNLP.createAnalysisEngineDescription(tsd);
 	}
 
 	/**
@@ -243,17 +590,29 @@ public class EntityFinder {
 	 */
 	private static ConceptMapperPipelineCmdOpts getCmdOpts(DictionaryNamespace dictNamespace, File oboDir,
 			File oboFile, boolean cleanDictFile, SynonymType synonymType) throws IOException {
-		ConceptMapperPipelineCmdOpts cmdOptions = new ConceptMapperPipelineCmdOpts();
 		logger.info("Retrieving ConceptMapper dictionary...");
 		File cmDictFile = ConceptMapperDictionaryFileFactory.createDictionaryFileFromOBO(dictNamespace, oboFile,
 				oboDir, cleanDictFile, synonymType);
 		logger.info("Dictionary retrieved.");
+		return getCmdOpts(cmDictFile);
+	}
+
+	/**
+	 * @param cmDictFile
+	 * @return a {@link ConceptMapperPipelineCmdOpts} for the ConceptMapper dictionary that matches
+	 *         within sentences
+	 */
+	static ConceptMapperPipelineCmdOpts getCmdOpts(File cmDictFile) {
+		ConceptMapperPipelineCmdOpts cmdOptions = new ConceptMapperPipelineCmdOpts();
 		cmdOptions.setDictionaryFile(cmDictFile);
 		cmdOptions.setSpanClass(Sentence.class);
 		return cmdOptions;
 	}
 
-	private static TypeSystemDescription createConceptMapperTypeSystem() {
+	/**
+	 * @return the type system used by the EntityFinder pipelines
+	 */
+	public static TypeSystemDescription createConceptMapperTypeSystem() {
 		Collection<String> typeSystemStrs = new ArrayList<String>();
 		typeSystemStrs.add(TypeSystemUtil.CCP_TYPE_SYSTEM);
 		typeSystemStrs.add(SENTENCE_DETECTOR_TYPE_SYSTEM_STR);
@@ -264,7 +623,9 @@ public class EntityFinder {
 	}
 
 	/**
-	 * args[0] - input directory (plain text files) args[1] - output result
+	 * args[0] - input directory (plain text files, optionally gzipped) or a
+	 * .zip, .tar, .tar.gz or .tgz archive of them, or with -medline a MEDLINE
+	 * XML file or directory of them args[1] - output result
 	 * directory args[2] - ontology obo file corresponds to (have optimized
 	 * parameters for CHEBI, SO, GO, GO_MF, GO_CC, GO_BP, PR, CL, NCBI_TAXON,
 	 * EG) if ontology does NOT correspond to optimized - use OBO. args[3] - obo
@@ -272,28 +633,46 @@ public class EntityFinder {
 	 * will be written args[5] - OPTIONAL - only used when "OBO" ontology is
 	 * specified, this paramter contains the encoding of the obo file default is
 	 * UTF-8
+	 * <p>
+	 * args[2] and args[3] may be comma-separated lists (of equal length) in
+	 * order to annotate with several ontologies in a single pass over the
+	 * documents.
+	 * <p>
+	 * Optional flags, e.g. -threads, are described in
+	 * {@link EntityFinderCmdOpts}.
 	 * 
 	 * @param args
 	 * @throws IOException
 	 * @throws UIMAException
 	 */
 	public static void main(String[] args) throws UIMAException, IOException {
+		EntityFinderCmdOpts options = new EntityFinderCmdOpts();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+			options.validate();
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+
 		TypeSystemDescription tsd = createConceptMapperTypeSystem();
 
-		String inputDir = args[0];
-		String outputDir = args[1];
-		String ontology = args[2];
-		String oboPath = args[3];
-		String oboDir = args[4];
-		boolean cleanDictionaryFile = Boolean.parseBoolean(args[5]);
+		String inputDir = options.getInputDirectory().getPath();
+		String outputDir = options.getOutputDirectory().getPath();
 
 		System.out.println("Processing files from : " + inputDir + "\nWriting output files to: " + outputDir);
 
-		File oboFile = new File(oboPath);
-		File oboDirectory = new File(oboDir);
-
-		runEntityFinder(tsd, ontology, inputDir, outputDir, oboFile, oboDirectory, cleanDictionaryFile);
+		runEntityFinder(tsd, options.getOntologies(), options.getOboFiles(), inputDir, outputDir,
+				options.getDictionaryDirectory(), options.cleanDictionaryFile(), options.getNumThreads(),
+				options.isCombinedOutput(), options.getShardSpec(), options.getBatchNumber(), options.isFresh(),
+				options.isMedlineInput(),
+				options.requirePresenceOfAbstract(), options.getOutputMode(), options.getWriteBehindCapacity(),
+				options.getMaxWindowSize(), options.getWindowOverlap(), options.getSentenceSplitter(),
+				options.getSentenceCacheDirectory(), options.getMetricsDirectory(), options.getMetricsPeriodSeconds(),
+				options.getStatusFile(), options.getProgressPeriodSeconds());
 
 		System.out.println("We have finished processing all documents");
 	}
-}
\ No newline at end of file
+}
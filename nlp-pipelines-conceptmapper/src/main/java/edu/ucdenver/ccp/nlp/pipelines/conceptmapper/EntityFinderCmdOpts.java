@@ -0,0 +1,349 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.EntityFinder.OutputMode;
+import edu.ucdenver.ccp.nlp.pipelines.io.ShardSpec;
+import edu.ucdenver.ccp.nlp.pipelines.runner.MetricsReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ProgressReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Command line options for the {@link EntityFinder}. The positional arguments are the ones the
+ * {@link EntityFinder} has always taken; everything else is an optional flag. The -s and -n flags
+ * select a range of the input files, but unlike PipelineCmdOptsBase, where -n defaults to 0, -n
+ * defaults to all remaining files, and -b also names the batch's checkpoint manifest and shard.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class EntityFinderCmdOpts {
+
+	/**
+	 * The number of positional arguments, see {@link EntityFinder#main(String[])}
+	 */
+	private static final int POSITIONAL_ARGUMENT_COUNT = 6;
+
+	public static final int DEFAULT_WRITE_BEHIND_CAPACITY = 64;
+
+	@Argument(metaVar = "INPUT_DIR OUTPUT_DIR ONTOLOGY OBO_FILE DICT_DIR CLEAN_DICT", usage = "see EntityFinder.main()")
+	private List<String> arguments = new ArrayList<String>();
+
+	@Option(name = "-threads", usage = "the number of pipeline replicas to run concurrently (defaults to the number of available processors)")
+	private int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+
+	@Option(name = "-s", usage = "the number of input files (in file name order) to skip before processing starts")
+	private int numToSkip = 0;
+
+	@Option(name = "-n", usage = "the number of input files to process (defaults to all remaining files)")
+	private int numToProcess = -1;
+
+	@Option(name = "-b", usage = "the batch number; it is used in the name of the checkpoint manifest and, with -shards, is the index of the hash shard to process")
+	private Integer batchNumber = null;
+
+	@Option(name = "-fresh", usage = "discard the checkpoint manifest of an earlier run into the same output directory and process every document again. Without -fresh the documents recorded in the manifest are skipped, and the run is refused if the earlier run used different ontologies, ontology files or options")
+	private boolean fresh = false;
+
+	/**
+	 * runs resume by default; the option is still accepted so that existing scripts keep working
+	 */
+	@Option(name = "-resume", usage = "deprecated: runs resume unless -fresh is given")
+	private boolean resume = false;
+
+	@Option(name = "-shards", usage = "partition the input into this many shards by a hash of the file name and process shard -b")
+	private int numShards = 0;
+
+	@Option(name = "-combined", usage = "when several ontologies are specified, write the annotations for all of them to a single file per document instead of one subdirectory per ontology")
+	private boolean combinedOutput = false;
+
+	@Option(name = "-medline", usage = "the input is a MEDLINE/PubMed XML file (optionally gzipped) or a directory of them; each citation's title and abstract is processed as a document")
+	private boolean medlineInput = false;
+
+	@Option(name = "-r", usage = "Used in Medline processing pipelines. If set to true, all Medline records missing abstracts are left un-processed.")
+	private boolean requirePresenceOfAbstract = false;
+
+	@Option(name = "-batchOutput", usage = "append the annotations for all documents to a few large, indexed batch files (named after the batch number, -b) instead of writing one file per document")
+	private boolean batchOutput = false;
+
+	@Option(name = "-gzip", usage = "with -batchOutput, gzip each document's annotations")
+	private boolean compressBatchOutput = false;
+
+	@Option(name = "-writeBehind", usage = "the number of annotated documents that can be queued for the output writers, which run on their own thread (0 writes output on the annotation threads)")
+	private int writeBehindCapacity = DEFAULT_WRITE_BEHIND_CAPACITY;
+
+	@Option(name = "-window", usage = "if greater than 0, documents are analyzed in overlapping windows of at most this many characters, which bounds memory use for very large documents")
+	private int maxWindowSize = 0;
+
+	@Option(name = "-windowOverlap", usage = "the number of characters by which adjacent windows overlap; must be less than half of the window size")
+	private int windowOverlap = WindowedAnalysis_AE.DEFAULT_WINDOW_OVERLAP;
+
+	@Option(name = "-sentenceSplitter", usage = "how documents are split into the sentences that concepts are found within: OPENNLP (default), RULE_BASED, LINE or PARAGRAPH")
+	private SentenceSplitter sentenceSplitter = SentenceSplitter.OPENNLP;
+
+	@Option(name = "-sentenceCache", usage = "a directory in which the sentence offsets of each document are cached, so that later runs over the same documents (e.g. with other ontologies) do not detect sentences again")
+	private File sentenceCacheDirectory = null;
+
+	@Option(name = "-metrics", usage = "a directory to which the time taken by each pipeline stage and its throughput are periodically written, as metrics.json and in the Prometheus text format as metrics.prom")
+	private File metricsDirectory = null;
+
+	@Option(name = "-metricsInterval", usage = "the number of seconds between -metrics reports (default 60)")
+	private int metricsPeriodSeconds = MetricsReporter.DEFAULT_PERIOD_SECONDS;
+
+	@Option(name = "-status", usage = "a file that the progress of the run (documents processed and total, throughput, heap in use and estimated time remaining) is periodically written to as JSON")
+	private File statusFile = null;
+
+	@Option(name = "-progressInterval", usage = "the number of seconds between progress reports, which are logged and written to the -status file (default 60)")
+	private int progressPeriodSeconds = ProgressReporter.DEFAULT_PERIOD_SECONDS;
+
+	/**
+	 * @throws CmdLineException
+	 *             if the wrong number of positional arguments was specified
+	 */
+	public void validate() throws CmdLineException {
+		if (arguments.size() != POSITIONAL_ARGUMENT_COUNT) {
+			throw new CmdLineException("Expected " + POSITIONAL_ARGUMENT_COUNT
+					+ " positional arguments but observed " + arguments.size() + ": " + arguments);
+		}
+		if (getOntologies().size() != getOboFiles().size()) {
+			throw new CmdLineException("The number of ontologies (" + getOntologies().size()
+					+ ") must match the number of ontology files (" + getOboFiles().size() + ")");
+		}
+		if (!combinedOutput && getOntologies().size() > 1) {
+			List<String> outputDirectoryNames = EntityFinder.getOutputDirectoryNames(getOntologies(), getOboFiles());
+			if (new HashSet<String>(outputDirectoryNames).size() != outputDirectoryNames.size()) {
+				throw new CmdLineException("Each ontology must have its own output directory, but the output "
+						+ "directory names " + outputDirectoryNames + " are not unique. Specify each ontology "
+						+ "file only once, or use -combined.");
+			}
+		}
+		if (numShards > 0) {
+			if (batchNumber == null || batchNumber < 0 || batchNumber >= numShards) {
+				throw new CmdLineException("-shards " + numShards + " requires a batch number (-b) between 0 and "
+						+ (numShards - 1));
+			}
+			if (numToSkip != 0 || numToProcess >= 0) {
+				throw new CmdLineException("-shards cannot be combined with -s or -n");
+			}
+		}
+		if (compressBatchOutput && !batchOutput) {
+			throw new CmdLineException("-gzip can only be used with -batchOutput");
+		}
+		if (requirePresenceOfAbstract && !medlineInput) {
+			throw new CmdLineException("-r can only be used with -medline");
+		}
+		if (writeBehindCapacity < 0) {
+			throw new CmdLineException("The write-behind capacity cannot be negative: " + writeBehindCapacity);
+		}
+		if (maxWindowSize > 0 && (windowOverlap < 0 || 2 * windowOverlap >= maxWindowSize)) {
+			throw new CmdLineException("The window overlap must be at least 0 and less than half of the window size: "
+					+ windowOverlap);
+		}
+		if (metricsPeriodSeconds < 1) {
+			throw new CmdLineException("The metrics interval must be at least 1 second: " + metricsPeriodSeconds);
+		}
+		if (progressPeriodSeconds < 1) {
+			throw new CmdLineException("The progress interval must be at least 1 second: " + progressPeriodSeconds);
+		}
+		if (numToSkip < 0) {
+			throw new CmdLineException("The number of files to skip cannot be negative: " + numToSkip);
+		}
+	}
+
+	public File getInputDirectory() {
+		return new File(arguments.get(0));
+	}
+
+	public File getOutputDirectory() {
+		return new File(arguments.get(1));
+	}
+
+	/**
+	 * @return the ontologies to annotate with, specified as a comma-separated list
+	 */
+	public List<String> getOntologies() {
+		return splitList(arguments.get(2));
+	}
+
+	/**
+	 * @return the ontology file for each ontology returned by {@link #getOntologies()}
+	 */
+	public List<File> getOboFiles() {
+		List<File> files = new ArrayList<File>();
+		for (String path : splitList(arguments.get(3))) {
+			files.add(new File(path));
+		}
+		return files;
+	}
+
+	public File getDictionaryDirectory() {
+		return new File(arguments.get(4));
+	}
+
+	public boolean cleanDictionaryFile() {
+		return Boolean.parseBoolean(arguments.get(5));
+	}
+
+	/**
+	 * @return the number of pipeline replicas to run concurrently
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @return the part of the input directory to process
+	 */
+	public ShardSpec getShardSpec() {
+		if (numShards > 0) {
+			return ShardSpec.hash(numShards, batchNumber);
+		}
+		if (numToSkip > 0 || numToProcess >= 0) {
+			return ShardSpec.range(numToSkip, numToProcess);
+		}
+		return ShardSpec.ALL;
+	}
+
+	/**
+	 * @return the batch number, or null if none was specified
+	 */
+	public Integer getBatchNumber() {
+		return batchNumber;
+	}
+
+	/**
+	 * @return true if the checkpoint manifest of an earlier run is discarded; otherwise the
+	 *         documents completed by an earlier run with the same arguments are skipped
+	 */
+	public boolean isFresh() {
+		return fresh;
+	}
+
+	public boolean isCombinedOutput() {
+		return combinedOutput;
+	}
+
+	public OutputMode getOutputMode() {
+		if (!batchOutput) {
+			return OutputMode.FILE_PER_DOCUMENT;
+		}
+		return compressBatchOutput ? OutputMode.COMPRESSED_BATCH : OutputMode.BATCH;
+	}
+
+	/**
+	 * @return the number of annotated documents that can wait for the output writers
+	 */
+	public int getWriteBehindCapacity() {
+		return writeBehindCapacity;
+	}
+
+	/**
+	 * @return the maximum number of characters in a window, or 0 if documents are analyzed whole
+	 */
+	public int getMaxWindowSize() {
+		return maxWindowSize;
+	}
+
+	public int getWindowOverlap() {
+		return windowOverlap;
+	}
+
+	public SentenceSplitter getSentenceSplitter() {
+		return sentenceSplitter;
+	}
+
+	/**
+	 * @return the sentence cache directory, or null if sentences are not cached
+	 */
+	public File getSentenceCacheDirectory() {
+		return sentenceCacheDirectory;
+	}
+
+	/**
+	 * @return the directory that stage metrics are written to, or null if they are not recorded
+	 */
+	public File getMetricsDirectory() {
+		return metricsDirectory;
+	}
+
+	public int getMetricsPeriodSeconds() {
+		return metricsPeriodSeconds;
+	}
+
+	/**
+	 * @return the file that the progress of the run is written to, or null if it is only logged
+	 */
+	public File getStatusFile() {
+		return statusFile;
+	}
+
+	public int getProgressPeriodSeconds() {
+		return progressPeriodSeconds;
+	}
+
+	public boolean isMedlineInput() {
+		return medlineInput;
+	}
+
+	/**
+	 * @return true if MEDLINE citations without an abstract should not be processed
+	 */
+	public boolean requirePresenceOfAbstract() {
+		return requirePresenceOfAbstract;
+	}
+
+	private static List<String> splitList(String list) {
+		List<String> values = new ArrayList<String>();
+		for (String value : list.split(",")) {
+			if (!value.trim().isEmpty()) {
+				values.add(value.trim());
+			}
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,244 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+/**
+ * A simple closed-loop load generator for the {@link EntityFinderServer}. A number of client
+ * threads repeatedly post the text files in a directory to the server, and the latency of every
+ * request is recorded. After an (unrecorded) warm-up phase, the latency percentiles and the
+ * throughput are reported.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class EntityFinderLoadTestClient {
+
+	@Option(name = "-url", usage = "base URL of the server (default http://localhost:8080)")
+	private String baseUrl = "http://localhost:" + EntityFinderServerCmdOpts.DEFAULT_PORT;
+
+	@Option(name = "-input", usage = "directory of .txt files to submit", required = true)
+	private File inputDirectory;
+
+	@Option(name = "-concurrency", usage = "the number of concurrent clients (default 4)")
+	private int concurrency = 4;
+
+	@Option(name = "-requests", usage = "the number of measured requests (default 1000)")
+	private int numRequests = 1000;
+
+	@Option(name = "-warmup", usage = "the number of unmeasured warm-up requests (default 100)")
+	private int numWarmupRequests = 100;
+
+	public EntityFinderLoadTestClient() {
+		/* used by the command line parser */
+	}
+
+	public EntityFinderLoadTestClient(String baseUrl, File inputDirectory, int concurrency, int numRequests,
+			int numWarmupRequests) {
+		this.baseUrl = baseUrl;
+		this.inputDirectory = inputDirectory;
+		this.concurrency = concurrency;
+		this.numRequests = numRequests;
+		this.numWarmupRequests = numWarmupRequests;
+	}
+
+	/**
+	 * @return the latencies of the measured requests
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public LatencyReport run() throws IOException, InterruptedException {
+		final List<Document> documents = loadDocuments(inputDirectory);
+		runRequests(documents, numWarmupRequests);
+		long start = System.nanoTime();
+		long[] latencies = runRequests(documents, numRequests);
+		return new LatencyReport(latencies, System.nanoTime() - start);
+	}
+
+	private long[] runRequests(final List<Document> documents, final int count) throws IOException,
+			InterruptedException {
+		final long[] latencies = new long[count];
+		final AtomicInteger nextRequest = new AtomicInteger();
+		final URL annotateUrl = new URL(baseUrl + EntityFinderServer.ANNOTATE_PATH);
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		try {
+			for (int i = 0; i < concurrency; i++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						int request;
+						while ((request = nextRequest.getAndIncrement()) < count) {
+							Document document = documents.get(request % documents.size());
+							long start = System.nanoTime();
+							post(annotateUrl, document);
+							latencies[request] = System.nanoTime() - start;
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Request failed.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return latencies;
+	}
+
+	private static void post(URL annotateUrl, Document document) throws IOException {
+		URL url = new URL(annotateUrl + "?id=" + URLEncoder.encode(document.id, "UTF-8"));
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(document.text.length);
+		connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+		OutputStream os = connection.getOutputStream();
+		try {
+			os.write(document.text);
+		} finally {
+			os.close();
+		}
+		int status = connection.getResponseCode();
+		if (status != HttpURLConnection.HTTP_OK) {
+			throw new IOException("Server returned status " + status + " for document " + document.id);
+		}
+		/* the response must be consumed so that the connection can be reused */
+		EntityFinderServer.readFully(connection.getInputStream());
+	}
+
+	private static List<Document> loadDocuments(File inputDirectory) throws IOException {
+		File[] files = inputDirectory.listFiles();
+		List<Document> documents = new ArrayList<Document>();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.isFile() && file.getName().endsWith(".txt")) {
+					documents.add(new Document(file.getName(), Files.readAllBytes(file.toPath())));
+				}
+			}
+		}
+		if (documents.isEmpty()) {
+			throw new IOException("No .txt files found in: " + inputDirectory);
+		}
+		return documents;
+	}
+
+	private static class Document {
+		private final String id;
+		private final byte[] text;
+
+		public Document(String id, byte[] text) {
+			this.id = id;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Latency percentiles and throughput of a load test
+	 */
+	public static class LatencyReport {
+		private final long[] sortedLatencies;
+		private final long elapsedNanos;
+
+		public LatencyReport(long[] latencies, long elapsedNanos) {
+			this.sortedLatencies = latencies.clone();
+			Arrays.sort(this.sortedLatencies);
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return the latency (in milliseconds) below which the specified percentage of requests
+		 *         completed
+		 */
+		public double getPercentileMillis(double percentile) {
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+			return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1e6;
+		}
+
+		public double getThroughputPerSecond() {
+			return sortedLatencies.length / (elapsedNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("requests=%d throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+					sortedLatencies.length, getThroughputPerSecond(), getPercentileMillis(50),
+					getPercentileMillis(90), getPercentileMillis(99), getPercentileMillis(100));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		EntityFinderLoadTestClient client = new EntityFinderLoadTestClient();
+		CmdLineParser parser = new CmdLineParser(client);
+		try {
+			parser.parseArgument(args);
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+		System.out.println(client.run());
+	}
+
+}
@@ -0,0 +1,273 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the {@link EntityFinder} pipeline as a long-running local HTTP service. The type system,
+ * dictionaries and sentence model are loaded once at start-up; each request then only pays for
+ * annotating its own document.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li><code>POST /annotate[?id=DOC_ID]</code> - the request body is the (UTF-8) document text; the
+ * response is the annotations in BioNLP A1 format</li>
+ * <li><code>GET /health</code> - returns 200 once the server is ready</li>
+ * </ul>
+ * Requests are processed concurrently by a {@link ConceptAnnotator}.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class EntityFinderServer {
+
+	private static final Logger logger = Logger.getLogger(EntityFinderServer.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static final String ANNOTATE_PATH = "/annotate";
+	public static final String HEALTH_PATH = "/health";
+
+	private static final String DEFAULT_DOCUMENT_ID = "document";
+
+	/**
+	 * the number of seconds that {@link #stop()} waits for in-flight requests to finish
+	 */
+	public static final int STOP_TIMEOUT_SECONDS = 30;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConceptAnnotator annotator;
+
+	/**
+	 * @param address
+	 *            the address to listen on; use port 0 to pick a free port
+	 * @param annotator
+	 *            the number of requests processed concurrently is the number of replicas of the
+	 *            annotator
+	 * @throws IOException
+	 */
+	public EntityFinderServer(InetSocketAddress address, ConceptAnnotator annotator) throws IOException {
+		this.annotator = annotator;
+		server = HttpServer.create(address, 0);
+		server.createContext(ANNOTATE_PATH, new AnnotateHandler());
+		server.createContext(HEALTH_PATH, new HealthHandler());
+		executor = Executors.newFixedThreadPool(annotator.getNumReplicas());
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * @param ontologies
+	 * @param oboFiles
+	 *            the ontology file for each ontology, in the same order
+	 * @param dictionaryDirectory
+	 * @param cleanDictionaryFile
+	 * @param port
+	 * @param numThreads
+	 * @return a server that annotates documents with concepts from the specified ontologies
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static EntityFinderServer create(List<String> ontologies, List<File> oboFiles, File dictionaryDirectory,
+			boolean cleanDictionaryFile, int port, int numThreads) throws UIMAException, IOException {
+		ConceptAnnotator annotator = ConceptAnnotator.create(ontologies, oboFiles, dictionaryDirectory,
+				cleanDictionaryFile, numThreads);
+		try {
+			return new EntityFinderServer(new InetSocketAddress("localhost", port), annotator);
+		} catch (IOException e) {
+			annotator.close();
+			throw e;
+		}
+	}
+
+	public void start() {
+		server.start();
+		logger.info("EntityFinder server listening on port " + getPort() + " with " + annotator.getNumReplicas()
+				+ " pipeline replicas");
+	}
+
+	/**
+	 * Stops accepting requests, waits for in-flight requests to finish and releases the pipeline
+	 * replicas. Requests still waiting for a replica after {@link #STOP_TIMEOUT_SECONDS} are
+	 * answered with 503; the replicas are only released once the documents being annotated are
+	 * done.
+	 */
+	public void stop() {
+		server.stop(STOP_TIMEOUT_SECONDS);
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				logger.warn("Requests still in flight after " + STOP_TIMEOUT_SECONDS
+						+ " seconds; interrupting those waiting for a pipeline replica");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		annotator.close();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private class AnnotateHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					respond(exchange, 405, "Use POST to submit a document for annotation\n");
+					return;
+				}
+				String documentText = new String(readFully(exchange.getRequestBody()), UTF_8);
+				String documentId = getDocumentId(exchange.getRequestURI());
+				respond(exchange, 200, ConceptAnnotation.toA1(annotator.annotate(documentId, documentText)));
+			} catch (AnalysisEngineProcessException e) {
+				logger.error("Error while annotating document.", e);
+				respond(exchange, 500, "Error while annotating document: " + e.getMessage() + "\n");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				respond(exchange, 503, "Server is shutting down\n");
+			} catch (RuntimeException e) {
+				if (annotator.isClosed()) {
+					respond(exchange, 503, "Server is shutting down\n");
+				} else {
+					logger.error("Error while annotating document.", e);
+					respond(exchange, 500, "Error while annotating document: " + e + "\n");
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private static class HealthHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			respond(exchange, 200, "OK\n");
+		}
+	}
+
+	private static String getDocumentId(URI uri) throws IOException {
+		String query = uri.getRawQuery();
+		if (query != null) {
+			for (String param : query.split("&")) {
+				if (param.startsWith("id=")) {
+					return URLDecoder.decode(param.substring("id=".length()), UTF_8.name());
+				}
+			}
+		}
+		return DEFAULT_DOCUMENT_ID;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		try {
+			os.write(bytes);
+		} finally {
+			os.close();
+		}
+	}
+
+	static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		is.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * See {@link EntityFinderServerCmdOpts} for the arguments
+	 * 
+	 * @param args
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws UIMAException, IOException {
+		EntityFinderServerCmdOpts options = new EntityFinderServerCmdOpts();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+			options.validate();
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+
+		final EntityFinderServer server = create(options.getOntologies(), options.getOboFiles(),
+				options.getDictionaryDirectory(), options.cleanDictionaryFile(), options.getPort(),
+				options.getNumThreads());
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop();
+			}
+		});
+		server.start();
+	}
+
+}
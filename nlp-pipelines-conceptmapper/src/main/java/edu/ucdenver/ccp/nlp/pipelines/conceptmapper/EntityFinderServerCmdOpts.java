@@ -0,0 +1,126 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Command line options for the {@link EntityFinderServer}
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class EntityFinderServerCmdOpts {
+
+	public static final int DEFAULT_PORT = 8080;
+
+	@Option(name = "-ontology", usage = "comma-separated list of ontologies to annotate with, e.g. CL,GO_BP", required = true)
+	private String ontologies;
+
+	@Option(name = "-obo", usage = "comma-separated list of ontology files, one per ontology", required = true)
+	private String oboFiles;
+
+	@Option(name = "-dictDir", usage = "the directory where dictionaries are stored", required = true)
+	private File dictionaryDirectory;
+
+	@Option(name = "-clean", usage = "rebuild dictionaries even if they already exist")
+	private boolean cleanDictionaryFile = false;
+
+	@Option(name = "-port", usage = "the local port to listen on (default 8080)")
+	private int port = DEFAULT_PORT;
+
+	@Option(name = "-threads", usage = "the number of requests processed concurrently (defaults to the number of available processors)")
+	private int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+
+	/**
+	 * @throws CmdLineException
+	 *             if the number of ontologies and ontology files differ
+	 */
+	public void validate() throws CmdLineException {
+		if (getOntologies().size() != getOboFiles().size()) {
+			throw new CmdLineException("The number of ontologies (" + getOntologies().size()
+					+ ") must match the number of ontology files (" + getOboFiles().size() + ")");
+		}
+		if (numThreads < 1) {
+			throw new CmdLineException("The number of threads must be positive: " + numThreads);
+		}
+	}
+
+	public List<String> getOntologies() {
+		return splitList(ontologies);
+	}
+
+	public List<File> getOboFiles() {
+		List<File> files = new ArrayList<File>();
+		for (String path : splitList(oboFiles)) {
+			files.add(new File(path));
+		}
+		return files;
+	}
+
+	public File getDictionaryDirectory() {
+		return dictionaryDirectory;
+	}
+
+	public boolean cleanDictionaryFile() {
+		return cleanDictionaryFile;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	private static List<String> splitList(String list) {
+		List<String> values = new ArrayList<String>();
+		for (String value : list.split(",")) {
+			if (!value.trim().isEmpty()) {
+				values.add(value.trim());
+			}
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,383 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.annotator.AnnotatorContext;
+import org.apache.uima.analysis_engine.annotator.AnnotatorContextException;
+import org.apache.uima.conceptMapper.ConceptMapper;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource_impl;
+import org.apache.uima.conceptMapper.support.dictionaryResource.EntryProperties;
+import org.apache.uima.conceptMapper.support.dictionaryResource.EntryPropertiesRoot;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.FileResourceSpecifier;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.resource.metadata.ResourceManagerConfiguration;
+import org.apache.uima.util.InvalidXMLException;
+
+import edu.ucdenver.ccp.common.file.FileUtil;
+
+/**
+ * A ConceptMapper {@link DictionaryResource} that serves an XML dictionary from a
+ * {@link CompiledDictionary}. The first time a dictionary is loaded with a given set of
+ * {@link #DICTIONARY_LOADING_PARAMETERS} it is loaded from the XML file as usual and then written
+ * next to it in the compiled format, e.g. cmDict-CL.xml.3f2a9c0d1b7e4a56.bin; from then on it is
+ * memory-mapped instead of being parsed and tokenized again. The compiled file is identified by a
+ * SHA-256 hash of the XML file content and those parameter values, so a compiled dictionary is only
+ * used for the exact dictionary and settings it was compiled from. If the compiled file cannot be
+ * written, the XML dictionary loaded in memory is used.
+ * <p>
+ * Use {@link #useMappedDictionary(AnalysisEngineDescription)} to have the ConceptMapper instances of
+ * a pipeline use this resource.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MappedDictionaryResource implements DictionaryResource, SharedResourceObject {
+
+	private static final Logger logger = Logger.getLogger(MappedDictionaryResource.class);
+
+	/**
+	 * The ConceptMapper parameters that change how the entries of a dictionary are tokenized,
+	 * normalized and keyed when the dictionary is loaded
+	 */
+	public static final List<String> DICTIONARY_LOADING_PARAMETERS = Collections.unmodifiableList(Arrays.asList(
+			"caseMatch", "Stemmer", "StemmerDictionary", "ReplaceCommaWithAND", "OrderIndependentLookup",
+			"LanguageID", "XMLParserName", "AttributeList", "StopWords", "IncludedTokenClasses",
+			"ExcludedTokenClasses", "IncludedTokenTypes", "ExcludedTokenTypes", "TokenAnnotation",
+			"TokenTypeFeatureName", "TokenClassFeatureName", "TokenizerDescriptorPath"));
+
+	private static final int HASH_PREFIX_LENGTH = 16;
+
+	private DataResource dictionaryData;
+
+	private URL dictionaryUrl;
+
+	private String loadingSettings;
+
+	private volatile CompiledDictionary compiledDictionary;
+
+	private volatile DictionaryResource xmlDictionary;
+
+	/**
+	 * Switches every external resource in the description (including those of its delegates) that
+	 * is implemented by ConceptMapper's {@link DictionaryResource_impl} to this implementation
+	 * 
+	 * @param description
+	 * @return the number of resources switched
+	 * @throws InvalidXMLException
+	 *             if a delegate description cannot be resolved
+	 */
+	public static int useMappedDictionary(AnalysisEngineDescription description) throws InvalidXMLException {
+		int count = 0;
+		ResourceManagerConfiguration resourceManagerConfiguration = description.getResourceManagerConfiguration();
+		if (resourceManagerConfiguration != null) {
+			for (ExternalResourceDescription resource : resourceManagerConfiguration.getExternalResources()) {
+				String implementationName = resource.getImplementationName();
+				if (implementationName != null
+						&& implementationName.trim().equals(DictionaryResource_impl.class.getName())) {
+					resource.setImplementationName(MappedDictionaryResource.class.getName());
+					count++;
+				}
+			}
+		}
+		if (!description.isPrimitive()) {
+			for (ResourceSpecifier delegate : description.getDelegateAnalysisEngineSpecifiers().values()) {
+				if (delegate instanceof AnalysisEngineDescription) {
+					count += useMappedDictionary((AnalysisEngineDescription) delegate);
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void load(DataResource data) throws ResourceInitializationException {
+		dictionaryData = data;
+		dictionaryUrl = data.getUrl();
+	}
+
+	/**
+	 * Always false, so that ConceptMapper calls
+	 * {@link #loadDictionaryContents(AnnotatorContext, org.apache.uima.conceptMapper.Logger, String, String, String, String)}
+	 * for every annotator that uses this resource and each one's settings are checked against the
+	 * settings the dictionary was loaded with
+	 */
+	@Override
+	public boolean isLoaded() {
+		return false;
+	}
+
+	@Override
+	public synchronized void loadDictionaryContents(AnnotatorContext context,
+			org.apache.uima.conceptMapper.Logger cmLogger, String tokenAnnotationName, String tokenTypeFeatureName,
+			String tokenClassFeatureName, String tokenizerDescriptor) throws ResourceInitializationException {
+		try {
+			String settings = getLoadingSettings(context);
+			if (loadingSettings != null) {
+				if (!loadingSettings.equals(settings)) {
+					throw new IllegalStateException("The dictionary " + dictionaryUrl
+							+ " is shared by ConceptMapper instances that load it differently. Loaded with:\n"
+							+ loadingSettings + "Requested:\n" + settings);
+				}
+				return;
+			}
+			File xmlFile = getDictionaryFile();
+			if (xmlFile == null) {
+				logger.info("Dictionary " + dictionaryUrl + " is not a local file and is not compiled.");
+				xmlDictionary = loadXmlDictionary(context, cmLogger, tokenAnnotationName, tokenTypeFeatureName,
+						tokenClassFeatureName, tokenizerDescriptor);
+			} else {
+				String contentHash = DictionaryCache.computeSha256(settings, xmlFile);
+				File compiledFile = new File(xmlFile.getParentFile(), xmlFile.getName() + "."
+						+ contentHash.substring(0, HASH_PREFIX_LENGTH) + ".bin");
+				compiledDictionary = openCompiledDictionary(compiledFile, contentHash);
+				if (compiledDictionary == null) {
+					DictionaryResource loaded = loadXmlDictionary(context, cmLogger, tokenAnnotationName,
+							tokenTypeFeatureName, tokenClassFeatureName, tokenizerDescriptor);
+					try {
+						compiledDictionary = compile(loaded, compiledFile, contentHash);
+					} catch (IOException e) {
+						logger.warn("Unable to write compiled dictionary " + compiledFile
+								+ ", using the XML dictionary instead.", e);
+						xmlDictionary = loaded;
+					}
+				}
+			}
+			loadingSettings = settings;
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		} catch (AnnotatorContextException e) {
+			throw new ResourceInitializationException(e);
+		} catch (IllegalStateException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * @return the compiled dictionary, or null if the file does not exist or was compiled for other
+	 *         content
+	 */
+	private static CompiledDictionary openCompiledDictionary(File compiledFile, String contentHash) {
+		if (!compiledFile.exists()) {
+			return null;
+		}
+		try {
+			CompiledDictionary dictionary = CompiledDictionary.open(compiledFile);
+			if (dictionary.getContentHash().equals(contentHash)) {
+				logger.info("Using compiled dictionary " + compiledFile + " (" + dictionary.getKeyCount() + " keys)");
+				return dictionary;
+			}
+			logger.info("Compiled dictionary " + compiledFile + " does not match its XML dictionary, recompiling.");
+		} catch (IOException e) {
+			logger.info("Unable to use compiled dictionary " + compiledFile + ", recompiling: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the dictionary to a temporary file that is then moved into place, so a partially
+	 * written compiled dictionary is never used
+	 */
+	private static CompiledDictionary compile(DictionaryResource dictionary, File compiledFile, String contentHash)
+			throws IOException {
+		logger.info("Compiling dictionary to " + compiledFile);
+		File tmpFile = File.createTempFile(compiledFile.getName(), ".tmp", compiledFile.getParentFile());
+		try {
+			CompiledDictionary.write(tmpFile, contentHash, dictionary);
+			Files.move(tmpFile.toPath(), compiledFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (tmpFile.exists()) {
+				FileUtil.deleteFile(tmpFile);
+			}
+		}
+		return CompiledDictionary.open(compiledFile);
+	}
+
+	private DictionaryResource loadXmlDictionary(AnnotatorContext context,
+			org.apache.uima.conceptMapper.Logger cmLogger, String tokenAnnotationName, String tokenTypeFeatureName,
+			String tokenClassFeatureName, String tokenizerDescriptor) throws ResourceInitializationException {
+		DictionaryResource_impl dictionary = new DictionaryResource_impl();
+		dictionary.load(dictionaryData);
+		dictionary.loadDictionaryContents(context, cmLogger, tokenAnnotationName, tokenTypeFeatureName,
+				tokenClassFeatureName, tokenizerDescriptor);
+		return dictionary;
+	}
+
+	/**
+	 * @return the local file of the XML dictionary, or null if it is not a file URL
+	 */
+	private File getDictionaryFile() {
+		if (dictionaryUrl == null || !dictionaryUrl.getProtocol().equals("file")) {
+			return null;
+		}
+		try {
+			return new File(dictionaryUrl.toURI());
+		} catch (URISyntaxException e) {
+			return new File(dictionaryUrl.getPath());
+		}
+	}
+
+	/**
+	 * @param context
+	 * @return the values of the {@link #DICTIONARY_LOADING_PARAMETERS} and the
+	 *         {@link CompiledDictionary#FORMAT_VERSION}, one per line
+	 * @throws AnnotatorContextException
+	 * @throws IOException
+	 */
+	static String getLoadingSettings(AnnotatorContext context) throws AnnotatorContextException, IOException {
+		StringBuilder settings = new StringBuilder();
+		settings.append("formatVersion=" + CompiledDictionary.FORMAT_VERSION + "\n");
+		for (String name : DICTIONARY_LOADING_PARAMETERS) {
+			Object value = context.getConfigParameterValue(name);
+			settings.append(name + "=" + ((value instanceof Object[]) ? Arrays.toString((Object[]) value) : value)
+					+ "\n");
+		}
+		/* the tokenizer's own settings are part of its descriptor */
+		String tokenizerDescriptor = (String) context.getConfigParameterValue("TokenizerDescriptorPath");
+		if (tokenizerDescriptor != null && new File(tokenizerDescriptor.trim()).isFile()) {
+			settings.append("tokenizerDescriptorSha256="
+					+ DictionaryCache.computeSha256(new File(tokenizerDescriptor.trim())) + "\n");
+		}
+		return settings.toString();
+	}
+
+	/**
+	 * @param description
+	 * @return the file URL of each external resource in the description (including those of its
+	 *         delegates) and the values of the {@link #DICTIONARY_LOADING_PARAMETERS} of each of its
+	 *         ConceptMapper primitives, one per line; two descriptions with the same settings load
+	 *         their dictionaries identically
+	 * @throws InvalidXMLException
+	 *             if a delegate description cannot be resolved
+	 */
+	public static String getLoadingSettings(AnalysisEngineDescription description) throws InvalidXMLException {
+		StringBuilder settings = new StringBuilder();
+		ResourceManagerConfiguration resourceManagerConfiguration = description.getResourceManagerConfiguration();
+		if (resourceManagerConfiguration != null) {
+			for (ExternalResourceDescription resource : resourceManagerConfiguration.getExternalResources()) {
+				ResourceSpecifier specifier = resource.getResourceSpecifier();
+				settings.append(resource.getName() + "="
+						+ ((specifier instanceof FileResourceSpecifier) ? ((FileResourceSpecifier) specifier)
+								.getFileUrl() : specifier) + "\n");
+			}
+		}
+		if (description.isPrimitive()) {
+			String implementationName = description.getAnnotatorImplementationName();
+			if (implementationName != null && implementationName.trim().equals(ConceptMapper.class.getName())) {
+				ConfigurationParameterSettings parameterSettings = description.getAnalysisEngineMetaData()
+						.getConfigurationParameterSettings();
+				for (String name : DICTIONARY_LOADING_PARAMETERS) {
+					Object value = parameterSettings.getParameterValue(name);
+					settings.append(name + "="
+							+ ((value instanceof Object[]) ? Arrays.toString((Object[]) value) : value) + "\n");
+				}
+			}
+		} else {
+			for (ResourceSpecifier delegate : description.getDelegateAnalysisEngineSpecifiers().values()) {
+				if (delegate instanceof AnalysisEngineDescription) {
+					settings.append(getLoadingSettings((AnalysisEngineDescription) delegate));
+				}
+			}
+		}
+		return settings.toString();
+	}
+
+	private DictionaryResource getXmlDictionary() {
+		if (xmlDictionary == null) {
+			throw new IllegalStateException("The dictionary " + dictionaryUrl + " has not been loaded.");
+		}
+		return xmlDictionary;
+	}
+
+	@Override
+	public DictEntriesByLength getEntries(String key) {
+		CompiledDictionary compiled = compiledDictionary;
+		return (compiled != null) ? compiled.getEntries(key) : getXmlDictionary().getEntries(key);
+	}
+
+	@Override
+	public EntryPropertiesRoot getEntryPropertiesRoot() {
+		CompiledDictionary compiled = compiledDictionary;
+		return (compiled != null) ? compiled.getEntryPropertiesRoot() : getXmlDictionary().getEntryPropertiesRoot();
+	}
+
+	@Override
+	public Enumeration<String> keys() {
+		CompiledDictionary compiled = compiledDictionary;
+		return (compiled != null) ? compiled.keys() : getXmlDictionary().keys();
+	}
+
+	/**
+	 * Not supported, the dictionary is read-only
+	 */
+	@Override
+	public DictionaryResource newDictionaryResource(int initialDictEntries) {
+		throw new UnsupportedOperationException("A memory-mapped dictionary cannot be created empty.");
+	}
+
+	/**
+	 * Not supported, the dictionary is read-only
+	 */
+	@Override
+	public void putEntry(String key, String[] elements, String unsorted, int length, EntryProperties props) {
+		throw new UnsupportedOperationException("A memory-mapped dictionary is read-only.");
+	}
+
+	@Override
+	public String toString() {
+		CompiledDictionary compiled = compiledDictionary;
+		return "MappedDictionaryResource [dictionaryUrl=" + dictionaryUrl + ", compiledDictionary=" + compiled + "]";
+	}
+
+}
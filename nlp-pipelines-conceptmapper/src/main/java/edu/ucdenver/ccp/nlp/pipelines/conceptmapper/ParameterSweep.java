@@ -0,0 +1,547 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceManager;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.token.type.Sentence;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.util.JCasUtil;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.evaluation.EvaluationPipeline;
+import edu.ucdenver.ccp.nlp.pipelines.evaluation.GenericAnnotationLoader;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentIdFilter;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentSources;
+import edu.ucdenver.ccp.nlp.pipelines.io.ShardSpec;
+import edu.ucdenver.ccp.nlp.pipelines.io.SourceDocument;
+import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.MentionComparatorType;
+import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.SpanComparatorType;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.ConceptMapperPermutationFactory;
+
+/**
+ * Evaluates many ConceptMapper parameter combinations (indices into
+ * {@link ConceptMapperPermutationFactory}) against gold standard annotations in a single process.
+ * The documents are read and split into sentences once and kept in memory; each parameter
+ * combination is then run over them on one of several threads. A dictionary is built once for each
+ * {@link SynonymType} used by the combinations. The pipelines of all combinations that load that
+ * dictionary identically (see {@link MappedDictionaryResource#getLoadingSettings(AnalysisEngineDescription)})
+ * share one {@link ResourceManager}, so each dictionary is loaded only once for each setting of
+ * case matching, stemming, tokenization and so on; combinations that load it differently use
+ * different resource managers, so that a pipeline is never handed a dictionary that another
+ * pipeline loaded under the same resource name with other settings.
+ * <p>
+ * Each combination is scored by the components of an {@link EvaluationPipeline}: the gold standard
+ * annotations from the .a1 files are added to each document and compared with the annotations of
+ * the pipeline by its annotation comparator, with {@link SpanComparatorType#STRICT} spans and
+ * {@link MentionComparatorType#IDENTICAL} concept identifiers. The precision, recall and F1 score of
+ * each combination are written as a row of a tab-separated table as soon as the combination has
+ * been evaluated, so a partial sweep still yields results.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterSweep {
+
+	private static final Logger logger = Logger.getLogger(ParameterSweep.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * the annotations of every concept type are compared
+	 */
+	private static final String ANY_CONCEPT_TYPE = ".*";
+
+	/**
+	 * the comparator's summary line: group, true positives, false positives, false negatives, then
+	 * P=, R= and F=
+	 */
+	private static final Pattern SUMMARY_LINE = Pattern.compile("^[^\\t]*\\t(\\d+)\\t(\\d+)\\t(\\d+)\\tP=");
+
+	/**
+	 * the header row of the results table
+	 */
+	public static final String TABLE_HEADER = "index\tsynonym_type\ttrue_positives\tfalse_positives\tfalse_negatives\tprecision\trecall\tf1\tseconds";
+
+	/**
+	 * A document held in memory for the sweep: its text, its sentences and its gold standard
+	 * annotations in BioNLP A1 format
+	 */
+	public static class SweepDocument {
+		private final String documentId;
+		private final String text;
+		private final int[] sentenceOffsets;
+		private final String goldAnnotations;
+
+		SweepDocument(String documentId, String text, int[] sentenceOffsets, String goldAnnotations) {
+			this.documentId = documentId;
+			this.text = text;
+			this.sentenceOffsets = sentenceOffsets;
+			this.goldAnnotations = goldAnnotations;
+		}
+
+		public String getDocumentId() {
+			return documentId;
+		}
+	}
+
+	/**
+	 * The evaluation of one parameter combination
+	 */
+	public static class SweepResult {
+		private final int parameterIndex;
+		private final SynonymType synonymType;
+		private final int truePositives;
+		private final int falsePositives;
+		private final int falseNegatives;
+		private final double seconds;
+
+		SweepResult(int parameterIndex, SynonymType synonymType, int truePositives, int falsePositives,
+				int falseNegatives, double seconds) {
+			this.parameterIndex = parameterIndex;
+			this.synonymType = synonymType;
+			this.truePositives = truePositives;
+			this.falsePositives = falsePositives;
+			this.falseNegatives = falseNegatives;
+			this.seconds = seconds;
+		}
+
+		public int getParameterIndex() {
+			return parameterIndex;
+		}
+
+		public int getTruePositives() {
+			return truePositives;
+		}
+
+		public int getFalsePositives() {
+			return falsePositives;
+		}
+
+		public int getFalseNegatives() {
+			return falseNegatives;
+		}
+
+		public double getPrecision() {
+			return ratio(truePositives, truePositives + falsePositives);
+		}
+
+		public double getRecall() {
+			return ratio(truePositives, truePositives + falseNegatives);
+		}
+
+		public double getF1() {
+			double p = getPrecision();
+			double r = getRecall();
+			return (p + r == 0) ? 0.0 : 2 * p * r / (p + r);
+		}
+
+		/**
+		 * @return the row of the results table for this result
+		 */
+		public String toTableRow() {
+			return String.format("%d\t%s\t%d\t%d\t%d\t%.4f\t%.4f\t%.4f\t%.1f", parameterIndex, synonymType,
+					truePositives, falsePositives, falseNegatives, getPrecision(), getRecall(), getF1(), seconds);
+		}
+
+		private static double ratio(int numerator, int denominator) {
+			return (denominator == 0) ? 0.0 : (double) numerator / denominator;
+		}
+	}
+
+	/**
+	 * orders results by parameter index
+	 */
+	static final Comparator<SweepResult> INDEX_ORDER = new Comparator<SweepResult>() {
+		@Override
+		public int compare(SweepResult r1, SweepResult r2) {
+			return Integer.compare(r1.parameterIndex, r2.parameterIndex);
+		}
+	};
+
+	private final TypeSystemDescription tsd;
+	private final DictionaryNamespace dictNamespace;
+	private final File oboFile;
+	private final File dictionaryDirectory;
+	private final boolean cleanDictionaryFile;
+	private final Map<String, ResourceManager> resourceManagers = new HashMap<String, ResourceManager>();
+	private final Map<SynonymType, File> dictionaryFiles = new HashMap<SynonymType, File>();
+
+	/**
+	 * @param tsd
+	 * @param dictNamespace
+	 * @param oboFile
+	 * @param dictionaryDirectory
+	 * @param cleanDictionaryFile
+	 *            if true, each dictionary is rebuilt the first time it is needed
+	 */
+	public ParameterSweep(TypeSystemDescription tsd, DictionaryNamespace dictNamespace, File oboFile,
+			File dictionaryDirectory, boolean cleanDictionaryFile) {
+		this.tsd = tsd;
+		this.dictNamespace = dictNamespace;
+		this.oboFile = oboFile;
+		this.dictionaryDirectory = dictionaryDirectory;
+		this.cleanDictionaryFile = cleanDictionaryFile;
+	}
+
+	/**
+	 * Reads the documents and their gold standard annotations and splits the documents into
+	 * sentences
+	 * 
+	 * @param tsd
+	 * @param inputDirectory
+	 *            a directory or archive of .txt files
+	 * @param goldDirectory
+	 *            a directory of BioNLP (.a1) files, one per document, named after the document id
+	 *            with or without its extension; documents without one are skipped
+	 * @param sentenceSplitter
+	 * @param sentenceCacheDirectory
+	 *            if not null, sentence offsets are cached in this directory
+	 * @return the documents
+	 * @throws IOException
+	 * @throws UIMAException
+	 */
+	public static List<SweepDocument> loadDocuments(TypeSystemDescription tsd, File inputDirectory,
+			File goldDirectory, SentenceSplitter sentenceSplitter, File sentenceCacheDirectory) throws IOException,
+			UIMAException {
+		File[] goldFiles = goldDirectory.listFiles();
+		if (goldFiles == null) {
+			throw new IOException("Unable to list gold standard directory: " + goldDirectory);
+		}
+		List<SweepDocument> documents = new ArrayList<SweepDocument>();
+		AnalysisEngine sentenceDetector = AnalysisEngineFactory.createPrimitive(sentenceSplitter
+				.createAnalysisEngineDescription(tsd, sentenceCacheDirectory));
+		DocumentSource source = DocumentSources.open(inputDirectory, ".txt", UTF_8, ShardSpec.ALL,
+				DocumentIdFilter.ACCEPT_ALL);
+		try {
+			JCas jcas = sentenceDetector.newJCas();
+			while (source.hasNext()) {
+				SourceDocument document = source.next();
+				File goldFile = getGoldFile(goldFiles, document.getDocumentId());
+				if (goldFile == null) {
+					logger.warn("Skipping document without gold standard annotations: " + document.getDocumentId());
+					continue;
+				}
+				jcas.reset();
+				jcas.setDocumentText(document.getText());
+				sentenceDetector.process(jcas);
+				Collection<Sentence> sentences = JCasUtil.select(jcas, Sentence.class);
+				int[] sentenceOffsets = new int[sentences.size() * 2];
+				int i = 0;
+				for (Sentence sentence : sentences) {
+					sentenceOffsets[i++] = sentence.getBegin();
+					sentenceOffsets[i++] = sentence.getEnd();
+				}
+				documents.add(new SweepDocument(document.getDocumentId(), document.getText(), sentenceOffsets,
+						new String(Files.readAllBytes(goldFile.toPath()), UTF_8)));
+			}
+		} finally {
+			source.close();
+			sentenceDetector.destroy();
+		}
+		logger.info("Loaded " + documents.size() + " documents for the parameter sweep.");
+		return documents;
+	}
+
+	private static File getGoldFile(File[] goldFiles, String documentId) {
+		for (File goldFile : goldFiles) {
+			if (goldFile.getName().endsWith(".a1") && CheckpointCommit_AE.belongsToDocument(goldFile.getName(), documentId)) {
+				return goldFile;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Evaluates each parameter combination over the documents
+	 * 
+	 * @param parameterIndices
+	 * @param documents
+	 * @param numThreads
+	 *            the number of combinations evaluated concurrently
+	 * @param table
+	 *            if not null, each result is written to it as a table row as soon as it is available
+	 * @return the results, ordered by parameter index
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public List<SweepResult> run(List<Integer> parameterIndices, final List<SweepDocument> documents,
+			int numThreads, final PrintWriter table) throws UIMAException, IOException {
+		for (int parameterIndex : parameterIndices) {
+			getDictionaryFile(ConceptMapperPermutationFactory.getSynonymType(parameterIndex));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<SweepResult>> futures = new ArrayList<Future<SweepResult>>();
+			for (final int parameterIndex : parameterIndices) {
+				futures.add(executor.submit(new Callable<SweepResult>() {
+					@Override
+					public SweepResult call() throws UIMAException, IOException {
+						SweepResult result = evaluate(parameterIndex, documents);
+						if (table != null) {
+							synchronized (table) {
+								table.println(result.toTableRow());
+								table.flush();
+							}
+						}
+						return result;
+					}
+				}));
+			}
+			List<SweepResult> results = new ArrayList<SweepResult>();
+			for (Future<SweepResult> future : futures) {
+				results.add(getResult(future));
+			}
+			Collections.sort(results, INDEX_ORDER);
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static SweepResult getResult(Future<SweepResult> future) throws UIMAException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the parameter sweep.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UIMAException) {
+				throw (UIMAException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException("Error while evaluating a parameter combination.", cause);
+		}
+	}
+
+	/**
+	 * @return the dictionary for the synonym type, building it the first time it is requested
+	 */
+	synchronized File getDictionaryFile(SynonymType synonymType) throws IOException {
+		File dictionaryFile = dictionaryFiles.get(synonymType);
+		if (dictionaryFile == null) {
+			logger.info("Retrieving ConceptMapper dictionary for synonym type " + synonymType + "...");
+			dictionaryFile = ConceptMapperDictionaryFileFactory.createDictionaryFileFromOBO(dictNamespace, oboFile,
+					dictionaryDirectory, cleanDictionaryFile, synonymType);
+			dictionaryFiles.put(synonymType, dictionaryFile);
+		}
+		return dictionaryFile;
+	}
+
+	/**
+	 * @param loadingSettings
+	 *            see {@link MappedDictionaryResource#getLoadingSettings(AnalysisEngineDescription)}
+	 * @return the resource manager shared by the pipelines of all combinations that load their
+	 *         dictionary with these settings
+	 */
+	synchronized ResourceManager getResourceManager(String loadingSettings) {
+		ResourceManager resourceManager = resourceManagers.get(loadingSettings);
+		if (resourceManager == null) {
+			resourceManager = UIMAFramework.newDefaultResourceManager();
+			resourceManagers.put(loadingSettings, resourceManager);
+		}
+		return resourceManager;
+	}
+
+	/**
+	 * @param parameterIndex
+	 * @return the pipeline of the parameter combination
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	List<AnalysisEngineDescription> getPipelineAeDescriptions(int parameterIndex) throws UIMAException, IOException {
+		SynonymType synonymType = ConceptMapperPermutationFactory.getSynonymType(parameterIndex);
+		return ConceptMapperPipelineFactory.getPipelineAeDescriptions(tsd,
+				EntityFinder.getCmdOpts(getDictionaryFile(synonymType)), parameterIndex);
+	}
+
+	/**
+	 * Runs the ConceptMapper pipeline for the parameter combination over the documents and compares
+	 * its annotations to the gold standard with the components of an {@link EvaluationPipeline}
+	 * 
+	 * @param parameterIndex
+	 * @param documents
+	 * @return the evaluation of the parameter combination
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	SweepResult evaluate(int parameterIndex, List<SweepDocument> documents) throws UIMAException, IOException {
+		long start = System.nanoTime();
+		File resultsFile = File.createTempFile("sweep-" + parameterIndex + "-", ".txt");
+		try {
+			/* the gold standard annotations are added to each document before the pipeline runs */
+			EvaluationPipeline evalPipeline = new EvaluationPipeline(tsd, null,
+					new ArrayList<AnalysisEngineDescription>(), SpanComparatorType.STRICT,
+					MentionComparatorType.IDENTICAL, Collections.singletonList(ANY_CONCEPT_TYPE));
+			evalPipeline.setPipelineComponents(getPipelineAeDescriptions(parameterIndex));
+			evalPipeline.setEvalResultsOutputFile(resultsFile);
+			List<AnalysisEngineDescription> descs = evalPipeline.getAnalysisEngineDescriptions(null);
+			AnalysisEngineDescription aggregateDesc = AnalysisEngineFactory.createAggregateDescription(descs
+					.toArray(new AnalysisEngineDescription[descs.size()]));
+			AnalysisEngine engine = UIMAFramework.produceAnalysisEngine(aggregateDesc,
+					getResourceManager(MappedDictionaryResource.getLoadingSettings(aggregateDesc)), null);
+			try {
+				JCas jcas = engine.newJCas();
+				for (SweepDocument document : documents) {
+					jcas.reset();
+					jcas.setDocumentText(document.text);
+					UIMA_Util.setDocumentID(jcas, document.documentId);
+					GenericAnnotationLoader.addA1Annotations(document.goldAnnotations, jcas);
+					for (int i = 0; i + 1 < document.sentenceOffsets.length; i += 2) {
+						new Sentence(jcas, document.sentenceOffsets[i], document.sentenceOffsets[i + 1])
+								.addToIndexes();
+					}
+					engine.process(jcas);
+				}
+				/* the comparator writes its results file when the collection is complete */
+				engine.collectionProcessComplete();
+			} finally {
+				engine.destroy();
+			}
+			int[] counts = readCounts(resultsFile);
+			return new SweepResult(parameterIndex, ConceptMapperPermutationFactory.getSynonymType(parameterIndex),
+					counts[0], counts[1], counts[2], (System.nanoTime() - start) / 1e9);
+		} finally {
+			if (!resultsFile.delete()) {
+				resultsFile.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * @param resultsFile
+	 *            written by the annotation comparator of an {@link EvaluationPipeline}
+	 * @return the true positive, false positive and false negative counts of the comparator's last
+	 *         summary line
+	 * @throws IOException
+	 *             if the file has no summary line
+	 */
+	static int[] readCounts(File resultsFile) throws IOException {
+		int[] counts = null;
+		for (String line : Files.readAllLines(resultsFile.toPath(), UTF_8)) {
+			Matcher matcher = SUMMARY_LINE.matcher(line);
+			if (matcher.find()) {
+				counts = new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+						Integer.parseInt(matcher.group(3)) };
+			}
+		}
+		if (counts == null) {
+			throw new IOException("No summary line in the annotation comparison results: " + resultsFile);
+		}
+		return counts;
+	}
+
+	/**
+	 * Runs a parameter sweep; the options are described in {@link ParameterSweepCmdOpts}
+	 * 
+	 * @param args
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws UIMAException, IOException {
+		ParameterSweepCmdOpts options = new ParameterSweepCmdOpts();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+			options.validate();
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		List<SweepDocument> documents = loadDocuments(tsd, options.getInputDirectory(), options.getGoldDirectory(),
+				options.getSentenceSplitter(), options.getSentenceCacheDirectory());
+		ParameterSweep sweep = new ParameterSweep(tsd, options.getDictionaryNamespace(), options.getOboFile(),
+				options.getDictionaryDirectory(), options.cleanDictionaryFile());
+		PrintWriter table = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.getOutputFile()),
+				UTF_8));
+		try {
+			table.println(TABLE_HEADER);
+			List<SweepResult> results = sweep.run(options.getParameterIndices(), documents, options.getNumThreads(),
+					table);
+			SweepResult best = null;
+			for (SweepResult result : results) {
+				if (best == null || result.getF1() > best.getF1()) {
+					best = result;
+				}
+			}
+			if (best != null) {
+				System.out.println("Best parameter combination: " + best.toTableRow());
+			}
+		} finally {
+			table.close();
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Command line options for the {@link ParameterSweep}
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterSweepCmdOpts {
+
+	@Option(name = "-ns", usage = "the dictionary namespace, e.g. CL", required = true)
+	private DictionaryNamespace dictionaryNamespace;
+
+	@Option(name = "-ont", usage = "the ontology (OBO) file to build the dictionaries from", required = true)
+	private File oboFile;
+
+	@Option(name = "-d", usage = "the directory where dictionaries are stored", required = true)
+	private File dictionaryDirectory;
+
+	@Option(name = "-clean", usage = "rebuild the dictionaries even if they already exist")
+	private boolean cleanDictionaryFile = false;
+
+	@Option(name = "-i", usage = "the directory (or .zip/.tar.gz archive) of .txt documents", required = true)
+	private File inputDirectory;
+
+	@Option(name = "-gold", usage = "the directory of gold standard BioNLP (.a1) files, one per document", required = true)
+	private File goldDirectory;
+
+	@Option(name = "-indices", metaVar = "RANGES", usage = "the parameter indices to evaluate, as a comma-separated list of indices and ranges, e.g. 0-575 or 13,28,31", required = true)
+	private String parameterIndices;
+
+	@Option(name = "-o", usage = "the tab-separated file that results are written to", required = true)
+	private File outputFile;
+
+	@Option(name = "-threads", usage = "the number of parameter combinations evaluated concurrently (defaults to the number of available processors)")
+	private int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+
+	@Option(name = "-sentenceSplitter", usage = "the sentence splitter: OPENNLP (default), RULE_BASED, LINE or PARAGRAPH")
+	private SentenceSplitter sentenceSplitter = SentenceSplitter.OPENNLP;
+
+	@Option(name = "-sentenceCache", usage = "a directory in which sentence boundaries are cached")
+	private File sentenceCacheDirectory;
+
+	/**
+	 * @throws CmdLineException
+	 *             if the parameter indices cannot be parsed
+	 */
+	public void validate() throws CmdLineException {
+		try {
+			if (getParameterIndices().isEmpty()) {
+				throw new CmdLineException("No parameter indices specified.");
+			}
+		} catch (IllegalArgumentException e) {
+			throw new CmdLineException("Invalid parameter indices: " + parameterIndices);
+		}
+		if (numThreads < 1) {
+			throw new CmdLineException("The number of threads must be positive: " + numThreads);
+		}
+	}
+
+	public DictionaryNamespace getDictionaryNamespace() {
+		return dictionaryNamespace;
+	}
+
+	public File getOboFile() {
+		return oboFile;
+	}
+
+	public File getDictionaryDirectory() {
+		return dictionaryDirectory;
+	}
+
+	public boolean cleanDictionaryFile() {
+		return cleanDictionaryFile;
+	}
+
+	public File getInputDirectory() {
+		return inputDirectory;
+	}
+
+	public File getGoldDirectory() {
+		return goldDirectory;
+	}
+
+	/**
+	 * @return the parameter indices, in the order specified
+	 */
+	public List<Integer> getParameterIndices() {
+		return parseIndices(parameterIndices);
+	}
+
+	/**
+	 * @param ranges
+	 *            a comma-separated list of indices and inclusive ranges, e.g. 0-3,7
+	 * @return the indices
+	 * @throws IllegalArgumentException
+	 *             if the list cannot be parsed
+	 */
+	static List<Integer> parseIndices(String ranges) {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (String range : ranges.split(",")) {
+			range = range.trim();
+			if (range.isEmpty()) {
+				continue;
+			}
+			int dash = range.indexOf('-', 1);
+			int first = Integer.parseInt((dash < 0) ? range : range.substring(0, dash).trim());
+			int last = (dash < 0) ? first : Integer.parseInt(range.substring(dash + 1).trim());
+			if (first < 0 || last < first) {
+				throw new IllegalArgumentException("Invalid index range: " + range);
+			}
+			for (int i = first; i <= last; i++) {
+				indices.add(i);
+			}
+		}
+		return indices;
+	}
+
+	public File getOutputFile() {
+		return outputFile;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public SentenceSplitter getSentenceSplitter() {
+		return sentenceSplitter;
+	}
+
+	/**
+	 * @return the sentence cache directory, or null if sentences are not cached
+	 */
+	public File getSentenceCacheDirectory() {
+		return sentenceCacheDirectory;
+	}
+
+}
@@ -0,0 +1,244 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepDocument;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepResult;
+
+/**
+ * Selects the ConceptMapper parameter combination for an ontology by successive halving. All
+ * candidate combinations are first evaluated on a small subset of the documents; only the best
+ * 1/eta of them are evaluated in the next round, on eta times as many documents, and so on until
+ * a single candidate remains, which is evaluated on all documents. Each round costs roughly one
+ * pass over the documents, so selecting from n candidates costs about log<sub>eta</sub>(n) + 1
+ * passes instead of the n passes of a full {@link ParameterSweep}.
+ * <p>
+ * The documents are shuffled (with a fixed seed) before they are divided, and each round's subset
+ * contains the previous round's, so early rounds are not biased by the order of the input files.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterTuner {
+
+	private static final Logger logger = Logger.getLogger(ParameterTuner.class);
+
+	public static final int DEFAULT_REDUCTION_FACTOR = 2;
+
+	/**
+	 * scores on fewer documents than this are too noisy to eliminate candidates with
+	 */
+	public static final int DEFAULT_MIN_DOCUMENTS = 5;
+
+	/**
+	 * the header row of the results table
+	 */
+	public static final String TABLE_HEADER = "round\tdocuments\t" + ParameterSweep.TABLE_HEADER;
+
+	/**
+	 * orders results by descending F1 score; ties go to the lower parameter index
+	 */
+	static final Comparator<SweepResult> F1_ORDER = new Comparator<SweepResult>() {
+		@Override
+		public int compare(SweepResult r1, SweepResult r2) {
+			int comparison = Double.compare(r2.getF1(), r1.getF1());
+			return (comparison != 0) ? comparison : Integer.compare(r1.getParameterIndex(), r2.getParameterIndex());
+		}
+	};
+
+	private final ParameterSweep sweep;
+	private final int reductionFactor;
+	private final int minDocuments;
+	private final int numThreads;
+
+	/**
+	 * @param sweep
+	 *            evaluates the candidates
+	 * @param reductionFactor
+	 *            eta, at least 2
+	 * @param minDocuments
+	 *            the minimum number of documents used in a round
+	 * @param numThreads
+	 */
+	public ParameterTuner(ParameterSweep sweep, int reductionFactor, int minDocuments, int numThreads) {
+		if (reductionFactor < 2) {
+			throw new IllegalArgumentException("The reduction factor must be at least 2: " + reductionFactor);
+		}
+		this.sweep = sweep;
+		this.reductionFactor = reductionFactor;
+		this.minDocuments = minDocuments;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * @param parameterIndices
+	 *            the candidates
+	 * @param documents
+	 *            in the order in which they are added to the subsets
+	 * @param table
+	 *            if not null, every result of every round is written to it
+	 * @return the evaluation of the winning candidate on all documents
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public SweepResult tune(List<Integer> parameterIndices, List<SweepDocument> documents, PrintWriter table)
+			throws UIMAException, IOException {
+		if (parameterIndices.isEmpty() || documents.isEmpty()) {
+			throw new IllegalArgumentException("At least one candidate and one document are required.");
+		}
+		int[] roundSizes = getRoundSizes(parameterIndices.size(), documents.size(), reductionFactor, minDocuments);
+		List<Integer> candidates = new ArrayList<Integer>(parameterIndices);
+		List<SweepResult> results = null;
+		long documentEvaluations = 0;
+		for (int round = 0; round < roundSizes.length; round++) {
+			if (round == 0 || roundSizes[round] != roundSizes[round - 1]) {
+				logger.info("Round " + round + ": evaluating " + candidates.size() + " candidates on "
+						+ roundSizes[round] + " documents...");
+				results = sweep.run(candidates, documents.subList(0, roundSizes[round]), numThreads, null);
+				documentEvaluations += (long) candidates.size() * roundSizes[round];
+			} else {
+				/* the subset has not grown, so the previous round's scores still apply */
+				results = retain(results, candidates);
+			}
+			Collections.sort(results, F1_ORDER);
+			if (table != null) {
+				for (SweepResult result : results) {
+					table.println(round + "\t" + roundSizes[round] + "\t" + result.toTableRow());
+				}
+				table.flush();
+			}
+			int survivors = (candidates.size() + reductionFactor - 1) / reductionFactor;
+			candidates = new ArrayList<Integer>();
+			for (SweepResult result : results.subList(0, survivors)) {
+				candidates.add(result.getParameterIndex());
+			}
+		}
+		SweepResult winner = results.get(0);
+		logger.info("Evaluated " + documentEvaluations + " candidate/document pairs instead of "
+				+ (long) parameterIndices.size() * documents.size() + " for a full sweep.");
+		return winner;
+	}
+
+	private static List<SweepResult> retain(List<SweepResult> results, List<Integer> parameterIndices) {
+		List<SweepResult> retained = new ArrayList<SweepResult>();
+		for (SweepResult result : results) {
+			if (parameterIndices.contains(result.getParameterIndex())) {
+				retained.add(result);
+			}
+		}
+		return retained;
+	}
+
+	/**
+	 * @param numCandidates
+	 * @param numDocuments
+	 * @param reductionFactor
+	 * @param minDocuments
+	 * @return the number of documents used in each round; the last round, which has a single
+	 *         candidate, uses all documents
+	 */
+	static int[] getRoundSizes(int numCandidates, int numDocuments, int reductionFactor, int minDocuments) {
+		int rounds = 1;
+		for (int candidates = numCandidates; candidates > 1; candidates = (candidates + reductionFactor - 1)
+				/ reductionFactor) {
+			rounds++;
+		}
+		int[] roundSizes = new int[rounds];
+		int size = numDocuments;
+		for (int round = rounds - 1; round >= 0; round--) {
+			roundSizes[round] = Math.min(numDocuments, Math.max(minDocuments, size));
+			size = (size + reductionFactor - 1) / reductionFactor;
+		}
+		return roundSizes;
+	}
+
+	/**
+	 * Tunes the ConceptMapper parameters for an ontology; the options are described in
+	 * {@link ParameterTunerCmdOpts}
+	 * 
+	 * @param args
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws UIMAException, IOException {
+		ParameterTunerCmdOpts options = new ParameterTunerCmdOpts();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+			options.validate();
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		List<SweepDocument> documents = ParameterSweep.loadDocuments(tsd, options.getInputDirectory(),
+				options.getGoldDirectory(), options.getSentenceSplitter(), options.getSentenceCacheDirectory());
+		Collections.shuffle(documents, new Random(options.getSeed()));
+		ParameterSweep sweep = new ParameterSweep(tsd, options.getDictionaryNamespace(), options.getOboFile(),
+				options.getDictionaryDirectory(), options.cleanDictionaryFile());
+		ParameterTuner tuner = new ParameterTuner(sweep, options.getReductionFactor(), options.getMinDocuments(),
+				options.getNumThreads());
+		PrintWriter table = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.getOutputFile()),
+				Charset.forName("UTF-8")));
+		try {
+			table.println(TABLE_HEADER);
+			SweepResult winner = tuner.tune(options.getParameterIndices(), documents, table);
+			System.out.println("Best parameter combination: " + winner.getParameterIndex() + " (F1 "
+					+ String.format("%.4f", winner.getF1()) + " on " + documents.size() + " documents)");
+		} finally {
+			table.close();
+		}
+	}
+
+}
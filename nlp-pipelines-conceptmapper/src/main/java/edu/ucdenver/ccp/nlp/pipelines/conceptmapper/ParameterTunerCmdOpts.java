@@ -0,0 +1,82 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Command line options for the {@link ParameterTuner}; in addition to the options of the
+ * {@link ParameterSweep}, these control how quickly candidates are eliminated
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterTunerCmdOpts extends ParameterSweepCmdOpts {
+
+	@Option(name = "-eta", usage = "the reduction factor: each round keeps the best 1/eta of the candidates and evaluates them on eta times as many documents (default 2)")
+	private int reductionFactor = ParameterTuner.DEFAULT_REDUCTION_FACTOR;
+
+	@Option(name = "-minDocuments", usage = "the minimum number of documents used in a round (default "
+			+ ParameterTuner.DEFAULT_MIN_DOCUMENTS + ")")
+	private int minDocuments = ParameterTuner.DEFAULT_MIN_DOCUMENTS;
+
+	@Option(name = "-seed", usage = "the seed used to shuffle the documents before they are divided into subsets")
+	private long seed = 0;
+
+	@Override
+	public void validate() throws CmdLineException {
+		super.validate();
+		if (reductionFactor < 2) {
+			throw new CmdLineException("The reduction factor must be at least 2: " + reductionFactor);
+		}
+		if (minDocuments < 1) {
+			throw new CmdLineException("The minimum number of documents must be positive: " + minDocuments);
+		}
+	}
+
+	public int getReductionFactor() {
+		return reductionFactor;
+	}
+
+	public int getMinDocuments() {
+		return minDocuments;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+}
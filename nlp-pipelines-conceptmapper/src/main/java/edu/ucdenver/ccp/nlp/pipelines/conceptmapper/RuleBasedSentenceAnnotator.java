@@ -0,0 +1,239 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.token.type.Sentence;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * Splits the document text into {@link Sentence} annotations using simple rules and a single pass
+ * over the text, without a statistical model. Depending on the {@link SentenceSplitter}, sentences
+ * are:
+ * <ul>
+ * <li>{@link SentenceSplitter#RULE_BASED}: ended by a blank line, or by '.', '!' or '?' (optionally
+ * followed by closing brackets or quotes) followed by whitespace and an upper case letter, a digit
+ * or an opening bracket or quote. A period does not end a sentence after a common abbreviation of
+ * scientific writing (e.g. "e.g.", "et al.", "Fig.") or a single capital letter (e.g. "E. coli").</li>
+ * <li>{@link SentenceSplitter#LINE}: the non-blank lines</li>
+ * <li>{@link SentenceSplitter#PARAGRAPH}: the blocks of text between blank lines</li>
+ * </ul>
+ * Sentences do not include leading or trailing whitespace.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class RuleBasedSentenceAnnotator extends JCasAnnotator_ImplBase {
+
+	/**
+	 * lower case abbreviations, without their final period, after which a period does not end a
+	 * sentence
+	 */
+	private static final Set<String> ABBREVIATIONS = new HashSet<String>(Arrays.asList("al", "approx", "ca", "cf",
+			"co", "corp", "dr", "e.g", "eq", "eqs", "etc", "fig", "figs", "i.e", "inc", "jr", "ltd", "mr", "mrs",
+			"ms", "no", "nos", "prof", "ref", "refs", "sp", "spp", "sr", "st", "suppl", "viz", "vol", "vs"));
+
+	public static final String PARAM_SPLITTER = ConfigurationParameterFactory.createConfigurationParameterName(
+			RuleBasedSentenceAnnotator.class, "splitter");
+	@ConfigurationParameter(description = "the name of the SentenceSplitter: RULE_BASED, LINE or PARAGRAPH", mandatory = false, defaultValue = "RULE_BASED")
+	private String splitter;
+
+	private SentenceSplitter sentenceSplitter;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		try {
+			sentenceSplitter = SentenceSplitter.valueOf(splitter);
+		} catch (IllegalArgumentException e) {
+			throw new ResourceInitializationException(e);
+		}
+		if (sentenceSplitter == SentenceSplitter.OPENNLP) {
+			throw new ResourceInitializationException(new IllegalArgumentException(
+					"The OpenNLP splitter is provided by " + SharedModelSentenceAnnotator.class.getSimpleName()));
+		}
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		List<int[]> spans = getSentenceSpans(jcas.getDocumentText(), sentenceSplitter);
+		for (int[] span : spans) {
+			new Sentence(jcas, span[0], span[1]).addToIndexes();
+		}
+	}
+
+	/**
+	 * @param text
+	 * @param splitter
+	 *            {@link SentenceSplitter#RULE_BASED}, {@link SentenceSplitter#LINE} or
+	 *            {@link SentenceSplitter#PARAGRAPH}
+	 * @return the begin and end offsets of the sentences of the text, in order
+	 */
+	static List<int[]> getSentenceSpans(String text, SentenceSplitter splitter) {
+		List<int[]> spans = new ArrayList<int[]>();
+		int length = text.length();
+		int begin = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			int end = -1;
+			if (c == '\n') {
+				if (splitter == SentenceSplitter.LINE || isBlankLineEnd(text, i)) {
+					end = i;
+				}
+			} else if (splitter == SentenceSplitter.RULE_BASED && (c == '.' || c == '!' || c == '?')) {
+				end = getSentenceEnd(text, i);
+			}
+			if (end >= 0) {
+				addSpan(text, begin, end, spans);
+				begin = end;
+			}
+		}
+		addSpan(text, begin, length, spans);
+		return spans;
+	}
+
+	/**
+	 * @return true if the newline at the offset ends a blank line, i.e. is preceded, ignoring other
+	 *         whitespace, by another newline
+	 */
+	private static boolean isBlankLineEnd(String text, int newline) {
+		for (int i = newline - 1; i >= 0 && Character.isWhitespace(text.charAt(i)); i--) {
+			if (text.charAt(i) == '\n') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param terminal
+	 *            the offset of a '.', '!' or '?'
+	 * @return the end of the sentence ended by the terminal punctuation, or -1 if it does not end a
+	 *         sentence
+	 */
+	private static int getSentenceEnd(String text, int terminal) {
+		int length = text.length();
+		int end = terminal + 1;
+		while (end < length && isClosing(text.charAt(end))) {
+			end++;
+		}
+		int next = end;
+		while (next < length && Character.isWhitespace(text.charAt(next))) {
+			next++;
+		}
+		if (next == end || next == length) {
+			/* not followed by whitespace, e.g. 3.5 or E2f3a.b, or at the end of the text */
+			return -1;
+		}
+		char first = text.charAt(next);
+		if (!Character.isUpperCase(first) && !Character.isDigit(first) && !isOpening(first)) {
+			return -1;
+		}
+		if (text.charAt(terminal) == '.' && isAbbreviation(text, terminal)) {
+			return -1;
+		}
+		return end;
+	}
+
+	/**
+	 * @return true if the word ending at the period is a known abbreviation or a single capital
+	 *         letter
+	 */
+	private static boolean isAbbreviation(String text, int period) {
+		int wordBegin = period;
+		while (wordBegin > 0 && !Character.isWhitespace(text.charAt(wordBegin - 1))
+				&& !isOpening(text.charAt(wordBegin - 1))) {
+			wordBegin--;
+		}
+		int wordLength = period - wordBegin;
+		if (wordLength == 1 && Character.isUpperCase(text.charAt(wordBegin))) {
+			return true;
+		}
+		return wordLength > 0 && wordLength <= 6
+				&& ABBREVIATIONS.contains(text.substring(wordBegin, period).toLowerCase());
+	}
+
+	private static boolean isClosing(char c) {
+		return c == ')' || c == ']' || c == '"' || c == '\'' || c == '\u2019' || c == '\u201D';
+	}
+
+	private static boolean isOpening(char c) {
+		return c == '(' || c == '[' || c == '"' || c == '\'' || c == '\u2018' || c == '\u201C';
+	}
+
+	/**
+	 * adds the span from begin to end, without leading and trailing whitespace, if it is not empty
+	 */
+	static void addSpan(String text, int begin, int end, List<int[]> spans) {
+		while (begin < end && Character.isWhitespace(text.charAt(begin))) {
+			begin++;
+		}
+		while (end > begin && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		if (begin < end) {
+			spans.add(new int[] { begin, end });
+		}
+	}
+
+	/**
+	 * @param tsd
+	 * @param splitter
+	 *            {@link SentenceSplitter#RULE_BASED}, {@link SentenceSplitter#LINE} or
+	 *            {@link SentenceSplitter#PARAGRAPH}
+	 * @return a description of a rule-based sentence annotator
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			SentenceSplitter splitter) throws ResourceInitializationException {
+		return AnalysisEngineFactory.createPrimitiveDescription(RuleBasedSentenceAnnotator.class, tsd,
+				PARAM_SPLITTER, splitter.name());
+	}
+
+}
@@ -0,0 +1,102 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.token.type.Sentence;
+
+/**
+ * The ways in which documents can be split into the {@link Sentence} annotations that ConceptMapper
+ * looks for concepts within. ConceptMapper only needs span boundaries that concepts do not cross,
+ * so the faster splitters are often good enough.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public enum SentenceSplitter {
+	/**
+	 * the OpenNLP sentence detector with the default English model, see
+	 * {@link SharedModelSentenceAnnotator}
+	 */
+	OPENNLP,
+	/**
+	 * a rule-based splitter for biomedical text, see {@link RuleBasedSentenceAnnotator}
+	 */
+	RULE_BASED,
+	/**
+	 * each non-blank line is a sentence
+	 */
+	LINE,
+	/**
+	 * each block of text between blank lines is a sentence
+	 */
+	PARAGRAPH;
+
+	/**
+	 * @param tsd
+	 * @return a description of an AE that adds {@link Sentence} annotations using this splitter
+	 * @throws ResourceInitializationException
+	 */
+	public AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd)
+			throws ResourceInitializationException {
+		if (this == OPENNLP) {
+			return SharedModelSentenceAnnotator.createAnalysisEngineDescription(tsd,
+					SharedModelSentenceAnnotator.DEFAULT_SENTENCE_MODEL_PATH);
+		}
+		return RuleBasedSentenceAnnotator.createAnalysisEngineDescription(tsd, this);
+	}
+
+	/**
+	 * @param tsd
+	 * @param cacheDirectory
+	 *            if not null, the sentence offsets of each document text are cached in this
+	 *            directory and reused when the same text is processed again, see
+	 *            {@link CachingSentenceAnnotator}
+	 * @return a description of an AE that adds {@link Sentence} annotations using this splitter
+	 * @throws ResourceInitializationException
+	 */
+	public AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd, File cacheDirectory)
+			throws ResourceInitializationException {
+		if (cacheDirectory == null) {
+			return createAnalysisEngineDescription(tsd);
+		}
+		return CachingSentenceAnnotator.createAnalysisEngineDescription(tsd, this, cacheDirectory);
+	}
+
+}
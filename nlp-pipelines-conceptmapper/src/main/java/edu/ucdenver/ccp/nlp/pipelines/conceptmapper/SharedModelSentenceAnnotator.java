@@ -0,0 +1,195 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.token.type.Sentence;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * An OpenNLP sentence detector that loads each sentence model only once per JVM. The
+ * {@link SentenceModel} is immutable and is shared by every instance of this annotator that
+ * references the same model path; only the (cheap, non-thread-safe) {@link SentenceDetectorME} is
+ * created per instance. This keeps memory flat when many pipeline replicas are run concurrently.
+ * Sentences are added as cleartk {@link Sentence} annotations and are split as the cleartk
+ * SentenceAnnotator splits them, see {@link #getSentenceSpans(String, SentenceDetectorME)}.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class SharedModelSentenceAnnotator extends JCasAnnotator_ImplBase {
+
+	private static final Logger logger = Logger.getLogger(SharedModelSentenceAnnotator.class);
+
+	/**
+	 * the default OpenNLP sentence model, loaded from the classpath
+	 */
+	public static final String DEFAULT_SENTENCE_MODEL_PATH = "/models/en-sent.bin";
+
+	/**
+	 * sentence models loaded so far, keyed by model path
+	 */
+	private static final ConcurrentMap<String, SentenceModel> MODEL_CACHE = new ConcurrentHashMap<String, SentenceModel>();
+
+	public static final String PARAM_SENTENCE_MODEL_PATH = ConfigurationParameterFactory
+			.createConfigurationParameterName(SharedModelSentenceAnnotator.class, "sentenceModelPath");
+	@ConfigurationParameter(description = "classpath resource or file path of the OpenNLP sentence model", mandatory = false, defaultValue = DEFAULT_SENTENCE_MODEL_PATH)
+	private String sentenceModelPath;
+
+	private SentenceDetectorME sentenceDetector;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		try {
+			sentenceDetector = new SentenceDetectorME(getSentenceModel(sentenceModelPath));
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		for (int[] span : getSentenceSpans(jcas.getDocumentText(), sentenceDetector)) {
+			new Sentence(jcas, span[0], span[1]).addToIndexes();
+		}
+	}
+
+	/**
+	 * Splits the text as the cleartk SentenceAnnotator does: the text is first split into
+	 * paragraphs at blank lines, the sentence detector is run on each paragraph, and leading and
+	 * trailing whitespace is removed from each sentence, dropping any that are then empty. Run on
+	 * the whole text, the detector lets a sentence continue across a blank line, e.g. from a title
+	 * into the first sentence of an abstract.
+	 * 
+	 * @param text
+	 * @param sentenceDetector
+	 * @return the begin and end offsets of the sentences of the text, in order
+	 */
+	static List<int[]> getSentenceSpans(String text, SentenceDetectorME sentenceDetector) {
+		List<int[]> spans = new ArrayList<int[]>();
+		for (int[] paragraph : RuleBasedSentenceAnnotator.getSentenceSpans(text, SentenceSplitter.PARAGRAPH)) {
+			for (Span span : sentenceDetector.sentPosDetect(text.substring(paragraph[0], paragraph[1]))) {
+				RuleBasedSentenceAnnotator.addSpan(text, paragraph[0] + span.getStart(), paragraph[0] + span.getEnd(),
+						spans);
+			}
+		}
+		return spans;
+	}
+
+	/**
+	 * @param modelPath
+	 *            a classpath resource or a file path
+	 * @return the {@link SentenceModel} for the specified path, loading it if this is the first
+	 *         request for it in this JVM
+	 * @throws IOException
+	 */
+	static SentenceModel getSentenceModel(String modelPath) throws IOException {
+		SentenceModel model = MODEL_CACHE.get(modelPath);
+		if (model == null) {
+			synchronized (MODEL_CACHE) {
+				model = MODEL_CACHE.get(modelPath);
+				if (model == null) {
+					logger.info("Loading sentence model: " + modelPath);
+					model = loadSentenceModel(modelPath);
+					MODEL_CACHE.put(modelPath, model);
+				}
+			}
+		}
+		return model;
+	}
+
+	private static SentenceModel loadSentenceModel(String modelPath) throws IOException {
+		InputStream modelStream = SharedModelSentenceAnnotator.class.getResourceAsStream(modelPath);
+		if (modelStream == null) {
+			File modelFile = new File(modelPath);
+			if (!modelFile.exists()) {
+				throw new IOException("Unable to find sentence model on the classpath or file system: " + modelPath);
+			}
+			modelStream = new FileInputStream(modelFile);
+		}
+		try {
+			return new SentenceModel(modelStream);
+		} finally {
+			modelStream.close();
+		}
+	}
+
+	/**
+	 * @param tsd
+	 * @return a description of a sentence detector that uses the default OpenNLP sentence model
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd)
+			throws ResourceInitializationException {
+		return createAnalysisEngineDescription(tsd, DEFAULT_SENTENCE_MODEL_PATH);
+	}
+
+	/**
+	 * @param tsd
+	 * @param sentenceModelPath
+	 *            classpath resource or file path of the OpenNLP sentence model
+	 * @return a sentence detector {@link AnalysisEngineDescription}
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			String sentenceModelPath) throws ResourceInitializationException {
+		return AnalysisEngineFactory.createPrimitiveDescription(SharedModelSentenceAnnotator.class, tsd,
+				PARAM_SENTENCE_MODEL_PATH, sentenceModelPath);
+	}
+
+}
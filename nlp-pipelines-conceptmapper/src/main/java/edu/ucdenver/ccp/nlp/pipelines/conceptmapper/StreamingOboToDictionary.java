@@ -0,0 +1,305 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil;
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.dictionary.obo.OboToDictionary;
+
+/**
+ * Builds a ConceptMapper dictionary directly from an OBO file by streaming through its
+ * <code>[Term]</code> stanzas, without loading the ontology into an {@link OntologyUtil}. Only the
+ * current stanza is held in memory, so building a dictionary for even the largest ontologies (PR,
+ * NCBI Taxonomy) needs a small, constant amount of heap.
+ * <p>
+ * The entries written are equivalent to those written by {@link OboToDictionary}: one
+ * <code>token</code> per non-obsolete term, identified by its OBO PURL, with the term name as the
+ * canonical form and the name plus the synonyms selected by the {@link SynonymType} as variants.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class StreamingOboToDictionary {
+
+	private static final Logger logger = Logger.getLogger(StreamingOboToDictionary.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * the IRI prefix used for OBO identifiers when an OBO file is loaded as OWL
+	 */
+	public static final String OBO_PURL = "http://purl.obolibrary.org/obo/";
+
+	/**
+	 * @param ontologyFile
+	 * @return true if the file is in OBO format (optionally gzipped) and can therefore be processed
+	 *         by this class
+	 */
+	public static boolean isOboFile(File ontologyFile) {
+		String name = ontologyFile.getName().toLowerCase();
+		return name.endsWith(".obo") || name.endsWith(".obo.gz");
+	}
+
+	/**
+	 * @param oboFile
+	 * @param dictionaryFile
+	 * @param namespacesToInclude
+	 *            if not null, only terms in one of these OBO namespaces are written
+	 * @param synonymType
+	 *            the synonym scope(s) to include as variants
+	 * @return the number of dictionary entries written
+	 * @throws IOException
+	 */
+	public static int buildDictionary(File oboFile, File dictionaryFile, Set<String> namespacesToInclude,
+			SynonymType synonymType) throws IOException {
+		long time = System.currentTimeMillis();
+		InputStream is = new FileInputStream(oboFile);
+		if (oboFile.getName().toLowerCase().endsWith(".gz")) {
+			is = new GZIPInputStream(is);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is, UTF_8));
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dictionaryFile), UTF_8));
+		int entryCount = 0;
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<synonym>\n");
+			Stanza stanza = null;
+			String ontologyName = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.startsWith("[")) {
+					entryCount += writeEntry(stanza, ontologyName, namespacesToInclude, writer);
+					stanza = line.equals("[Term]") ? new Stanza(synonymType) : null;
+				} else if (stanza != null) {
+					stanza.addTagValue(line);
+				} else if (ontologyName == null && line.startsWith("ontology:")) {
+					ontologyName = line.substring("ontology:".length()).trim();
+				}
+			}
+			entryCount += writeEntry(stanza, ontologyName, namespacesToInclude, writer);
+			writer.write("</synonym>\n");
+		} finally {
+			writer.close();
+			reader.close();
+		}
+		logger.info("Wrote " + entryCount + " dictionary entries from " + oboFile + " in "
+				+ (System.currentTimeMillis() - time) + "ms");
+		return entryCount;
+	}
+
+	/**
+	 * @return 1 if an entry was written for the stanza, 0 otherwise
+	 */
+	private static int writeEntry(Stanza stanza, String ontologyName, Set<String> namespacesToInclude, Writer writer)
+			throws IOException {
+		if (stanza == null || stanza.id == null || stanza.name == null || stanza.obsolete) {
+			return 0;
+		}
+		if (namespacesToInclude != null && !namespacesToInclude.contains(stanza.namespace)) {
+			return 0;
+		}
+		writer.write("<token id=\"" + escapeXml(toIri(stanza.id, ontologyName)) + "\" canonical=\""
+				+ escapeXml(stanza.name) + "\">\n");
+		writer.write("<variant base=\"" + escapeXml(stanza.name) + "\"/>\n");
+		for (String synonym : stanza.synonyms) {
+			writer.write("<variant base=\"" + escapeXml(synonym) + "\"/>\n");
+		}
+		writer.write("</token>\n");
+		return 1;
+	}
+
+	/**
+	 * @param oboId
+	 * @param ontologyName
+	 * @return the IRI assigned to the OBO identifier when the ontology is loaded as OWL, e.g.
+	 *         CL:0000000 becomes http://purl.obolibrary.org/obo/CL_0000000
+	 */
+	static String toIri(String oboId, String ontologyName) {
+		int colon = oboId.indexOf(':');
+		if (oboId.startsWith("http://") || oboId.startsWith("https://")) {
+			return oboId;
+		}
+		if (colon > 0 && oboId.indexOf(':', colon + 1) < 0) {
+			return OBO_PURL + oboId.substring(0, colon) + "_" + oboId.substring(colon + 1);
+		}
+		return OBO_PURL + (ontologyName == null ? "" : ontologyName) + "#" + oboId;
+	}
+
+	static String escapeXml(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 16);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			case '\'':
+				sb.append("&apos;");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The tag-values of a single <code>[Term]</code> stanza that are relevant to the dictionary
+	 */
+	private static class Stanza {
+		private final SynonymType synonymType;
+		private String id;
+		private String name;
+		private String namespace;
+		private boolean obsolete = false;
+		private final Set<String> synonyms = new LinkedHashSet<String>();
+
+		public Stanza(SynonymType synonymType) {
+			this.synonymType = synonymType;
+		}
+
+		public void addTagValue(String line) {
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				return;
+			}
+			String tag = line.substring(0, colon);
+			String value = line.substring(colon + 1).trim();
+			if (tag.equals("id")) {
+				id = stripComment(value);
+			} else if (tag.equals("name")) {
+				name = unescape(value);
+			} else if (tag.equals("namespace")) {
+				namespace = stripComment(value);
+			} else if (tag.equals("is_obsolete")) {
+				obsolete = stripComment(value).equals("true");
+			} else if (tag.equals("synonym")) {
+				addSynonym(value);
+			}
+		}
+
+		/**
+		 * Parses a synonym tag-value, e.g. <code>"primary cell culture cell" EXACT []</code>
+		 */
+		private void addSynonym(String value) {
+			if (!value.startsWith("\"")) {
+				return;
+			}
+			StringBuilder text = new StringBuilder();
+			int i = 1;
+			for (; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' && i + 1 < value.length()) {
+					text.append(unescape(value.charAt(++i)));
+				} else if (c == '"') {
+					break;
+				} else {
+					text.append(c);
+				}
+			}
+			String remainder = value.substring(Math.min(i + 1, value.length())).trim();
+			int space = remainder.indexOf(' ');
+			String scope = (space < 0) ? remainder : remainder.substring(0, space);
+			/* OBO 1.0 files may omit the scope, in which case it is RELATED */
+			if (scope.isEmpty() || scope.startsWith("[")) {
+				scope = "RELATED";
+			}
+			if (synonymType.equals(SynonymType.ALL) || scope.equals(synonymType.name())) {
+				synonyms.add(text.toString());
+			}
+		}
+
+		private static String stripComment(String value) {
+			int bang = value.indexOf(" !");
+			return (bang < 0) ? value : value.substring(0, bang).trim();
+		}
+
+		private static String unescape(String value) {
+			if (value.indexOf('\\') < 0) {
+				return value;
+			}
+			StringBuilder sb = new StringBuilder(value.length());
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' && i + 1 < value.length()) {
+					sb.append(unescape(value.charAt(++i)));
+				} else {
+					sb.append(c);
+				}
+			}
+			return sb.toString();
+		}
+
+		private static char unescape(char escaped) {
+			switch (escaped) {
+			case 'n':
+				return '\n';
+			case 't':
+				return '\t';
+			case 'W':
+				return ' ';
+			default:
+				return escaped;
+			}
+		}
+	}
+
+}
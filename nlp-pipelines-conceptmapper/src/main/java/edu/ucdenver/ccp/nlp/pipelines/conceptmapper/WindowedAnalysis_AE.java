@@ -0,0 +1,197 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.UimaContextAdmin;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+import org.uimafit.util.JCasUtil;
+import org.xml.sax.SAXException;
+
+import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentWindower;
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentWindower.TextWindow;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Annotation_Util;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+/**
+ * Runs a delegate analysis over a document one window at a time (see {@link DocumentWindower})
+ * and adds the concept annotations it finds to the document's CAS, with their offsets rebased to
+ * document offsets. Annotations found in the overlap of two windows are added once. Each window
+ * is analyzed in a small CAS that is reset between windows, so the tokens, sentences and other
+ * intermediate annotations of a very large document are never all in memory at once; the
+ * document's CAS holds only its text and its concept annotations.
+ * <p>
+ * The delegate is expected to find concepts within sentences (as ConceptMapper does), so that,
+ * since windows end at sentence boundaries, the merged annotations equal those found by running
+ * the delegate over the whole document. The delegate shares the resource manager of this
+ * annotator, so dictionaries and models are shared with other pipeline replicas.
+ * <p>
+ * Only the mention name and the span of each concept annotation are carried over to the
+ * document's CAS; the annotator, annotation sets and slots set by the delegate are dropped. This
+ * is all the BioNLP (.a1) output uses, but downstream components that rely on the annotator or
+ * the annotation sets should not be run over windowed output.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class WindowedAnalysis_AE extends JCasAnnotator_ImplBase {
+
+	/**
+	 * the default number of characters by which adjacent windows overlap
+	 */
+	public static final int DEFAULT_WINDOW_OVERLAP = 2000;
+
+	public static final String PARAM_DELEGATE_DESCRIPTION = ConfigurationParameterFactory
+			.createConfigurationParameterName(WindowedAnalysis_AE.class, "delegateDescription");
+	@ConfigurationParameter(description = "the XML description of the analysis engine that is run over each window", mandatory = true)
+	private String delegateDescription;
+
+	public static final String PARAM_MAX_WINDOW_SIZE = ConfigurationParameterFactory
+			.createConfigurationParameterName(WindowedAnalysis_AE.class, "maxWindowSize");
+	@ConfigurationParameter(description = "the maximum number of characters in a window", mandatory = true)
+	private int maxWindowSize;
+
+	public static final String PARAM_WINDOW_OVERLAP = ConfigurationParameterFactory.createConfigurationParameterName(
+			WindowedAnalysis_AE.class, "windowOverlap");
+	@ConfigurationParameter(description = "the number of characters by which adjacent windows overlap", mandatory = false, defaultValue = ""
+			+ DEFAULT_WINDOW_OVERLAP)
+	private int windowOverlap;
+
+	private DocumentWindower windower;
+	private AnalysisEngine delegate;
+	private JCas windowJCas;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		try {
+			windower = new DocumentWindower(maxWindowSize, windowOverlap);
+		} catch (IllegalArgumentException e) {
+			throw new ResourceInitializationException(e);
+		}
+		try {
+			AnalysisEngineDescription desc = UIMAFramework.getXMLParser().parseAnalysisEngineDescription(
+					new XMLInputSource(new ByteArrayInputStream(delegateDescription.getBytes("UTF-8")), null));
+			delegate = UIMAFramework.produceAnalysisEngine(desc,
+					((UimaContextAdmin) context).getResourceManager(), null);
+			windowJCas = delegate.newJCas();
+		} catch (InvalidXMLException e) {
+			throw new ResourceInitializationException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		String documentId = UIMA_Util.getDocumentID(jcas);
+		String documentText = jcas.getDocumentText();
+		for (TextWindow window : windower.split(documentText)) {
+			windowJCas.reset();
+			windowJCas.setDocumentText(window.getText(documentText));
+			windowJCas.setDocumentLanguage(jcas.getDocumentLanguage());
+			UIMA_Util.setDocumentID(windowJCas, documentId);
+			delegate.process(windowJCas);
+
+			for (CCPTextAnnotation concept : JCasUtil.select(windowJCas, CCPTextAnnotation.class)) {
+				int begin = window.getBegin() + concept.getBegin();
+				if (window.owns(begin)) {
+					/* only the mention name and span are kept, see the class comment */
+					UIMA_Annotation_Util.createCCPTextAnnotation(concept.getClassMention().getMentionName(), begin,
+							window.getBegin() + concept.getEnd(), jcas);
+				}
+			}
+		}
+		windowJCas.reset();
+	}
+
+	@Override
+	public void destroy() {
+		if (delegate != null) {
+			delegate.destroy();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * @param tsd
+	 * @param delegateDescs
+	 *            the analysis run over each window, in order
+	 * @param maxWindowSize
+	 *            the maximum number of characters in a window
+	 * @param windowOverlap
+	 *            the number of characters by which adjacent windows overlap; must be less than half
+	 *            of the window size
+	 * @return a description of an AE that runs the delegate analysis over each window of a document
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createAnalysisEngineDescription(TypeSystemDescription tsd,
+			List<AnalysisEngineDescription> delegateDescs, int maxWindowSize, int windowOverlap)
+			throws ResourceInitializationException {
+		AnalysisEngineDescription delegateDesc = AnalysisEngineFactory.createAggregateDescription(delegateDescs
+				.toArray(new AnalysisEngineDescription[delegateDescs.size()]));
+		StringWriter xml = new StringWriter();
+		try {
+			delegateDesc.toXML(xml);
+		} catch (SAXException e) {
+			throw new ResourceInitializationException(e);
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+		return AnalysisEngineFactory.createPrimitiveDescription(WindowedAnalysis_AE.class, tsd,
+				PARAM_DELEGATE_DESCRIPTION, xml.toString(), PARAM_MAX_WINDOW_SIZE, maxWindowSize,
+				PARAM_WINDOW_OVERLAP, windowOverlap);
+	}
+
+}
@@ -0,0 +1,150 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the {@link ConceptAnnotator} finds the same concepts as the file-based
+ * {@link EntityFinder}, that it can be used from several threads at once and that closing it does
+ * not disturb the documents being annotated
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ConceptAnnotatorTest {
+
+	private static final String testResourcesDir = "src" + File.separator + "test" + File.separator + "resources";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testAnnotateMatchesEntityFinderOutput() throws Exception {
+		final String text = new String(Files.readAllBytes(new File(testResourcesDir + File.separator
+				+ "testInputTextFile", "17608565.txt").toPath()), Charset.forName("UTF-8"));
+		int expectedAnnotationCount = countTextBoundLines(new File(testResourcesDir, "17608565_CL.a1"));
+
+		int numThreads = 4;
+		final ConceptAnnotator annotator = ConceptAnnotator.create("CL", new File(testResourcesDir + File.separator
+				+ "oboFiles", "cl-basic.obo"), testFolder.newFolder("dict"), numThreads);
+		try {
+			List<ConceptAnnotation> annotations = annotator.annotate(text);
+			assertEquals(expectedAnnotationCount, annotations.size());
+
+			ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+			List<Future<List<ConceptAnnotation>>> futures = new ArrayList<Future<List<ConceptAnnotation>>>();
+			for (int i = 0; i < numThreads * 4; i++) {
+				futures.add(executor.submit(new Callable<List<ConceptAnnotation>>() {
+					@Override
+					public List<ConceptAnnotation> call() throws Exception {
+						return annotator.annotate(text);
+					}
+				}));
+			}
+			for (Future<List<ConceptAnnotation>> future : futures) {
+				assertEquals(annotations, future.get());
+			}
+			executor.shutdown();
+		} finally {
+			annotator.close();
+		}
+	}
+
+	@Test
+	public void testCloseWaitsForDocumentsBeingAnnotated() throws Exception {
+		final String text = new String(Files.readAllBytes(new File(testResourcesDir + File.separator
+				+ "testInputTextFile", "17608565.txt").toPath()), Charset.forName("UTF-8"));
+		int expectedAnnotationCount = countTextBoundLines(new File(testResourcesDir, "17608565_CL.a1"));
+
+		int numThreads = 4;
+		final ConceptAnnotator annotator = ConceptAnnotator.create("CL", new File(testResourcesDir + File.separator
+				+ "oboFiles", "cl-basic.obo"), testFolder.newFolder("dict"), numThreads);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads * 2);
+		List<Future<List<ConceptAnnotation>>> futures = new ArrayList<Future<List<ConceptAnnotation>>>();
+		for (int i = 0; i < numThreads * 8; i++) {
+			futures.add(executor.submit(new Callable<List<ConceptAnnotation>>() {
+				@Override
+				public List<ConceptAnnotation> call() throws Exception {
+					return annotator.annotate(text);
+				}
+			}));
+		}
+		annotator.close();
+		assertTrue(annotator.isClosed());
+		/* each document is either annotated completely or refused, never cut short */
+		for (Future<List<ConceptAnnotation>> future : futures) {
+			try {
+				assertEquals(expectedAnnotationCount, future.get().size());
+			} catch (ExecutionException e) {
+				assertEquals(IllegalStateException.class, e.getCause().getClass());
+			}
+		}
+		executor.shutdown();
+	}
+
+	private static int countTextBoundLines(File a1File) throws IOException {
+		int count = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(a1File));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("T")) {
+				count++;
+			}
+		}
+		reader.close();
+		return count;
+	}
+
+}
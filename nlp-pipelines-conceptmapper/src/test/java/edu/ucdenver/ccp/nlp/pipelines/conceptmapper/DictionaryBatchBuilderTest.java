@@ -0,0 +1,203 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.DictionaryBatchBuilder.BuildResult;
+
+/**
+ * Checks the scheduling of concurrent dictionary builds: builds that read the same source, large
+ * ontologies and builds that do not fit in the memory budget together are never run at the same
+ * time. The builds themselves are replaced by ones that only record how many are running.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DictionaryBatchBuilderTest {
+
+	private static final long BUILD_MILLIS = 100;
+
+	@Test
+	public void testBuildsSharingASourceAreSerialized() throws InterruptedException {
+		RecordingBuilder builder = new RecordingBuilder(5, 100 * 1024);
+		List<BuildResult> results = builder.buildDictionaries(EnumSet.of(DictionaryNamespace.GO_CC,
+				DictionaryNamespace.GO_BP, DictionaryNamespace.GO_MF, DictionaryNamespace.CL, DictionaryNamespace.SO),
+				Collections.<DictionaryNamespace, File> emptyMap());
+		assertAllSucceeded(results, 5);
+		/* the three GO builds all download go.obo */
+		assertEquals(1, builder.maxRunningPerSource);
+		/* builds of other sources still run alongside them */
+		assertTrue(builder.maxRunning > 1);
+	}
+
+	@Test
+	public void testWaitingBuildsDoNotHoldThreads() throws InterruptedException {
+		RecordingBuilder builder = new RecordingBuilder(2, 100 * 1024);
+		List<BuildResult> results = builder.buildDictionaries(EnumSet.of(DictionaryNamespace.GO_CC,
+				DictionaryNamespace.GO_MF, DictionaryNamespace.GO_BP, DictionaryNamespace.CL), Collections
+				.<DictionaryNamespace, File> emptyMap());
+		assertAllSucceeded(results, 4);
+		assertEquals(1, builder.maxRunningPerSource);
+		/* CL is not kept waiting for a thread by the GO builds that are waiting for go.obo */
+		assertTrue(builder.started.toString(), builder.started.indexOf(DictionaryNamespace.CL) < 2);
+		assertEquals(2, builder.maxRunning);
+		/* the results are in the order in which the namespaces were specified */
+		assertEquals(DictionaryNamespace.GO_CC, results.get(0).getNamespace());
+		assertEquals(DictionaryNamespace.CL, results.get(3).getNamespace());
+	}
+
+	@Test
+	public void testLargeOntologiesAreNotLoadedTogether() throws InterruptedException {
+		RecordingBuilder builder = new RecordingBuilder(3, 100 * 1024);
+		List<BuildResult> results = builder.buildDictionaries(EnumSet.of(DictionaryNamespace.PR,
+				DictionaryNamespace.NCBI_TAXON, DictionaryNamespace.EG), Collections
+				.<DictionaryNamespace, File> emptyMap());
+		assertAllSucceeded(results, 3);
+		assertEquals(1, builder.maxRunning);
+	}
+
+	@Test
+	public void testStreamedLargeOntologiesAreBuiltTogether() throws InterruptedException {
+		Map<DictionaryNamespace, File> ontologyFiles = new HashMap<DictionaryNamespace, File>();
+		ontologyFiles.put(DictionaryNamespace.PR, new File("pro.obo"));
+		ontologyFiles.put(DictionaryNamespace.NCBI_TAXON, new File("ncbitaxon.obo.gz"));
+		RecordingBuilder builder = new RecordingBuilder(2, 1024);
+		List<BuildResult> results = builder.buildDictionaries(
+				EnumSet.of(DictionaryNamespace.PR, DictionaryNamespace.NCBI_TAXON), ontologyFiles);
+		assertAllSucceeded(results, 2);
+		assertEquals(2, builder.maxRunning);
+	}
+
+	@Test
+	public void testMemoryBudgetLimitsConcurrentBuilds() throws InterruptedException {
+		Map<DictionaryNamespace, File> ontologyFiles = new HashMap<DictionaryNamespace, File>();
+		ontologyFiles.put(DictionaryNamespace.CL, new File("cl.obo"));
+		ontologyFiles.put(DictionaryNamespace.SO, new File("so.obo"));
+		ontologyFiles.put(DictionaryNamespace.CHEBI, new File("chebi.obo"));
+		ontologyFiles.put(DictionaryNamespace.OBO, new File("doid.obo"));
+		/* room for two streamed builds at a time */
+		RecordingBuilder builder = new RecordingBuilder(4, 2 * DictionaryBatchBuilder.STREAMED_BUILD_MEMORY_MB);
+		List<BuildResult> results = builder.buildDictionaries(EnumSet.of(DictionaryNamespace.CL,
+				DictionaryNamespace.SO, DictionaryNamespace.CHEBI, DictionaryNamespace.OBO), ontologyFiles);
+		assertAllSucceeded(results, 4);
+		assertEquals(2, builder.maxRunning);
+	}
+
+	@Test
+	public void testMemoryEstimates() {
+		assertEquals(DictionaryBatchBuilder.STREAMED_BUILD_MEMORY_MB,
+				DictionaryBatchBuilder.estimateMemoryMb(DictionaryNamespace.PR, new File("pro.obo")));
+		/* downloaded sources and OWL files are loaded whole */
+		assertEquals(6 * 1024, DictionaryBatchBuilder.estimateMemoryMb(DictionaryNamespace.PR, null));
+		assertEquals(6 * 1024, DictionaryBatchBuilder.estimateMemoryMb(DictionaryNamespace.PR, new File("pro.owl")));
+		assertTrue(DictionaryBatchBuilder.isLargeBuild(DictionaryNamespace.PR, null));
+		assertFalse(DictionaryBatchBuilder.isLargeBuild(DictionaryNamespace.PR, new File("pro.obo")));
+		/* GO is always built by GoDictionaryFactory, which loads the ontology */
+		assertEquals(1536, DictionaryBatchBuilder.estimateMemoryMb(DictionaryNamespace.GO_CC, new File("go.obo")));
+	}
+
+	@Test
+	public void testSourceKeys() {
+		assertEquals(DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.GO_CC, null),
+				DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.GO_MF, null));
+		assertFalse(DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.CL, null).equals(
+				DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.SO, null)));
+		assertEquals(DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.GO_BP, new File("go.obo")),
+				DictionaryBatchBuilder.getSourceKey(DictionaryNamespace.GO_MF, new File("./go.obo")));
+	}
+
+	private static void assertAllSucceeded(List<BuildResult> results, int expectedCount) {
+		assertEquals(expectedCount, results.size());
+		for (BuildResult result : results) {
+			assertTrue(result.getNamespace().name(), result.isSuccess());
+		}
+	}
+
+	/**
+	 * Replaces each build with a short sleep and records the order in which the builds started and
+	 * the largest number of builds that ran at the same time, overall and for a single source
+	 */
+	private static class RecordingBuilder extends DictionaryBatchBuilder {
+		private final List<DictionaryNamespace> started = new ArrayList<DictionaryNamespace>();
+		private final Map<String, Integer> runningPerSource = new HashMap<String, Integer>();
+		private int running = 0;
+		private int maxRunning = 0;
+		private int maxRunningPerSource = 0;
+
+		public RecordingBuilder(int numThreads, long memoryBudgetMb) {
+			super(new File("dictionaries"), SynonymType.EXACT, false, numThreads, memoryBudgetMb);
+		}
+
+		@Override
+		File buildDictionary(DictionaryNamespace dictNamespace, File ontologyFile) {
+			String sourceKey = getSourceKey(dictNamespace, ontologyFile);
+			synchronized (this) {
+				started.add(dictNamespace);
+				Integer runningForSource = runningPerSource.get(sourceKey);
+				runningForSource = (runningForSource == null) ? 1 : runningForSource + 1;
+				runningPerSource.put(sourceKey, runningForSource);
+				maxRunningPerSource = Math.max(maxRunningPerSource, runningForSource);
+				maxRunning = Math.max(maxRunning, ++running);
+			}
+			try {
+				Thread.sleep(BUILD_MILLIS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				synchronized (this) {
+					runningPerSource.put(sourceKey, runningPerSource.get(sourceKey) - 1);
+					running--;
+				}
+			}
+			return new File(dictNamespace.name() + ".xml");
+		}
+	}
+
+}
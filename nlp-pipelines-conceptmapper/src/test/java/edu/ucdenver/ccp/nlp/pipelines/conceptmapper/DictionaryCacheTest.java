@@ -0,0 +1,232 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DictionaryCacheTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String ONTOLOGY = "format-version: 1.2\n\n[Term]\nid: CL:0000000\nname: cell\n";
+
+	private static final String DICTIONARY = "<synonym>\n</synonym>\n";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testKeyChangesWithContentNamespaceAndSynonymType() throws IOException {
+		File ontologyFile = write(testFolder.newFile("cl.obo"), ONTOLOGY);
+		String key = DictionaryCache.computeKey(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT);
+
+		/* the key depends on the content of the file, not its name or location */
+		File copy = write(new File(testFolder.newFolder("copy"), "cell-ontology.obo"), ONTOLOGY);
+		assertEquals(key, DictionaryCache.computeKey(DictionaryNamespace.CL, copy, SynonymType.EXACT));
+
+		File changed = write(testFolder.newFile("cl-changed.obo"), ONTOLOGY + "synonym: \"cellula\" EXACT []\n");
+		assertFalse(key.equals(DictionaryCache.computeKey(DictionaryNamespace.CL, changed, SynonymType.EXACT)));
+		assertFalse(key.equals(DictionaryCache.computeKey(DictionaryNamespace.OBO, ontologyFile, SynonymType.EXACT)));
+		assertFalse(key.equals(DictionaryCache.computeKey(DictionaryNamespace.CL, ontologyFile, SynonymType.ALL)));
+	}
+
+	@Test
+	public void testDefaultCacheDirectoryIsStable() throws IOException {
+		String previous = System.getProperty(DictionaryCache.CACHE_DIRECTORY_PROPERTY);
+		try {
+			System.clearProperty(DictionaryCache.CACHE_DIRECTORY_PROPERTY);
+			File defaultDirectory = DictionaryCache.getDefaultCacheDirectory();
+			assertEquals(defaultDirectory, DictionaryCache.getDefaultCacheDirectory());
+			assertTrue(defaultDirectory.getAbsolutePath().startsWith(System.getProperty("user.home")));
+
+			File cacheDirectory = testFolder.newFolder("shared-cache");
+			System.setProperty(DictionaryCache.CACHE_DIRECTORY_PROPERTY, cacheDirectory.getAbsolutePath());
+			assertEquals(cacheDirectory, DictionaryCache.getDefaultCacheDirectory());
+		} finally {
+			if (previous == null) {
+				System.clearProperty(DictionaryCache.CACHE_DIRECTORY_PROPERTY);
+			} else {
+				System.setProperty(DictionaryCache.CACHE_DIRECTORY_PROPERTY, previous);
+			}
+		}
+	}
+
+	@Test
+	public void testCachedDictionaryIsReused() throws Exception {
+		File ontologyFile = write(testFolder.newFile("cl.obo"), ONTOLOGY);
+		DictionaryCache cache = new DictionaryCache(testFolder.newFolder("cache"));
+		CountingBuilder builder = new CountingBuilder(0);
+
+		File dictFile = cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT, false, builder);
+		assertTrue(dictFile.getName().startsWith("cmDict-CL-EXACT-"));
+		assertEquals(dictFile, cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT, false,
+				builder));
+		assertEquals(1, builder.buildCount.get());
+
+		/* other inputs get their own dictionary */
+		File allDictFile = cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.ALL, false,
+				builder);
+		assertFalse(dictFile.equals(allDictFile));
+		assertEquals(2, builder.buildCount.get());
+
+		cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT, true, builder);
+		assertEquals(3, builder.buildCount.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsBuildOnce() throws Exception {
+		final File ontologyFile = write(testFolder.newFile("cl.obo"), ONTOLOGY);
+		final File cacheDirectory = testFolder.newFolder("cache");
+		final CountingBuilder builder = new CountingBuilder(200);
+		int numThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<File>> futures = new ArrayList<Future<File>>();
+			for (int i = 0; i < numThreads; i++) {
+				futures.add(executor.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						/* a cache instance per thread, as for separate pipelines */
+						return new DictionaryCache(cacheDirectory).getDictionaryFile(DictionaryNamespace.CL,
+								ontologyFile, SynonymType.EXACT, false, builder);
+					}
+				}));
+			}
+			File dictFile = futures.get(0).get();
+			for (Future<File> future : futures) {
+				assertEquals(dictFile, future.get());
+			}
+			assertEquals(1, builder.buildCount.get());
+			assertEquals(DICTIONARY, new String(Files.readAllBytes(dictFile.toPath()), UTF_8));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDictionaryIsMovedIntoPlaceOnlyWhenComplete() throws Exception {
+		File ontologyFile = write(testFolder.newFile("cl.obo"), ONTOLOGY);
+		final File cacheDirectory = testFolder.newFolder("cache");
+		DictionaryCache cache = new DictionaryCache(cacheDirectory);
+
+		try {
+			cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT, false,
+					new DictionaryCache.DictionaryBuilder() {
+						@Override
+						public void buildDictionary(File oboFile, File dictionaryFile) throws IOException {
+							write(dictionaryFile, "<synonym>\n<token");
+							throw new IOException("build interrupted");
+						}
+					});
+			fail("The build error should be propagated");
+		} catch (IOException e) {
+			/* expected */
+		}
+		/* neither a partial dictionary nor its temporary file is left behind */
+		assertEquals(0, cacheDirectory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return !name.endsWith(".lock");
+			}
+		}).length);
+
+		File dictFile = cache.getDictionaryFile(DictionaryNamespace.CL, ontologyFile, SynonymType.EXACT, false,
+				new CountingBuilder(0) {
+					@Override
+					public void buildDictionary(File oboFile, File dictionaryFile) throws IOException {
+						assertFalse(dictionaryFile.getName().endsWith(".xml"));
+						assertEquals(cacheDirectory, dictionaryFile.getParentFile());
+						super.buildDictionary(oboFile, dictionaryFile);
+					}
+				});
+		assertEquals(DICTIONARY, new String(Files.readAllBytes(dictFile.toPath()), UTF_8));
+	}
+
+	private static File write(File file, String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(UTF_8));
+		return file;
+	}
+
+	/**
+	 * Writes a fixed dictionary, optionally slowly, and counts how often it is called
+	 */
+	private static class CountingBuilder implements DictionaryCache.DictionaryBuilder {
+		private final AtomicInteger buildCount = new AtomicInteger();
+		private final long buildMillis;
+
+		public CountingBuilder(long buildMillis) {
+			this.buildMillis = buildMillis;
+		}
+
+		@Override
+		public void buildDictionary(File oboFile, File dictionaryFile) throws IOException {
+			buildCount.incrementAndGet();
+			try {
+				Thread.sleep(buildMillis);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			write(dictionaryFile, DICTIONARY);
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.JCasFactory;
+
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.nlp.uima.collections.file.FileSystemCollectionReader;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+import edu.ucdenver.ccp.nlp.uima.util.View;
+
+/**
+ * Checks that the {@link DocumentSourceCollectionReader} produces the same documents as the
+ * FileSystemCollectionReader that the {@link EntityFinder} used to read its input with
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentSourceCollectionReaderTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final File INPUT_TEXT_FILE = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "testInputTextFile" + File.separator + "17608565.txt");
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testDocumentsMatchFileSystemCollectionReader() throws UIMAException, IOException {
+		File inputDir = testFolder.newFolder("input");
+		Files.copy(INPUT_TEXT_FILE.toPath(), new File(inputDir, INPUT_TEXT_FILE.getName()).toPath());
+		/* non-ASCII text shows that both readers decode the files the same way */
+		write(new File(inputDir, "10000001.txt"), "Na\u00efve CD4+ T cells and \u03b1-synuclein in \u00b5m-scale neurons.\n");
+		write(new File(inputDir, "20000002.txt"), "Macrophages\r\nand monocytes.\r\n");
+		write(new File(inputDir, "20000002.a1"), "T1\tCL:0000235 0 11\tMacrophages\n");
+
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		CollectionReaderDescription fileSystemReaderDesc = FileSystemCollectionReader.createDescription(tsd,
+				inputDir, false, CharacterEncoding.UTF_8, "en", false, 100000000, 0, View.DEFAULT.viewName(), ".txt");
+		CollectionReaderDescription documentSourceReaderDesc = DocumentSourceCollectionReader.createDescription(tsd,
+				inputDir, ".txt", UTF_8, null);
+
+		Map<String, String> expectedDocuments = readDocuments(tsd, fileSystemReaderDesc);
+		Map<String, String> documents = readDocuments(tsd, documentSourceReaderDesc);
+
+		/* the documents are read in document id order, whatever order the file system lists them in */
+		List<String> expectedIds = new ArrayList<String>(expectedDocuments.keySet());
+		Collections.sort(expectedIds);
+		assertEquals(expectedIds, new ArrayList<String>(documents.keySet()));
+		assertEquals(3, documents.size());
+		for (String documentId : expectedIds) {
+			assertEquals(documentId, expectedDocuments.get(documentId), documents.get(documentId));
+		}
+	}
+
+	/**
+	 * @return the text of each document, by document id, in the order in which they were read
+	 */
+	private static Map<String, String> readDocuments(TypeSystemDescription tsd, CollectionReaderDescription desc)
+			throws UIMAException, IOException {
+		Map<String, String> documents = new LinkedHashMap<String, String>();
+		CollectionReader reader = CollectionReaderFactory.createCollectionReader(desc);
+		JCas jcas = JCasFactory.createJCas(tsd);
+		try {
+			while (reader.hasNext()) {
+				jcas.reset();
+				reader.getNext(jcas.getCas());
+				documents.put(UIMA_Util.getDocumentID(jcas), jcas.getDocumentText());
+			}
+		} finally {
+			reader.close();
+		}
+		return documents;
+	}
+
+	private static void write(File file, String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(UTF_8));
+	}
+
+}
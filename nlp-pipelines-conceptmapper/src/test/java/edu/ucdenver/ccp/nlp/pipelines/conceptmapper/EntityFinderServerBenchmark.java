@@ -0,0 +1,76 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.EntityFinderLoadTestClient.LatencyReport;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Latency benchmark for the {@link EntityFinderServer}: starts an in-process server for the Cell
+ * Ontology test fixture and drives it with the {@link EntityFinderLoadTestClient} at increasing
+ * concurrency. Run manually, e.g. from the IDE; this is not a unit test.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class EntityFinderServerBenchmark {
+
+	private static final String testResourcesDir = "src" + File.separator + "test" + File.separator + "resources";
+
+	public static void main(String[] args) throws Exception {
+		File dictDir = Files.createTempDirectory("cmDict").toFile();
+		int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+		EntityFinderServer server = EntityFinderServer.create(Collections.singletonList("CL"),
+				Collections.singletonList(new File(testResourcesDir + File.separator + "oboFiles", "cl-basic.obo")),
+				dictDir, true, 0, numThreads);
+		server.start();
+		try {
+			String baseUrl = "http://localhost:" + server.getPort();
+			File inputDir = new File(testResourcesDir, "testInputTextFile");
+			for (int concurrency = 1; concurrency <= numThreads; concurrency *= 2) {
+				LatencyReport report = new EntityFinderLoadTestClient(baseUrl, inputDir, concurrency, 2000, 200)
+						.run();
+				System.out.println("concurrency=" + concurrency + " " + report);
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -34,12 +34,26 @@ package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
  * #L%
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.apache.uima.UIMAException;
@@ -50,6 +64,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import edu.ucdenver.ccp.nlp.pipelines.io.AnnotationBatchIndex;
+import edu.ucdenver.ccp.nlp.pipelines.io.AnnotationBatchWriter;
+import edu.ucdenver.ccp.nlp.pipelines.io.CheckpointManifest;
 import edu.ucdenver.ccp.nlp.uima.test.DefaultUIMATestCase;
 import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
 
@@ -98,7 +115,7 @@ public class EntityFinderTest extends DefaultUIMATestCase {
 		
 		File knownAnnotations = new File("src" + File.separator + "test" + File.separator 
 				+ "resources" + File.separator + "17608565_CL.a1");
-		File outputAnnFile = new File(outputDir).listFiles()[0];
+		File outputAnnFile = getAnnotationFile(new File(outputDir));
 		
 		int linesKnown = 0;
 		int linesNew = 0;
@@ -127,7 +144,7 @@ public class EntityFinderTest extends DefaultUIMATestCase {
 		
 		File knownAnnotations = new File("src" + File.separator + "test" + File.separator 
 				+ "resources" + File.separator + "17608565_DOID.a1");
-		File outputAnnFile = new File(outputDir).listFiles()[0];
+		File outputAnnFile = getAnnotationFile(new File(outputDir));
 		
 		int linesKnown = 0;
 		int linesNew = 0;
@@ -141,4 +158,257 @@ public class EntityFinderTest extends DefaultUIMATestCase {
 		assertTrue("Annotation file produced is what is expected", linesKnown == linesNew);
 	}
 	
+	@Test
+	public void testEntityFinderWithMultipleOntologies() throws UIMAException, IOException {
+		String inputTextFileDir = inputTextFiles;
+		File outputDir = testFolder.newFolder("tempOutputDir");
+		String ontologies = "CL,OBO";
+		String oboFiles = oboFilesDir + File.separator + "cl-basic.obo" + "," + oboFilesDir + File.separator
+				+ "doid.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		String cleanDictFile = "true";
+		
+		String [] args = {inputTextFileDir, outputDir.getAbsolutePath(), ontologies, oboFiles, outputDictDir, cleanDictFile};
+		
+		EntityFinder.main(args);
+		
+		int linesKnownCl = countLines(new File("src" + File.separator + "test" + File.separator 
+				+ "resources" + File.separator + "17608565_CL.a1"));
+		int linesKnownDoid = countLines(new File("src" + File.separator + "test" + File.separator 
+				+ "resources" + File.separator + "17608565_DOID.a1"));
+		assertEquals(linesKnownCl, countLines(getAnnotationFile(new File(outputDir, "CL"))));
+		assertEquals(linesKnownDoid, countLines(getAnnotationFile(new File(outputDir, "OBO"))));
+		
+		File combinedOutputDir = testFolder.newFolder("tempCombinedOutputDir");
+		String [] combinedArgs = {"-combined", inputTextFileDir, combinedOutputDir.getAbsolutePath(), ontologies, oboFiles, outputDictDir, "false"};
+		
+		EntityFinder.main(combinedArgs);
+		
+		assertEquals(linesKnownCl + linesKnownDoid, countLines(getAnnotationFile(combinedOutputDir)));
+	}
+	
+	@Test
+	public void testOutputDoesNotDependOnThreadCount() throws UIMAException, IOException {
+		/* copies of the CL fixture, so that the threads have several documents to share */
+		File inputDir = testFolder.newFolder("tempInputDir");
+		File inputFile = new File(inputTextFiles, "17608565.txt");
+		for (int i = 0; i < 8; i++) {
+			Files.copy(inputFile.toPath(), new File(inputDir, "1760856" + i + ".txt").toPath());
+		}
+		String oboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		File singleThreadOutputDir = testFolder.newFolder("tempSingleThreadOutputDir");
+		File multiThreadOutputDir = testFolder.newFolder("tempMultiThreadOutputDir");
+		
+		EntityFinder.main(new String[] {"-threads", "1", inputDir.getAbsolutePath(),
+				singleThreadOutputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"});
+		EntityFinder.main(new String[] {"-threads", "4", inputDir.getAbsolutePath(),
+				multiThreadOutputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"});
+		
+		String[] annotationFileNames = singleThreadOutputDir.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".a1");
+			}
+		});
+		assertEquals(8, annotationFileNames.length);
+		for (String name : annotationFileNames) {
+			assertEquals(name, readFile(new File(singleThreadOutputDir, name)),
+					readFile(new File(multiThreadOutputDir, name)));
+		}
+		/* the threads complete the documents in any order */
+		assertEquals(new HashSet<String>(CheckpointManifest.readEntries(new File(singleThreadOutputDir,
+				CheckpointManifest.DEFAULT_FILE_NAME))), new HashSet<String>(CheckpointManifest.readEntries(new File(
+				multiThreadOutputDir, CheckpointManifest.DEFAULT_FILE_NAME))));
+		assertEquals(new HashSet<String>(Arrays.asList(singleThreadOutputDir.list())), new HashSet<String>(
+				Arrays.asList(multiThreadOutputDir.list())));
+	}
+	
+	@Test
+	public void testRepeatedOntologiesGetTheirOwnOutputDirectories() {
+		List<String> names = EntityFinder.getOutputDirectoryNames(Arrays.asList("CL", "OBO", "OBO"), Arrays.asList(
+				new File("cl-basic.obo"), new File("doid.obo"), new File("so.obo.gz")));
+		assertEquals(Arrays.asList("CL", "OBO-doid", "OBO-so"), names);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSameOntologyFileTwiceIsRejected() throws UIMAException, IOException {
+		String doidOboFile = oboFilesDir + File.separator + "doid.obo";
+		String[] args = {inputTextFiles, testFolder.newFolder("tempOutputDir").getAbsolutePath(), "OBO,OBO",
+				doidOboFile + "," + doidOboFile, testFolder.newFolder("tempDictDir").getAbsolutePath(), "false"};
+		EntityFinder.main(args);
+	}
+	
+	@Test
+	public void testBatchOutputMatchesFilePerDocumentOutput() throws UIMAException, IOException {
+		String oboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		File fileOutputDir = testFolder.newFolder("fileOutputDir");
+		EntityFinder.main(new String[] {inputTextFiles, fileOutputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"});
+		String expected = readFile(getAnnotationFile(fileOutputDir));
+		
+		/* each batch record is byte for byte the file that BionlpFormatPrinter_AE writes for the document */
+		for (String[] flags : new String[][] { { "-batchOutput" }, { "-batchOutput", "-gzip" } }) {
+			File batchOutputDir = testFolder.newFolder("batchOutputDir" + flags.length);
+			List<String> args = new ArrayList<String>(Arrays.asList(flags));
+			args.addAll(Arrays.asList(inputTextFiles, batchOutputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"));
+			EntityFinder.main(args.toArray(new String[args.size()]));
+			
+			AnnotationBatchIndex index = AnnotationBatchIndex.load(batchOutputDir, AnnotationBatchWriter.getBaseName(null));
+			try {
+				assertEquals(Collections.singleton("17608565.txt"), index.getDocumentIds());
+				assertEquals(expected, index.read("17608565.txt"));
+			} finally {
+				index.close();
+			}
+		}
+	}
+	
+	@Test
+	public void testRestartSkipsCompletedDocuments() throws UIMAException, IOException {
+		File outputDir = testFolder.newFolder("tempOutputDir");
+		String oboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		String [] args = {inputTextFiles, outputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"};
+		
+		EntityFinder.main(args);
+		
+		File manifestFile = new File(outputDir, CheckpointManifest.DEFAULT_FILE_NAME);
+		assertEquals(1, countLines(manifestFile));
+		File outputAnnFile = getAnnotationFile(outputDir);
+		assertTrue(outputAnnFile.delete());
+		
+		/* the completed document is skipped, so its output is not recreated */
+		EntityFinder.main(args);
+		
+		assertEquals(1, countLines(manifestFile));
+		assertFalse(outputAnnFile.exists());
+		assertFalse(CheckpointCommit_AE.getStagingDirectory(outputDir).exists());
+	}
+	
+	@Test
+	public void testFreshRerunRegeneratesOutput() throws UIMAException, IOException {
+		File outputDir = testFolder.newFolder("tempOutputDir");
+		String oboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		String [] args = {inputTextFiles, outputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"};
+		
+		EntityFinder.main(args);
+		File outputAnnFile = getAnnotationFile(outputDir);
+		assertTrue(outputAnnFile.delete());
+		
+		EntityFinder.main(new String[] {"-fresh", inputTextFiles, outputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"});
+		
+		assertTrue(outputAnnFile.exists());
+		assertEquals(1, countLines(new File(outputDir, CheckpointManifest.DEFAULT_FILE_NAME)));
+	}
+	
+	@Test
+	public void testRerunWithDifferentOntologyFileIsRefusedUnlessFresh() throws UIMAException, IOException {
+		File outputDir = testFolder.newFolder("tempOutputDir");
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		String clOboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String doidOboFile = oboFilesDir + File.separator + "doid.obo";
+		
+		EntityFinder.main(new String[] {inputTextFiles, outputDir.getAbsolutePath(), "OBO", clOboFile, outputDictDir, "false"});
+		
+		try {
+			EntityFinder.main(new String[] {inputTextFiles, outputDir.getAbsolutePath(), "OBO", doidOboFile, outputDictDir, "false"});
+			fail("Resuming with a different ontology file should be refused");
+		} catch (IOException e) {
+			/* expected: the CL output would otherwise be kept as if it were DOID output */
+		}
+		File manifestFile = new File(outputDir, CheckpointManifest.DEFAULT_FILE_NAME);
+		assertEquals(1, countLines(manifestFile));
+		
+		/* a fresh run replaces the manifest, and can in turn be resumed */
+		String[] doidArgs = {inputTextFiles, outputDir.getAbsolutePath(), "OBO", doidOboFile, outputDictDir, "false"};
+		EntityFinder.main(new String[] {"-fresh", doidArgs[0], doidArgs[1], doidArgs[2], doidArgs[3], doidArgs[4], doidArgs[5]});
+		assertEquals(1, countLines(manifestFile));
+		EntityFinder.main(doidArgs);
+		assertEquals(1, countLines(manifestFile));
+	}
+	
+	@Test
+	public void testBatchesSharingAnOutputDirectoryStageSeparately() throws IOException {
+		File outputDir = testFolder.newFolder("tempOutputDir");
+		File batch0StagingDir = CheckpointCommit_AE.getStagingDirectory(outputDir, 0);
+		File batch1StagingDir = CheckpointCommit_AE.getStagingDirectory(outputDir, 1);
+		assertFalse(batch0StagingDir.equals(batch1StagingDir));
+		
+		CheckpointCommit_AE.prepareStagingDirectories(Collections.singleton(outputDir), 1);
+		File inFlightFile = new File(batch1StagingDir, "12345.a1");
+		assertTrue(inFlightFile.createNewFile());
+		
+		/* batch 0 starting up must not delete batch 1's in-flight output */
+		CheckpointCommit_AE.prepareStagingDirectories(Collections.singleton(outputDir), 0);
+		assertTrue(batch0StagingDir.isDirectory());
+		assertTrue(inFlightFile.exists());
+	}
+	
+	@Test
+	public void testWindowedOutputMatchesWholeDocumentOutput() throws UIMAException, IOException {
+		String oboFile = oboFilesDir + File.separator + "cl-basic.obo";
+		String outputDictDir = testFolder.newFolder("tempDictDir").getAbsolutePath();
+		File wholeOutputDir = testFolder.newFolder("tempWholeOutputDir");
+		File windowedOutputDir = testFolder.newFolder("tempWindowedOutputDir");
+		
+		EntityFinder.main(new String[] {inputTextFiles, wholeOutputDir.getAbsolutePath(), "CL", oboFile,
+				outputDictDir, "false"});
+		/* the 68K character fixture is analyzed in about a dozen windows */
+		EntityFinder.main(new String[] {"-window", "8000", "-windowOverlap", "1000", inputTextFiles,
+				windowedOutputDir.getAbsolutePath(), "CL", oboFile, outputDictDir, "false"});
+		
+		/* the T and N ids depend on annotation order, so the annotations are compared by span and concept id */
+		Set<String> wholeAnnotations = readAnnotations(getAnnotationFile(wholeOutputDir));
+		assertFalse(wholeAnnotations.isEmpty());
+		assertEquals(wholeAnnotations, readAnnotations(getAnnotationFile(windowedOutputDir)));
+		assertEquals(countLines(getAnnotationFile(wholeOutputDir)), countLines(getAnnotationFile(windowedOutputDir)));
+	}
+	
+	/**
+	 * @return the single annotation (.a1) file in the directory
+	 */
+	private static File getAnnotationFile(File directory) {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".a1");
+			}
+		});
+		assertEquals(1, files.length);
+		return files[0];
+	}
+	
+	/**
+	 * @return "begin end conceptId" for each annotation in the BioNLP (.a1) file
+	 */
+	private static Set<String> readAnnotations(File a1File) throws IOException {
+		Map<String, String> spans = new HashMap<String, String>();
+		Set<String> annotations = new HashSet<String>();
+		for (String line : Files.readAllLines(a1File.toPath(), Charset.forName("UTF-8"))) {
+			String[] columns = line.split("\t");
+			if (line.startsWith("T")) {
+				String[] typeAndSpan = columns[1].split(" ");
+				spans.put(columns[0], typeAndSpan[1] + " " + typeAndSpan[2]);
+			} else if (line.startsWith("N")) {
+				String[] reference = columns[1].split(" ");
+				annotations.add(spans.get(reference[1]) + " " + reference[2]);
+			}
+		}
+		return annotations;
+	}
+	
+	private static String readFile(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+	}
+	
+	private static int countLines(File file) throws IOException {
+		int lines = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		while(reader.readLine() != null) lines++;
+		reader.close();
+		return lines;
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource.DictEntriesByLength;
+import org.apache.uima.conceptMapper.support.dictionaryResource.DictionaryResource.DictEntry;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.FileResourceSpecifier;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.resource.metadata.Import;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.XMLInputSource;
+import org.apache.uima.util.XMLParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+/**
+ * Runs ConceptMapper with its XML dictionary and with the same dictionary through
+ * {@link MappedDictionaryResource} and checks that both find the same concepts.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MappedDictionaryResourceTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String DICT_TERM_TYPE = "org.apache.uima.conceptMapper.DictTerm";
+
+	/* @formatter:off */
+	private static final String DICTIONARY = 
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+			"<synonym>\n" +
+			"<token canonical=\"CL:0000000\">\n" +
+			"<variant base=\"cell\"/>\n" +
+			"<variant base=\"cellula\"/>\n" +
+			"</token>\n" +
+			"<token canonical=\"CL:0000084\">\n" +
+			"<variant base=\"T cell\"/>\n" +
+			"<variant base=\"T-lymphocyte\"/>\n" +
+			"<variant base=\"T lymphocyte\"/>\n" +
+			"</token>\n" +
+			"<token canonical=\"CL:0000236\">\n" +
+			"<variant base=\"B cell\"/>\n" +
+			"</token>\n" +
+			"<token canonical=\"CL:0000034\">\n" +
+			"<variant base=\"Stem Cell\"/>\n" +
+			"</token>\n" +
+			"<token canonical=\"CL:0000789\">\n" +
+			"<variant base=\"\u03b1\u03b2 T cell\"/>\n" +
+			"</token>\n" +
+			"</synonym>\n";
+	/* @formatter:on */
+
+	private static final String TEXT = "A stem cell is not a T cell, although T-lymphocytes, B cells and "
+			+ "\u03b1\u03b2 T cells are; Cell biology studies the cellula.";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testMappedDictionaryFindsTheSameConcepts() throws Exception {
+		File dictionaryFile = writeDictionary();
+		for (String caseMatch : Arrays.asList("ignoreall", "sensitive")) {
+			List<String> expected = findConcepts(dictionaryFile, caseMatch, false);
+			assertFalse(expected.isEmpty());
+			/* compiles the dictionary */
+			assertEquals(expected, findConcepts(dictionaryFile, caseMatch, true));
+			File compiledFile = getCompiledFile(dictionaryFile, caseMatch);
+			long lastModified = compiledFile.lastModified();
+			/* maps the compiled dictionary */
+			assertEquals(expected, findConcepts(dictionaryFile, caseMatch, true));
+			assertEquals(lastModified, compiledFile.lastModified());
+		}
+		/* the case setting changes how the dictionary is loaded, so each has its own compiled file */
+		assertEquals(2, getCompiledFiles(dictionaryFile).size());
+		assertFalse(findConcepts(dictionaryFile, "ignoreall", true).equals(
+				findConcepts(dictionaryFile, "sensitive", true)));
+	}
+
+	@Test
+	public void testCorruptCompiledDictionaryIsRecompiled() throws Exception {
+		File dictionaryFile = writeDictionary();
+		List<String> expected = findConcepts(dictionaryFile, "ignoreall", false);
+		findConcepts(dictionaryFile, "ignoreall", true);
+		File compiledFile = getCompiledFile(dictionaryFile, "ignoreall");
+		Files.write(compiledFile.toPath(), "not a dictionary".getBytes(UTF_8));
+
+		assertEquals(expected, findConcepts(dictionaryFile, "ignoreall", true));
+		/* the corrupt file has been replaced */
+		CompiledDictionary.open(compiledFile);
+	}
+
+	@Test
+	public void testChangedDictionaryIsRecompiled() throws Exception {
+		File dictionaryFile = writeDictionary();
+		findConcepts(dictionaryFile, "ignoreall", true);
+		Files.write(dictionaryFile.toPath(), DICTIONARY.replace("cellula", "cellulae").getBytes(UTF_8));
+
+		List<String> expected = findConcepts(dictionaryFile, "ignoreall", false);
+		assertEquals(expected, findConcepts(dictionaryFile, "ignoreall", true));
+		assertEquals(2, getCompiledFiles(dictionaryFile).size());
+	}
+
+	@Test
+	public void testLoadingSettingsOfDescriptions() throws Exception {
+		File dictionaryFile = writeDictionary();
+		String settings = MappedDictionaryResource.getLoadingSettings(createDescription(dictionaryFile, "ignoreall"));
+		assertTrue(settings.contains("caseMatch=ignoreall\n"));
+		assertTrue(settings.contains(dictionaryFile.toURI().toURL().toString()));
+		assertEquals(settings,
+				MappedDictionaryResource.getLoadingSettings(createDescription(dictionaryFile, "ignoreall")));
+		/* a different case setting or dictionary loads differently */
+		assertFalse(settings.equals(MappedDictionaryResource.getLoadingSettings(createDescription(dictionaryFile,
+				"sensitive"))));
+		File otherDictionaryFile = new File(dictionaryFile.getParentFile(), "cmDict-other.xml");
+		Files.copy(dictionaryFile.toPath(), otherDictionaryFile.toPath());
+		assertFalse(settings.equals(MappedDictionaryResource.getLoadingSettings(createDescription(
+				otherDictionaryFile, "ignoreall"))));
+	}
+
+	/**
+	 * Reads every entry through segments that are much smaller than the entries, so that most
+	 * values span two segments
+	 */
+	@Test
+	public void testValuesSpanningSegments() throws Exception {
+		File dictionaryFile = writeDictionary();
+		findConcepts(dictionaryFile, "ignoreall", true);
+		File compiledFile = getCompiledFile(dictionaryFile, "ignoreall");
+		CompiledDictionary dictionary = CompiledDictionary.open(compiledFile);
+		CompiledDictionary segmented = CompiledDictionary.open(compiledFile, 7);
+
+		List<String> keys = Collections.list(dictionary.keys());
+		assertEquals(keys, Collections.list(segmented.keys()));
+		/* keys are stored in UTF-8 byte order, so the non-ASCII key sorts last */
+		assertEquals("\u03b1\u03b2", keys.get(keys.size() - 1));
+		for (String key : keys) {
+			assertEquals(toString(dictionary.getEntries(key)), toString(segmented.getEntries(key)));
+			assertNotNull(segmented.getEntries(key));
+		}
+		assertNull(segmented.getEntries("neuron"));
+		assertNull(segmented.getEntries(""));
+	}
+
+	private File writeDictionary() throws IOException {
+		File dictionaryFile = new File(testFolder.newFolder("dict"), "cmDict-CL.xml");
+		Files.write(dictionaryFile.toPath(), DICTIONARY.getBytes(UTF_8));
+		return dictionaryFile;
+	}
+
+	private static List<File> getCompiledFiles(final File dictionaryFile) {
+		return Arrays.asList(dictionaryFile.getParentFile().listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(dictionaryFile.getName() + ".") && name.endsWith(".bin");
+			}
+		}));
+	}
+
+	/**
+	 * @return the most recently written compiled dictionary
+	 */
+	private static File getCompiledFile(File dictionaryFile, String caseMatch) {
+		File newest = null;
+		for (File file : getCompiledFiles(dictionaryFile)) {
+			if (newest == null || file.lastModified() > newest.lastModified()) {
+				newest = file;
+			}
+		}
+		assertNotNull("no compiled dictionary was written for caseMatch=" + caseMatch, newest);
+		return newest;
+	}
+
+	private static String toString(DictEntriesByLength entriesByLength) {
+		StringBuilder sb = new StringBuilder();
+		for (int length = entriesByLength.getLongest(); length >= entriesByLength.getShortest(); length--) {
+			if (entriesByLength.getEntries(length) != null) {
+				for (DictEntry entry : entriesByLength.getEntries(length).getEntries()) {
+					sb.append(length + " " + Arrays.toString(entry.getElements()) + " " + entry.getUnsorted() + " "
+							+ entry.getProperties().getProperty("canonical") + "\n");
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the concepts ConceptMapper finds in {@link #TEXT}, as begin|end|canonical
+	 */
+	private List<String> findConcepts(File dictionaryFile, String caseMatch, boolean mapped) throws Exception {
+		AnalysisEngineDescription description = createDescription(dictionaryFile, caseMatch);
+		if (mapped) {
+			assertEquals(1, MappedDictionaryResource.useMappedDictionary(description));
+		}
+		AnalysisEngine engine = AnalysisEngineFactory.createAggregate(description);
+		try {
+			JCas jcas = engine.newJCas();
+			jcas.setDocumentText(TEXT);
+			engine.process(jcas);
+			Type type = jcas.getTypeSystem().getType(DICT_TERM_TYPE);
+			Feature canonical = type.getFeatureByBaseName("DictCanon");
+			List<String> concepts = new ArrayList<String>();
+			for (Annotation annotation : jcas.getAnnotationIndex(type)) {
+				concepts.add(annotation.getBegin() + "|" + annotation.getEnd() + "|"
+						+ annotation.getStringValue(canonical));
+			}
+			return concepts;
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	/**
+	 * @return an aggregate of the offset tokenizer and ConceptMapper descriptors that ship with
+	 *         ConceptMapper, using the specified dictionary
+	 */
+	private AnalysisEngineDescription createDescription(File dictionaryFile, String caseMatch) throws Exception {
+		XMLParser parser = UIMAFramework.getXMLParser();
+		File tokenizerFile = new File(dictionaryFile.getParentFile(), "OffsetTokenizer.xml");
+		if (!tokenizerFile.exists()) {
+			InputStream is = getClass().getResourceAsStream("/analysis_engine/primitive/OffsetTokenizer.xml");
+			try {
+				Files.copy(is, tokenizerFile.toPath());
+			} finally {
+				is.close();
+			}
+		}
+		AnalysisEngineDescription tokenizer = parser.parseAnalysisEngineDescription(new XMLInputSource(
+				tokenizerFile));
+		tokenizer.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue("caseMatch", caseMatch);
+
+		AnalysisEngineDescription conceptMapper = parser.parseAnalysisEngineDescription(new XMLInputSource(getClass()
+				.getResource("/analysis_engine/primitive/ConceptMapperOffsetTokenizer.xml")));
+		/* the type system imports of the descriptor are not resolvable from the classpath */
+		TypeSystemDescription typeSystem = conceptMapper.getAnalysisEngineMetaData().getTypeSystem();
+		typeSystem.setImports(new Import[0]);
+		TypeSystemDescription dictTerm = parser.parseTypeSystemDescription(new XMLInputSource(getClass()
+				.getResource("/analysis_engine/primitive/DictTerm.xml")));
+		conceptMapper.getAnalysisEngineMetaData().setTypeSystem(
+				CasCreationUtils.mergeTypeSystems(Arrays.asList(typeSystem, dictTerm, tokenizer
+						.getAnalysisEngineMetaData().getTypeSystem())));
+
+		ConfigurationParameterSettings settings = conceptMapper.getAnalysisEngineMetaData()
+				.getConfigurationParameterSettings();
+		settings.setParameterValue("caseMatch", caseMatch);
+		settings.setParameterValue("ResultingAnnotationName", DICT_TERM_TYPE);
+		settings.setParameterValue("TokenizerDescriptorPath", tokenizerFile.getAbsolutePath());
+		for (ExternalResourceDescription resource : conceptMapper.getResourceManagerConfiguration()
+				.getExternalResources()) {
+			((FileResourceSpecifier) resource.getResourceSpecifier()).setFileUrl(dictionaryFile.toURI().toURL()
+					.toString());
+		}
+
+		return AnalysisEngineFactory.createAggregateDescription(tokenizer, conceptMapper);
+	}
+
+}
@@ -0,0 +1,233 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepDocument;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepResult;
+import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.ConceptMapperPermutationFactory;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterSweepTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final File inputTextFiles = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "testInputTextFile");
+	private static final File oboFile = new File("src" + File.separator + "test" + File.separator + "resources"
+			+ File.separator + "oboFiles" + File.separator + "cl-basic.obo");
+	/**
+	 * the EntityFinder output for the CL fixture, produced with the CL parameter combination
+	 */
+	private static final File clAnnotations = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "17608565_CL.a1");
+
+	private static final TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testReadCounts() throws IOException {
+		/* the summary line written by the annotation comparator of the EvaluationPipeline */
+		File resultsFile = testFolder.newFile("results.txt");
+		Files.write(resultsFile.toPath(), Arrays.asList(
+				"DocumentID: 11532192.txt -- Gold Standard (9) vs. Evaluation Set (0)",
+				"",
+				"USED PROFILE: AnnotatorID: 99099099 AnnotationSetIDs: 99099099 Type: CL:0000034(64)",
+				"Evaluation Set\t83\t12\t5677\tP=0.8736842105263158\tR=0.014409722222222223\tF=0.028351836037574723",
+				""), UTF_8);
+		assertArrayEquals(new int[] { 83, 12, 5677 }, ParameterSweep.readCounts(resultsFile));
+
+		File emptyResultsFile = testFolder.newFile("empty.txt");
+		try {
+			ParameterSweep.readCounts(emptyResultsFile);
+			fail("A results file without a summary line is an error.");
+		} catch (IOException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testEvaluateAgainstKnownAnnotations() throws IOException, UIMAException {
+		int clIndex = EntityFinder.getParamValuesIndex("CL");
+		ParameterSweep sweep = new ParameterSweep(tsd, DictionaryNamespace.CL, oboFile,
+				testFolder.newFolder("dictionaries"), true);
+
+		/* the gold standard is the pipeline's own output, so every annotation is found */
+		File goldDirectory = testFolder.newFolder("gold");
+		Files.copy(clAnnotations.toPath(), new File(goldDirectory, "17608565.a1").toPath());
+		List<SweepDocument> documents = ParameterSweep.loadDocuments(tsd, inputTextFiles, goldDirectory,
+				SentenceSplitter.OPENNLP, null);
+		assertEquals(1, documents.size());
+		int goldCount = countReferences(clAnnotations);
+		SweepResult result = sweep.evaluate(clIndex, documents);
+		assertEquals(goldCount, result.getTruePositives());
+		assertEquals(0, result.getFalsePositives());
+		assertEquals(0, result.getFalseNegatives());
+		assertEquals(1.0, result.getF1(), 0.0);
+
+		/* drop the first reference from the gold standard and add one that is never found */
+		List<String> lines = new ArrayList<String>(Files.readAllLines(clAnnotations.toPath(), UTF_8));
+		lines.remove("N1\tReference T1 CL:0000540\t");
+		lines.add("T100000\tontology_term 0 1\tx");
+		lines.add("N100000\tReference T100000 CL:0000000\t");
+		File changedGoldDirectory = testFolder.newFolder("changedGold");
+		Files.write(new File(changedGoldDirectory, "17608565.a1").toPath(), lines, UTF_8);
+		documents = ParameterSweep.loadDocuments(tsd, inputTextFiles, changedGoldDirectory, SentenceSplitter.OPENNLP,
+				null);
+		result = sweep.evaluate(clIndex, documents);
+		assertEquals(goldCount - 1, result.getTruePositives());
+		assertEquals(1, result.getFalsePositives());
+		assertEquals(1, result.getFalseNegatives());
+	}
+
+	@Test
+	public void testSynonymTypesGetTheirOwnDictionaries() throws IOException, UIMAException {
+		int clIndex = EntityFinder.getParamValuesIndex("CL");
+		SynonymType clSynonymType = ConceptMapperPermutationFactory.getSynonymType(clIndex);
+		Integer otherIndex = null;
+		for (int i = 0; i < 576 && otherIndex == null; i++) {
+			if (ConceptMapperPermutationFactory.getSynonymType(i) != clSynonymType) {
+				otherIndex = i;
+			}
+		}
+		assertNotNull(otherIndex);
+		SynonymType otherSynonymType = ConceptMapperPermutationFactory.getSynonymType(otherIndex);
+
+		ParameterSweep sweep = new ParameterSweep(tsd, DictionaryNamespace.CL, oboFile,
+				testFolder.newFolder("dictionaries"), true);
+		assertFalse(sweep.getDictionaryFile(clSynonymType).equals(sweep.getDictionaryFile(otherSynonymType)));
+		assertRunMatchesSeparateEvaluations(sweep, Arrays.asList(clIndex, otherIndex));
+	}
+
+	@Test
+	public void testLoadingSettingsGetTheirOwnResourceManagers() throws IOException, UIMAException {
+		int clIndex = EntityFinder.getParamValuesIndex("CL");
+		SynonymType clSynonymType = ConceptMapperPermutationFactory.getSynonymType(clIndex);
+		ParameterSweep sweep = new ParameterSweep(tsd, DictionaryNamespace.CL, oboFile,
+				testFolder.newFolder("dictionaries"), true);
+
+		/* a combination with the same synonym type, and so the same dictionary, loaded differently */
+		String clSettings = getLoadingSettings(sweep, clIndex);
+		Integer otherIndex = null;
+		for (int i = 0; i < 576 && otherIndex == null; i++) {
+			if (ConceptMapperPermutationFactory.getSynonymType(i) == clSynonymType
+					&& !getLoadingSettings(sweep, i).equals(clSettings)) {
+				otherIndex = i;
+			}
+		}
+		assertNotNull(otherIndex);
+		assertEquals(clSettings, getLoadingSettings(sweep, clIndex));
+		assertNotSame(sweep.getResourceManager(clSettings), sweep.getResourceManager(getLoadingSettings(sweep,
+				otherIndex)));
+		assertSame(sweep.getResourceManager(clSettings), sweep.getResourceManager(clSettings));
+
+		assertRunMatchesSeparateEvaluations(sweep, Arrays.asList(clIndex, otherIndex));
+	}
+
+	/**
+	 * Evaluates the combinations concurrently with the sweep and checks that each scores as it does
+	 * when evaluated alone, by a sweep that has loaded no other dictionary
+	 */
+	private void assertRunMatchesSeparateEvaluations(ParameterSweep sweep, List<Integer> parameterIndices)
+			throws IOException, UIMAException {
+		File goldDirectory = testFolder.newFolder("gold");
+		Files.copy(clAnnotations.toPath(), new File(goldDirectory, "17608565.a1").toPath());
+		List<SweepDocument> documents = ParameterSweep.loadDocuments(tsd, inputTextFiles, goldDirectory,
+				SentenceSplitter.OPENNLP, null);
+
+		List<SweepResult> results = sweep.run(parameterIndices, documents, parameterIndices.size(), null);
+		assertEquals(parameterIndices.size(), results.size());
+		for (SweepResult result : results) {
+			ParameterSweep alone = new ParameterSweep(tsd, DictionaryNamespace.CL, oboFile,
+					testFolder.newFolder("dictionaries-" + result.getParameterIndex()), true);
+			SweepResult expected = alone.evaluate(result.getParameterIndex(), documents);
+			assertEquals(expected.getTruePositives(), result.getTruePositives());
+			assertEquals(expected.getFalsePositives(), result.getFalsePositives());
+			assertEquals(expected.getFalseNegatives(), result.getFalseNegatives());
+		}
+	}
+
+	private static String getLoadingSettings(ParameterSweep sweep, int parameterIndex) throws IOException,
+			UIMAException {
+		List<AnalysisEngineDescription> descs = sweep.getPipelineAeDescriptions(parameterIndex);
+		return MappedDictionaryResource.getLoadingSettings(AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()])));
+	}
+
+	/**
+	 * @return the number of concept references (N lines) in the BioNLP file
+	 */
+	private static int countReferences(File a1File) throws IOException {
+		int references = 0;
+		for (String line : Files.readAllLines(a1File.toPath(), UTF_8)) {
+			if (line.startsWith("N")) {
+				references++;
+			}
+		}
+		return references;
+	}
+
+}
@@ -0,0 +1,199 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.metadata.NameValuePair;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperDictionaryFileFactory.DictionaryNamespace;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepDocument;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ParameterSweep.SweepResult;
+import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.ConceptMapperPermutationFactory;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParameterTunerTest {
+
+	private static final File inputTextFiles = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "testInputTextFile");
+	private static final File oboFile = new File("src" + File.separator + "test" + File.separator + "resources"
+			+ File.separator + "oboFiles" + File.separator + "cl-basic.obo");
+	/**
+	 * the EntityFinder output for the CL fixture, produced with the CL parameter combination
+	 */
+	private static final File clAnnotations = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "17608565_CL.a1");
+
+	/**
+	 * the parameters that set case matching and stemming, including the tokenizer descriptor, which
+	 * carries the tokenizer's case setting
+	 */
+	private static final Set<String> CASE_AND_STEMMER_PARAMETERS = new HashSet<String>(Arrays.asList("caseMatch",
+			"Stemmer", "StemmerDictionary", "TokenizerDescriptorPath"));
+
+	private static final TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testRoundSizesDoubleUpToAllDocuments() {
+		assertArrayEquals(new int[] { 12, 34, 100 }, ParameterTuner.getRoundSizes(9, 100, 3, 1));
+		assertArrayEquals(new int[] { 5, 5, 5, 5, 5, 5, 5, 9, 17, 34, 67 },
+				ParameterTuner.getRoundSizes(576, 67, 2, 5));
+	}
+
+	@Test
+	public void testSingleCandidateUsesAllDocuments() {
+		assertArrayEquals(new int[] { 67 }, ParameterTuner.getRoundSizes(1, 67, 2, 5));
+	}
+
+	@Test
+	public void testRoundSizesNeverExceedTheDocumentCount() {
+		assertArrayEquals(new int[] { 3, 3, 3, 3 }, ParameterTuner.getRoundSizes(6, 3, 2, 5));
+	}
+
+	/**
+	 * The two candidates use the same dictionary file, so the tuner only tells them apart if each
+	 * gets the dictionary loaded with its own case and stemmer settings
+	 */
+	@Test
+	public void testCandidatesThatDifferOnlyInCaseOrStemmerScoreDifferently() throws IOException, UIMAException {
+		int clIndex = EntityFinder.getParamValuesIndex("CL");
+		SynonymType clSynonymType = ConceptMapperPermutationFactory.getSynonymType(clIndex);
+		ParameterSweep sweep = new ParameterSweep(tsd, DictionaryNamespace.CL, oboFile,
+				testFolder.newFolder("dictionaries"), true);
+		Map<String, String> clParameters = getParameterSettings(sweep, clIndex);
+		Integer otherIndex = null;
+		for (int i = 0; i < 576 && otherIndex == null; i++) {
+			if (i != clIndex && ConceptMapperPermutationFactory.getSynonymType(i) == clSynonymType) {
+				Set<String> differences = getDifferences(clParameters, getParameterSettings(sweep, i));
+				if (!differences.isEmpty() && CASE_AND_STEMMER_PARAMETERS.containsAll(differences)) {
+					otherIndex = i;
+				}
+			}
+		}
+		assertNotNull(otherIndex);
+
+		/* the gold standard is the CL combination's own output, so only it scores perfectly */
+		File goldDirectory = testFolder.newFolder("gold");
+		Files.copy(clAnnotations.toPath(), new File(goldDirectory, "17608565.a1").toPath());
+		List<SweepDocument> documents = ParameterSweep.loadDocuments(tsd, inputTextFiles, goldDirectory,
+				SentenceSplitter.OPENNLP, null);
+		List<SweepResult> results = sweep.run(Arrays.asList(otherIndex, clIndex), documents, 2, null);
+		assertEquals(1.0, results.get(clIndex < otherIndex ? 0 : 1).getF1(), 0.0);
+		assertTrue(results.get(clIndex < otherIndex ? 1 : 0).getF1() < 1.0);
+
+		ParameterTuner tuner = new ParameterTuner(sweep, 2, 1, 2);
+		SweepResult winner = tuner.tune(Arrays.asList(otherIndex, clIndex), documents, null);
+		assertEquals(clIndex, winner.getParameterIndex());
+		assertEquals(1.0, winner.getF1(), 0.0);
+	}
+
+	/**
+	 * @return the names of the parameters whose values differ
+	 */
+	private static Set<String> getDifferences(Map<String, String> parameters, Map<String, String> otherParameters) {
+		Set<String> differences = new HashSet<String>();
+		Set<String> keys = new HashSet<String>(parameters.keySet());
+		keys.addAll(otherParameters.keySet());
+		for (String key : keys) {
+			String value = parameters.get(key);
+			if (value == null ? otherParameters.get(key) != null : !value.equals(otherParameters.get(key))) {
+				differences.add(key.substring(key.lastIndexOf('/') + 1));
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * @return the value of every parameter of every primitive in the combination's pipeline, keyed
+	 *         by the path of delegate keys to the primitive and the parameter name
+	 */
+	private static Map<String, String> getParameterSettings(ParameterSweep sweep, int parameterIndex)
+			throws IOException, UIMAException {
+		List<AnalysisEngineDescription> descs = sweep.getPipelineAeDescriptions(parameterIndex);
+		Map<String, String> parameters = new HashMap<String, String>();
+		addParameterSettings("", AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()])), parameters);
+		return parameters;
+	}
+
+	private static void addParameterSettings(String path, AnalysisEngineDescription description,
+			Map<String, String> parameters) throws UIMAException {
+		if (description.isPrimitive()) {
+			for (NameValuePair parameter : description.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.getParameterSettings()) {
+				Object value = parameter.getValue();
+				parameters.put(path + "/" + parameter.getName(),
+						(value instanceof Object[]) ? Arrays.toString((Object[]) value) : String.valueOf(value));
+			}
+		} else {
+			for (Map.Entry<String, ResourceSpecifier> delegate : description.getDelegateAnalysisEngineSpecifiers()
+					.entrySet()) {
+				if (delegate.getValue() instanceof AnalysisEngineDescription) {
+					addParameterSettings(path + "/" + delegate.getKey(), (AnalysisEngineDescription) delegate.getValue(),
+							parameters);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class RuleBasedSentenceAnnotatorTest {
+
+	private static final String TEXT = "Title of the paper\n\nGrowth of E. coli was measured (Fig. 2). Smith et al. showed\n"
+			+ "a 3.5-fold increase, e.g. in vivo. Was it significant? \"Yes.\"\n";
+
+	@Test
+	public void testRuleBased() {
+		List<String> expected = new ArrayList<String>();
+		expected.add("Title of the paper");
+		expected.add("Growth of E. coli was measured (Fig. 2).");
+		expected.add("Smith et al. showed\na 3.5-fold increase, e.g. in vivo.");
+		expected.add("Was it significant?");
+		expected.add("\"Yes.\"");
+		assertEquals(expected, split(SentenceSplitter.RULE_BASED));
+	}
+
+	@Test
+	public void testLine() {
+		List<String> expected = new ArrayList<String>();
+		expected.add("Title of the paper");
+		expected.add("Growth of E. coli was measured (Fig. 2). Smith et al. showed");
+		expected.add("a 3.5-fold increase, e.g. in vivo. Was it significant? \"Yes.\"");
+		assertEquals(expected, split(SentenceSplitter.LINE));
+	}
+
+	@Test
+	public void testParagraph() {
+		List<String> expected = new ArrayList<String>();
+		expected.add("Title of the paper");
+		expected.add(TEXT.substring(TEXT.indexOf("Growth"), TEXT.length() - 1));
+		assertEquals(expected, split(SentenceSplitter.PARAGRAPH));
+	}
+
+	private static List<String> split(SentenceSplitter splitter) {
+		List<String> sentences = new ArrayList<String>();
+		for (int[] span : RuleBasedSentenceAnnotator.getSentenceSpans(TEXT, splitter)) {
+			sentences.add(TEXT.substring(span[0], span[1]));
+		}
+		return sentences;
+	}
+
+}
@@ -0,0 +1,168 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+/**
+ * Compares the {@link SentenceSplitter}s: for each one, reports the sentence splitting throughput
+ * on the test document and how the CL and DOID annotations produced by the {@link EntityFinder}
+ * differ from the expected annotations (which were produced with the OpenNLP splitter). Run
+ * manually, e.g. from the IDE; this is not a unit test.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class SentenceSplitterBenchmark {
+
+	private static final String testResourcesDir = "src" + File.separator + "test" + File.separator + "resources";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int WARMUP_ITERATIONS = 50;
+	private static final int ITERATIONS = 500;
+
+	public static void main(String[] args) throws Exception {
+		File inputDir = new File(testResourcesDir, "testInputTextFile");
+		String text = new String(Files.readAllBytes(new File(inputDir, "17608565.txt").toPath()), UTF_8);
+		File dictDir = Files.createTempDirectory("cmDict").toFile();
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+
+		boolean cleanDictionary = true;
+		for (SentenceSplitter splitter : SentenceSplitter.values()) {
+			System.out.println(splitter + ": " + measureThroughput(tsd, splitter, text));
+			for (String[] ontology : new String[][] { { "CL", "cl-basic.obo", "17608565_CL.a1" },
+					{ "OBO", "doid.obo", "17608565_DOID.a1" } }) {
+				File outputDir = Files.createTempDirectory("splitterBenchmark").toFile();
+				EntityFinder.main(new String[] { "-sentenceSplitter", splitter.name(), inputDir.getPath(),
+						outputDir.getPath(), ontology[0],
+						new File(testResourcesDir + File.separator + "oboFiles", ontology[1]).getPath(),
+						dictDir.getPath(), Boolean.toString(cleanDictionary) });
+				cleanDictionary = false;
+				Set<String> expected = readAnnotations(new File(testResourcesDir, ontology[2]));
+				Set<String> found = readAnnotations(getAnnotationFile(outputDir));
+				Set<String> matched = new HashSet<String>(found);
+				matched.retainAll(expected);
+				System.out.println(String.format("  %s: %d expected, %d found, %d matched (P=%.3f R=%.3f)",
+						ontology[0], expected.size(), found.size(), matched.size(), ratio(matched.size(), found.size()),
+						ratio(matched.size(), expected.size())));
+			}
+		}
+	}
+
+	/**
+	 * @return the sentence count and the documents and megabytes split per second on one thread
+	 */
+	private static String measureThroughput(TypeSystemDescription tsd, SentenceSplitter splitter, String text)
+			throws UIMAException {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(splitter.createAnalysisEngineDescription(tsd));
+		try {
+			JCas jcas = engine.newJCas();
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				split(engine, jcas, text);
+			}
+			long start = System.nanoTime();
+			int sentences = 0;
+			for (int i = 0; i < ITERATIONS; i++) {
+				sentences = split(engine, jcas, text);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			return String.format("%d sentences, %.1f docs/s, %.2f MB/s", sentences, ITERATIONS / seconds,
+					(double) ITERATIONS * text.length() / 1e6 / seconds);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	private static int split(AnalysisEngine engine, JCas jcas, String text) throws UIMAException {
+		jcas.reset();
+		jcas.setDocumentText(text);
+		engine.process(jcas);
+		return jcas.getAnnotationIndex().size() - 1;
+	}
+
+	/**
+	 * @return "begin end conceptId" for each annotation in the BioNLP file
+	 */
+	private static Set<String> readAnnotations(File a1File) throws IOException {
+		Map<String, String> spans = new HashMap<String, String>();
+		Set<String> annotations = new HashSet<String>();
+		List<String> lines = Files.readAllLines(a1File.toPath(), UTF_8);
+		for (String line : lines) {
+			String[] columns = line.split("\t");
+			if (line.startsWith("T")) {
+				String[] fields = columns[1].split(" ");
+				spans.put(columns[0], fields[1] + " " + fields[2]);
+			}
+		}
+		for (String line : lines) {
+			if (line.startsWith("N")) {
+				String[] fields = line.split("\t")[1].split(" ");
+				annotations.add(spans.get(fields[1]) + " " + fields[2]);
+			}
+		}
+		return annotations;
+	}
+
+	/**
+	 * @return the annotation (.a1) file written to the directory
+	 */
+	private static File getAnnotationFile(File directory) throws IOException {
+		for (File file : directory.listFiles()) {
+			if (file.getName().endsWith(".a1")) {
+				return file;
+			}
+		}
+		throw new IOException("No annotation file was written to " + directory);
+	}
+
+	private static double ratio(int numerator, int denominator) {
+		return (denominator == 0) ? 0.0 : (double) numerator / denominator;
+	}
+
+}
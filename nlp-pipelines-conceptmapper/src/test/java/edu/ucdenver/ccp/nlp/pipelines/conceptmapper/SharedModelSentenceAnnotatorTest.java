@@ -0,0 +1,130 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.cleartk.syntax.opennlp.SentenceAnnotator;
+import org.cleartk.token.type.Sentence;
+import org.junit.Test;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * Checks that the {@link SharedModelSentenceAnnotator} produces the same sentences as the cleartk
+ * SentenceAnnotator that the {@link EntityFinder} used to split sentences with
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class SharedModelSentenceAnnotatorTest {
+
+	private static final File INPUT_TEXT_FILE = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "testInputTextFile" + File.separator + "17608565.txt");
+
+	/**
+	 * a title and paragraphs separated by blank lines, with whitespace around the sentences
+	 */
+	private static final String TEXT = "  Dendritic cells in the thymus\n\n"
+			+ "Dendritic cells and macrophages were isolated. T cells were counted.  \n \n\n"
+			+ "\tNo B cells were found.\n";
+
+	@Test
+	public void testSentencesMatchCleartkOnFixture() throws UIMAException, IOException {
+		String text = new String(Files.readAllBytes(INPUT_TEXT_FILE.toPath()), Charset.forName("UTF-8"));
+		List<String> sentences = getSentenceSpans(text, getSharedModelDescription());
+		assertTrue(sentences.size() > 1);
+		assertEquals(getSentenceSpans(text, getCleartkDescription()), sentences);
+	}
+
+	@Test
+	public void testSentencesMatchCleartkAcrossBlankLines() throws UIMAException {
+		List<String> sentences = getSentenceSpans(TEXT, getSharedModelDescription());
+		assertEquals(getSentenceSpans(TEXT, getCleartkDescription()), sentences);
+		/* the title is a sentence of its own, without the surrounding whitespace */
+		assertEquals("2..31 Dendritic cells in the thymus", sentences.get(0));
+		int lastBegin = TEXT.indexOf("No B");
+		assertEquals(lastBegin + ".." + (lastBegin + "No B cells were found.".length()) + " No B cells were found.",
+				sentences.get(sentences.size() - 1));
+	}
+
+	private static AnalysisEngineDescription getSharedModelDescription() throws UIMAException {
+		return SharedModelSentenceAnnotator.createAnalysisEngineDescription(EntityFinder
+				.createConceptMapperTypeSystem());
+	}
+
+	/**
+	 * @return the sentence detector the {@link EntityFinder} used before the
+	 *         {@link SharedModelSentenceAnnotator}
+	 */
+	private static AnalysisEngineDescription getCleartkDescription() throws UIMAException {
+		return AnalysisEngineFactory.createPrimitiveDescription(SentenceAnnotator.class,
+				EntityFinder.createConceptMapperTypeSystem(), SentenceAnnotator.PARAM_SENTENCE_MODEL_PATH,
+				SharedModelSentenceAnnotator.DEFAULT_SENTENCE_MODEL_PATH, SentenceAnnotator.PARAM_WINDOW_CLASS_NAMES,
+				null, SentenceAnnotator.PARAM_SENTENCE_TYPE_NAME, Sentence.class.getName());
+	}
+
+	/**
+	 * @return each sentence as begin..end followed by its text
+	 */
+	private static List<String> getSentenceSpans(String text, AnalysisEngineDescription desc) throws UIMAException {
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(desc);
+		JCas jcas = JCasFactory.createJCas(tsd);
+		jcas.setDocumentText(text);
+		engine.process(jcas);
+		engine.destroy();
+		List<String> sentences = new ArrayList<String>();
+		for (Sentence sentence : JCasUtil.select(jcas, Sentence.class)) {
+			sentences.add(sentence.getBegin() + ".." + sentence.getEnd() + " " + sentence.getCoveredText());
+		}
+		return sentences;
+	}
+
+}
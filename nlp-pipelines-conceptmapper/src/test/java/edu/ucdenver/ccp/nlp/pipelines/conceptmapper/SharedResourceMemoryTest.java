@@ -0,0 +1,124 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.ResourceManager;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+
+/**
+ * Checks that the dictionary and sentence model are shared by pipeline replicas, i.e. that adding
+ * replicas costs little heap compared to the first one.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class SharedResourceMemoryTest {
+
+	private static final Logger logger = Logger.getLogger(SharedResourceMemoryTest.class);
+
+	private static final String oboFilesDir = "src" + File.separator + "test" + File.separator + "resources"
+			+ File.separator + "oboFiles";
+
+	/**
+	 * The heap used by each additional replica must be less than this fraction of the heap used by
+	 * the first replica (which includes the dictionary and the sentence model)
+	 */
+	private static final double MAX_RELATIVE_HEAP_PER_ADDITIONAL_REPLICA = 0.1;
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	private final List<AnalysisEngine> replicas = new ArrayList<AnalysisEngine>();
+
+	@After
+	public void tearDown() {
+		for (AnalysisEngine replica : replicas) {
+			replica.destroy();
+		}
+	}
+
+	@Test
+	public void testHeapUsageIsFlatAsReplicaCountGrows() throws UIMAException, IOException {
+		TypeSystemDescription tsd = EntityFinder.createConceptMapperTypeSystem();
+		List<AnalysisEngineDescription> descs = new ArrayList<AnalysisEngineDescription>();
+		descs.add(EntityFinder.getSentenceDetectorDescription(tsd));
+		descs.addAll(EntityFinder.initConceptMapperAggregateDescriptions(tsd, "CL", new File(oboFilesDir,
+				"cl-basic.obo"), testFolder.newFolder("dict"), true));
+		AnalysisEngineDescription aggregateDesc = AnalysisEngineFactory.createAggregateDescription(descs
+				.toArray(new AnalysisEngineDescription[descs.size()]));
+
+		int additionalReplicas = 15;
+		ResourceManager resourceManager = UIMAFramework.newDefaultResourceManager();
+		long baseline = usedHeap();
+		replicas.addAll(ParallelPipeline.createReplicas(aggregateDesc, 1, resourceManager));
+		long singleReplica = usedHeap() - baseline;
+		replicas.addAll(ParallelPipeline.createReplicas(aggregateDesc, additionalReplicas, resourceManager));
+		long sixteenReplicas = usedHeap() - baseline;
+
+		long perAdditionalReplica = (sixteenReplicas - singleReplica) / additionalReplicas;
+		logger.info("Heap used by 1 replica: " + singleReplica + " bytes; by 16 replicas: " + sixteenReplicas
+				+ " bytes; per additional replica: " + perAdditionalReplica + " bytes");
+		assertTrue("Additional replicas should share the dictionary and sentence model",
+				perAdditionalReplica < singleReplica * MAX_RELATIVE_HEAP_PER_ADDITIONAL_REPLICA);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,148 @@
+package edu.ucdenver.ccp.nlp.pipelines.conceptmapper;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil;
+import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil.SynonymType;
+import edu.ucdenver.ccp.nlp.wrapper.conceptmapper.dictionary.obo.OboToDictionary;
+
+/**
+ * Checks that {@link StreamingOboToDictionary} produces the same dictionary entries as loading the
+ * ontology with {@link OntologyUtil} and writing it with {@link OboToDictionary}. The variants of
+ * each entry are compared exactly as they appear in the XML, in order and including case,
+ * punctuation and duplicates, as ConceptMapper's matching depends on all of them.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class StreamingOboToDictionaryTest {
+
+	private static final Logger logger = Logger.getLogger(StreamingOboToDictionaryTest.class);
+
+	private static final String oboFilesDir = "src" + File.separator + "test" + File.separator + "resources"
+			+ File.separator + "oboFiles";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testClDictionaryIsEquivalent() throws Exception {
+		assertEquivalentDictionaries(new File(oboFilesDir, "cl-basic.obo"), SynonymType.EXACT);
+		assertEquivalentDictionaries(new File(oboFilesDir, "cl-basic.obo"), SynonymType.ALL);
+	}
+
+	@Test
+	public void testDoidDictionaryIsEquivalent() throws Exception {
+		assertEquivalentDictionaries(new File(oboFilesDir, "doid.obo"), SynonymType.EXACT);
+		assertEquivalentDictionaries(new File(oboFilesDir, "doid.obo"), SynonymType.ALL);
+	}
+
+	@Test
+	public void testToIri() {
+		assertEquals("http://purl.obolibrary.org/obo/CL_0000540", StreamingOboToDictionary.toIri("CL:0000540", null));
+		assertEquals("http://purl.obolibrary.org/obo/DOID_8117", StreamingOboToDictionary.toIri("DOID:8117", "doid"));
+	}
+
+	private void assertEquivalentDictionaries(File oboFile, SynonymType synonymType) throws IOException,
+			OWLOntologyCreationException, SAXException, ParserConfigurationException {
+		File expectedDictFile = testFolder.newFile();
+		long time = System.currentTimeMillis();
+		OboToDictionary.buildDictionary(expectedDictFile, new OntologyUtil(oboFile), null, synonymType);
+		long owlTime = System.currentTimeMillis() - time;
+
+		File streamedDictFile = testFolder.newFile();
+		time = System.currentTimeMillis();
+		StreamingOboToDictionary.buildDictionary(oboFile, streamedDictFile, null, synonymType);
+		long streamingTime = System.currentTimeMillis() - time;
+		logger.info(oboFile.getName() + " (" + synonymType.name() + "): OntologyUtil " + owlTime
+				+ "ms; streaming " + streamingTime + "ms");
+
+		Map<String, List<String>> expectedEntries = readEntries(expectedDictFile);
+		Map<String, List<String>> streamedEntries = readEntries(streamedDictFile);
+		assertTrue(expectedEntries.size() > 0);
+		assertEquals(expectedEntries.keySet(), streamedEntries.keySet());
+		for (Map.Entry<String, List<String>> expected : expectedEntries.entrySet()) {
+			assertEquals("entry " + expected.getKey(), expected.getValue(), streamedEntries.get(expected.getKey()));
+		}
+	}
+
+	/**
+	 * @param dictFile
+	 * @return the canonical form followed by the variants, as they appear in the XML, of each token
+	 *         in the dictionary file, by token id
+	 */
+	private static Map<String, List<String>> readEntries(File dictFile) throws SAXException, IOException,
+			ParserConfigurationException {
+		NodeList tokens = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(dictFile)
+				.getElementsByTagName("token");
+		Map<String, List<String>> entries = new HashMap<String, List<String>>();
+		for (int i = 0; i < tokens.getLength(); i++) {
+			Element token = (Element) tokens.item(i);
+			List<String> forms = new ArrayList<String>();
+			forms.add(token.getAttribute("canonical"));
+			NodeList variants = token.getElementsByTagName("variant");
+			for (int j = 0; j < variants.getLength(); j++) {
+				forms.add(((Element) variants.item(j)).getAttribute("base"));
+			}
+			assertNull("duplicate token " + token.getAttribute("id") + " in " + dictFile,
+					entries.put(token.getAttribute("id"), forms));
+		}
+		return entries;
+	}
+
+}
@@ -0,0 +1,222 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Provides random access by document id to the records written by an {@link AnnotationBatchWriter}.
+ * The index files of all parts with a given base name are loaded into memory; records are read from
+ * the part files on demand. If a document id occurs more than once, the record written last is
+ * used. An index line without a line terminator (left by a crash) is ignored.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class AnnotationBatchIndex implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(AnnotationBatchIndex.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Map<String, Entry> entries;
+	private final Map<File, RandomAccessFile> openFiles = new HashMap<File, RandomAccessFile>();
+
+	private static class Entry {
+		private final File dataFile;
+		private final long offset;
+		private final int length;
+
+		private Entry(File dataFile, long offset, int length) {
+			this.dataFile = dataFile;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private AnnotationBatchIndex(Map<String, Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * @param directory
+	 * @param baseName
+	 *            see {@link AnnotationBatchWriter#getBaseName(Integer)}
+	 * @return the index of all parts with the base name in the directory
+	 * @throws IOException
+	 */
+	public static AnnotationBatchIndex load(File directory, String baseName) throws IOException {
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		for (File indexFile : listIndexFiles(directory, baseName)) {
+			File dataFile = getDataFile(indexFile);
+			InputStream is = new FileInputStream(indexFile);
+			String index;
+			try {
+				index = new String(DocumentSources.readAll(is), UTF_8);
+			} finally {
+				is.close();
+			}
+			int lineStart = 0;
+			int lineEnd;
+			while ((lineEnd = index.indexOf('\n', lineStart)) >= 0) {
+				String[] fields = index.substring(lineStart, lineEnd).split("\t");
+				if (fields.length != 3) {
+					throw new IOException("Invalid line in annotation batch index " + indexFile + ": "
+							+ index.substring(lineStart, lineEnd));
+				}
+				entries.put(fields[0], new Entry(dataFile, Long.parseLong(fields[1]), Integer.parseInt(fields[2])));
+				lineStart = lineEnd + 1;
+			}
+		}
+		logger.info("Loaded annotation batch index for " + new File(directory, baseName) + " with "
+				+ entries.size() + " documents");
+		return new AnnotationBatchIndex(entries);
+	}
+
+	/**
+	 * @return the index files with the base name in the directory, in part order
+	 */
+	static List<File> listIndexFiles(File directory, String baseName) throws IOException {
+		File[] listing = directory.listFiles();
+		if (listing == null) {
+			throw new IOException("Unable to list directory: " + directory);
+		}
+		Arrays.sort(listing);
+		List<File> indexFiles = new ArrayList<File>();
+		for (File file : listing) {
+			if (getPartNumber(file.getName(), baseName) >= 0) {
+				indexFiles.add(file);
+			}
+		}
+		return indexFiles;
+	}
+
+	/**
+	 * @return the part number of an index file name with the base name, or -1 if the name is not
+	 *         that of such an index file
+	 */
+	static int getPartNumber(String fileName, String baseName) {
+		String prefix = baseName + AnnotationBatchWriter.PART_INFIX;
+		if (fileName.startsWith(prefix) && fileName.endsWith(AnnotationBatchWriter.INDEX_SUFFIX)) {
+			try {
+				return Integer.parseInt(fileName.substring(prefix.length(), fileName.length()
+						- AnnotationBatchWriter.INDEX_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the part file that the index file refers to, i.e. the file with the same name apart
+	 *         from the extension
+	 */
+	private static File getDataFile(File indexFile) throws IOException {
+		String name = indexFile.getName();
+		String partPrefix = name.substring(0, name.length() - AnnotationBatchWriter.INDEX_SUFFIX.length()) + ".";
+		File[] listing = indexFile.getParentFile().listFiles();
+		if (listing != null) {
+			for (File file : listing) {
+				if (file.getName().startsWith(partPrefix) && !file.equals(indexFile)) {
+					return file;
+				}
+			}
+		}
+		throw new IOException("Unable to find the annotation batch file indexed by " + indexFile);
+	}
+
+	/**
+	 * @param documentId
+	 * @return the document's record, or null if the document is not in the index
+	 * @throws IOException
+	 */
+	public synchronized String read(String documentId) throws IOException {
+		Entry entry = entries.get(documentId);
+		if (entry == null) {
+			return null;
+		}
+		RandomAccessFile file = openFiles.get(entry.dataFile);
+		if (file == null) {
+			file = new RandomAccessFile(entry.dataFile, "r");
+			openFiles.put(entry.dataFile, file);
+		}
+		byte[] record = new byte[entry.length];
+		file.seek(entry.offset);
+		file.readFully(record);
+		if (entry.dataFile.getName().endsWith(AnnotationBatchWriter.GZIP_SUFFIX)) {
+			InputStream is = new GZIPInputStream(new ByteArrayInputStream(record));
+			try {
+				record = DocumentSources.readAll(is);
+			} finally {
+				is.close();
+			}
+		}
+		return new String(record, UTF_8);
+	}
+
+	/**
+	 * @return the ids of the documents in the index
+	 */
+	public Set<String> getDocumentIds() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (RandomAccessFile file : openFiles.values()) {
+			file.close();
+		}
+		openFiles.clear();
+	}
+
+}
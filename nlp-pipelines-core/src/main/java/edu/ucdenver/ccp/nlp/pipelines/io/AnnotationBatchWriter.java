@@ -0,0 +1,292 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Appends the output for many documents to a few large part files instead of writing one file per
+ * document. Each part file has a sidecar index with one line per document:
+ * <code>documentId TAB offset TAB length</code>, giving the byte range of the document's record in
+ * the part file (see {@link AnnotationBatchIndex}). If compression is enabled, each record is a
+ * separate gzip member, so a record can be decompressed on its own while the part file as a whole
+ * is still a valid gzip file.
+ * <p>
+ * A part file is never appended to once it has been closed: a new writer (e.g. for a resumed run)
+ * starts a new part when it writes its first record, so a record left incomplete by a crash is never followed by valid records.
+ * Index lines are written only after their record has been forced to disk, so the index never
+ * refers to an incomplete record, and {@link #write(String, String)} returns only once the index
+ * line has been forced to disk as well, so a document can then be recorded as complete (e.g. in a
+ * {@link CheckpointManifest}). If a document is written more than once, the last record is the one
+ * that is read. A single writer can be shared by concurrent pipeline replicas; their records are
+ * synced together (see {@link GroupCommit}).
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class AnnotationBatchWriter implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(AnnotationBatchWriter.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static final String DEFAULT_BASE_NAME = "annotations";
+	public static final String INDEX_SUFFIX = ".idx";
+	public static final String GZIP_SUFFIX = ".gz";
+	static final String PART_INFIX = ".part-";
+
+	/**
+	 * parts are rolled over once they reach this size
+	 */
+	public static final long DEFAULT_MAX_PART_BYTES = 1024L * 1024L * 1024L;
+
+	private final File directory;
+	private final String baseName;
+	private final String fileExtension;
+	private final boolean compress;
+	private final long maxPartBytes;
+
+	private int partNumber;
+	private FileOutputStream dataFileStream;
+	private OutputStream dataStream;
+	private FileOutputStream indexFileStream;
+	private OutputStream indexStream;
+	private long partBytes;
+
+	/**
+	 * the index lines of the records written since the last commit started
+	 */
+	private ByteArrayOutputStream pendingIndexLines = new ByteArrayOutputStream();
+
+	private final GroupCommit<Record> records = new GroupCommit<Record>() {
+		@Override
+		protected void write(Record record) throws IOException {
+			writeRecord(record);
+		}
+
+		@Override
+		protected Object startCommit() {
+			byte[] indexLines = pendingIndexLines.toByteArray();
+			pendingIndexLines = new ByteArrayOutputStream();
+			return new Commit(dataFileStream, indexStream, indexFileStream, indexLines);
+		}
+
+		@Override
+		protected void commit(Object state) throws IOException {
+			((Commit) state).run();
+		}
+	};
+
+	/**
+	 * a document's record, ready to be appended
+	 */
+	private static class Record {
+		private final String documentId;
+		private final byte[] content;
+
+		private Record(String documentId, byte[] content) {
+			this.documentId = documentId;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Forces the records written to the data file to disk, then writes their index lines and forces
+	 * them to disk
+	 */
+	private static class Commit {
+		private final FileOutputStream dataFileStream;
+		private final OutputStream indexStream;
+		private final FileOutputStream indexFileStream;
+		private final byte[] indexLines;
+
+		private Commit(FileOutputStream dataFileStream, OutputStream indexStream, FileOutputStream indexFileStream,
+				byte[] indexLines) {
+			this.dataFileStream = dataFileStream;
+			this.indexStream = indexStream;
+			this.indexFileStream = indexFileStream;
+			this.indexLines = indexLines;
+		}
+
+		private void run() throws IOException {
+			if (indexLines.length == 0) {
+				return;
+			}
+			dataFileStream.getChannel().force(false);
+			indexStream.write(indexLines);
+			indexStream.flush();
+			indexFileStream.getChannel().force(false);
+		}
+	}
+
+	/**
+	 * @param directory
+	 * @param baseName
+	 *            the part files are named baseName.part-NNNN followed by the extension, see
+	 *            {@link #getBaseName(Integer)}
+	 * @param fileExtension
+	 *            e.g. ".a1"
+	 * @param compress
+	 *            if true, each record is gzipped and .gz is appended to the part file names
+	 * @param maxPartBytes
+	 * @throws IOException
+	 */
+	public AnnotationBatchWriter(File directory, String baseName, String fileExtension, boolean compress,
+			long maxPartBytes) throws IOException {
+		this.directory = directory;
+		this.baseName = baseName;
+		this.fileExtension = fileExtension;
+		this.compress = compress;
+		this.maxPartBytes = maxPartBytes;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create output directory: " + directory);
+		}
+		partNumber = getNextPartNumber(directory, baseName);
+	}
+
+	/**
+	 * @param batchNumber
+	 *            may be null if the corpus is not processed in batches
+	 * @return the base name of the part files for the batch, e.g. annotations.batch-3
+	 */
+	public static String getBaseName(Integer batchNumber) {
+		return (batchNumber == null) ? DEFAULT_BASE_NAME : DEFAULT_BASE_NAME + ".batch-" + batchNumber;
+	}
+
+	/**
+	 * @return the number of the part after the highest-numbered existing part with the base name
+	 */
+	private static int getNextPartNumber(File directory, String baseName) throws IOException {
+		int next = 0;
+		for (File indexFile : AnnotationBatchIndex.listIndexFiles(directory, baseName)) {
+			next = Math.max(next, AnnotationBatchIndex.getPartNumber(indexFile.getName(), baseName) + 1);
+		}
+		return next;
+	}
+
+	private void openPart() throws IOException {
+		String partName = baseName + PART_INFIX + String.format("%04d", partNumber);
+		File dataFile = new File(directory, partName + fileExtension + (compress ? GZIP_SUFFIX : ""));
+		logger.info("Writing annotation batch file: " + dataFile);
+		dataFileStream = new FileOutputStream(dataFile);
+		dataStream = new BufferedOutputStream(dataFileStream, 65536);
+		indexFileStream = new FileOutputStream(new File(directory, partName + INDEX_SUFFIX));
+		indexStream = new BufferedOutputStream(indexFileStream);
+		partBytes = 0;
+	}
+
+	/**
+	 * Commits the records written to the part and closes it; called while holding the monitor of
+	 * the records
+	 */
+	private void closePart() throws IOException {
+		try {
+			records.commitAll();
+		} finally {
+			try {
+				dataStream.close();
+			} finally {
+				indexStream.close();
+				dataFileStream = null;
+				dataStream = null;
+				indexFileStream = null;
+				indexStream = null;
+			}
+		}
+	}
+
+	/**
+	 * Appends a document's record and its index entry, and waits until both have been forced to
+	 * disk
+	 * 
+	 * @param documentId
+	 * @param content
+	 * @throws IOException
+	 */
+	public void write(String documentId, String content) throws IOException {
+		if (documentId.indexOf('\t') >= 0 || documentId.indexOf('\n') >= 0 || documentId.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Document ids may not contain tabs or line terminators: "
+					+ documentId);
+		}
+		records.append(new Record(documentId, compress ? gzip(content) : content.getBytes(UTF_8)));
+	}
+
+	/**
+	 * Writes the record to the data file and queues its index line for the next commit; called in
+	 * append order while holding the monitor of the records
+	 */
+	private void writeRecord(Record record) throws IOException {
+		if (dataStream != null && partBytes >= maxPartBytes) {
+			closePart();
+			partNumber++;
+		}
+		if (dataStream == null) {
+			openPart();
+		}
+		dataStream.write(record.content);
+		dataStream.flush();
+		pendingIndexLines.write((record.documentId + "\t" + partBytes + "\t" + record.content.length + "\n")
+				.getBytes(UTF_8));
+		partBytes += record.content.length;
+	}
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(content.getBytes(UTF_8));
+		gzos.close();
+		return baos.toByteArray();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (records) {
+			if (dataStream != null) {
+				closePart();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A persistent cache of boundary offsets (e.g. sentence spans) computed for document texts. The
+ * offsets of each text are stored in a small binary sidecar file named by a SHA-1 hash of the
+ * cache namespace and the text, so identical text is found again regardless of document id, input
+ * format or run. The namespace identifies what computed the offsets (e.g. the sentence splitter
+ * and its model), so that offsets computed differently are never mixed up.
+ * <p>
+ * A sidecar holds a format version, the length of the text, the number of offsets and the offsets
+ * themselves as variable-length deltas, which for sentence spans is typically about two bytes per
+ * offset. Sidecars are written to a temporary file and then renamed, so concurrent threads and
+ * processes can share a cache directory, and a sidecar that cannot be read is treated as a miss.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class BoundaryCache {
+
+	private static final Logger logger = Logger.getLogger(BoundaryCache.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * the file extension of the sidecar files
+	 */
+	public static final String SUFFIX = ".bnd";
+
+	private final File directory;
+	private final byte[] namespace;
+
+	/**
+	 * @param directory
+	 *            the cache directory; it is created if it does not exist
+	 * @param namespace
+	 *            identifies how the cached offsets are computed
+	 * @throws IOException
+	 */
+	public BoundaryCache(File directory, String namespace) throws IOException {
+		Files.createDirectories(directory.toPath());
+		this.directory = directory;
+		this.namespace = (namespace + '\0').getBytes(UTF_8);
+	}
+
+	/**
+	 * @param text
+	 * @return the offsets cached for the text, or null if there are none
+	 */
+	public int[] get(String text) {
+		File sidecar = getSidecarFile(text);
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try {
+			if (in.readInt() != FORMAT_VERSION || in.readInt() != text.length()) {
+				return null;
+			}
+			int[] offsets = new int[readVarInt(in)];
+			int previous = 0;
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = previous + readVarInt(in);
+				previous = offsets[i];
+			}
+			return offsets;
+		} catch (IOException e) {
+			logger.warn("Ignoring unreadable boundary cache file: " + sidecar, e);
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close boundary cache file: " + sidecar, e);
+			}
+		}
+	}
+
+	/**
+	 * Stores the offsets computed for the text
+	 * 
+	 * @param text
+	 * @param offsets
+	 *            non-decreasing offsets into the text
+	 * @throws IOException
+	 */
+	public void put(String text, int[] offsets) throws IOException {
+		File sidecar = getSidecarFile(text);
+		File parent = sidecar.getParentFile();
+		Files.createDirectories(parent.toPath());
+		File tempFile = File.createTempFile(sidecar.getName(), ".tmp", parent);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(text.length());
+				writeVarInt(out, offsets.length);
+				int previous = 0;
+				for (int offset : offsets) {
+					if (offset < previous) {
+						throw new IllegalArgumentException("Boundary offsets must not decrease: " + offset
+								+ " follows " + previous);
+					}
+					writeVarInt(out, offset - previous);
+					previous = offset;
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tempFile.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * @return the sidecar file for the text; sidecars are spread over 256 subdirectories
+	 */
+	File getSidecarFile(String text) {
+		String hash = sha1Hex(text);
+		return new File(new File(directory, hash.substring(0, 2)), hash.substring(2) + SUFFIX);
+	}
+
+	private String sha1Hex(String text) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		digest.update(namespace);
+		byte[] hash = digest.digest(text.getBytes(UTF_8));
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new EOFException("Malformed variable-length integer");
+	}
+
+}
@@ -0,0 +1,379 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An append-only log of the ids of documents whose output has been completely written. Each id is
+ * appended (and synced to disk) only after the document's output is durably in place, so on
+ * restart every document in the manifest can be skipped and every document not in it is
+ * reprocessed. A final line without a line terminator (left by a crash in the middle of an append)
+ * is discarded when the manifest is loaded. Each manifest file is kept open for appending until
+ * {@link #close(File)}, and ids appended concurrently are synced together (see {@link GroupCommit}),
+ * so that threads completing documents at the same time share one sync.
+ * <p>
+ * Skipping documents is only correct if the earlier run used the same arguments, so a run records a
+ * fingerprint of the arguments that determine its output next to the manifest (see
+ * {@link #prepare(File, String, boolean)}). A run with the same fingerprint resumes where the
+ * earlier one stopped; a run with a different fingerprint is refused unless it is told to start
+ * over with an empty manifest.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CheckpointManifest implements DocumentIdFilter {
+
+	private static final Logger logger = Logger.getLogger(CheckpointManifest.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * the name of the manifest file in an output directory
+	 */
+	public static final String DEFAULT_FILE_NAME = "completed-documents.manifest";
+
+	private static final String BATCH_FILE_NAME_PREFIX = "completed-documents.batch-";
+	private static final String FILE_NAME_SUFFIX = ".manifest";
+
+	/**
+	 * appended to the name of a manifest file to give the name of its fingerprint file
+	 */
+	public static final String FINGERPRINT_FILE_SUFFIX = ".fingerprint";
+
+	/**
+	 * serializes the preparation and loading of the same manifest file from within this JVM
+	 */
+	private static final ConcurrentMap<String, Object> FILE_LOCKS = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * the manifest files open for appending in this JVM
+	 */
+	private static final Map<String, ManifestLog> OPEN_LOGS = new HashMap<String, ManifestLog>();
+
+	/**
+	 * A manifest file open for appending
+	 */
+	private static class ManifestLog extends GroupCommit<byte[]> {
+		private final FileChannel channel;
+
+		private ManifestLog(File manifestFile) throws IOException {
+			channel = FileChannel.open(manifestFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+
+		@Override
+		protected void write(byte[] entry) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(entry);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		@Override
+		protected Object startCommit() {
+			return null;
+		}
+
+		@Override
+		protected void commit(Object state) throws IOException {
+			channel.force(false);
+		}
+
+		private synchronized void close() throws IOException {
+			try {
+				commitAll();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	private final File manifestFile;
+	private final Set<String> completedDocumentIds;
+
+	private CheckpointManifest(File manifestFile, Set<String> completedDocumentIds) {
+		this.manifestFile = manifestFile;
+		this.completedDocumentIds = completedDocumentIds;
+	}
+
+	/**
+	 * @param batchNumber
+	 *            may be null if the corpus is not processed in batches
+	 * @return the name of the manifest file for the batch, e.g.
+	 *         completed-documents.batch-3.manifest
+	 */
+	public static String getFileName(Integer batchNumber) {
+		return (batchNumber == null) ? DEFAULT_FILE_NAME : BATCH_FILE_NAME_PREFIX + batchNumber + FILE_NAME_SUFFIX;
+	}
+
+	/**
+	 * @param fileName
+	 * @return the batch number of a batch manifest file name, or null if the name is not that of a
+	 *         batch manifest
+	 */
+	public static Integer getBatchNumber(String fileName) {
+		if (fileName.startsWith(BATCH_FILE_NAME_PREFIX) && fileName.endsWith(FILE_NAME_SUFFIX)) {
+			try {
+				return Integer.valueOf(fileName.substring(BATCH_FILE_NAME_PREFIX.length(), fileName.length()
+						- FILE_NAME_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param manifestFile
+	 * @return the file in which the fingerprint of the run that writes the manifest is stored
+	 */
+	public static File getFingerprintFile(File manifestFile) {
+		return new File(manifestFile.getParentFile(), manifestFile.getName() + FINGERPRINT_FILE_SUFFIX);
+	}
+
+	/**
+	 * Prepares the manifest for a run. If an existing manifest was written by a run with the same
+	 * fingerprint, it is kept and the run resumes: the documents in it will be skipped. If it was
+	 * written by a run with a different (or no) fingerprint, the run is refused, since documents
+	 * would otherwise be skipped whose output was produced with other arguments, unless it is
+	 * started fresh, in which case the manifest is removed and every document is processed again.
+	 * The fingerprint of this run is then stored with the manifest.
+	 * 
+	 * @param manifestFile
+	 *            need not exist
+	 * @param runFingerprint
+	 *            a description of the arguments that determine the output of the run
+	 * @param fresh
+	 *            if true, any existing manifest is removed, whatever its fingerprint
+	 * @throws IOException
+	 *             if the run is not started fresh and the existing manifest was written by a run
+	 *             with a different (or no) fingerprint
+	 */
+	public static void prepare(File manifestFile, String runFingerprint, boolean fresh) throws IOException {
+		File fingerprintFile = getFingerprintFile(manifestFile);
+		synchronized (getLock(manifestFile)) {
+			if (manifestFile.exists()) {
+				if (!fresh) {
+					String storedFingerprint = fingerprintFile.exists() ? new String(Files.readAllBytes(fingerprintFile
+							.toPath()), UTF_8) : null;
+					if (!runFingerprint.equals(storedFingerprint)) {
+						throw new IOException("Unable to resume: checkpoint manifest " + manifestFile
+								+ " was written by a run with different arguments. Stored fingerprint:\n"
+								+ storedFingerprint + "\nThis run:\n" + runFingerprint
+								+ "\nStart the run fresh to discard the manifest and process every document again.");
+					}
+					logger.info("Resuming from checkpoint manifest " + manifestFile);
+					return;
+				}
+				logger.info("Starting over: removing checkpoint manifest " + manifestFile);
+				close(manifestFile);
+				if (!manifestFile.delete()) {
+					throw new IOException("Unable to delete checkpoint manifest: " + manifestFile);
+				}
+			}
+			File tmpFile = new File(fingerprintFile.getParentFile(), fingerprintFile.getName() + ".tmp");
+			Files.write(tmpFile.toPath(), runFingerprint.getBytes(UTF_8));
+			Files.move(tmpFile.toPath(), fingerprintFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * @return the ids in the manifest, in the order in which they were appended (including any
+	 *         duplicates)
+	 * @throws IOException
+	 */
+	public static List<String> readEntries(File manifestFile) throws IOException {
+		List<String> ids = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					ids.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return ids;
+	}
+
+	/**
+	 * @param manifestFile
+	 *            need not exist
+	 * @return the manifest, with any incomplete trailing entry removed
+	 * @throws IOException
+	 */
+	public static CheckpointManifest load(File manifestFile) throws IOException {
+		Set<String> ids = new HashSet<String>();
+		if (manifestFile.exists()) {
+			synchronized (getLock(manifestFile)) {
+				truncateIncompleteEntry(manifestFile);
+				ids.addAll(readEntries(manifestFile));
+			}
+			logger.info("Loaded checkpoint manifest " + manifestFile + " with " + ids.size() + " completed documents");
+		}
+		return new CheckpointManifest(manifestFile, Collections.unmodifiableSet(ids));
+	}
+
+	/**
+	 * Appends a document id to the manifest and forces it to disk. The manifest file is opened on
+	 * the first append and stays open until {@link #close(File)}.
+	 * 
+	 * @param manifestFile
+	 * @param documentId
+	 * @throws IOException
+	 */
+	public static void append(File manifestFile, String documentId) throws IOException {
+		if (documentId.indexOf('\n') >= 0 || documentId.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Document ids may not contain line terminators: " + documentId);
+		}
+		ManifestLog log;
+		synchronized (OPEN_LOGS) {
+			String key = getKey(manifestFile);
+			log = OPEN_LOGS.get(key);
+			if (log == null) {
+				log = new ManifestLog(manifestFile);
+				OPEN_LOGS.put(key, log);
+			}
+		}
+		log.append((documentId + "\n").getBytes(UTF_8));
+	}
+
+	/**
+	 * Closes the manifest file if it is open for appending; a later append opens it again
+	 * 
+	 * @param manifestFile
+	 * @throws IOException
+	 */
+	public static void close(File manifestFile) throws IOException {
+		ManifestLog log;
+		synchronized (OPEN_LOGS) {
+			log = OPEN_LOGS.remove(getKey(manifestFile));
+		}
+		if (log != null) {
+			log.close();
+		}
+	}
+
+	/**
+	 * @return true if the document is not in the manifest, i.e. still needs to be processed
+	 */
+	@Override
+	public boolean accept(String documentId) {
+		return !completedDocumentIds.contains(documentId);
+	}
+
+	public boolean isCompleted(String documentId) {
+		return completedDocumentIds.contains(documentId);
+	}
+
+	/**
+	 * @return the number of completed documents when the manifest was loaded
+	 */
+	public int getCompletedCount() {
+		return completedDocumentIds.size();
+	}
+
+	public File getManifestFile() {
+		return manifestFile;
+	}
+
+	/**
+	 * Removes everything after the last line terminator
+	 */
+	private static void truncateIncompleteEntry(File manifestFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(manifestFile, "rw");
+		try {
+			long length = raf.length();
+			long end = length;
+			while (end > 0) {
+				raf.seek(end - 1);
+				if (raf.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+			if (end < length) {
+				logger.warn("Discarding incomplete entry at the end of checkpoint manifest " + manifestFile);
+				raf.setLength(end);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String getKey(File manifestFile) {
+		return manifestFile.getAbsoluteFile().toPath().normalize().toString();
+	}
+
+	private static Object getLock(File manifestFile) {
+		String key = getKey(manifestFile);
+		Object lock = FILE_LOCKS.get(key);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = FILE_LOCKS.putIfAbsent(key, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+}
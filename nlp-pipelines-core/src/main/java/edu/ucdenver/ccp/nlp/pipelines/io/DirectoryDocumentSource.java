@@ -0,0 +1,162 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Returns the files with a given suffix in a directory (not recursively), in document id order.
+ * The document id is the file name; files may be individually gzipped, in which case the .gz
+ * extension is not part of the id. If a {@link ShardSpec} is specified, only the files in the
+ * shard are returned. Files rejected by the {@link DocumentIdFilter} are never opened.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DirectoryDocumentSource implements DocumentSource {
+
+	private final List<String> documentIds;
+	private final List<File> files;
+	private final Charset encoding;
+	private int index = 0;
+
+	/**
+	 * @param directory
+	 * @param fileSuffix
+	 *            e.g. ".txt"; if null, all files are returned
+	 * @param encoding
+	 * @param filter
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	public DirectoryDocumentSource(File directory, String fileSuffix, Charset encoding, DocumentIdFilter filter)
+			throws IOException {
+		this(directory, fileSuffix, encoding, ShardSpec.ALL, filter);
+	}
+
+	/**
+	 * @param directory
+	 * @param fileSuffix
+	 *            e.g. ".txt"; if null, all files are returned
+	 * @param encoding
+	 * @param shardSpec
+	 *            applied to the sorted ids of all files with the suffix, before the filter
+	 * @param filter
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	public DirectoryDocumentSource(File directory, String fileSuffix, Charset encoding, ShardSpec shardSpec,
+			DocumentIdFilter filter) throws IOException {
+		Map<String, File> filesById = listFiles(directory, fileSuffix);
+		List<String> sortedIds = new ArrayList<String>(filesById.keySet());
+		DocumentSources.sortAndCheckUnique(sortedIds, directory);
+		documentIds = new ArrayList<String>();
+		files = new ArrayList<File>();
+		for (int position : DocumentSources.select(sortedIds, shardSpec, filter)) {
+			documentIds.add(sortedIds.get(position));
+			files.add(filesById.get(sortedIds.get(position)));
+		}
+		this.encoding = encoding;
+	}
+
+	/**
+	 * @param directory
+	 * @param fileSuffix
+	 *            if null, all files are listed
+	 * @return the ids of the documents in the directory, sorted
+	 * @throws IOException
+	 *             if the directory cannot be listed or two files have the same id
+	 */
+	public static List<String> listDocumentIds(File directory, String fileSuffix) throws IOException {
+		List<String> ids = new ArrayList<String>(listFiles(directory, fileSuffix).keySet());
+		DocumentSources.sortAndCheckUnique(ids, directory);
+		return ids;
+	}
+
+	private static Map<String, File> listFiles(File directory, String fileSuffix) throws IOException {
+		File[] listing = directory.listFiles();
+		if (listing == null) {
+			throw new IOException("Unable to list directory: " + directory);
+		}
+		Map<String, File> filesById = new HashMap<String, File>();
+		for (File file : listing) {
+			String id = file.isFile() ? DocumentSources.getDocumentId(file.getName(), fileSuffix) : null;
+			if (id != null && filesById.put(id, file) != null) {
+				throw new IOException("Document id " + id + " occurs more than once in " + directory);
+			}
+		}
+		return filesById;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return index < files.size();
+	}
+
+	@Override
+	public SourceDocument next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		File file = files.get(index);
+		String documentId = documentIds.get(index++);
+		return new SourceDocument(documentId, DocumentSources.readDocument(new FileInputStream(file), file.getName(),
+				encoding));
+	}
+
+	@Override
+	public int getDocumentsReturnedCount() {
+		return index;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return files.size();
+	}
+
+	@Override
+	public void close() {
+		/* nothing is held open between calls to next() */
+	}
+
+}
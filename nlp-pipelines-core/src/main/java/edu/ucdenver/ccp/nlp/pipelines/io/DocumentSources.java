@@ -0,0 +1,217 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Creates the {@link DocumentSource} appropriate for an input path, which may be a directory
+ * (containing plain or individually gzipped files), a .zip archive, or a .tar, .tar.gz or .tgz
+ * archive. In every case the document id is the name of the file (without any directory and without
+ * a .gz extension), so a corpus yields the same document ids, the same shards and the same output
+ * whether it is read from an archive or from the directory it extracts to.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentSources {
+
+	public static final String GZIP_SUFFIX = ".gz";
+
+	private DocumentSources() {
+		/* static utility class */
+	}
+
+	/**
+	 * @param input
+	 *            a directory or an archive file
+	 * @param fileSuffix
+	 *            e.g. ".txt"; only files with this suffix (optionally followed by .gz) are read
+	 * @param encoding
+	 * @param shardSpec
+	 * @param filter
+	 * @return a document source for the input
+	 * @throws IOException
+	 */
+	public static DocumentSource open(File input, String fileSuffix, Charset encoding, ShardSpec shardSpec,
+			DocumentIdFilter filter) throws IOException {
+		if (input.isDirectory()) {
+			return new DirectoryDocumentSource(input, fileSuffix, encoding, shardSpec, filter);
+		}
+		if (isZipArchive(input)) {
+			return new ZipDocumentSource(input, fileSuffix, encoding, shardSpec, filter);
+		}
+		if (isTarArchive(input)) {
+			return new TarDocumentSource(input, fileSuffix, encoding, shardSpec, filter);
+		}
+		throw new IOException("Input is neither a directory nor a supported archive (.zip, .tar, .tar.gz, .tgz): "
+				+ input);
+	}
+
+	/**
+	 * @param input
+	 *            a directory or an archive file
+	 * @param fileSuffix
+	 * @return the ids of all documents in the input, sorted
+	 * @throws IOException
+	 */
+	public static List<String> listDocumentIds(File input, String fileSuffix) throws IOException {
+		if (input.isDirectory()) {
+			return DirectoryDocumentSource.listDocumentIds(input, fileSuffix);
+		}
+		if (isZipArchive(input)) {
+			return ZipDocumentSource.listDocumentIds(input, fileSuffix);
+		}
+		if (isTarArchive(input)) {
+			return TarDocumentSource.listDocumentIds(input, fileSuffix);
+		}
+		throw new IOException("Input is neither a directory nor a supported archive (.zip, .tar, .tar.gz, .tgz): "
+				+ input);
+	}
+
+	static boolean isZipArchive(File file) {
+		return file.getName().toLowerCase().endsWith(".zip");
+	}
+
+	static boolean isTarArchive(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	/**
+	 * @param path
+	 *            a file name or archive entry name, possibly including directories
+	 * @param fileSuffix
+	 *            if null, every file matches
+	 * @return the document id for the path, or null if the file does not have the suffix (optionally
+	 *         followed by .gz)
+	 */
+	static String getDocumentId(String path, String fileSuffix) {
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		String id = name.endsWith(GZIP_SUFFIX) ? name.substring(0, name.length() - GZIP_SUFFIX.length()) : name;
+		if (id.isEmpty() || (fileSuffix != null && !id.endsWith(fileSuffix))) {
+			return null;
+		}
+		return id;
+	}
+
+	/**
+	 * @param sortedIds
+	 * @param shardSpec
+	 * @param filter
+	 * @return the positions of the ids selected by the shard specification and accepted by the filter
+	 */
+	static List<Integer> select(List<String> sortedIds, ShardSpec shardSpec, DocumentIdFilter filter) {
+		List<Integer> selected = new ArrayList<Integer>();
+		for (int index : shardSpec.select(sortedIds)) {
+			if (filter.accept(sortedIds.get(index))) {
+				selected.add(index);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param ids
+	 *            sorted in place
+	 * @param input
+	 *            used in the error message
+	 * @throws IOException
+	 *             if an id occurs more than once, as the documents' output would collide
+	 */
+	static void sortAndCheckUnique(List<String> ids, File input) throws IOException {
+		Collections.sort(ids);
+		for (int i = 1; i < ids.size(); i++) {
+			if (ids.get(i).equals(ids.get(i - 1))) {
+				throw new IOException("Document id " + ids.get(i) + " occurs more than once in " + input);
+			}
+		}
+	}
+
+	/**
+	 * Reads (and closes) the stream, decompressing it if the name ends in .gz
+	 */
+	static String readDocument(InputStream is, String name, Charset encoding) throws IOException {
+		InputStream in = name.endsWith(GZIP_SUFFIX) ? new GZIPInputStream(is) : is;
+		try {
+			return new String(readAll(in), encoding);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes the bytes, decompressing them first if the name ends in .gz
+	 */
+	static String readDocument(byte[] bytes, String name, Charset encoding) throws IOException {
+		if (name.endsWith(GZIP_SUFFIX)) {
+			return readDocument(new ByteArrayInputStream(bytes), name, encoding);
+		}
+		return new String(bytes, encoding);
+	}
+
+	/**
+	 * Reads the stream to its end without closing it
+	 */
+	static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+
+	static Set<String> toSet(List<String> ids, List<Integer> positions) {
+		Set<String> set = new HashSet<String>();
+		for (int position : positions) {
+			set.add(ids.get(position));
+		}
+		return set;
+	}
+
+}
@@ -0,0 +1,210 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text of a very large document into overlapping windows so that each window can be
+ * processed on its own, with memory bounded by the window size rather than the document size.
+ * Windows end at a paragraph break if there is one in the second half of the window, otherwise at
+ * the end of a sentence, otherwise at whitespace. Each window after the first starts at the first
+ * sentence (or line) that begins within the overlap.
+ * <p>
+ * Every offset of the document is owned by exactly one window: the boundary between the parts
+ * owned by two adjacent windows lies in the middle of their overlap, where both windows have
+ * context on either side. An annotation found in a window is kept only if its begin offset is
+ * owned by that window, so annotations found in both windows of an overlap are kept once.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentWindower {
+
+	/**
+	 * A window of a document's text; all offsets are document offsets
+	 */
+	public static class TextWindow {
+		private final int begin;
+		private final int end;
+		private final int ownedBegin;
+		private final int ownedEnd;
+
+		TextWindow(int begin, int end, int ownedBegin, int ownedEnd) {
+			this.begin = begin;
+			this.end = end;
+			this.ownedBegin = ownedBegin;
+			this.ownedEnd = ownedEnd;
+		}
+
+		/**
+		 * @return the document offset of the first character of the window; window offsets are
+		 *         rebased to document offsets by adding it
+		 */
+		public int getBegin() {
+			return begin;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * @param documentOffset
+		 * @return true if annotations beginning at the offset are taken from this window
+		 */
+		public boolean owns(int documentOffset) {
+			return documentOffset >= ownedBegin && documentOffset < ownedEnd;
+		}
+
+		/**
+		 * @param documentText
+		 * @return the text of the window
+		 */
+		public String getText(String documentText) {
+			return documentText.substring(begin, end);
+		}
+
+		@Override
+		public String toString() {
+			return "[" + begin + ", " + end + ") owning [" + ownedBegin + ", " + ownedEnd + ")";
+		}
+	}
+
+	private final int maxWindowSize;
+	private final int overlap;
+
+	/**
+	 * @param maxWindowSize
+	 *            the maximum number of characters in a window
+	 * @param overlap
+	 *            the number of characters by which adjacent windows overlap; must be less than half
+	 *            of the window size
+	 */
+	public DocumentWindower(int maxWindowSize, int overlap) {
+		if (maxWindowSize < 1 || overlap < 0 || 2 * overlap >= maxWindowSize) {
+			throw new IllegalArgumentException("Invalid window size and overlap: " + maxWindowSize + ", " + overlap
+					+ ". The overlap must be less than half of the window size.");
+		}
+		this.maxWindowSize = maxWindowSize;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * @param documentText
+	 * @return the windows of the text, in document order; a text no longer than the window size is
+	 *         a single window
+	 */
+	public List<TextWindow> split(String documentText) {
+		int length = documentText.length();
+		List<TextWindow> windows = new ArrayList<TextWindow>();
+		int begin = 0;
+		int ownedBegin = 0;
+		while (length - begin > maxWindowSize) {
+			int end = findWindowEnd(documentText, begin + maxWindowSize / 2, begin + maxWindowSize);
+			int nextBegin = findWindowBegin(documentText, end - overlap, end);
+			int ownedEnd = nextBegin + (end - nextBegin) / 2;
+			windows.add(new TextWindow(begin, end, ownedBegin, ownedEnd));
+			begin = nextBegin;
+			ownedBegin = ownedEnd;
+		}
+		windows.add(new TextWindow(begin, length, ownedBegin, length));
+		return windows;
+	}
+
+	/**
+	 * @return the last paragraph break, else sentence end, else whitespace in (from, to], or to if
+	 *         there is none
+	 */
+	static int findWindowEnd(String text, int from, int to) {
+		int sentenceEnd = -1;
+		int whitespace = -1;
+		for (int i = to; i > from; i--) {
+			char previous = text.charAt(i - 1);
+			if (!Character.isWhitespace(previous)) {
+				continue;
+			}
+			if (previous == '\n' && isParagraphBreak(text, i - 1)) {
+				return i;
+			}
+			if (sentenceEnd < 0 && i > 1 && isSentenceEnd(text.charAt(i - 2))) {
+				sentenceEnd = i;
+			}
+			if (whitespace < 0) {
+				whitespace = i;
+			}
+		}
+		if (sentenceEnd > 0) {
+			return sentenceEnd;
+		}
+		return (whitespace > 0) ? whitespace : to;
+	}
+
+	/**
+	 * @return the first offset in [from, to) at which a line or sentence begins, or from if there
+	 *         is none
+	 */
+	static int findWindowBegin(String text, int from, int to) {
+		for (int i = Math.max(from, 1); i < to; i++) {
+			char previous = text.charAt(i - 1);
+			if (Character.isWhitespace(text.charAt(i)) || !Character.isWhitespace(previous)) {
+				continue;
+			}
+			if (previous == '\n' || (i > 1 && isSentenceEnd(text.charAt(i - 2)))) {
+				return i;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * @return true if the newline at the offset is preceded, ignoring other whitespace, by another
+	 *         newline
+	 */
+	private static boolean isParagraphBreak(String text, int newlineOffset) {
+		for (int i = newlineOffset - 1; i >= 0 && Character.isWhitespace(text.charAt(i)); i--) {
+			if (text.charAt(i) == '\n') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSentenceEnd(char c) {
+		return c == '.' || c == '!' || c == '?';
+	}
+
+}
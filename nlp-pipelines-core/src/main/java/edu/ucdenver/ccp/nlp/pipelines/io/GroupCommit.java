@@ -0,0 +1,212 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Makes appends durable in groups. {@link #append(Object)} writes its entry and returns only once
+ * the entry has been forced to disk, but one force covers every entry written before it started,
+ * so threads that append concurrently share the cost of a sync instead of each paying for it:
+ * while one thread forces the entries written so far, the others write theirs, and the next force
+ * commits all of them at once. Entries are written in the order in which they are appended.
+ * <p>
+ * Once a commit has failed the state of the file is unknown, so every entry that it did not
+ * commit, and every later append, fails.
+ * 
+ * @param <T>
+ *            the type of the entries
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+abstract class GroupCommit<T> {
+
+	private long written = 0;
+	private long committed = 0;
+	private boolean committing = false;
+	private Throwable failure = null;
+
+	/**
+	 * the thread writing an entry; {@link #write(Object)} may release the monitor (by calling
+	 * {@link #commitAll()}), so this keeps other entries from being written meanwhile
+	 */
+	private Thread writer = null;
+
+	/**
+	 * Writes an entry; called in append order, one entry at a time, while holding this object's
+	 * monitor
+	 * 
+	 * @param entry
+	 * @throws IOException
+	 */
+	protected abstract void write(T entry) throws IOException;
+
+	/**
+	 * Called while holding this object's monitor when a commit starts
+	 * 
+	 * @return whatever {@link #commit(Object)} needs to force the entries written so far to disk
+	 * @throws IOException
+	 */
+	protected abstract Object startCommit() throws IOException;
+
+	/**
+	 * Forces the entries written before {@link #startCommit()} was called to disk. Called by one
+	 * thread at a time, and normally without this object's monitor, so that entries can be written
+	 * in the meantime.
+	 * 
+	 * @param state
+	 *            returned by {@link #startCommit()}
+	 * @throws IOException
+	 */
+	protected abstract void commit(Object state) throws IOException;
+
+	/**
+	 * Writes the entry and waits until it has been forced to disk
+	 * 
+	 * @param entry
+	 * @throws IOException
+	 *             if the entry could not be written or committed
+	 */
+	public void append(T entry) throws IOException {
+		long sequence;
+		synchronized (this) {
+			while (writer != null) {
+				await();
+			}
+			checkFailure();
+			writer = Thread.currentThread();
+			try {
+				write(entry);
+				sequence = ++written;
+			} finally {
+				writer = null;
+				notifyAll();
+			}
+		}
+		long target;
+		Object state;
+		synchronized (this) {
+			while (committing && committed < sequence) {
+				await();
+			}
+			if (committed >= sequence) {
+				/* committed by another thread's force */
+				return;
+			}
+			checkFailure();
+			committing = true;
+			target = written;
+			state = startCommitOrFail();
+		}
+		runCommit(target, state);
+	}
+
+	/**
+	 * Commits every entry written so far, once any commit in progress (and any entry being written
+	 * by another thread) is done; the caller must hold this object's monitor, e.g. before the file
+	 * that the entries are written to is closed
+	 * 
+	 * @throws IOException
+	 */
+	protected final void commitAll() throws IOException {
+		while (committing || (writer != null && writer != Thread.currentThread())) {
+			await();
+		}
+		if (committed == written) {
+			return;
+		}
+		checkFailure();
+		committing = true;
+		runCommit(written, startCommitOrFail());
+	}
+
+	private Object startCommitOrFail() throws IOException {
+		boolean started = false;
+		try {
+			Object state = startCommit();
+			started = true;
+			return state;
+		} finally {
+			if (!started) {
+				committing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	private void runCommit(long target, Object state) throws IOException {
+		Throwable error = null;
+		try {
+			commit(state);
+		} catch (IOException e) {
+			error = e;
+			throw e;
+		} catch (RuntimeException e) {
+			error = e;
+			throw e;
+		} catch (Error e) {
+			error = e;
+			throw e;
+		} finally {
+			synchronized (this) {
+				committing = false;
+				if (error == null) {
+					committed = target;
+				} else {
+					failure = error;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("An earlier commit failed, so the state of the file is unknown.", failure);
+		}
+	}
+
+	private void await() throws IOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a commit.");
+		}
+	}
+
+}
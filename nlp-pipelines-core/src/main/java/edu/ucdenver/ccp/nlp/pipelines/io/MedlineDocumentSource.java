@@ -0,0 +1,327 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Streams documents out of MEDLINE/PubMed XML files (e.g. the gzipped baseline and update files)
+ * using StAX, so that memory use does not depend on the size of the file. Each
+ * &lt;PubmedArticle&gt; becomes one document whose id is the PMID and whose text is the article
+ * title followed, on a new line, by the abstract. Structured abstracts have one line per section,
+ * prefixed by the section label. Text inside inline markup (e.g. &lt;i&gt;, &lt;sup&gt;) is kept;
+ * the markup is dropped.
+ * <p>
+ * The input may be a single .xml or .xml.gz file or a directory of them, which are read in file
+ * name order. {@link ShardSpec.Mode#RANGE} shards select documents by their position in that order;
+ * {@link ShardSpec.Mode#HASH} shards select them by PMID.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MedlineDocumentSource implements DocumentSource {
+
+	private static final Logger logger = Logger.getLogger(MedlineDocumentSource.class);
+
+	private static final String PUBMED_ARTICLE = "PubmedArticle";
+	private static final String MEDLINE_CITATION = "MedlineCitation";
+	private static final String PMID = "PMID";
+	private static final String ARTICLE_TITLE = "ArticleTitle";
+	private static final String ABSTRACT = "Abstract";
+	private static final String ABSTRACT_TEXT = "AbstractText";
+	private static final String LABEL = "Label";
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final XMLInputFactory xmlInputFactory;
+	private final List<File> files;
+	private final boolean requireAbstract;
+	private final ShardSpec shardSpec;
+	private final DocumentIdFilter filter;
+
+	private int fileIndex = 0;
+	private InputStream currentStream;
+	private XMLStreamReader xmlReader;
+	/**
+	 * the number of documents seen so far, i.e. the position of the next document in the input
+	 */
+	private int position = 0;
+	private int returnedCount = 0;
+	private SourceDocument nextDocument;
+
+	/**
+	 * @param input
+	 *            a MEDLINE XML file (optionally gzipped) or a directory of them
+	 * @param requireAbstract
+	 *            if true, citations without an abstract are skipped (and do not count towards
+	 *            RANGE positions)
+	 * @param shardSpec
+	 * @param filter
+	 * @throws IOException
+	 */
+	public MedlineDocumentSource(File input, boolean requireAbstract, ShardSpec shardSpec, DocumentIdFilter filter)
+			throws IOException {
+		this.files = listFiles(input);
+		this.requireAbstract = requireAbstract;
+		this.shardSpec = shardSpec;
+		this.filter = filter;
+		xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		/* the PubMed DOCTYPE references a remote DTD, which must not be fetched */
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		nextDocument = readNextDocument();
+	}
+
+	/**
+	 * @param input
+	 * @return the input file, or the .xml and .xml.gz files in the input directory sorted by name
+	 * @throws IOException
+	 */
+	static List<File> listFiles(File input) throws IOException {
+		if (!input.isDirectory()) {
+			if (!input.isFile()) {
+				throw new IOException("MEDLINE input does not exist: " + input);
+			}
+			return Arrays.asList(input);
+		}
+		File[] listing = input.listFiles();
+		if (listing == null) {
+			throw new IOException("Unable to list directory: " + input);
+		}
+		Arrays.sort(listing);
+		List<File> files = new ArrayList<File>();
+		for (File file : listing) {
+			if (file.isFile() && isMedlineFile(file)) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file name ends in .xml or .xml.gz
+	 */
+	public static boolean isMedlineFile(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".xml") || name.endsWith(".xml.gz");
+	}
+
+	/**
+	 * @return the next selected document, or null if there are no more
+	 * @throws IOException
+	 */
+	private SourceDocument readNextDocument() throws IOException {
+		try {
+			while (true) {
+				if (xmlReader == null) {
+					if (fileIndex == files.size()) {
+						return null;
+					}
+					openFile(files.get(fileIndex++));
+				}
+				SourceDocument document = readNextArticle();
+				if (document == null) {
+					closeFile();
+					continue;
+				}
+				if (requireAbstract && document.getText().indexOf('\n') < 0) {
+					continue;
+				}
+				int documentPosition = position++;
+				if (shardSpec.accept(document.getDocumentId(), documentPosition)
+						&& filter.accept(document.getDocumentId())) {
+					return document;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Error while parsing MEDLINE file " + files.get(fileIndex - 1), e);
+		}
+	}
+
+	private void openFile(File file) throws IOException, XMLStreamException {
+		logger.info("Reading MEDLINE file: " + file);
+		currentStream = new BufferedInputStream(new FileInputStream(file), 65536);
+		if (file.getName().toLowerCase().endsWith(".gz")) {
+			currentStream = new GZIPInputStream(currentStream, 65536);
+		}
+		xmlReader = xmlInputFactory.createXMLStreamReader(currentStream);
+	}
+
+	private void closeFile() throws IOException {
+		if (xmlReader != null) {
+			try {
+				xmlReader.close();
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+			xmlReader = null;
+		}
+		if (currentStream != null) {
+			currentStream.close();
+			currentStream = null;
+		}
+	}
+
+	/**
+	 * Advances past the next &lt;PubmedArticle&gt; element
+	 * 
+	 * @return the article as a document (if there is no abstract, the text is only the title and
+	 *         contains no line break), or null if the end of the file has been reached
+	 * @throws XMLStreamException
+	 */
+	private SourceDocument readNextArticle() throws XMLStreamException {
+		while (xmlReader.hasNext()) {
+			if (xmlReader.next() == XMLStreamConstants.START_ELEMENT
+					&& xmlReader.getLocalName().equals(PUBMED_ARTICLE)) {
+				return readArticle();
+			}
+		}
+		return null;
+	}
+
+	private SourceDocument readArticle() throws XMLStreamException {
+		String pmid = null;
+		String title = "";
+		StringBuilder abstractText = new StringBuilder();
+		/* element names from PubmedArticle down to the current element */
+		List<String> path = new ArrayList<String>();
+		path.add(PUBMED_ARTICLE);
+		while (!path.isEmpty()) {
+			int event = xmlReader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				path.remove(path.size() - 1);
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = xmlReader.getLocalName();
+				String parent = path.get(path.size() - 1);
+				if (name.equals(PMID) && parent.equals(MEDLINE_CITATION) && pmid == null) {
+					pmid = readText().trim();
+				} else if (name.equals(ARTICLE_TITLE) && path.size() == 3) {
+					title = readText().trim();
+				} else if (name.equals(ABSTRACT_TEXT) && parent.equals(ABSTRACT) && path.size() == 4) {
+					String label = xmlReader.getAttributeValue(null, LABEL);
+					String text = readText().trim();
+					if (!text.isEmpty()) {
+						abstractText.append('\n');
+						if (label != null && !label.isEmpty()) {
+							abstractText.append(label).append(": ");
+						}
+						abstractText.append(text);
+					}
+				} else {
+					path.add(name);
+				}
+			}
+		}
+		if (pmid == null) {
+			throw new XMLStreamException("PubmedArticle without a MedlineCitation PMID", xmlReader.getLocation());
+		}
+		return new SourceDocument(pmid, title + abstractText);
+	}
+
+	/**
+	 * Reads the text content of the current element, including the text of nested (inline markup)
+	 * elements, leaving the reader on the element's end tag. Runs of whitespace (including line
+	 * breaks) are collapsed to a single space so that only the separators between the title and the
+	 * abstract sections are line breaks.
+	 */
+	private String readText() throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = xmlReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(xmlReader.getText());
+			}
+		}
+		return WHITESPACE.matcher(text).replaceAll(" ");
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextDocument != null;
+	}
+
+	@Override
+	public SourceDocument next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SourceDocument document = nextDocument;
+		returnedCount++;
+		nextDocument = readNextDocument();
+		return document;
+	}
+
+	@Override
+	public int getDocumentsReturnedCount() {
+		return returnedCount;
+	}
+
+	/**
+	 * @return -1; the number of citations is not known until the input has been read
+	 */
+	@Override
+	public int getDocumentCount() {
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeFile();
+	}
+
+}
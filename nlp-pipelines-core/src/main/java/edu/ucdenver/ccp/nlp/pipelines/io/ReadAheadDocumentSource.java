@@ -0,0 +1,164 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads documents from another {@link DocumentSource} on a dedicated I/O thread, keeping up to a
+ * fixed number of them in a bounded queue. Consumers take documents from the queue, so they only
+ * wait for the disk when the reader has fallen behind; the reader waits (backpressure) when the
+ * queue is full. Errors on the reader thread are rethrown by {@link #hasNext()} or {@link #next()}
+ * once the documents read before the error have been consumed.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ReadAheadDocumentSource implements DocumentSource {
+
+	private static final Logger logger = Logger.getLogger(ReadAheadDocumentSource.class);
+
+	/**
+	 * queued after the last document
+	 */
+	private static final Object END_OF_INPUT = new Object();
+
+	private final DocumentSource delegate;
+	private final BlockingQueue<Object> queue;
+	private final Thread readerThread;
+	private Object head;
+	private int returnedCount = 0;
+
+	/**
+	 * Starts reading from the delegate immediately
+	 * 
+	 * @param delegate
+	 *            is only accessed by the reader thread (apart from
+	 *            {@link DocumentSource#getDocumentCount()}) until this source is closed
+	 * @param capacity
+	 *            the maximum number of documents read ahead
+	 */
+	public ReadAheadDocumentSource(DocumentSource delegate, int capacity) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAll();
+			}
+		}, "document-read-ahead");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	private void readAll() {
+		Object last = END_OF_INPUT;
+		try {
+			while (delegate.hasNext()) {
+				queue.put(delegate.next());
+			}
+		} catch (InterruptedException e) {
+			/* closed before all documents were read */
+			return;
+		} catch (IOException e) {
+			last = e;
+		} catch (RuntimeException e) {
+			last = new IOException("Error while reading documents ahead.", e);
+		}
+		try {
+			queue.put(last);
+		} catch (InterruptedException e) {
+			/* closed */
+		}
+	}
+
+	/**
+	 * Blocks until the reader thread has read the next document or reached the end of the input
+	 */
+	@Override
+	public boolean hasNext() throws IOException {
+		if (head == null) {
+			try {
+				head = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the next document.", e);
+			}
+		}
+		if (head instanceof IOException) {
+			throw new IOException("Error while reading documents ahead.", (IOException) head);
+		}
+		return head != END_OF_INPUT;
+	}
+
+	@Override
+	public SourceDocument next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SourceDocument document = (SourceDocument) head;
+		head = null;
+		returnedCount++;
+		return document;
+	}
+
+	@Override
+	public int getDocumentsReturnedCount() {
+		return returnedCount;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return delegate.getDocumentCount();
+	}
+
+	@Override
+	public void close() throws IOException {
+		readerThread.interrupt();
+		try {
+			readerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted while waiting for the read-ahead thread to stop.");
+		}
+		delegate.close();
+	}
+
+}
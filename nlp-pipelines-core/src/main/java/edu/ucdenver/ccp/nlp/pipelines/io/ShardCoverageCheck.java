@@ -0,0 +1,258 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Merges the batch checkpoint manifests written by the nodes of a sharded run and checks that
+ * together they cover the corpus exactly once: every document in the input directory must be
+ * listed in exactly one batch manifest, and no manifest may list a document that is not in the
+ * input directory. If the check succeeds, the merged manifest is written to the output directory
+ * as {@link CheckpointManifest#DEFAULT_FILE_NAME}.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ShardCoverageCheck {
+
+	/**
+	 * the maximum number of offending document ids logged per category
+	 */
+	private static final int MAX_IDS_TO_LOG = 20;
+
+	@Option(name = "-i", usage = "the input directory or archive of the sharded run", required = true)
+	private File inputDirectory;
+
+	@Option(name = "-o", usage = "the output directory of the sharded run (containing the batch manifests)", required = true)
+	private File outputDirectory;
+
+	@Option(name = "-suffix", usage = "the suffix of the input files (default .txt)")
+	private String fileSuffix = ".txt";
+
+	/**
+	 * The outcome of a coverage check
+	 */
+	public static class CoverageReport {
+		private final int corpusSize;
+		private final Map<Integer, Integer> batchSizes = new TreeMap<Integer, Integer>();
+		private final List<String> missing = new ArrayList<String>();
+		private final List<String> duplicated = new ArrayList<String>();
+		private final List<String> unknown = new ArrayList<String>();
+
+		public CoverageReport(int corpusSize) {
+			this.corpusSize = corpusSize;
+		}
+
+		public boolean isExact() {
+			return missing.isEmpty() && duplicated.isEmpty() && unknown.isEmpty();
+		}
+
+		public int getCorpusSize() {
+			return corpusSize;
+		}
+
+		/**
+		 * @return the number of documents recorded in each batch manifest
+		 */
+		public Map<Integer, Integer> getBatchSizes() {
+			return batchSizes;
+		}
+
+		/**
+		 * @return documents in the corpus that no batch manifest lists
+		 */
+		public List<String> getMissing() {
+			return missing;
+		}
+
+		/**
+		 * @return documents listed more than once, in one or several batch manifests
+		 */
+		public List<String> getDuplicated() {
+			return duplicated;
+		}
+
+		/**
+		 * @return documents listed in a batch manifest that are not in the corpus
+		 */
+		public List<String> getUnknown() {
+			return unknown;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Corpus size: ").append(corpusSize).append("\n");
+			for (Map.Entry<Integer, Integer> entry : batchSizes.entrySet()) {
+				sb.append("Batch ").append(entry.getKey()).append(": ").append(entry.getValue())
+						.append(" documents\n");
+			}
+			appendIds(sb, "Missing", missing);
+			appendIds(sb, "Duplicated", duplicated);
+			appendIds(sb, "Unknown", unknown);
+			sb.append(isExact() ? "Shards cover the corpus exactly once." : "Shards do NOT cover the corpus exactly once.");
+			return sb.toString();
+		}
+
+		private static void appendIds(StringBuilder sb, String label, List<String> ids) {
+			sb.append(label).append(": ").append(ids.size());
+			if (!ids.isEmpty()) {
+				sb.append(" ").append(ids.subList(0, Math.min(MAX_IDS_TO_LOG, ids.size())));
+			}
+			sb.append("\n");
+		}
+	}
+
+	/**
+	 * @param inputDirectory
+	 * @param fileSuffix
+	 * @param outputDirectory
+	 * @return the coverage of the corpus by the batch manifests in the output directory
+	 * @throws IOException
+	 */
+	public static CoverageReport check(File inputDirectory, String fileSuffix, File outputDirectory)
+			throws IOException {
+		List<String> corpus = DocumentSources.listDocumentIds(inputDirectory, fileSuffix);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (String id : corpus) {
+			counts.put(id, 0);
+		}
+		CoverageReport report = new CoverageReport(corpus.size());
+		for (File manifestFile : getBatchManifests(outputDirectory)) {
+			List<String> ids = CheckpointManifest.readEntries(manifestFile);
+			report.batchSizes.put(CheckpointManifest.getBatchNumber(manifestFile.getName()), ids.size());
+			for (String id : ids) {
+				Integer count = counts.get(id);
+				if (count == null) {
+					report.unknown.add(id);
+				} else {
+					counts.put(id, count + 1);
+				}
+			}
+		}
+		for (String id : corpus) {
+			int count = counts.get(id);
+			if (count == 0) {
+				report.missing.add(id);
+			} else if (count > 1) {
+				report.duplicated.add(id);
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Writes the ids from all batch manifests, in corpus order, to the merged manifest
+	 * 
+	 * @param inputDirectory
+	 * @param fileSuffix
+	 * @param outputDirectory
+	 * @return the merged manifest file
+	 * @throws IOException
+	 */
+	public static File writeMergedManifest(File inputDirectory, String fileSuffix, File outputDirectory)
+			throws IOException {
+		File mergedFile = new File(outputDirectory, CheckpointManifest.DEFAULT_FILE_NAME);
+		File tmpFile = new File(outputDirectory, CheckpointManifest.DEFAULT_FILE_NAME + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), Charset.forName("UTF-8"));
+		try {
+			for (String id : DocumentSources.listDocumentIds(inputDirectory, fileSuffix)) {
+				writer.write(id + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		Files.move(tmpFile.toPath(), mergedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return mergedFile;
+	}
+
+	private static List<File> getBatchManifests(File outputDirectory) throws IOException {
+		File[] files = outputDirectory.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list directory: " + outputDirectory);
+		}
+		List<File> manifests = new ArrayList<File>();
+		for (File file : files) {
+			if (CheckpointManifest.getBatchNumber(file.getName()) != null) {
+				manifests.add(file);
+			}
+		}
+		return manifests;
+	}
+
+	/**
+	 * Exits with status 1 if the shards do not cover the corpus exactly once
+	 * 
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		ShardCoverageCheck options = new ShardCoverageCheck();
+		CmdLineParser parser = new CmdLineParser(options);
+		try {
+			parser.parseArgument(args);
+		} catch (CmdLineException e) {
+			System.err.println(e.getMessage());
+			parser.printUsage(System.err);
+			throw new IllegalArgumentException(e);
+		}
+		CoverageReport report = check(options.inputDirectory, options.fileSuffix, options.outputDirectory);
+		System.out.println(report);
+		if (!report.isExact()) {
+			System.exit(1);
+		}
+		File merged = writeMergedManifest(options.inputDirectory, options.fileSuffix, options.outputDirectory);
+		System.out.println("Wrote merged manifest: " + merged);
+	}
+
+}
@@ -0,0 +1,225 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Selects the part of a corpus that one node of a cluster processes. The selection depends only on
+ * the (sorted) document ids and the specification itself, so nodes can partition a corpus without
+ * coordinating with each other:
+ * <ul>
+ * <li>{@link Mode#RANGE} - the documents at positions [skip, skip + count) of the sorted ids</li>
+ * <li>{@link Mode#HASH} - the documents whose id hashes to the shard index, modulo the number of
+ * shards; documents added to the corpus later do not move existing documents to another shard</li>
+ * </ul>
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ShardSpec {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public enum Mode {
+		ALL, RANGE, HASH
+	}
+
+	/**
+	 * a specification that selects every document
+	 */
+	public static final ShardSpec ALL = new ShardSpec(Mode.ALL, 0, -1);
+
+	private final Mode mode;
+	private final int first;
+	private final int second;
+
+	private ShardSpec(Mode mode, int first, int second) {
+		this.mode = mode;
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * @param numToSkip
+	 * @param numToProcess
+	 *            if negative, all documents after the skipped ones are selected
+	 * @return a specification selecting a range of the sorted document ids
+	 */
+	public static ShardSpec range(int numToSkip, int numToProcess) {
+		if (numToSkip < 0) {
+			throw new IllegalArgumentException("The number of documents to skip cannot be negative: " + numToSkip);
+		}
+		return new ShardSpec(Mode.RANGE, numToSkip, numToProcess);
+	}
+
+	/**
+	 * @param numShards
+	 * @param shardIndex
+	 *            0-based
+	 * @return a specification selecting the documents whose ids hash to the shard index
+	 */
+	public static ShardSpec hash(int numShards, int shardIndex) {
+		if (numShards < 1 || shardIndex < 0 || shardIndex >= numShards) {
+			throw new IllegalArgumentException("Invalid hash shard " + shardIndex + " of " + numShards);
+		}
+		return new ShardSpec(Mode.HASH, numShards, shardIndex);
+	}
+
+	/**
+	 * @param sortedDocumentIds
+	 * @return the positions (in the specified list) of the selected documents, in ascending order
+	 */
+	public List<Integer> select(List<String> sortedDocumentIds) {
+		List<Integer> selected = new ArrayList<Integer>();
+		switch (mode) {
+		case ALL:
+			for (int i = 0; i < sortedDocumentIds.size(); i++) {
+				selected.add(i);
+			}
+			break;
+		case RANGE:
+			int end = (second < 0) ? sortedDocumentIds.size() : (int) Math.min(sortedDocumentIds.size(), (long) first
+					+ second);
+			for (int i = first; i < end; i++) {
+				selected.add(i);
+			}
+			break;
+		case HASH:
+			for (int i = 0; i < sortedDocumentIds.size(); i++) {
+				if (getHashShard(sortedDocumentIds.get(i), first) == second) {
+					selected.add(i);
+				}
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unhandled shard mode: " + mode.name());
+		}
+		return selected;
+	}
+
+	/**
+	 * @return true if documents can only be selected by their position among the sorted ids of the
+	 *         whole corpus, i.e. {@link #accept(String)} cannot be used
+	 */
+	public boolean requiresSortedIds() {
+		return mode == Mode.RANGE;
+	}
+
+	/**
+	 * @param documentId
+	 * @return true if the document is in this shard; only valid if {@link #requiresSortedIds()} is
+	 *         false
+	 */
+	public boolean accept(String documentId) {
+		switch (mode) {
+		case ALL:
+			return true;
+		case HASH:
+			return getHashShard(documentId, first) == second;
+		default:
+			throw new IllegalStateException("Shard mode " + mode.name() + " requires the sorted document ids");
+		}
+	}
+
+	/**
+	 * For inputs whose documents are not known in advance, e.g. a stream of MEDLINE citations, a
+	 * RANGE is applied to the documents' positions in the order in which they are read.
+	 * 
+	 * @param documentId
+	 * @param position
+	 *            the (0-based) position of the document in the input
+	 * @return true if the document is in this shard
+	 */
+	public boolean accept(String documentId, int position) {
+		if (mode == Mode.RANGE) {
+			return position >= first && (second < 0 || position - first < second);
+		}
+		return accept(documentId);
+	}
+
+	/**
+	 * @param documentId
+	 * @param numShards
+	 * @return the hash shard that the document belongs to; stable across JVMs and platforms
+	 */
+	public static int getHashShard(String documentId, int numShards) {
+		CRC32 crc = new CRC32();
+		crc.update(documentId.getBytes(UTF_8));
+		return (int) (crc.getValue() % numShards);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return a string from which the specification can be recreated using {@link #parse(String)},
+	 *         e.g. "RANGE:1000:500" or "HASH:8:3"
+	 */
+	@Override
+	public String toString() {
+		return mode.name() + ":" + first + ":" + second;
+	}
+
+	/**
+	 * @param spec
+	 *            as returned by {@link #toString()}
+	 * @return the shard specification
+	 */
+	public static ShardSpec parse(String spec) {
+		String[] toks = spec.split(":");
+		if (toks.length != 3) {
+			throw new IllegalArgumentException("Invalid shard specification: " + spec);
+		}
+		Mode mode = Mode.valueOf(toks[0]);
+		int first = Integer.parseInt(toks[1]);
+		int second = Integer.parseInt(toks[2]);
+		switch (mode) {
+		case ALL:
+			return ALL;
+		case RANGE:
+			return range(first, second);
+		case HASH:
+			return hash(first, second);
+		default:
+			throw new IllegalArgumentException("Unhandled shard mode: " + mode.name());
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Streams the entries with a given suffix out of a .tar, .tar.gz or .tgz archive without
+ * extracting it. The document id is the entry's file name (directories inside the archive are
+ * ignored); entries may be individually gzipped, in which case the .gz extension is not part of the
+ * id.
+ * <p>
+ * A tar archive has no index, so documents are returned in the order in which they appear in the
+ * archive. The selection of documents is nevertheless the same as for the extracted directory:
+ * {@link ShardSpec.Mode#HASH} shards depend only on the document id, and for
+ * {@link ShardSpec.Mode#RANGE} shards the archive is first scanned once (reading headers only) to
+ * determine the sorted ids that fall in the range. Output is written per document id, so the
+ * annotation files produced are identical to those produced from the extracted directory.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class TarDocumentSource implements DocumentSource {
+
+	private final TarArchiveInputStream tarStream;
+	private final String fileSuffix;
+	private final Charset encoding;
+	private final ShardSpec shardSpec;
+	private final DocumentIdFilter filter;
+	/**
+	 * for RANGE shards, the ids selected by the initial scan; otherwise null
+	 */
+	private final Set<String> selectedIds;
+	private final int documentCount;
+	private SourceDocument nextDocument;
+	private int returnedCount = 0;
+
+	/**
+	 * @param archive
+	 * @param fileSuffix
+	 *            e.g. ".txt"; if null, all entries are returned
+	 * @param encoding
+	 * @param shardSpec
+	 * @param filter
+	 * @throws IOException
+	 */
+	public TarDocumentSource(File archive, String fileSuffix, Charset encoding, ShardSpec shardSpec,
+			DocumentIdFilter filter) throws IOException {
+		this.fileSuffix = fileSuffix;
+		this.encoding = encoding;
+		this.shardSpec = shardSpec;
+		this.filter = filter;
+		if (shardSpec.requiresSortedIds()) {
+			List<String> sortedIds = listDocumentIds(archive, fileSuffix);
+			List<Integer> selected = DocumentSources.select(sortedIds, shardSpec, filter);
+			selectedIds = DocumentSources.toSet(sortedIds, selected);
+			documentCount = selected.size();
+		} else {
+			selectedIds = null;
+			documentCount = -1;
+		}
+		tarStream = openTarStream(archive);
+		nextDocument = readNextDocument();
+	}
+
+	/**
+	 * Scans the archive headers (entry contents are skipped, not decompressed)
+	 * 
+	 * @param archive
+	 * @param fileSuffix
+	 * @return the ids of the documents in the archive, sorted
+	 * @throws IOException
+	 */
+	public static List<String> listDocumentIds(File archive, String fileSuffix) throws IOException {
+		List<String> ids = new ArrayList<String>();
+		TarArchiveInputStream tarStream = openTarStream(archive);
+		try {
+			TarArchiveEntry entry;
+			while ((entry = tarStream.getNextTarEntry()) != null) {
+				String id = entry.isFile() ? DocumentSources.getDocumentId(entry.getName(), fileSuffix) : null;
+				if (id != null) {
+					ids.add(id);
+				}
+			}
+		} finally {
+			tarStream.close();
+		}
+		DocumentSources.sortAndCheckUnique(ids, archive);
+		return ids;
+	}
+
+	private static TarArchiveInputStream openTarStream(File archive) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(archive));
+		String name = archive.getName().toLowerCase();
+		if (name.endsWith(".gz") || name.endsWith(".tgz")) {
+			is = new GZIPInputStream(is, 65536);
+		}
+		return new TarArchiveInputStream(is);
+	}
+
+	private boolean isSelected(String documentId) {
+		if (selectedIds != null) {
+			return selectedIds.contains(documentId);
+		}
+		return shardSpec.accept(documentId) && filter.accept(documentId);
+	}
+
+	/**
+	 * @return the next selected document in the archive, or null if there are no more
+	 * @throws IOException
+	 */
+	private SourceDocument readNextDocument() throws IOException {
+		TarArchiveEntry entry;
+		while ((entry = tarStream.getNextTarEntry()) != null) {
+			String documentId = entry.isFile() ? DocumentSources.getDocumentId(entry.getName(), fileSuffix) : null;
+			if (documentId != null && isSelected(documentId)) {
+				/* the tar stream ends at the end of the entry and must not be closed */
+				return new SourceDocument(documentId, DocumentSources.readDocument(
+						DocumentSources.readAll(tarStream), entry.getName(), encoding));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextDocument != null;
+	}
+
+	@Override
+	public SourceDocument next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SourceDocument document = nextDocument;
+		returnedCount++;
+		nextDocument = readNextDocument();
+		return document;
+	}
+
+	@Override
+	public int getDocumentsReturnedCount() {
+		return returnedCount;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return documentCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		tarStream.close();
+	}
+
+}
@@ -0,0 +1,159 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Returns the entries with a given suffix in a zip archive, in document id order, without
+ * extracting the archive. The document id is the entry's file name (directories inside the archive
+ * are ignored); entries may be individually gzipped, in which case the .gz extension is not part of
+ * the id. Because the zip central directory lists every entry up front, sharding and ordering are
+ * identical to those of {@link DirectoryDocumentSource} on the extracted directory. Entries are
+ * decompressed one at a time as they are returned.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ZipDocumentSource implements DocumentSource {
+
+	private final ZipFile zipFile;
+	private final List<String> documentIds;
+	private final List<ZipEntry> entries;
+	private final Charset encoding;
+	private int index = 0;
+
+	/**
+	 * @param archive
+	 * @param fileSuffix
+	 *            e.g. ".txt"; if null, all entries are returned
+	 * @param encoding
+	 * @param shardSpec
+	 *            applied to the sorted ids of all entries with the suffix, before the filter
+	 * @param filter
+	 * @throws IOException
+	 */
+	public ZipDocumentSource(File archive, String fileSuffix, Charset encoding, ShardSpec shardSpec,
+			DocumentIdFilter filter) throws IOException {
+		zipFile = new ZipFile(archive);
+		try {
+			Map<String, ZipEntry> entriesById = listEntries(zipFile, archive, fileSuffix);
+			List<String> sortedIds = new ArrayList<String>(entriesById.keySet());
+			DocumentSources.sortAndCheckUnique(sortedIds, archive);
+			documentIds = new ArrayList<String>();
+			entries = new ArrayList<ZipEntry>();
+			for (int position : DocumentSources.select(sortedIds, shardSpec, filter)) {
+				documentIds.add(sortedIds.get(position));
+				entries.add(entriesById.get(sortedIds.get(position)));
+			}
+		} catch (IOException e) {
+			zipFile.close();
+			throw e;
+		}
+		this.encoding = encoding;
+	}
+
+	/**
+	 * @param archive
+	 * @param fileSuffix
+	 * @return the ids of the documents in the archive, sorted
+	 * @throws IOException
+	 */
+	public static List<String> listDocumentIds(File archive, String fileSuffix) throws IOException {
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			List<String> ids = new ArrayList<String>(listEntries(zipFile, archive, fileSuffix).keySet());
+			DocumentSources.sortAndCheckUnique(ids, archive);
+			return ids;
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	private static Map<String, ZipEntry> listEntries(ZipFile zipFile, File archive, String fileSuffix)
+			throws IOException {
+		Map<String, ZipEntry> entriesById = new HashMap<String, ZipEntry>();
+		for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+			ZipEntry entry = e.nextElement();
+			String id = entry.isDirectory() ? null : DocumentSources.getDocumentId(entry.getName(), fileSuffix);
+			if (id != null && entriesById.put(id, entry) != null) {
+				throw new IOException("Document id " + id + " occurs more than once in " + archive);
+			}
+		}
+		return entriesById;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return index < entries.size();
+	}
+
+	@Override
+	public SourceDocument next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ZipEntry entry = entries.get(index);
+		String documentId = documentIds.get(index++);
+		return new SourceDocument(documentId, DocumentSources.readDocument(zipFile.getInputStream(entry),
+				entry.getName(), encoding));
+	}
+
+	@Override
+	public int getDocumentsReturnedCount() {
+		return index;
+	}
+
+	@Override
+	public int getDocumentCount() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		zipFile.close();
+	}
+
+}
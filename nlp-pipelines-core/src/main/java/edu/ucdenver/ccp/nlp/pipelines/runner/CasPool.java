@@ -0,0 +1,164 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+
+/**
+ * A fixed number of {@link CAS}es that are created once, share a single type system, and are reset
+ * and reused for document after document, so that the CAS heaps and indexes are not reallocated
+ * for each document. A CAS is acquired to hold a document and released once the document has been
+ * fully processed, possibly by another thread.
+ * <p>
+ * The pool counts how often a CAS was requested while all CASes were in use, and how long the
+ * requesting threads waited; frequent exhaustion means that a later stage (e.g. output) is the
+ * bottleneck, or that the pool is too small.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CasPool {
+
+	private final BlockingQueue<CAS> freeCases = new LinkedBlockingQueue<CAS>();
+	private final int size;
+	private final TypeSystem typeSystem;
+
+	private final AtomicLong acquisitions = new AtomicLong();
+	private final AtomicLong exhaustions = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	/**
+	 * @param metaData
+	 *            the metadata of the components that will process the CASes
+	 * @param size
+	 *            the number of CASes in the pool
+	 * @throws ResourceInitializationException
+	 */
+	public CasPool(List<MetaDataObject> metaData, int size) throws ResourceInitializationException {
+		if (size < 1) {
+			throw new IllegalArgumentException("The CAS pool size must be at least 1: " + size);
+		}
+		this.size = size;
+		CAS firstCas = CasCreationUtils.createCas(metaData);
+		typeSystem = firstCas.getTypeSystem();
+		freeCases.add(firstCas);
+		for (int i = 1; i < size; i++) {
+			freeCases.add(CasCreationUtils.createCas(metaData, typeSystem,
+					UIMAFramework.getDefaultPerformanceTuningProperties()));
+		}
+	}
+
+	/**
+	 * @return the type system shared by all CASes in the pool
+	 */
+	public TypeSystem getTypeSystem() {
+		return typeSystem;
+	}
+
+	/**
+	 * @return an empty CAS, waiting for one to be released if all are in use
+	 * @throws InterruptedException
+	 */
+	public CAS acquire() throws InterruptedException {
+		acquisitions.incrementAndGet();
+		CAS cas = freeCases.poll();
+		if (cas == null) {
+			exhaustions.incrementAndGet();
+			long start = System.nanoTime();
+			try {
+				cas = freeCases.take();
+			} finally {
+				waitNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+		return cas;
+	}
+
+	/**
+	 * Resets the CAS and returns it to the pool
+	 * 
+	 * @param cas
+	 *            a CAS obtained from {@link #acquire()}
+	 */
+	public void release(CAS cas) {
+		cas.reset();
+		freeCases.add(cas);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of times a CAS was acquired
+	 */
+	public long getAcquisitionCount() {
+		return acquisitions.get();
+	}
+
+	/**
+	 * @return the number of times a CAS was requested while every CAS in the pool was in use
+	 */
+	public long getExhaustionCount() {
+		return exhaustions.get();
+	}
+
+	/**
+	 * @return the total time, in milliseconds, that threads waited for a CAS
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		long acquired = getAcquisitionCount();
+		long exhausted = getExhaustionCount();
+		return String.format("CAS pool of %d: %d acquisitions, exhausted %d times (%.1f%%), waited %d ms", size,
+				acquired, exhausted, (acquired == 0) ? 0.0 : 100.0 * exhausted / acquired, getWaitMillis());
+	}
+
+}
@@ -0,0 +1,259 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Periodically writes the {@link PipelineMetrics} of all stages to two files in a directory:
+ * {@value #JSON_FILE_NAME}, and {@value #PROMETHEUS_FILE_NAME} in the Prometheus text exposition
+ * format (e.g. for the node exporter's textfile collector). Each file is replaced atomically, so a
+ * reader never sees a partially written report. A final report is written when the reporter is
+ * stopped.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MetricsReporter {
+
+	private static final Logger logger = Logger.getLogger(MetricsReporter.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static final String JSON_FILE_NAME = "metrics.json";
+	public static final String PROMETHEUS_FILE_NAME = "metrics.prom";
+
+	/**
+	 * the default number of seconds between reports
+	 */
+	public static final int DEFAULT_PERIOD_SECONDS = 60;
+
+	private final File directory;
+	private final int periodSeconds;
+	private final long startNanos = System.nanoTime();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param directory
+	 *            the directory the reports are written to; created if necessary
+	 * @param periodSeconds
+	 *            the number of seconds between reports
+	 */
+	public MetricsReporter(File directory, int periodSeconds) {
+		this.directory = directory;
+		this.periodSeconds = periodSeconds;
+	}
+
+	/**
+	 * Starts writing reports in the background
+	 * 
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public void start() throws IOException {
+		Files.createDirectories(directory.toPath());
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeReport();
+				} catch (IOException e) {
+					logger.warn("Unable to write pipeline metrics to " + directory, e);
+				}
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the background reports and writes a final report
+	 * 
+	 * @throws IOException
+	 */
+	public void stop() throws IOException {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			try {
+				scheduler.awaitTermination(periodSeconds, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		writeReport();
+	}
+
+	/**
+	 * Writes the current metrics of all stages
+	 * 
+	 * @throws IOException
+	 */
+	public void writeReport() throws IOException {
+		List<StageMetrics> stages = PipelineMetrics.getStages();
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		replace(new File(directory, JSON_FILE_NAME), toJson(stages, elapsedMillis));
+		replace(new File(directory, PROMETHEUS_FILE_NAME), toPrometheus(stages));
+	}
+
+	private static void replace(File file, String content) throws IOException {
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		Files.write(temp.toPath(), content.getBytes(UTF_8));
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param stages
+	 * @param elapsedMillis
+	 *            the time since the run started
+	 * @return the metrics as a JSON object
+	 */
+	static String toJson(List<StageMetrics> stages, long elapsedMillis) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"timestamp\": ").append(System.currentTimeMillis());
+		json.append(",\n  \"elapsedSeconds\": ").append(format(elapsedMillis / 1000.0));
+		json.append(",\n  \"stages\": [");
+		for (int i = 0; i < stages.size(); i++) {
+			StageMetrics stage = stages.get(i);
+			double seconds = stage.getNanos() / 1e9;
+			json.append((i == 0) ? "\n" : ",\n");
+			json.append("    {\"name\": ").append(quote(stage.getName()));
+			json.append(", \"documents\": ").append(stage.getDocumentCount());
+			json.append(", \"seconds\": ").append(format(seconds));
+			json.append(", \"characters\": ").append(stage.getCharacterCount());
+			json.append(", \"charactersPerSecond\": ").append(format(rate(stage.getCharacterCount(), seconds)));
+			json.append(", \"documentsPerSecond\": ").append(format(rate(stage.getDocumentCount(), seconds)));
+			json.append(", \"annotationsAdded\": ").append(stage.getAnnotationsAdded());
+			json.append(", \"latencyMillis\": {");
+			json.append("\"p50\": ").append(format(stage.getQuantileNanos(0.5) / 1e6));
+			json.append(", \"p90\": ").append(format(stage.getQuantileNanos(0.9) / 1e6));
+			json.append(", \"p99\": ").append(format(stage.getQuantileNanos(0.99) / 1e6));
+			json.append(", \"max\": ").append(format(stage.getMaxNanos() / 1e6)).append("}}");
+		}
+		json.append("\n  ]\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * @param stages
+	 * @return the metrics in the Prometheus text exposition format
+	 */
+	static String toPrometheus(List<StageMetrics> stages) {
+		StringBuilder prom = new StringBuilder();
+		prom.append("# HELP nlp_pipeline_stage_seconds Time spent by a pipeline stage per document.\n");
+		prom.append("# TYPE nlp_pipeline_stage_seconds histogram\n");
+		for (StageMetrics stage : stages) {
+			String label = "stage=\"" + escapeLabel(stage.getName()) + "\"";
+			long[] counts = stage.getBucketCounts();
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				String bound = (i < StageMetrics.BUCKET_BOUNDS_NANOS.length) ? format(StageMetrics.BUCKET_BOUNDS_NANOS[i]
+						/ 1e9) : "+Inf";
+				prom.append("nlp_pipeline_stage_seconds_bucket{").append(label).append(",le=\"").append(bound)
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			prom.append("nlp_pipeline_stage_seconds_sum{").append(label).append("} ")
+					.append(format(stage.getNanos() / 1e9)).append('\n');
+			prom.append("nlp_pipeline_stage_seconds_count{").append(label).append("} ")
+					.append(stage.getDocumentCount()).append('\n');
+		}
+		prom.append("# HELP nlp_pipeline_stage_characters_total Characters in the documents processed by a pipeline stage.\n");
+		prom.append("# TYPE nlp_pipeline_stage_characters_total counter\n");
+		for (StageMetrics stage : stages) {
+			prom.append("nlp_pipeline_stage_characters_total{stage=\"").append(escapeLabel(stage.getName()))
+					.append("\"} ").append(stage.getCharacterCount()).append('\n');
+		}
+		prom.append("# HELP nlp_pipeline_stage_annotations_added Annotations added by a pipeline stage, less those it removed.\n");
+		prom.append("# TYPE nlp_pipeline_stage_annotations_added gauge\n");
+		for (StageMetrics stage : stages) {
+			prom.append("nlp_pipeline_stage_annotations_added{stage=\"").append(escapeLabel(stage.getName()))
+					.append("\"} ").append(stage.getAnnotationsAdded()).append('\n');
+		}
+		return prom.toString();
+	}
+
+	private static double rate(long count, double seconds) {
+		return (seconds > 0) ? count / seconds : 0.0;
+	}
+
+	static String format(double value) {
+		String formatted = String.format(Locale.ROOT, "%.6f", value);
+		/* trim trailing zeros, keeping at least one digit after the point */
+		int end = formatted.length();
+		while (formatted.charAt(end - 1) == '0' && formatted.charAt(end - 2) != '.') {
+			end--;
+		}
+		return formatted.substring(0, end);
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+}
@@ -0,0 +1,584 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.ResourceManager;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+/**
+ * Runs a pipeline of {@link AnalysisEngineDescription}s over the documents returned by a single
+ * {@link CollectionReader} using a number of worker threads. Each worker owns its own replica of
+ * the pipeline; the workers pull documents from the shared reader one at a time, so the reader
+ * itself never needs to be thread-safe. Documents are held in {@link CAS}es from a fixed
+ * {@link CasPool} that are reset and reused from one document to the next rather than reallocated.
+ * <p>
+ * All replicas are produced using a single {@link ResourceManager}, so external resources declared
+ * by the pipeline components (e.g. the ConceptMapper dictionary) are loaded once and shared
+ * read-only by every replica instead of being loaded once per replica.
+ * <p>
+ * Output components (e.g. file writers) can instead be run as a separate write-behind stage: once a
+ * worker has analyzed a document, its CAS is queued for dedicated output threads, which return it
+ * to the pool once it has been written, and the worker continues with a CAS from the pool, so the
+ * workers do not wait on output I/O. The pool holds as many extra CASes as documents may wait for
+ * output; when all of them are in use the workers wait (backpressure). Documents are written in
+ * roughly the order in which their analysis completes.
+ * <p>
+ * When a run completes, the CAS pool statistics and the garbage collection time per document are
+ * logged. If a {@link ProgressReporter} is given, each document is counted once its processing,
+ * including any output, has completed.
+ * 
+ * @author Colorado Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParallelPipeline {
+
+	private static final Logger logger = Logger.getLogger(ParallelPipeline.class);
+
+	/**
+	 * how often the thread waiting for the workers checks whether the output stage has failed
+	 */
+	private static final long OUTPUT_FAILURE_CHECK_MILLIS = 100;
+
+	/**
+	 * @return the default number of worker threads, i.e. the number of available processors
+	 */
+	public static int getDefaultNumberOfThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Processes all documents returned by the specified {@link CollectionReader} with
+	 * <code>numThreads</code> replicas of the specified pipeline.
+	 * 
+	 * @param reader
+	 * @param numThreads
+	 *            the number of pipeline replicas to run concurrently
+	 * @param descs
+	 *            the components of the pipeline, in the order they should be run
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void runPipeline(CollectionReader reader, int numThreads, AnalysisEngineDescription... descs)
+			throws UIMAException, IOException {
+		runPipeline(reader, numThreads, (ProgressReporter) null, descs);
+	}
+
+	/**
+	 * Processes all documents returned by the specified {@link CollectionReader} with
+	 * <code>numThreads</code> replicas of the specified pipeline.
+	 * 
+	 * @param reader
+	 * @param numThreads
+	 *            the number of pipeline replicas to run concurrently
+	 * @param progress
+	 *            if not null, counts each document once it has been processed
+	 * @param descs
+	 *            the components of the pipeline, in the order they should be run
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void runPipeline(CollectionReader reader, int numThreads, ProgressReporter progress,
+			AnalysisEngineDescription... descs) throws UIMAException, IOException {
+		AnalysisEngineDescription aggregateDesc = AnalysisEngineFactory.createAggregateDescription(descs);
+		List<AnalysisEngine> replicas = createReplicas(aggregateDesc, Math.max(numThreads, 1));
+		try {
+			List<MetaDataObject> metaData = Arrays.<MetaDataObject> asList(reader.getMetaData(), replicas.get(0)
+					.getMetaData());
+			/* all CASes share one type system so that the reader can fill any of them */
+			CasPool casPool = new CasPool(metaData, replicas.size());
+			reader.typeSystemInit(casPool.getTypeSystem());
+			List<Worker> workers = new ArrayList<Worker>();
+			for (AnalysisEngine aggregate : replicas) {
+				workers.add(new Worker(reader, aggregate, casPool, null, progress));
+			}
+			logger.info("Processing documents using " + replicas.size() + " pipeline replicas.");
+			long gcMillis = getGarbageCollectionMillis();
+			runWorkers(workers, null);
+			for (AnalysisEngine aggregate : replicas) {
+				aggregate.collectionProcessComplete();
+			}
+			logStatistics(workers, casPool, getGarbageCollectionMillis() - gcMillis);
+		} finally {
+			for (AnalysisEngine aggregate : replicas) {
+				aggregate.destroy();
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * Processes all documents returned by the specified {@link CollectionReader} with
+	 * <code>numThreads</code> replicas of the analysis components, followed by a write-behind
+	 * stage of <code>numOutputThreads</code> replicas of the output components, each running on its
+	 * own thread.
+	 * 
+	 * @param reader
+	 * @param numThreads
+	 *            the number of analysis pipeline replicas to run concurrently
+	 * @param numOutputThreads
+	 *            the number of output pipeline replicas to run concurrently; output threads spend
+	 *            most of their time waiting for I/O, so this can exceed the number of processors
+	 * @param writeBehindCapacity
+	 *            the number of analyzed documents that can wait for the output components; if 0,
+	 *            the output components are run by the workers after the analysis components
+	 * @param analysisDescs
+	 * @param outputDescs
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void runPipeline(CollectionReader reader, int numThreads, int numOutputThreads,
+			int writeBehindCapacity, List<AnalysisEngineDescription> analysisDescs,
+			List<AnalysisEngineDescription> outputDescs) throws UIMAException, IOException {
+		runPipeline(reader, numThreads, numOutputThreads, writeBehindCapacity, analysisDescs, outputDescs, null);
+	}
+
+	/**
+	 * As {@link #runPipeline(CollectionReader, int, int, int, List, List)}, counting each document
+	 * in the specified {@link ProgressReporter} once it has been output
+	 * 
+	 * @param reader
+	 * @param numThreads
+	 * @param numOutputThreads
+	 * @param writeBehindCapacity
+	 * @param analysisDescs
+	 * @param outputDescs
+	 * @param progress
+	 *            may be null
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	public static void runPipeline(CollectionReader reader, int numThreads, int numOutputThreads,
+			int writeBehindCapacity, List<AnalysisEngineDescription> analysisDescs,
+			List<AnalysisEngineDescription> outputDescs, ProgressReporter progress) throws UIMAException,
+			IOException {
+		if (writeBehindCapacity < 1 || outputDescs.isEmpty()) {
+			List<AnalysisEngineDescription> descs = new ArrayList<AnalysisEngineDescription>(analysisDescs);
+			descs.addAll(outputDescs);
+			runPipeline(reader, numThreads, progress, descs.toArray(new AnalysisEngineDescription[descs.size()]));
+			return;
+		}
+
+		AnalysisEngineDescription aggregateDesc = AnalysisEngineFactory.createAggregateDescription(analysisDescs
+				.toArray(new AnalysisEngineDescription[analysisDescs.size()]));
+		AnalysisEngineDescription outputDesc = AnalysisEngineFactory.createAggregateDescription(outputDescs
+				.toArray(new AnalysisEngineDescription[outputDescs.size()]));
+		List<AnalysisEngine> replicas = createReplicas(aggregateDesc, Math.max(numThreads, 1));
+		List<AnalysisEngine> outputReplicas = createReplicas(outputDesc, Math.max(numOutputThreads, 1));
+		try {
+			List<MetaDataObject> metaData = Arrays.<MetaDataObject> asList(reader.getMetaData(), replicas.get(0)
+					.getMetaData(), outputReplicas.get(0).getMetaData());
+			/* one CAS per worker plus one per document that may wait for output */
+			CasPool casPool = new CasPool(metaData, replicas.size() + writeBehindCapacity);
+			reader.typeSystemInit(casPool.getTypeSystem());
+			OutputStage outputStage = new OutputStage(outputReplicas, casPool, progress);
+			List<Worker> workers = new ArrayList<Worker>();
+			for (AnalysisEngine aggregate : replicas) {
+				workers.add(new Worker(reader, aggregate, casPool, outputStage, null));
+			}
+			logger.info("Processing documents using " + replicas.size() + " pipeline replicas and "
+					+ outputReplicas.size() + " write-behind output replicas with capacity " + writeBehindCapacity
+					+ ".");
+			long gcMillis = getGarbageCollectionMillis();
+			outputStage.start();
+			try {
+				runWorkers(workers, outputStage);
+			} finally {
+				outputStage.finish();
+			}
+			for (AnalysisEngine aggregate : replicas) {
+				aggregate.collectionProcessComplete();
+			}
+			for (AnalysisEngine output : outputReplicas) {
+				output.collectionProcessComplete();
+			}
+			logStatistics(workers, casPool, getGarbageCollectionMillis() - gcMillis);
+		} finally {
+			for (AnalysisEngine aggregate : replicas) {
+				aggregate.destroy();
+			}
+			for (AnalysisEngine output : outputReplicas) {
+				output.destroy();
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return the total time spent in garbage collection by this JVM so far, in milliseconds
+	 */
+	private static long getGarbageCollectionMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(gc.getCollectionTime(), 0);
+		}
+		return millis;
+	}
+
+	private static void logStatistics(List<Worker> workers, CasPool casPool, long gcMillis) {
+		long documentCount = 0;
+		for (Worker worker : workers) {
+			documentCount += worker.documentCount;
+		}
+		logger.info(String.format("Processed %d documents. %s. Garbage collection: %d ms (%.2f ms per document).",
+				documentCount, casPool, gcMillis, (documentCount == 0) ? 0.0 : (double) gcMillis / documentCount));
+	}
+
+	private static int getDocumentLength(CAS cas) {
+		String text = cas.getDocumentText();
+		return (text == null) ? 0 : text.length();
+	}
+
+	/**
+	 * @param aggregateDesc
+	 * @param numReplicas
+	 * @return <code>numReplicas</code> instances of the specified {@link AnalysisEngineDescription}
+	 *         that share a single {@link ResourceManager}, and therefore share any external resources
+	 *         they declare
+	 * @throws ResourceInitializationException
+	 */
+	public static List<AnalysisEngine> createReplicas(AnalysisEngineDescription aggregateDesc, int numReplicas)
+			throws ResourceInitializationException {
+		return createReplicas(aggregateDesc, numReplicas, UIMAFramework.newDefaultResourceManager());
+	}
+
+	/**
+	 * @param aggregateDesc
+	 * @param numReplicas
+	 * @param resourceManager
+	 *            the {@link ResourceManager} that owns the external resources shared by the replicas
+	 * @return <code>numReplicas</code> instances of the specified {@link AnalysisEngineDescription}
+	 * @throws ResourceInitializationException
+	 */
+	public static List<AnalysisEngine> createReplicas(AnalysisEngineDescription aggregateDesc, int numReplicas,
+			ResourceManager resourceManager) throws ResourceInitializationException {
+		List<AnalysisEngine> replicas = new ArrayList<AnalysisEngine>();
+		for (int i = 0; i < numReplicas; i++) {
+			replicas.add(UIMAFramework.produceAnalysisEngine(aggregateDesc, resourceManager, null));
+		}
+		return replicas;
+	}
+
+	/**
+	 * Runs each worker on its own thread and waits for all of them to finish. If any worker fails,
+	 * the remaining workers stop after the document they are currently processing and the failure is
+	 * rethrown. If the output stage fails, the workers are interrupted, as they may be waiting for a
+	 * CAS that will never be returned, and the output failure is rethrown.
+	 * 
+	 * @param workers
+	 * @param outputStage
+	 *            may be null
+	 * @throws UIMAException
+	 * @throws IOException
+	 */
+	private static void runWorkers(List<Worker> workers, OutputStage outputStage) throws UIMAException,
+			IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+		try {
+			CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+			for (Worker worker : workers) {
+				completionService.submit(worker);
+			}
+			for (int i = 0; i < workers.size(); i++) {
+				try {
+					Future<Void> future;
+					while ((future = completionService.poll(OUTPUT_FAILURE_CHECK_MILLIS,
+							TimeUnit.MILLISECONDS)) == null) {
+						if (outputStage != null && outputStage.hasFailed()) {
+							executor.shutdownNow();
+							outputStage.checkFailure();
+						}
+					}
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for pipeline workers to finish.", e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof UIMAException) {
+						throw (UIMAException) cause;
+					} else if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new RuntimeException("Error while running pipeline worker.", cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A single pipeline replica. Documents are read from the shared reader, into a CAS taken from
+	 * the pool, while holding the reader's monitor; the analysis itself happens outside of the lock.
+	 * If there is an output stage, each analyzed document is handed to it, and the output stage
+	 * returns the CAS to the pool (and counts the document); otherwise the worker returns it.
+	 */
+	private static class Worker implements Callable<Void> {
+
+		private final CollectionReader reader;
+		private final AnalysisEngine aggregate;
+		private final CasPool casPool;
+		private final OutputStage outputStage;
+		private final ProgressReporter progress;
+		/**
+		 * the number of documents analyzed by this worker
+		 */
+		private long documentCount;
+
+		/**
+		 * @param reader
+		 * @param aggregate
+		 * @param casPool
+		 * @param outputStage
+		 *            may be null
+		 * @param progress
+		 *            counts the documents analyzed by this worker; may be null
+		 */
+		public Worker(CollectionReader reader, AnalysisEngine aggregate, CasPool casPool, OutputStage outputStage,
+				ProgressReporter progress) {
+			this.reader = reader;
+			this.aggregate = aggregate;
+			this.casPool = casPool;
+			this.outputStage = outputStage;
+			this.progress = progress;
+		}
+
+		@Override
+		public Void call() throws UIMAException, IOException {
+			while (true) {
+				CAS cas;
+				try {
+					cas = casPool.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a CAS.", e);
+				}
+				boolean submitted = false;
+				try {
+					if (!nextDocument(cas)) {
+						return null;
+					}
+					aggregate.process(cas);
+					documentCount++;
+					if (progress != null) {
+						progress.documentCompleted(getDocumentLength(cas));
+					}
+					if (outputStage != null) {
+						outputStage.submit(cas);
+						submitted = true;
+					}
+				} finally {
+					if (!submitted) {
+						casPool.release(cas);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return true if a document was loaded into the CAS, false if the reader is exhausted
+		 * @throws UIMAException
+		 * @throws IOException
+		 */
+		private boolean nextDocument(CAS cas) throws UIMAException, IOException {
+			synchronized (reader) {
+				if (Thread.currentThread().isInterrupted() || !reader.hasNext()) {
+					return false;
+				}
+				reader.getNext(cas);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Runs the output component replicas, each on its own thread, over the analyzed CASes, and
+	 * returns each CAS to the pool once it has been output. If the output components fail (with any
+	 * {@link Throwable}, including an {@link Error} such as an {@link OutOfMemoryError}), the output
+	 * threads keep returning the remaining queued CASes to the pool without outputting them, and the
+	 * failure is rethrown to the workers on their next submission, to the thread waiting for the
+	 * workers and to the caller of {@link #finish()}.
+	 */
+	private static class OutputStage {
+
+		private final List<AnalysisEngine> outputReplicas;
+		private final CasPool casPool;
+		private final ProgressReporter progress;
+		private final List<Thread> threads = new ArrayList<Thread>();
+		private final BlockingQueue<Object> pendingCases = new LinkedBlockingQueue<Object>();
+		/**
+		 * queued once per output thread after the last CAS
+		 */
+		private final Object endOfInput = new Object();
+		private volatile Throwable failure;
+
+		public OutputStage(List<AnalysisEngine> outputReplicas, CasPool casPool, ProgressReporter progress) {
+			this.outputReplicas = outputReplicas;
+			this.casPool = casPool;
+			this.progress = progress;
+		}
+
+		public void start() {
+			for (int i = 0; i < outputReplicas.size(); i++) {
+				final AnalysisEngine output = outputReplicas.get(i);
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						runOutput(output);
+					}
+				}, "pipeline-write-behind-" + i);
+				threads.add(thread);
+				thread.start();
+			}
+		}
+
+		/**
+		 * Queues the CAS for output; the CAS is returned to the pool once it has been output
+		 */
+		public void submit(CAS cas) throws UIMAException, IOException {
+			checkFailure();
+			try {
+				pendingCases.put(cas);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the write-behind output stage.", e);
+			}
+		}
+
+		private void runOutput(AnalysisEngine output) {
+			try {
+				Object next;
+				while ((next = pendingCases.take()) != endOfInput) {
+					CAS cas = (CAS) next;
+					try {
+						if (failure == null) {
+							output.process(cas);
+							if (progress != null) {
+								progress.documentCompleted(getDocumentLength(cas));
+							}
+						}
+					} catch (Throwable t) {
+						setFailure(t);
+					} finally {
+						try {
+							casPool.release(cas);
+						} catch (Throwable t) {
+							setFailure(t);
+						}
+					}
+				}
+			} catch (Throwable t) {
+				setFailure(t);
+			}
+		}
+
+		/**
+		 * Records the first failure; later failures are usually consequences of it
+		 */
+		private synchronized void setFailure(Throwable t) {
+			if (failure == null) {
+				failure = t;
+				logger.error("Error in the write-behind output stage.", t);
+			}
+		}
+
+		public boolean hasFailed() {
+			return failure != null;
+		}
+
+		/**
+		 * Waits for all queued CASes to be output
+		 */
+		public void finish() throws UIMAException, IOException {
+			try {
+				for (int i = 0; i < threads.size(); i++) {
+					pendingCases.put(endOfInput);
+				}
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				for (Thread thread : threads) {
+					thread.interrupt();
+				}
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the write-behind output stage to finish.", e);
+			}
+			checkFailure();
+		}
+
+		public void checkFailure() throws UIMAException, IOException {
+			Throwable e = failure;
+			if (e instanceof UIMAException) {
+				throw (UIMAException) e;
+			} else if (e instanceof IOException) {
+				throw (IOException) e;
+			} else if (e instanceof Error) {
+				throw (Error) e;
+			} else if (e != null) {
+				throw new IOException("Error in the write-behind output stage.", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@link StageMetrics} of every instrumented pipeline stage in this JVM, by stage name. Stages
+ * are listed in the order in which they were first registered, i.e. pipeline order.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class PipelineMetrics {
+
+	private static final ConcurrentMap<String, StageMetrics> STAGES = new ConcurrentHashMap<String, StageMetrics>();
+	private static final List<StageMetrics> STAGE_ORDER = new CopyOnWriteArrayList<StageMetrics>();
+
+	private PipelineMetrics() {
+		// static registry
+	}
+
+	/**
+	 * @param name
+	 * @return the metrics of the named stage, registering the stage if this is the first request
+	 *         for it
+	 */
+	public static StageMetrics getStage(String name) {
+		StageMetrics stage = STAGES.get(name);
+		if (stage == null) {
+			synchronized (STAGES) {
+				stage = STAGES.get(name);
+				if (stage == null) {
+					stage = new StageMetrics(name);
+					STAGES.put(name, stage);
+					STAGE_ORDER.add(stage);
+				}
+			}
+		}
+		return stage;
+	}
+
+	/**
+	 * @return the registered stages, in the order in which they were registered
+	 */
+	public static List<StageMetrics> getStages() {
+		return new ArrayList<StageMetrics>(STAGE_ORDER);
+	}
+
+	/**
+	 * Discards all stages, e.g. before a new run in the same JVM
+	 */
+	public static void reset() {
+		synchronized (STAGES) {
+			STAGES.clear();
+			STAGE_ORDER.clear();
+		}
+	}
+
+}
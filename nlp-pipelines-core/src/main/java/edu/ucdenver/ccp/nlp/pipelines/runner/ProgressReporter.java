@@ -0,0 +1,385 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.util.Progress;
+
+/**
+ * Periodically reports the progress of a long run: the number of documents completed out of the
+ * total, the document and character throughput over the last few reports, the heap in use and an
+ * estimate of the time remaining. Each report is logged and, if a status file is specified, written
+ * to it as a JSON object; the file is replaced atomically, so a job scheduler polling it never sees
+ * a partially written status. A final report, with state "completed" or "failed", is written when
+ * the reporter is stopped.
+ * <p>
+ * Documents are counted by {@link ParallelPipeline} as their processing (including output)
+ * completes. The total number of documents is asked of the {@link CollectionReader} at the first
+ * report rather than up front, holding the reader's monitor as the pipeline workers do; it is
+ * unknown (-1) if the reader does not report it, e.g. for MEDLINE XML.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ProgressReporter {
+
+	private static final Logger logger = Logger.getLogger(ProgressReporter.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * the default number of seconds between reports
+	 */
+	public static final int DEFAULT_PERIOD_SECONDS = 60;
+
+	/**
+	 * the number of report periods over which the throughput is computed
+	 */
+	static final int RATE_WINDOW = 5;
+
+	public enum State {
+		RUNNING, COMPLETED, FAILED
+	}
+
+	private final CollectionReader reader;
+	private final File statusFile;
+	private final int periodSeconds;
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+	private final long startNanos;
+	/**
+	 * {time in nanoseconds, documents, characters} at the start and at the most recent reports,
+	 * oldest first
+	 */
+	private final LinkedList<long[]> samples = new LinkedList<long[]>();
+	private long totalDocumentCount = -1;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param reader
+	 *            the reader of the documents being processed, asked for their total number; may be
+	 *            null
+	 * @param statusFile
+	 *            if not null, the file that the status is written to; its directory is created if
+	 *            necessary
+	 * @param periodSeconds
+	 *            the number of seconds between reports
+	 */
+	public ProgressReporter(CollectionReader reader, File statusFile, int periodSeconds) {
+		this(reader, statusFile, periodSeconds, System.nanoTime());
+	}
+
+	ProgressReporter(CollectionReader reader, File statusFile, int periodSeconds, long startNanos) {
+		this.reader = reader;
+		this.statusFile = statusFile;
+		this.periodSeconds = periodSeconds;
+		this.startNanos = startNanos;
+		samples.add(new long[] { startNanos, 0, 0 });
+	}
+
+	/**
+	 * Counts a document whose processing has completed
+	 * 
+	 * @param characterCount
+	 *            the length of the document text
+	 */
+	public void documentCompleted(int characterCount) {
+		documents.incrementAndGet();
+		characters.addAndGet(characterCount);
+	}
+
+	/**
+	 * Starts reporting in the background
+	 * 
+	 * @throws IOException
+	 *             if the directory of the status file cannot be created
+	 */
+	public void start() throws IOException {
+		if (statusFile != null) {
+			Files.createDirectories(statusFile.getAbsoluteFile().getParentFile().toPath());
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "progress-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					report(State.RUNNING);
+				} catch (IOException e) {
+					logger.warn("Unable to write progress to " + statusFile, e);
+				}
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the background reports and writes a final report
+	 * 
+	 * @param completed
+	 *            true if all documents were processed, false if the run failed
+	 * @throws IOException
+	 */
+	public void stop(boolean completed) throws IOException {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			try {
+				scheduler.awaitTermination(periodSeconds, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		report(completed ? State.COMPLETED : State.FAILED);
+	}
+
+	/**
+	 * Logs the current status and writes it to the status file
+	 * 
+	 * @param state
+	 * @throws IOException
+	 */
+	public void report(State state) throws IOException {
+		Status status = getStatus(System.nanoTime(), state);
+		logger.info(status);
+		if (statusFile != null) {
+			File temp = new File(statusFile.getAbsoluteFile().getParentFile(), statusFile.getName() + ".tmp");
+			Files.write(temp.toPath(), status.toJson().getBytes(UTF_8));
+			Files.move(temp.toPath(), statusFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * @param nowNanos
+	 * @param state
+	 * @return the status at the specified time; the throughput is computed since the oldest of the
+	 *         last {@link #RATE_WINDOW} reports (or the start)
+	 */
+	synchronized Status getStatus(long nowNanos, State state) {
+		long documentCount = documents.get();
+		long characterCount = characters.get();
+		long[] oldest = samples.getFirst();
+		double windowSeconds = (nowNanos - oldest[0]) / 1e9;
+		double documentsPerSecond = rate(documentCount - oldest[1], windowSeconds);
+		double charactersPerSecond = rate(characterCount - oldest[2], windowSeconds);
+		samples.add(new long[] { nowNanos, documentCount, characterCount });
+		while (samples.size() > RATE_WINDOW) {
+			samples.removeFirst();
+		}
+
+		long total = getTotalDocumentCount(state);
+		if (state == State.COMPLETED) {
+			total = documentCount;
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return new Status(state, (nowNanos - startNanos) / 1e9, documentCount, total, characterCount,
+				documentsPerSecond, charactersPerSecond, runtime.totalMemory() - runtime.freeMemory(),
+				runtime.maxMemory(), getEtaSeconds(documentCount, total, documentsPerSecond));
+	}
+
+	/**
+	 * @return the total number of documents reported by the reader, or -1 if it is not known; the
+	 *         reader is only asked while the run is in progress, as it is closed once the run ends
+	 */
+	private long getTotalDocumentCount(State state) {
+		if (totalDocumentCount < 0 && reader != null && state == State.RUNNING) {
+			Progress[] progress;
+			synchronized (reader) {
+				progress = reader.getProgress();
+			}
+			if (progress != null) {
+				for (Progress p : progress) {
+					if (Progress.ENTITIES.equals(p.getUnit()) && p.getTotal() >= 0) {
+						totalDocumentCount = p.getTotal();
+						break;
+					}
+				}
+			}
+		}
+		return totalDocumentCount;
+	}
+
+	/**
+	 * @param documentCount
+	 * @param totalDocumentCount
+	 * @param documentsPerSecond
+	 * @return the estimated number of seconds until all documents are processed, or -1 if it cannot
+	 *         be estimated
+	 */
+	static double getEtaSeconds(long documentCount, long totalDocumentCount, double documentsPerSecond) {
+		if (totalDocumentCount < 0) {
+			return -1;
+		}
+		long remaining = Math.max(totalDocumentCount - documentCount, 0);
+		if (remaining == 0) {
+			return 0;
+		}
+		return (documentsPerSecond > 0) ? remaining / documentsPerSecond : -1;
+	}
+
+	private static double rate(long count, double seconds) {
+		return (seconds > 0) ? count / seconds : 0.0;
+	}
+
+	/**
+	 * @param seconds
+	 * @return the duration as [days d ]hours:minutes:seconds, or "unknown" if negative
+	 */
+	static String formatDuration(double seconds) {
+		if (seconds < 0) {
+			return "unknown";
+		}
+		long s = Math.round(seconds);
+		long days = s / 86400;
+		String hms = String.format(Locale.ROOT, "%d:%02d:%02d", (s / 3600) % 24, (s / 60) % 60, s % 60);
+		return (days > 0) ? days + "d " + hms : hms;
+	}
+
+	/**
+	 * A snapshot of the progress of a run
+	 */
+	static class Status {
+
+		private final State state;
+		private final double elapsedSeconds;
+		private final long documents;
+		private final long totalDocuments;
+		private final long characters;
+		private final double documentsPerSecond;
+		private final double charactersPerSecond;
+		private final long heapUsedBytes;
+		private final long heapMaxBytes;
+		private final double etaSeconds;
+
+		Status(State state, double elapsedSeconds, long documents, long totalDocuments, long characters,
+				double documentsPerSecond, double charactersPerSecond, long heapUsedBytes, long heapMaxBytes,
+				double etaSeconds) {
+			this.state = state;
+			this.elapsedSeconds = elapsedSeconds;
+			this.documents = documents;
+			this.totalDocuments = totalDocuments;
+			this.characters = characters;
+			this.documentsPerSecond = documentsPerSecond;
+			this.charactersPerSecond = charactersPerSecond;
+			this.heapUsedBytes = heapUsedBytes;
+			this.heapMaxBytes = heapMaxBytes;
+			this.etaSeconds = etaSeconds;
+		}
+
+		public long getDocuments() {
+			return documents;
+		}
+
+		public long getTotalDocuments() {
+			return totalDocuments;
+		}
+
+		public double getDocumentsPerSecond() {
+			return documentsPerSecond;
+		}
+
+		public double getCharactersPerSecond() {
+			return charactersPerSecond;
+		}
+
+		public double getEtaSeconds() {
+			return etaSeconds;
+		}
+
+		/**
+		 * @return the percentage of the documents that have been processed, or -1 if the total is
+		 *         not known
+		 */
+		public double getPercentComplete() {
+			if (totalDocuments < 0) {
+				return -1;
+			}
+			return (totalDocuments == 0) ? 100.0 : 100.0 * documents / totalDocuments;
+		}
+
+		/**
+		 * @return the status as a JSON object
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append("{\n  \"state\": \"").append(state.name().toLowerCase(Locale.ROOT)).append('"');
+			json.append(",\n  \"timestamp\": ").append(System.currentTimeMillis());
+			json.append(",\n  \"elapsedSeconds\": ").append(MetricsReporter.format(elapsedSeconds));
+			json.append(",\n  \"documents\": ").append(documents);
+			json.append(",\n  \"totalDocuments\": ").append(totalDocuments);
+			json.append(",\n  \"percentComplete\": ").append(MetricsReporter.format(getPercentComplete()));
+			json.append(",\n  \"characters\": ").append(characters);
+			json.append(",\n  \"documentsPerSecond\": ").append(MetricsReporter.format(documentsPerSecond));
+			json.append(",\n  \"charactersPerSecond\": ").append(MetricsReporter.format(charactersPerSecond));
+			json.append(",\n  \"heapUsedBytes\": ").append(heapUsedBytes);
+			json.append(",\n  \"heapMaxBytes\": ").append(heapMaxBytes);
+			json.append(",\n  \"etaSeconds\": ").append(MetricsReporter.format(etaSeconds));
+			json.append("\n}\n");
+			return json.toString();
+		}
+
+		@Override
+		public String toString() {
+			String total = (totalDocuments < 0) ? "?" : Long.toString(totalDocuments);
+			String percent = (totalDocuments < 0) ? "" : String.format(Locale.ROOT, " (%.1f%%)",
+					getPercentComplete());
+			return String.format(Locale.ROOT,
+					"Progress (%s): %d/%s documents%s in %s, %.2f documents/s, %.0f characters/s, heap %d/%d MB, ETA %s",
+					state.name().toLowerCase(Locale.ROOT), documents, total, percent, formatDuration(elapsedSeconds),
+					documentsPerSecond, charactersPerSecond, heapUsedBytes >> 20, heapMaxBytes >> 20,
+					formatDuration(etaSeconds));
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The counts and latency histogram of one pipeline stage, accumulated over all documents and
+ * threads. Recording a document costs a handful of atomic updates and takes no locks.
+ * <p>
+ * Latencies are counted in fixed buckets (see {@link #BUCKET_BOUNDS_NANOS}), so percentiles are
+ * reported as the upper bound of the bucket they fall in.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class StageMetrics {
+
+	/**
+	 * the upper bounds of the latency buckets, from 100 microseconds to 1 minute; slower documents
+	 * are counted in a final, unbounded bucket
+	 */
+	static final long[] BUCKET_BOUNDS_NANOS = { micros(100), micros(250), micros(500), millis(1), millis(2),
+			millis(5), millis(10), millis(25), millis(50), millis(100), millis(250), millis(500), millis(1000),
+			millis(2500), millis(5000), millis(10000), millis(30000), millis(60000) };
+
+	private final String name;
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+	private final AtomicLong annotationsAdded = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_NANOS.length + 1);
+
+	StageMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records the processing of one document by the stage
+	 * 
+	 * @param elapsedNanos
+	 *            the time the stage took
+	 * @param documentLength
+	 *            the number of characters in the document
+	 * @param annotationCountChange
+	 *            the number of annotations added by the stage, less the number it removed
+	 */
+	public void record(long elapsedNanos, int documentLength, int annotationCountChange) {
+		documents.incrementAndGet();
+		nanos.addAndGet(elapsedNanos);
+		characters.addAndGet(documentLength);
+		annotationsAdded.addAndGet(annotationCountChange);
+		buckets.incrementAndGet(getBucket(elapsedNanos));
+		long max = maxNanos.get();
+		while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	static int getBucket(long elapsedNanos) {
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_NANOS.length && elapsedNanos > BUCKET_BOUNDS_NANOS[bucket]) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getDocumentCount() {
+		return documents.get();
+	}
+
+	/**
+	 * @return the total time spent in the stage, over all threads
+	 */
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getCharacterCount() {
+		return characters.get();
+	}
+
+	/**
+	 * @return the number of annotations added by the stage, less the number it removed
+	 */
+	public long getAnnotationsAdded() {
+		return annotationsAdded.get();
+	}
+
+	/**
+	 * @return the number of documents in each latency bucket; the last bucket is unbounded
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * @param quantile
+	 *            between 0 and 1
+	 * @return an upper bound on the latency of the specified quantile of documents, or 0 if no
+	 *         documents have been recorded
+	 */
+	public long getQuantileNanos(double quantile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return (i < BUCKET_BOUNDS_NANOS.length) ? Math.min(BUCKET_BOUNDS_NANOS[i], getMaxNanos())
+						: getMaxNanos();
+			}
+		}
+		return 0;
+	}
+
+	private static long micros(long micros) {
+		return TimeUnit.MICROSECONDS.toNanos(micros);
+	}
+
+	private static long millis(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+}
@@ -0,0 +1,164 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+/**
+ * A marker placed between the stages of a pipeline by {@link #instrument(TypeSystemDescription,
+ * List, List)}. Each marker records, in the {@link PipelineMetrics} of the stage that precedes it,
+ * the time since the previous marker ran on the same thread, the document length and the change
+ * in the number of annotations in the CAS. The first marker of a pipeline has no stage name and
+ * only starts the clock. The markers rely on every stage of a pipeline running on the same thread
+ * for a given document, which is how {@link ParallelPipeline} runs an aggregate.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class StageTimer_AE extends JCasAnnotator_ImplBase {
+
+	/**
+	 * the time and annotation count at which the previous marker on this thread finished
+	 */
+	private static final ThreadLocal<long[]> LAST_MARK = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+
+	public static final String PARAM_STAGE_NAME = ConfigurationParameterFactory.createConfigurationParameterName(
+			StageTimer_AE.class, "stageName");
+	@ConfigurationParameter(description = "the name of the stage that ends at this marker; if not set, this marker starts the pipeline", mandatory = false)
+	private String stageName;
+
+	private StageMetrics stage;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		stage = (stageName == null) ? null : PipelineMetrics.getStage(stageName);
+	}
+
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		long now = System.nanoTime();
+		int annotationCount = jcas.getAnnotationIndex().size();
+		long[] lastMark = LAST_MARK.get();
+		if (stage != null && lastMark[0] != 0) {
+			String text = jcas.getDocumentText();
+			stage.record(now - lastMark[0], (text == null) ? 0 : text.length(), annotationCount
+					- (int) lastMark[1]);
+		}
+		lastMark[1] = annotationCount;
+		lastMark[0] = System.nanoTime();
+	}
+
+	/**
+	 * @param descs
+	 * @return a name for each component: the simple class name of a primitive component or the name
+	 *         of an aggregate, followed by #2, #3, ... if the name has already been used
+	 */
+	public static List<String> getStageNames(List<AnalysisEngineDescription> descs) {
+		List<String> names = new ArrayList<String>();
+		Map<String, Integer> useCounts = new HashMap<String, Integer>();
+		for (AnalysisEngineDescription desc : descs) {
+			String name = getStageName(desc);
+			Integer useCount = useCounts.get(name);
+			useCount = (useCount == null) ? 1 : useCount + 1;
+			useCounts.put(name, useCount);
+			names.add((useCount == 1) ? name : name + "#" + useCount);
+		}
+		return names;
+	}
+
+	private static String getStageName(AnalysisEngineDescription desc) {
+		if (desc.isPrimitive()) {
+			String implementation = desc.getAnnotatorImplementationName();
+			return implementation.substring(implementation.lastIndexOf('.') + 1);
+		}
+		String name = desc.getMetaData().getName();
+		return (name == null || name.isEmpty()) ? "aggregate" : name;
+	}
+
+	/**
+	 * @param tsd
+	 * @param descs
+	 *            the components of a pipeline
+	 * @param stageNames
+	 *            the name under which each component's metrics are recorded, see
+	 *            {@link #getStageNames(List)}
+	 * @return the components with a marker before the first and after each one
+	 * @throws ResourceInitializationException
+	 */
+	public static List<AnalysisEngineDescription> instrument(TypeSystemDescription tsd,
+			List<AnalysisEngineDescription> descs, List<String> stageNames) throws ResourceInitializationException {
+		List<AnalysisEngineDescription> instrumented = new ArrayList<AnalysisEngineDescription>();
+		instrumented.add(AnalysisEngineFactory.createPrimitiveDescription(StageTimer_AE.class, tsd));
+		for (int i = 0; i < descs.size(); i++) {
+			instrumented.add(descs.get(i));
+			instrumented.add(AnalysisEngineFactory.createPrimitiveDescription(StageTimer_AE.class, tsd,
+					PARAM_STAGE_NAME, stageNames.get(i)));
+		}
+		return instrumented;
+	}
+
+	/**
+	 * @param tsd
+	 * @param descs
+	 * @return the components with a marker before the first and after each one; the stages are
+	 *         named by {@link #getStageNames(List)}
+	 * @throws ResourceInitializationException
+	 */
+	public static List<AnalysisEngineDescription> instrument(TypeSystemDescription tsd,
+			List<AnalysisEngineDescription> descs) throws ResourceInitializationException {
+		return instrument(tsd, descs, getStageNames(descs));
+	}
+
+}
@@ -0,0 +1,153 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that records written by an {@link AnnotationBatchWriter}, also from several threads, can be
+ * read back by document id
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class AnnotationBatchWriterTest {
+
+	/**
+	 * small enough that the writer rolls over to new parts
+	 */
+	private static final long MAX_PART_BYTES = 100;
+
+	private static final int NUM_DOCUMENTS = 25;
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		checkRandomAccess(false);
+	}
+
+	@Test
+	public void testRandomAccessCompressed() throws IOException {
+		checkRandomAccess(true);
+	}
+
+	private void checkRandomAccess(boolean compress) throws IOException {
+		File directory = testFolder.newFolder("batch");
+		String baseName = AnnotationBatchWriter.getBaseName(3);
+		AnnotationBatchWriter writer = new AnnotationBatchWriter(directory, baseName, ".a1", compress,
+				MAX_PART_BYTES);
+		for (int i = 0; i < NUM_DOCUMENTS; i++) {
+			writer.write(i + ".txt", getRecord(i));
+		}
+		writer.write("empty.txt", "");
+		writer.close();
+
+		/* a resumed run rewrites a document to a new part; the later record wins */
+		writer = new AnnotationBatchWriter(directory, baseName, ".a1", compress, MAX_PART_BYTES);
+		writer.write("7.txt", "rewritten\n");
+		writer.close();
+
+		AnnotationBatchIndex index = AnnotationBatchIndex.load(directory, baseName);
+		try {
+			assertEquals(NUM_DOCUMENTS + 1, index.getDocumentIds().size());
+			for (int i = NUM_DOCUMENTS - 1; i >= 0; i--) {
+				assertEquals(i == 7 ? "rewritten\n" : getRecord(i), index.read(i + ".txt"));
+			}
+			assertEquals("", index.read("empty.txt"));
+			assertNull(index.read("missing.txt"));
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentWritesAreIndexedBeforeClose() throws Exception {
+		File directory = testFolder.newFolder("batch");
+		final AnnotationBatchWriter writer = new AnnotationBatchWriter(directory,
+				AnnotationBatchWriter.DEFAULT_BASE_NAME, ".a1", false, MAX_PART_BYTES);
+		int numThreads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int i = thread; i < NUM_DOCUMENTS * 4; i += 4) {
+						writer.write(i + ".txt", getRecord(i));
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		/* each write returned only once its index line was on disk */
+		AnnotationBatchIndex index = AnnotationBatchIndex.load(directory, AnnotationBatchWriter.DEFAULT_BASE_NAME);
+		try {
+			assertEquals(NUM_DOCUMENTS * 4, index.getDocumentIds().size());
+			for (int i = 0; i < NUM_DOCUMENTS * 4; i++) {
+				assertEquals(getRecord(i), index.read(i + ".txt"));
+			}
+		} finally {
+			index.close();
+			writer.close();
+		}
+	}
+
+	private static String getRecord(int i) {
+		return "T1\tontology_term 0 4\tcell\nN1\tReference T1 CL:" + i + "\t\n";
+	}
+
+}
@@ -0,0 +1,171 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a run skips the documents in a checkpoint manifest only if it has the same
+ * fingerprint, and that concurrent appends are all recorded
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CheckpointManifestTest {
+
+	private static final String FINGERPRINT = "ontologies=CL\nsentenceSplitter=OPENNLP\n";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testRerunWithSameFingerprintResumes() throws IOException {
+		File manifestFile = new File(testFolder.newFolder("output"), CheckpointManifest.DEFAULT_FILE_NAME);
+		CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+		CheckpointManifest.append(manifestFile, "12345.txt");
+		CheckpointManifest.close(manifestFile);
+
+		CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+		assertTrue(CheckpointManifest.load(manifestFile).isCompleted("12345.txt"));
+	}
+
+	@Test
+	public void testFreshRunStartsOver() throws IOException {
+		File manifestFile = new File(testFolder.newFolder("output"), CheckpointManifest.DEFAULT_FILE_NAME);
+		CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+		CheckpointManifest.append(manifestFile, "12345.txt");
+
+		String otherFingerprint = FINGERPRINT + "ontologies=DOID\n";
+		CheckpointManifest.prepare(manifestFile, otherFingerprint, true);
+		assertFalse(manifestFile.exists());
+		assertEquals(0, CheckpointManifest.load(manifestFile).getCompletedCount());
+
+		/* the new fingerprint was stored, so the new run can in turn be resumed */
+		CheckpointManifest.append(manifestFile, "12345.txt");
+		CheckpointManifest.close(manifestFile);
+		CheckpointManifest.prepare(manifestFile, otherFingerprint, false);
+		assertEquals(1, CheckpointManifest.load(manifestFile).getCompletedCount());
+	}
+
+	@Test
+	public void testRerunWithDifferentFingerprintIsRefused() throws IOException {
+		File manifestFile = new File(testFolder.newFolder("output"), CheckpointManifest.DEFAULT_FILE_NAME);
+		CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+		CheckpointManifest.append(manifestFile, "12345.txt");
+		CheckpointManifest.close(manifestFile);
+
+		try {
+			CheckpointManifest.prepare(manifestFile, FINGERPRINT.replace("CL", "DOID"), false);
+			fail("Resuming with a different fingerprint should be refused");
+		} catch (IOException e) {
+			/* expected */
+		}
+		assertEquals(1, CheckpointManifest.load(manifestFile).getCompletedCount());
+	}
+
+	@Test
+	public void testRerunOfManifestWithoutFingerprintIsRefused() throws IOException {
+		File manifestFile = new File(testFolder.newFolder("output"), CheckpointManifest.getFileName(3));
+		CheckpointManifest.append(manifestFile, "12345.txt");
+		CheckpointManifest.close(manifestFile);
+
+		try {
+			CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+			fail("Resuming a manifest without a fingerprint should be refused");
+		} catch (IOException e) {
+			/* expected */
+		}
+		assertFalse(CheckpointManifest.getFingerprintFile(manifestFile).exists());
+		assertNull(CheckpointManifest.getBatchNumber(CheckpointManifest.getFingerprintFile(manifestFile)
+				.getName()));
+	}
+
+	@Test
+	public void testConcurrentAppendsAreAllRecorded() throws Exception {
+		final File manifestFile = new File(testFolder.newFolder("output"), CheckpointManifest.DEFAULT_FILE_NAME);
+		CheckpointManifest.prepare(manifestFile, FINGERPRINT, false);
+		int numThreads = 8;
+		final int idsPerThread = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		Set<String> expectedIds = new HashSet<String>();
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			for (int i = 0; i < idsPerThread; i++) {
+				expectedIds.add(thread + "-" + i + ".txt");
+			}
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int i = 0; i < idsPerThread; i++) {
+						CheckpointManifest.append(manifestFile, thread + "-" + i + ".txt");
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		/* every id is in the file (each on its own line) before the manifest is closed */
+		List<String> entries = CheckpointManifest.readEntries(manifestFile);
+		assertEquals(expectedIds.size(), entries.size());
+		assertEquals(expectedIds, new HashSet<String>(entries));
+		CheckpointManifest.close(manifestFile);
+		assertEquals(expectedIds.size(), CheckpointManifest.load(manifestFile).getCompletedCount());
+	}
+
+}
@@ -0,0 +1,188 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a corpus packed as a .zip, a .tar.gz or a directory of individually gzipped files
+ * yields the same document ids and texts as the directory it was packed from
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentSourcesTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	/**
+	 * file name to content; the .md file does not have the document suffix and is never read
+	 */
+	private final Map<String, String> files = new LinkedHashMap<String, String>();
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		files.put("33333.txt", "Neurons of the cortex.\nPyramidal neurons were counted.\n");
+		files.put("11111.txt", "Expression of Hox genes in T cells.");
+		files.put("22222.txt", "\u03b1-synuclein in 5 \u00b5m sections of the na\u00efve brain.");
+		files.put("notes.md", "not a document");
+		directory = testFolder.newFolder("corpus");
+		for (Map.Entry<String, String> file : files.entrySet()) {
+			write(new File(directory, file.getKey()), file.getValue().getBytes(UTF_8), false);
+		}
+	}
+
+	@Test
+	public void testZipArchive() throws IOException {
+		File zipFile = new File(testFolder.getRoot(), "corpus.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				/* directories inside the archive are not part of the document id */
+				zos.putNextEntry(new ZipEntry("corpus/" + file.getKey()));
+				zos.write(file.getValue().getBytes(UTF_8));
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+		assertSameDocuments(zipFile);
+	}
+
+	@Test
+	public void testTarGzArchive() throws IOException {
+		File tarFile = new File(testFolder.getRoot(), "corpus.tar.gz");
+		TarArchiveOutputStream tos = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(tarFile)));
+		try {
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				byte[] bytes = file.getValue().getBytes(UTF_8);
+				TarArchiveEntry entry = new TarArchiveEntry("corpus/" + file.getKey());
+				entry.setSize(bytes.length);
+				tos.putArchiveEntry(entry);
+				tos.write(bytes);
+				tos.closeArchiveEntry();
+			}
+		} finally {
+			tos.close();
+		}
+		assertSameDocuments(tarFile);
+	}
+
+	@Test
+	public void testGzippedFiles() throws IOException {
+		File gzDirectory = testFolder.newFolder("gzCorpus");
+		for (Map.Entry<String, String> file : files.entrySet()) {
+			write(new File(gzDirectory, file.getKey() + DocumentSources.GZIP_SUFFIX), file.getValue().getBytes(UTF_8),
+					true);
+		}
+		assertSameDocuments(gzDirectory);
+	}
+
+	/**
+	 * Asserts that the input yields the same ids, the same texts and the same range and hash shards
+	 * as the unpacked directory
+	 */
+	private void assertSameDocuments(File input) throws IOException {
+		assertEquals(Arrays.asList("11111.txt", "22222.txt", "33333.txt"),
+				DocumentSources.listDocumentIds(directory, ".txt"));
+		assertEquals(DocumentSources.listDocumentIds(directory, ".txt"), DocumentSources.listDocumentIds(input, ".txt"));
+		for (ShardSpec shardSpec : Arrays.asList(ShardSpec.ALL, ShardSpec.range(1, 1), ShardSpec.hash(2, 0),
+				ShardSpec.hash(2, 1))) {
+			Map<String, String> expected = readAll(directory, shardSpec);
+			assertEquals(shardSpec.toString(), expected, readAll(input, shardSpec));
+		}
+		Map<String, String> all = readAll(input, ShardSpec.ALL);
+		assertEquals(3, all.size());
+		for (Map.Entry<String, String> document : all.entrySet()) {
+			assertEquals(files.get(document.getKey()), document.getValue());
+		}
+	}
+
+	/**
+	 * @return document id to text; a tar archive returns its documents in archive order, so they
+	 *         are compared by id
+	 */
+	private static Map<String, String> readAll(File input, ShardSpec shardSpec) throws IOException {
+		Map<String, String> documents = new TreeMap<String, String>();
+		DocumentSource source = DocumentSources.open(input, ".txt", UTF_8, shardSpec, DocumentIdFilter.ACCEPT_ALL);
+		try {
+			while (source.hasNext()) {
+				SourceDocument document = source.next();
+				documents.put(document.getDocumentId(), document.getText());
+			}
+		} finally {
+			source.close();
+		}
+		return documents;
+	}
+
+	private static void write(File file, byte[] bytes, boolean gzip) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		if (gzip) {
+			os = new GZIPOutputStream(os);
+		}
+		try {
+			os.write(bytes);
+		} finally {
+			os.close();
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentWindower.TextWindow;
+
+/**
+ * Checks that the windows produced by a {@link DocumentWindower} overlap and that each document
+ * offset is owned by exactly one window
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class DocumentWindowerTest {
+
+	private static final int MAX_WINDOW_SIZE = 200;
+
+	private static final int OVERLAP = 60;
+
+	@Test
+	public void testShortDocumentIsSingleWindow() {
+		String text = "A short document.";
+		List<TextWindow> windows = new DocumentWindower(MAX_WINDOW_SIZE, OVERLAP).split(text);
+		assertEquals(1, windows.size());
+		assertEquals(text, windows.get(0).getText(text));
+	}
+
+	@Test
+	public void testWindowsCoverDocument() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("Sentence number " + i + " mentions a T cell.");
+			sb.append((i % 7 == 6) ? "\n\n" : " ");
+		}
+		String text = sb.toString();
+		List<TextWindow> windows = new DocumentWindower(MAX_WINDOW_SIZE, OVERLAP).split(text);
+		assertTrue(windows.size() > 1);
+		assertEquals(0, windows.get(0).getBegin());
+		assertEquals(text.length(), windows.get(windows.size() - 1).getEnd());
+		for (int i = 0; i < windows.size(); i++) {
+			TextWindow window = windows.get(i);
+			assertTrue(window.getEnd() - window.getBegin() <= MAX_WINDOW_SIZE);
+			if (i > 0) {
+				TextWindow previous = windows.get(i - 1);
+				assertTrue("windows should overlap", window.getBegin() < previous.getEnd());
+				assertTrue("windows should begin at a sentence", Character.isUpperCase(text.charAt(window.getBegin())));
+				assertTrue("windows should end at a sentence", text.charAt(previous.getEnd() - 2) == '.'
+						|| text.charAt(previous.getEnd() - 1) == '\n');
+			}
+		}
+		for (int offset = 0; offset < text.length(); offset++) {
+			int owners = 0;
+			for (TextWindow window : windows) {
+				if (window.owns(offset)) {
+					owners++;
+					assertTrue(offset >= window.getBegin() && offset < window.getEnd());
+				}
+			}
+			assertEquals("offset " + offset + " should be owned by one window", 1, owners);
+		}
+	}
+
+	@Test
+	public void testTextWithoutBoundaries() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append('x');
+		}
+		List<TextWindow> windows = new DocumentWindower(MAX_WINDOW_SIZE, OVERLAP).split(sb.toString());
+		assertEquals(MAX_WINDOW_SIZE, windows.get(0).getEnd());
+		assertEquals(MAX_WINDOW_SIZE - OVERLAP, windows.get(1).getBegin());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOverlapTooLarge() {
+		new DocumentWindower(MAX_WINDOW_SIZE, MAX_WINDOW_SIZE / 2);
+	}
+
+}
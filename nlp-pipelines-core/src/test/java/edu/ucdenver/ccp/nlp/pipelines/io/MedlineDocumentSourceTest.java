@@ -0,0 +1,135 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the documents produced from a small (gzipped) MEDLINE file
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MedlineDocumentSourceTest {
+
+	private static final File SAMPLE_FILE = new File("src" + File.separator + "test" + File.separator + "resources"
+			+ File.separator + "medline" + File.separator + "pubmed-sample.xml");
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testDocumentText() throws IOException {
+		List<SourceDocument> documents = readAll(new MedlineDocumentSource(gzip(SAMPLE_FILE), false, ShardSpec.ALL,
+				DocumentIdFilter.ACCEPT_ALL));
+		assertEquals(3, documents.size());
+		assertEquals("10000001", documents.get(0).getDocumentId());
+		assertEquals("Expression of Hox genes in T cells.\n"
+				+ "BACKGROUND: T cells & B cells were studied.\n"
+				+ "RESULTS: Hox expression was elevated in CD4+ cells.", documents.get(0).getText());
+		assertEquals("10000002", documents.get(1).getDocumentId());
+		assertEquals("A title-only citation.", documents.get(1).getText());
+		assertEquals("Neurons of the cortex.\nPyramidal neurons were counted.", documents.get(2).getText());
+	}
+
+	@Test
+	public void testRequireAbstract() throws IOException {
+		List<SourceDocument> documents = readAll(new MedlineDocumentSource(SAMPLE_FILE, true, ShardSpec.ALL,
+				DocumentIdFilter.ACCEPT_ALL));
+		assertEquals(Arrays.asList("10000001", "10000003"), getIds(documents));
+	}
+
+	@Test
+	public void testRangeAndFilter() throws IOException {
+		DocumentIdFilter filter = new DocumentIdFilter() {
+			@Override
+			public boolean accept(String documentId) {
+				return !documentId.equals("10000003");
+			}
+		};
+		List<SourceDocument> documents = readAll(new MedlineDocumentSource(SAMPLE_FILE.getParentFile(), false,
+				ShardSpec.range(1, 2), filter));
+		assertEquals(Arrays.asList("10000002"), getIds(documents));
+	}
+
+	private File gzip(File file) throws IOException {
+		File gzFile = new File(testFolder.getRoot(), file.getName() + ".gz");
+		InputStream is = new FileInputStream(file);
+		OutputStream os = new GZIPOutputStream(new FileOutputStream(gzFile));
+		try {
+			os.write(DocumentSources.readAll(is));
+		} finally {
+			is.close();
+			os.close();
+		}
+		return gzFile;
+	}
+
+	private static List<SourceDocument> readAll(DocumentSource source) throws IOException {
+		List<SourceDocument> documents = new ArrayList<SourceDocument>();
+		try {
+			while (source.hasNext()) {
+				documents.add(source.next());
+			}
+		} finally {
+			source.close();
+		}
+		return documents;
+	}
+
+	private static List<String> getIds(List<SourceDocument> documents) {
+		List<String> ids = new ArrayList<String>();
+		for (SourceDocument document : documents) {
+			ids.add(document.getDocumentId());
+		}
+		return ids;
+	}
+
+}
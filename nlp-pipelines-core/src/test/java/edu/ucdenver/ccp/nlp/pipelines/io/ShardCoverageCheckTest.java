@@ -0,0 +1,126 @@
+package edu.ucdenver.ccp.nlp.pipelines.io;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that range and hash shards partition a corpus and that {@link ShardCoverageCheck} detects
+ * documents that are missing or were processed twice
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ShardCoverageCheckTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int CORPUS_SIZE = 50;
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void testHashShardsCoverCorpusExactlyOnce() throws IOException {
+		File inputDir = createCorpus();
+		File outputDir = testFolder.newFolder("output");
+		int numShards = 4;
+		for (int shard = 0; shard < numShards; shard++) {
+			recordShard(inputDir, outputDir, ShardSpec.hash(numShards, shard), shard);
+		}
+		ShardCoverageCheck.CoverageReport report = ShardCoverageCheck.check(inputDir, ".txt", outputDir);
+		assertTrue(report.toString(), report.isExact());
+		assertEquals(numShards, report.getBatchSizes().size());
+	}
+
+	@Test
+	public void testRangeShardsCoverCorpusExactlyOnce() throws IOException {
+		File inputDir = createCorpus();
+		File outputDir = testFolder.newFolder("output");
+		recordShard(inputDir, outputDir, ShardSpec.range(0, 20), 0);
+		recordShard(inputDir, outputDir, ShardSpec.range(20, 20), 1);
+		recordShard(inputDir, outputDir, ShardSpec.range(40, -1), 2);
+		assertTrue(ShardCoverageCheck.check(inputDir, ".txt", outputDir).isExact());
+	}
+
+	@Test
+	public void testOverlappingAndMissingShardsAreDetected() throws IOException {
+		File inputDir = createCorpus();
+		File outputDir = testFolder.newFolder("output");
+		recordShard(inputDir, outputDir, ShardSpec.range(0, 20), 0);
+		recordShard(inputDir, outputDir, ShardSpec.range(15, 20), 1);
+		ShardCoverageCheck.CoverageReport report = ShardCoverageCheck.check(inputDir, ".txt", outputDir);
+		assertFalse(report.isExact());
+		assertEquals(5, report.getDuplicated().size());
+		assertEquals(CORPUS_SIZE - 35, report.getMissing().size());
+	}
+
+	private File createCorpus() throws IOException {
+		File inputDir = testFolder.newFolder("input");
+		for (int i = 0; i < CORPUS_SIZE; i++) {
+			Files.write(new File(inputDir, "doc" + i + ".txt").toPath(), ("text " + i).getBytes(UTF_8));
+		}
+		return inputDir;
+	}
+
+	/**
+	 * Reads a shard of the corpus and records its documents in the batch manifest, as a node of a
+	 * sharded run would
+	 */
+	private static void recordShard(File inputDir, File outputDir, ShardSpec shardSpec, int batchNumber)
+			throws IOException {
+		File manifestFile = new File(outputDir, CheckpointManifest.getFileName(batchNumber));
+		DocumentSource source = new DirectoryDocumentSource(inputDir, ".txt", UTF_8, shardSpec,
+				CheckpointManifest.load(manifestFile));
+		while (source.hasNext()) {
+			CheckpointManifest.append(manifestFile, source.next().getDocumentId());
+		}
+		source.close();
+		assertTrue(Arrays.asList(outputDir.list()).contains(manifestFile.getName()));
+	}
+
+}
@@ -0,0 +1,218 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+
+import edu.ucdenver.ccp.nlp.pipelines.io.DocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.ReadAheadDocumentSource;
+import edu.ucdenver.ccp.nlp.pipelines.io.SourceDocument;
+
+/**
+ * Compares documents/second and CPU utilization of the annotation threads with and without
+ * read-ahead ({@link ReadAheadDocumentSource}) and a write-behind output stage (
+ * {@link ParallelPipeline#runPipeline(CollectionReader, int, int, int, List, List)}) on a simulated
+ * slow file system, where every document read and every document write takes a fixed time. The
+ * analysis is a fixed amount of CPU work per document. Run manually, e.g. from the IDE; this is
+ * not a unit test.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class AsyncIoBenchmark {
+
+	private static final int NUM_DOCUMENTS = 2000;
+	private static final int READ_LATENCY_MILLIS = 2;
+	private static final int WRITE_LATENCY_MILLIS = 2;
+	private static final int CPU_WORK_ITERATIONS = 200000;
+	private static final int QUEUE_CAPACITY = 64;
+
+	public static void main(String[] args) throws Exception {
+		int numThreads = ParallelPipeline.getDefaultNumberOfThreads();
+		System.out.println("threads=" + numThreads + " documents=" + NUM_DOCUMENTS + " readLatencyMs="
+				+ READ_LATENCY_MILLIS + " writeLatencyMs=" + WRITE_LATENCY_MILLIS);
+		/* warm up */
+		run(numThreads, 0);
+		System.out.println("synchronous I/O:  " + run(numThreads, 0));
+		System.out.println("asynchronous I/O: " + run(numThreads, QUEUE_CAPACITY));
+	}
+
+	/**
+	 * @param queueCapacity
+	 *            the read-ahead and write-behind capacity; 0 for synchronous I/O
+	 * @return documents/second and the CPU utilization of the analysis threads
+	 */
+	private static String run(int numThreads, int queueCapacity) throws Exception {
+		CollectionReader reader = CollectionReaderFactory.createCollectionReader(SlowReader.class,
+				SlowReader.PARAM_READ_AHEAD, queueCapacity);
+		List<AnalysisEngineDescription> analysis = Collections.singletonList(AnalysisEngineFactory
+				.createPrimitiveDescription(CpuBoundAnnotator.class));
+		List<AnalysisEngineDescription> output = Arrays.asList(AnalysisEngineFactory
+				.createPrimitiveDescription(SlowWriter.class));
+		com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+				.getOperatingSystemMXBean();
+		long cpuStart = os.getProcessCpuTime();
+		long start = System.nanoTime();
+		ParallelPipeline.runPipeline(reader, numThreads, numThreads, queueCapacity, analysis, output);
+		long elapsed = System.nanoTime() - start;
+		long cpu = os.getProcessCpuTime() - cpuStart;
+		return String.format("%.1f docs/sec, CPU utilization %.0f%%", NUM_DOCUMENTS * 1e9 / elapsed, 100.0 * cpu
+				/ ((double) elapsed * numThreads));
+	}
+
+	/**
+	 * Returns synthetic documents, sleeping for each one to simulate a slow file system
+	 */
+	private static class SlowDocumentSource implements DocumentSource {
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return index < NUM_DOCUMENTS;
+		}
+
+		@Override
+		public SourceDocument next() throws IOException {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			sleep(READ_LATENCY_MILLIS);
+			return new SourceDocument((index++) + ".txt", "Neurons and T cells were counted in document " + index);
+		}
+
+		@Override
+		public int getDocumentsReturnedCount() {
+			return index;
+		}
+
+		@Override
+		public int getDocumentCount() {
+			return NUM_DOCUMENTS;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	public static class SlowReader extends JCasCollectionReader_ImplBase {
+
+		public static final String PARAM_READ_AHEAD = ConfigurationParameterFactory.createConfigurationParameterName(
+				SlowReader.class, "readAhead");
+		@ConfigurationParameter(mandatory = false, defaultValue = "0")
+		private int readAhead;
+
+		private DocumentSource source;
+
+		@Override
+		public void initialize(UimaContext context) throws ResourceInitializationException {
+			super.initialize(context);
+			source = new SlowDocumentSource();
+			if (readAhead > 0) {
+				source = new ReadAheadDocumentSource(source, readAhead);
+			}
+		}
+
+		@Override
+		public boolean hasNext() throws IOException, CollectionException {
+			return source.hasNext();
+		}
+
+		@Override
+		public void getNext(JCas jcas) throws IOException, CollectionException {
+			jcas.setDocumentText(source.next().getText());
+		}
+
+		@Override
+		public Progress[] getProgress() {
+			return new Progress[0];
+		}
+
+		@Override
+		public void close() throws IOException {
+			source.close();
+		}
+	}
+
+	public static class CpuBoundAnnotator extends JCasAnnotator_ImplBase {
+		@Override
+		public void process(JCas jcas) throws AnalysisEngineProcessException {
+			String text = jcas.getDocumentText();
+			int hash = 0;
+			for (int i = 0; i < CPU_WORK_ITERATIONS; i++) {
+				hash = 31 * hash + text.charAt(i % text.length());
+			}
+			if (hash == 42) {
+				System.out.print("");
+			}
+		}
+	}
+
+	public static class SlowWriter extends JCasAnnotator_ImplBase {
+		@Override
+		public void process(JCas jcas) throws AnalysisEngineProcessException {
+			sleep(WRITE_LATENCY_MILLIS);
+		}
+	}
+
+	private static void sleep(int millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.junit.Test;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class CasPoolTest {
+
+	/**
+	 * the built-in types only
+	 */
+	private static final List<MetaDataObject> META_DATA = Collections
+			.<MetaDataObject> singletonList(UIMAFramework.getResourceSpecifierFactory().createTypeSystemDescription());
+
+	@Test
+	public void testCasesShareOneTypeSystem() throws ResourceInitializationException, InterruptedException {
+		CasPool pool = new CasPool(META_DATA, 3);
+		CAS first = pool.acquire();
+		CAS second = pool.acquire();
+		CAS third = pool.acquire();
+		assertNotSame(first, second);
+		assertNotSame(second, third);
+		assertSame(pool.getTypeSystem(), first.getTypeSystem());
+		assertSame(pool.getTypeSystem(), second.getTypeSystem());
+		assertSame(pool.getTypeSystem(), third.getTypeSystem());
+		/* the pool was never empty when a CAS was requested */
+		assertEquals(3, pool.getAcquisitionCount());
+		assertEquals(0, pool.getExhaustionCount());
+	}
+
+	@Test
+	public void testReleasedCasIsResetAndReused() throws ResourceInitializationException, InterruptedException {
+		CasPool pool = new CasPool(META_DATA, 1);
+		CAS cas = pool.acquire();
+		cas.setDocumentText("The first document.");
+		cas.setDocumentLanguage("en");
+		pool.release(cas);
+
+		CAS reused = pool.acquire();
+		assertSame(cas, reused);
+		assertNull(reused.getDocumentText());
+		assertEquals("x-unspecified", reused.getDocumentLanguage());
+		assertEquals(2, pool.getAcquisitionCount());
+		assertEquals(0, pool.getExhaustionCount());
+	}
+
+	@Test
+	public void testExhaustedPoolWaitsForRelease() throws Exception {
+		final CasPool pool = new CasPool(META_DATA, 1);
+		CAS cas = pool.acquire();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<CAS> waiting = executor.submit(new Callable<CAS>() {
+				@Override
+				public CAS call() throws InterruptedException {
+					return pool.acquire();
+				}
+			});
+			try {
+				waiting.get(200, TimeUnit.MILLISECONDS);
+				throw new AssertionError("A CAS was acquired from an exhausted pool");
+			} catch (TimeoutException e) {
+				/* expected: the only CAS is still in use */
+			}
+			pool.release(cas);
+			assertSame(cas, waiting.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(2, pool.getAcquisitionCount());
+		assertEquals(1, pool.getExhaustionCount());
+		assertTrue(pool.getWaitMillis() >= 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPoolIsRejected() throws ResourceInitializationException {
+		new CasPool(META_DATA, 0);
+	}
+
+}
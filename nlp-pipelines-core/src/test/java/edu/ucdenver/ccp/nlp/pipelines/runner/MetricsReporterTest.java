@@ -0,0 +1,84 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class MetricsReporterTest {
+
+	@Test
+	public void testQuantilesAreBucketUpperBounds() {
+		StageMetrics stage = new StageMetrics("stage");
+		stage.record(TimeUnit.MICROSECONDS.toNanos(300), 1000, 10);
+		stage.record(TimeUnit.MILLISECONDS.toNanos(3), 2000, 5);
+		stage.record(TimeUnit.SECONDS.toNanos(70), 10, -3);
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(5), stage.getQuantileNanos(0.5));
+		assertEquals(TimeUnit.SECONDS.toNanos(70), stage.getQuantileNanos(0.99));
+		assertEquals(3010, stage.getCharacterCount());
+		assertEquals(12, stage.getAnnotationsAdded());
+	}
+
+	@Test
+	public void testPrometheusHistogramIsCumulative() {
+		StageMetrics stage = new StageMetrics("Sentence \"splitter\"");
+		stage.record(TimeUnit.MICROSECONDS.toNanos(300), 1000, 10);
+		stage.record(TimeUnit.SECONDS.toNanos(70), 10, 0);
+		List<StageMetrics> stages = Collections.singletonList(stage);
+		String prometheus = MetricsReporter.toPrometheus(stages);
+		String label = "stage=\"Sentence \\\"splitter\\\"\"";
+		assertTrue(prometheus.contains("nlp_pipeline_stage_seconds_bucket{" + label + ",le=\"0.00025\"} 0\n"));
+		assertTrue(prometheus.contains("nlp_pipeline_stage_seconds_bucket{" + label + ",le=\"0.0005\"} 1\n"));
+		assertTrue(prometheus.contains("nlp_pipeline_stage_seconds_bucket{" + label + ",le=\"60.0\"} 1\n"));
+		assertTrue(prometheus.contains("nlp_pipeline_stage_seconds_bucket{" + label + ",le=\"+Inf\"} 2\n"));
+		assertTrue(prometheus.contains("nlp_pipeline_stage_seconds_count{" + label + "} 2\n"));
+		assertTrue(prometheus.contains("nlp_pipeline_stage_characters_total{" + label + "} 1010\n"));
+
+		String json = MetricsReporter.toJson(stages, 12345);
+		assertTrue(json.contains("\"elapsedSeconds\": 12.345"));
+		assertTrue(json.contains("{\"name\": \"Sentence \\\"splitter\\\"\", \"documents\": 2,"));
+	}
+
+}
@@ -0,0 +1,127 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.Progress;
+import org.junit.Test;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ParallelPipelineTest {
+
+	private static final int NUM_DOCUMENTS = 100;
+
+	/**
+	 * An {@link Error} in an output component must fail the run rather than leave the workers
+	 * waiting for CASes that are never returned to the pool
+	 */
+	@Test(timeout = 60000)
+	public void testErrorInOutputStageFailsTheRun() throws Exception {
+		CollectionReader reader = CollectionReaderFactory.createCollectionReader(CountingReader.class);
+		List<AnalysisEngineDescription> analysis = Arrays.asList(AnalysisEngineFactory
+				.createPrimitiveDescription(NoOpAnnotator.class));
+		List<AnalysisEngineDescription> output = Arrays.asList(AnalysisEngineFactory
+				.createPrimitiveDescription(FailingWriter.class));
+		try {
+			ParallelPipeline.runPipeline(reader, 2, 1, 2, analysis, output);
+			fail("The output stage failed but the run completed.");
+		} catch (Throwable t) {
+			assertTrue(t.toString(), isSimulatedError(t));
+		}
+	}
+
+	private static boolean isSimulatedError(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof OutOfMemoryError && FailingWriter.MESSAGE.equals(cause.getMessage())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static class CountingReader extends JCasCollectionReader_ImplBase {
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() throws IOException, CollectionException {
+			return index < NUM_DOCUMENTS;
+		}
+
+		@Override
+		public void getNext(JCas jcas) throws IOException, CollectionException {
+			jcas.setDocumentText("Document " + (index++));
+		}
+
+		@Override
+		public Progress[] getProgress() {
+			return new Progress[0];
+		}
+	}
+
+	public static class NoOpAnnotator extends JCasAnnotator_ImplBase {
+		@Override
+		public void process(JCas jcas) throws AnalysisEngineProcessException {
+		}
+	}
+
+	public static class FailingWriter extends JCasAnnotator_ImplBase {
+		static final String MESSAGE = "simulated out of memory in an output component";
+
+		@Override
+		public void process(JCas jcas) throws AnalysisEngineProcessException {
+			throw new OutOfMemoryError(MESSAGE);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.ProgressReporter.State;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ProgressReporter.Status;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class ProgressReporterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testThroughputIsRolling() {
+		ProgressReporter progress = new ProgressReporter(null, null, 10, 0);
+		/* 100 documents of 1000 characters in the first 10 seconds */
+		for (int i = 0; i < 100; i++) {
+			progress.documentCompleted(1000);
+		}
+		Status status = progress.getStatus(10 * SECOND, State.RUNNING);
+		assertEquals(10.0, status.getDocumentsPerSecond(), 1e-9);
+		assertEquals(10000.0, status.getCharactersPerSecond(), 1e-9);
+		assertEquals(-1, status.getTotalDocuments());
+		assertEquals(-1.0, status.getEtaSeconds(), 0.0);
+
+		/* then no documents for the rest of the window: the rate falls */
+		for (int i = 2; i <= ProgressReporter.RATE_WINDOW; i++) {
+			status = progress.getStatus(i * 10 * SECOND, State.RUNNING);
+		}
+		assertEquals(100.0 / (ProgressReporter.RATE_WINDOW * 10), status.getDocumentsPerSecond(), 1e-9);
+		/* once the first 10 seconds leave the window, the rate only covers the idle period */
+		status = progress.getStatus((ProgressReporter.RATE_WINDOW + 1) * 10 * SECOND, State.RUNNING);
+		assertEquals(0.0, status.getDocumentsPerSecond(), 0.0);
+		assertEquals(100, status.getDocuments());
+	}
+
+	@Test
+	public void testCompletedRunIsComplete() {
+		ProgressReporter progress = new ProgressReporter(null, null, 10, 0);
+		progress.documentCompleted(5);
+		Status status = progress.getStatus(SECOND, State.COMPLETED);
+		assertEquals(1, status.getTotalDocuments());
+		assertEquals(100.0, status.getPercentComplete(), 0.0);
+		assertEquals(0.0, status.getEtaSeconds(), 0.0);
+		assertTrue(status.toJson().contains("\"state\": \"completed\""));
+	}
+
+	@Test
+	public void testEta() {
+		assertEquals(50.0, ProgressReporter.getEtaSeconds(500, 1000, 10.0), 1e-9);
+		assertEquals(-1.0, ProgressReporter.getEtaSeconds(500, 1000, 0.0), 0.0);
+		assertEquals(-1.0, ProgressReporter.getEtaSeconds(500, -1, 10.0), 0.0);
+		assertEquals(0.0, ProgressReporter.getEtaSeconds(1000, 1000, 0.0), 0.0);
+	}
+
+	@Test
+	public void testFormatDuration() {
+		assertEquals("0:00:59", ProgressReporter.formatDuration(59.4));
+		assertEquals("1:01:01", ProgressReporter.formatDuration(3661));
+		assertEquals("2d 3:00:00", ProgressReporter.formatDuration(2 * 86400 + 3 * 3600));
+		assertEquals("unknown", ProgressReporter.formatDuration(-1));
+	}
+
+}
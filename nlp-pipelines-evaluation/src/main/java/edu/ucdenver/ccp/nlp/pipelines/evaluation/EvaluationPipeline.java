@@ -45,9 +45,12 @@ import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
-import org.uimafit.pipeline.SimplePipeline;
 
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runner.MetricsReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ProgressReporter;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ParallelPipeline;
+import edu.ucdenver.ccp.nlp.pipelines.runner.StageTimer_AE;
 import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.MentionComparatorType;
 import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationComparator_AE.SpanComparatorType;
 import edu.ucdenver.ccp.nlp.uima.annotators.comparison.AnnotationGroup;
@@ -91,6 +94,8 @@ public class EvaluationPipeline {
 
 	private List<AnalysisEngineDescription> pipelineToEvaluate;
 	private File evalResultsOutputFile = null;
+	private File metricsOutputDirectory = null;
+	private File statusFile = null;
 
 	/**
 	 * @param collectionReader
@@ -142,6 +147,24 @@ public class EvaluationPipeline {
 		this.evalResultsOutputFile = null;
 	}
 
+	/**
+	 * @param directory
+	 *            if not null, each component is timed during {@link #run(SlotRemovalOption)} and its
+	 *            metrics are periodically written to this directory, see {@link MetricsReporter}
+	 */
+	public void setMetricsOutputDirectory(File directory) {
+		this.metricsOutputDirectory = directory;
+	}
+
+	/**
+	 * @param file
+	 *            if not null, the progress of {@link #run(SlotRemovalOption)} is periodically
+	 *            written to this file as well as logged, see {@link ProgressReporter}
+	 */
+	public void setStatusFile(File file) {
+		this.statusFile = file;
+	}
+
 	/**
 	 * Adds components that apply the proper annotation set IDs and annotator IDs, as well as the
 	 * component that will do the actual comparison
@@ -155,12 +178,48 @@ public class EvaluationPipeline {
 	 * @throws IOException
 	 */
 	public void run(SlotRemovalOption slotRemovalOption) throws UIMAException, IOException {
+		List<AnalysisEngineDescription> aeDescs = getAnalysisEngineDescriptions(slotRemovalOption);
+		MetricsReporter metricsReporter = null;
+		if (metricsOutputDirectory != null) {
+			aeDescs = StageTimer_AE.instrument(tsd, aeDescs);
+			metricsReporter = new MetricsReporter(metricsOutputDirectory, MetricsReporter.DEFAULT_PERIOD_SECONDS);
+			metricsReporter.start();
+		}
+		ProgressReporter progressReporter = new ProgressReporter(collectionReader, statusFile,
+				ProgressReporter.DEFAULT_PERIOD_SECONDS);
+		progressReporter.start();
+		boolean completed = false;
+		try {
+			/*
+			 * a single replica, since the comparator accumulates its counts over all documents; its
+			 * CAS is reset and reused for each document
+			 */
+			ParallelPipeline.runPipeline(collectionReader, 1, progressReporter,
+					aeDescs.toArray(new AnalysisEngineDescription[aeDescs.size()]));
+			completed = true;
+		} finally {
+			progressReporter.stop(completed);
+			if (metricsReporter != null) {
+				metricsReporter.stop();
+			}
+		}
+	}
+
+	/**
+	 * @param slotRemovalOption
+	 *            see {@link #run(SlotRemovalOption)}
+	 * @return the components that {@link #run(SlotRemovalOption)} applies to each document: the
+	 *         gold standard loaders, the pipeline being evaluated and the comparison components
+	 * @throws ResourceInitializationException
+	 */
+	public List<AnalysisEngineDescription> getAnalysisEngineDescriptions(SlotRemovalOption slotRemovalOption)
+			throws ResourceInitializationException {
 		List<AnalysisEngineDescription> aeDescs = new ArrayList<AnalysisEngineDescription>();
 		aeDescs.addAll(goldStandardAnnotationLoaderDescriptions);
 		aeDescs.addAll(getGoldStandardAnnotationAssignerAes());
 		aeDescs.addAll(pipelineToEvaluate);
 		aeDescs.addAll(getAnnotationComparisonComponents(slotRemovalOption));
-		SimplePipeline.runPipeline(collectionReader, aeDescs.toArray(new AnalysisEngineDescription[aeDescs.size()]));
+		return aeDescs;
 	}
 
 	/**
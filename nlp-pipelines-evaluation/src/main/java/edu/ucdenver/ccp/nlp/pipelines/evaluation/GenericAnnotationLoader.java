@@ -34,13 +34,15 @@ package edu.ucdenver.ccp.nlp.pipelines.evaluation;
  * #L%
  */
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
 import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -52,6 +54,8 @@ import org.uimafit.descriptor.ConfigurationParameter;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.factory.ConfigurationParameterFactory;
 
+import edu.ucdenver.ccp.nlp.pipelines.io.AnnotationBatchIndex;
+import edu.ucdenver.ccp.nlp.pipelines.io.AnnotationBatchWriter;
 import edu.ucdenver.ccp.nlp.uima.util.UIMA_Annotation_Util;
 import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
 
@@ -72,34 +76,57 @@ public class GenericAnnotationLoader extends JCasAnnotator_ImplBase {
 			mandatory=false, defaultValue= "0")
 	private int filter;
 	
+	public static final String BATCH_BASE_NAME = ConfigurationParameterFactory.createConfigurationParameterName(
+			GenericAnnotationLoader.class, "batchBaseName");
+	@ConfigurationParameter(description="if set, annotations are read from the BioNLP batch files with this base name " +
+			"in the directory (see AnnotationBatchWriter) instead of from one file per document", 
+			mandatory=false)
+	private String batchBaseName;
+	
+	private AnnotationBatchIndex batchIndex;
+	
+	/**
+	 * reused for every document, so that its buffer and concept id pool are only allocated once
+	 */
+	private GenericAnnotationParser parser;
+	
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		parser = new GenericAnnotationParser();
+		if (batchBaseName != null) {
+			try {
+				batchIndex = AnnotationBatchIndex.load(new File(directory), batchBaseName);
+			} catch (IOException e) {
+				throw new ResourceInitializationException(e);
+			}
+		}
+	}
+	
 	@Override
 	public void process(JCas jcas) throws AnalysisEngineProcessException {
 		String docID = UIMA_Util.getDocumentID(jcas);
+		if (batchIndex != null) {
+			loadBatchAnnotations(docID, jcas);
+			return;
+		}
 		File file = new File(directory + File.separator + docID);
-		BufferedReader reader = null;
+		Reader reader = null;
 		try {
-			reader = new BufferedReader(new FileReader(file));
-			String text = null;
+			reader = new FileReader(file);
+			parser.reset(reader);
+			boolean debug = logger.isDebugEnabled();
 			
-			while ((text = reader.readLine()) != null) {
-				String [] elements = text.split("\t");
-				String id = elements[0];
-				String coveredText = elements[1];
-				int span_start = Integer.parseInt(elements[2]);
-				int span_end = Integer.parseInt(elements[3]);
-				
-				if(elements.length == 5) {
-					Integer score = Integer.parseInt(elements[4]);
-				
-					if(score >= filter) {
-						logger.debug("Adding annotation: " + id + "  Start/End: " + span_start + " / " + span_end + " with score " + score);
-						UIMA_Annotation_Util.createCCPTextAnnotation(id, span_start, span_end, jcas);
+			while (parser.next()) {
+				if (!parser.hasScore() || parser.getScore() >= filter) {
+					if (debug) {
+						logger.debug("Adding annotation: " + parser.getConceptId() + "  Start/End: "
+								+ parser.getSpanStart() + " / " + parser.getSpanEnd()
+								+ (parser.hasScore() ? " with score " + parser.getScore() : ""));
 					}
-				} else {
-					logger.debug("Adding annotation: " + id + "  Start/End: " + span_start + " / " + span_end);
-					UIMA_Annotation_Util.createCCPTextAnnotation(id, span_start, span_end, jcas);
+					UIMA_Annotation_Util.createCCPTextAnnotation(parser.getConceptId(), parser.getSpanStart(),
+							parser.getSpanEnd(), jcas);
 				}
-				
 			}
 			
 		} catch (FileNotFoundException e) {
@@ -117,6 +144,73 @@ public class GenericAnnotationLoader extends JCasAnnotator_ImplBase {
 		}
 	}
 	
+	/**
+	 * Adds the annotations recorded for the document in the batch files, see
+	 * {@link #addA1Annotations(String, JCas)}
+	 */
+	private void loadBatchAnnotations(String docID, JCas jcas) throws AnalysisEngineProcessException {
+		String record;
+		try {
+			record = batchIndex.read(docID);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		if (record == null) {
+			logger.warn("No annotations found in the batch files for document: " + docID);
+			return;
+		}
+		try {
+			addA1Annotations(parser, record, jcas);
+		} catch (IllegalArgumentException e) {
+			throw new AnalysisEngineProcessException(new IOException("Invalid annotations in the batch files for document: "
+					+ docID, e));
+		}
+	}
+	
+	/**
+	 * Adds the annotations of a BioNLP A1 record: each T line gives a span and each N line gives
+	 * the concept id for a T line (see {@link GenericAnnotationParser#resetA1(Reader)})
+	 * 
+	 * @param record
+	 *            the content of an A1 file
+	 * @param jcas
+	 * @throws IllegalArgumentException
+	 *             if an N line refers to a T line that does not precede it in the record
+	 */
+	public static void addA1Annotations(String record, JCas jcas) {
+		addA1Annotations(new GenericAnnotationParser(), record, jcas);
+	}
+	
+	private static void addA1Annotations(GenericAnnotationParser parser, String record, JCas jcas) {
+		try {
+			parser.resetA1(new StringReader(record));
+		} catch (IOException e) {
+			/* a StringReader does not throw */
+			throw new IllegalStateException(e);
+		}
+		boolean debug = logger.isDebugEnabled();
+		while (parser.next()) {
+			if (debug) {
+				logger.debug("Adding annotation: " + parser.getConceptId() + "  Start/End: " + parser.getSpanStart()
+						+ " / " + parser.getSpanEnd());
+			}
+			UIMA_Annotation_Util.createCCPTextAnnotation(parser.getConceptId(), parser.getSpanStart(),
+					parser.getSpanEnd(), jcas);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (batchIndex != null) {
+			try {
+				batchIndex.close();
+			} catch (IOException e) {
+				logger.error("Error while closing annotation batch files.", e);
+			}
+		}
+		super.destroy();
+	}
+	
 	/**
 	 * Returns an initialized MetaMapAnnotationLoader {@link AnalysisEngine}
 	 * 
@@ -147,5 +241,24 @@ public class GenericAnnotationLoader extends JCasAnnotator_ImplBase {
 		return AnalysisEngineFactory.createPrimitiveDescription(GenericAnnotationLoader.class, tsd,
 				GenericAnnotationLoader.ANNOTATION_DIRECTORY, directory);
 	}
+	
+	/**
+	 * Returns a {@link GenericAnnotationLoader} description that reads the batch files written by
+	 * the EntityFinder -batchOutput option
+	 * 
+	 * @param tsd
+	 * @param directory
+	 *            the directory containing the batch files
+	 * @param batchNumber
+	 *            the batch number the files were written with; may be null
+	 * @return
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription createBatchAnalysisEngineDescription(TypeSystemDescription tsd,
+			String directory, Integer batchNumber) throws ResourceInitializationException {
+		return AnalysisEngineFactory.createPrimitiveDescription(GenericAnnotationLoader.class, tsd,
+				GenericAnnotationLoader.ANNOTATION_DIRECTORY, directory, GenericAnnotationLoader.BATCH_BASE_NAME,
+				AnnotationBatchWriter.getBaseName(batchNumber));
+	}
 
-}
\ No newline at end of file
+}
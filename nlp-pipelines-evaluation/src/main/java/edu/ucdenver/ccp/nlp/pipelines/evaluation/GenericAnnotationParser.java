@@ -0,0 +1,415 @@
+package edu.ucdenver.ccp.nlp.pipelines.evaluation;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the tab-separated annotation files read by {@link GenericAnnotationLoader}, one
+ * annotation per line: concept id, covered text, span start, span end and, optionally, a score.
+ * <p>
+ * The parser is a cursor: {@link #reset(Reader)} reads a whole file into a character buffer that is
+ * reused from one file to the next, and each call to {@link #next()} scans the next line in place,
+ * so no line strings, field arrays or boxed numbers are created. Concept ids are interned in a pool
+ * that is kept for the life of the parser, so a concept id is only allocated the first time it is
+ * seen. A parser is not thread-safe.
+ * <p>
+ * Lines are interpreted as {@link String#split(String)} on tabs would: trailing empty fields are
+ * ignored, and the score is only used if there are exactly five fields. Empty lines are skipped.
+ * <p>
+ * After {@link #resetA1(Reader)} the parser reads BioNLP A1 records instead (as written by the
+ * EntityFinder): each T line gives the span of a text-bound annotation, and each N line
+ * (<code>N1 TAB Reference T1 CL:0000540</code>) is returned as an annotation with the concept id it
+ * assigns to the span of its T line. The T line must come first. Other lines are skipped, and A1
+ * annotations have no score. T ids are interned along with the concept ids.
+ * 
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class GenericAnnotationParser {
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+	private static final int INITIAL_POOL_SIZE = 1024;
+
+	/**
+	 * the number of fields whose offsets are recorded; later fields only matter if they are not
+	 * empty
+	 */
+	private static final int FIELD_COUNT = 5;
+
+	private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+	private int length = 0;
+	private int position = 0;
+
+	private final int[] fieldStarts = new int[FIELD_COUNT];
+	private final int[] fieldEnds = new int[FIELD_COUNT];
+
+	/**
+	 * open addressing hash table of the interned concept ids; its length is a power of two
+	 */
+	private String[] pool = new String[INITIAL_POOL_SIZE];
+	private int poolSize = 0;
+
+	/**
+	 * true if the current input is an A1 record
+	 */
+	private boolean a1 = false;
+
+	/**
+	 * the spans of the T lines read so far from the current A1 record, by T id; the arrays are
+	 * reused from one record to the next
+	 */
+	private final Map<String, int[]> textBoundSpans = new HashMap<String, int[]>();
+	private final List<int[]> spanArrays = new ArrayList<int[]>();
+	private int spanArraysUsed = 0;
+
+	private String conceptId;
+	private int spanStart;
+	private int spanEnd;
+	private boolean hasScore;
+	private int score;
+
+	/**
+	 * Reads the annotations to parse; the reader is read to its end but not closed
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void reset(Reader reader) throws IOException {
+		read(reader);
+		a1 = false;
+	}
+
+	/**
+	 * Reads the BioNLP A1 record to parse; the reader is read to its end but not closed
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void resetA1(Reader reader) throws IOException {
+		read(reader);
+		a1 = true;
+		textBoundSpans.clear();
+		spanArraysUsed = 0;
+	}
+
+	private void read(Reader reader) throws IOException {
+		length = 0;
+		position = 0;
+		int read;
+		while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+			length += read;
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+	}
+
+	/**
+	 * Moves to the next annotation
+	 * 
+	 * @return false if there are no more annotations
+	 * @throws NumberFormatException
+	 *             if a span offset or the score is not an integer
+	 * @throws IllegalArgumentException
+	 *             if a line has fewer than four fields, or, in an A1 record, if a T line has no
+	 *             span or an N line refers to a T line that does not precede it
+	 */
+	public boolean next() {
+		while (position < length) {
+			int lineStart = position;
+			int lineEnd = lineStart;
+			while (lineEnd < length && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r') {
+				lineEnd++;
+			}
+			position = lineEnd;
+			if (position < length && buffer[position] == '\r') {
+				position++;
+			}
+			if (position < length && buffer[position] == '\n') {
+				position++;
+			}
+			if (a1) {
+				if (parseA1Line(lineStart, lineEnd)) {
+					return true;
+				}
+			} else if (lineEnd > lineStart) {
+				parseLine(lineStart, lineEnd);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records the span of a T line, or makes an N line the current annotation
+	 * 
+	 * @return true if the line is an N line
+	 */
+	private boolean parseA1Line(int lineStart, int lineEnd) {
+		if (lineEnd == lineStart || (buffer[lineStart] != 'T' && buffer[lineStart] != 'N')) {
+			return false;
+		}
+		int idEnd = indexOf('\t', lineStart, lineEnd);
+		if (idEnd == lineEnd) {
+			return false;
+		}
+		int fieldStart = idEnd + 1;
+		int fieldEnd = indexOf('\t', fieldStart, lineEnd);
+		if (fieldEnd == fieldStart) {
+			return false;
+		}
+		/* "type start end[;start end...]" or "Reference Tn conceptId" */
+		int firstSpace = indexOf(' ', fieldStart, fieldEnd);
+		int secondStart = firstSpace + 1;
+		int secondEnd = Math.min(indexOf(' ', secondStart, fieldEnd), indexOf(';', secondStart, fieldEnd));
+		if (secondStart >= fieldEnd || secondEnd == fieldEnd) {
+			throw new IllegalArgumentException("Expected three space-separated values in the second field: "
+					+ new String(buffer, lineStart, lineEnd - lineStart));
+		}
+		if (buffer[lineStart] == 'T') {
+			int lastSpace = lastIndexOf(' ', fieldStart, fieldEnd);
+			int[] span = getSpanArray();
+			span[0] = parseInt(secondStart, secondEnd);
+			span[1] = parseInt(lastSpace + 1, fieldEnd);
+			textBoundSpans.put(intern(lineStart, idEnd), span);
+			return false;
+		}
+		int[] span = textBoundSpans.get(intern(secondStart, secondEnd));
+		if (span == null) {
+			throw new IllegalArgumentException("Normalization refers to a text-bound annotation ("
+					+ new String(buffer, secondStart, secondEnd - secondStart) + ") that is not defined before it: "
+					+ new String(buffer, lineStart, lineEnd - lineStart));
+		}
+		conceptId = intern(secondEnd + 1, indexOf(' ', secondEnd + 1, fieldEnd));
+		spanStart = span[0];
+		spanEnd = span[1];
+		hasScore = false;
+		score = 0;
+		return true;
+	}
+
+	private int[] getSpanArray() {
+		if (spanArraysUsed == spanArrays.size()) {
+			spanArrays.add(new int[2]);
+		}
+		return spanArrays.get(spanArraysUsed++);
+	}
+
+	/**
+	 * @return the offset of the first occurrence of the character between the offsets, or end if
+	 *         there is none
+	 */
+	private int indexOf(char c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return the offset of the last occurrence of the character between the offsets, or start - 1
+	 *         if there is none
+	 */
+	private int lastIndexOf(char c, int start, int end) {
+		for (int i = end - 1; i >= start; i--) {
+			if (buffer[i] == c) {
+				return i;
+			}
+		}
+		return start - 1;
+	}
+
+	private void parseLine(int lineStart, int lineEnd) {
+		int field = 0;
+		int lastNonEmptyField = -1;
+		int fieldStart = lineStart;
+		for (int i = lineStart; i <= lineEnd; i++) {
+			if (i == lineEnd || buffer[i] == '\t') {
+				if (field < FIELD_COUNT) {
+					fieldStarts[field] = fieldStart;
+					fieldEnds[field] = i;
+				}
+				if (i > fieldStart) {
+					lastNonEmptyField = field;
+				}
+				field++;
+				fieldStart = i + 1;
+			}
+		}
+		int fieldCount = lastNonEmptyField + 1;
+		if (fieldCount < 4) {
+			throw new IllegalArgumentException("Expected at least 4 tab-separated fields but observed " + fieldCount
+					+ ": " + new String(buffer, lineStart, lineEnd - lineStart));
+		}
+		conceptId = intern(fieldStarts[0], fieldEnds[0]);
+		spanStart = parseInt(fieldStarts[2], fieldEnds[2]);
+		spanEnd = parseInt(fieldStarts[3], fieldEnds[3]);
+		hasScore = (fieldCount == FIELD_COUNT);
+		score = hasScore ? parseInt(fieldStarts[4], fieldEnds[4]) : 0;
+	}
+
+	/**
+	 * @return the integer in the buffer between the specified offsets, parsed as
+	 *         {@link Integer#parseInt(String)} would for ASCII digits
+	 */
+	private int parseInt(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = (buffer[i] == '-');
+			i++;
+		}
+		if (i == end) {
+			throw numberFormatException(start, end);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw numberFormatException(start, end);
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				throw numberFormatException(start, end);
+			}
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw numberFormatException(start, end);
+		}
+		return (int) value;
+	}
+
+	private NumberFormatException numberFormatException(int start, int end) {
+		return new NumberFormatException("For input string: \"" + new String(buffer, start, end - start) + "\"");
+	}
+
+	/**
+	 * @return the pooled string equal to the characters in the buffer between the specified
+	 *         offsets, adding it to the pool if it is not there yet
+	 */
+	private String intern(int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		int mask = pool.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (true) {
+			String pooled = pool[slot];
+			if (pooled == null) {
+				pooled = new String(buffer, start, end - start);
+				pool[slot] = pooled;
+				if (++poolSize * 2 > pool.length) {
+					growPool();
+				}
+				return pooled;
+			}
+			if (pooled.hashCode() == hash && regionEquals(pooled, start, end)) {
+				return pooled;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean regionEquals(String s, int start, int end) {
+		if (s.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i - start) != buffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void growPool() {
+		String[] oldPool = pool;
+		pool = new String[oldPool.length * 2];
+		int mask = pool.length - 1;
+		for (String pooled : oldPool) {
+			if (pooled != null) {
+				int hash = pooled.hashCode();
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (pool[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				pool[slot] = pooled;
+			}
+		}
+	}
+
+	/**
+	 * @return the concept id of the current annotation
+	 */
+	public String getConceptId() {
+		return conceptId;
+	}
+
+	public int getSpanStart() {
+		return spanStart;
+	}
+
+	public int getSpanEnd() {
+		return spanEnd;
+	}
+
+	/**
+	 * @return true if the current annotation has a score
+	 */
+	public boolean hasScore() {
+		return hasScore;
+	}
+
+	/**
+	 * @return the score of the current annotation, or 0 if it has none
+	 */
+	public int getScore() {
+		return score;
+	}
+
+}
@@ -80,6 +80,17 @@ public class CraftRunGenericComparison {
 	public static final String GO_BP_ROOT_ID = "GO:0008150";
 	public static final String GO_MF_ROOT_ID = "GO:0003674";
 	public static final String GO_CC_ROOT_ID = "GO:0005575";
+	
+	/**
+	 * if set, per-component metrics are written to the directory named by this system property
+	 */
+	public static final String METRICS_DIRECTORY_PROPERTY = "ccp.metrics.dir";
+
+	/**
+	 * if set, the progress of the evaluation is periodically written to the file named by this
+	 * system property
+	 */
+	public static final String STATUS_FILE_PROPERTY = "ccp.status.file";
 
 	/**
 	 * @param tsd
@@ -121,6 +132,8 @@ public class CraftRunGenericComparison {
 		if (outputFile != null) {
 			evalPipeline.setEvalResultsOutputFile(outputFile);
 		}
+		evalPipeline.setMetricsOutputDirectory(getMetricsDirectory());
+		evalPipeline.setStatusFile(getStatusFile());
 		
 		/* Removes all SLOT MENTIONS */
 		AnalysisEngineDescription removeSlot = SlotRemovalFilter_AE.getDescription(tsd, SlotRemovalOption.REMOVE_ALL);
@@ -175,6 +188,8 @@ public class CraftRunGenericComparison {
 		if (outputFile != null) {
 			evalPipeline.setEvalResultsOutputFile(outputFile);
 		}
+		evalPipeline.setMetricsOutputDirectory(getMetricsDirectory());
+		evalPipeline.setStatusFile(getStatusFile());
 		
 		/* Removes all SLOT MENTIONS */
 		AnalysisEngineDescription removeSlot = SlotRemovalFilter_AE.getDescription(tsd, SlotRemovalOption.REMOVE_ALL);
@@ -220,6 +235,24 @@ public class CraftRunGenericComparison {
 		}
 	}
 	
+	/**
+	 * @return the directory named by the {@value #METRICS_DIRECTORY_PROPERTY} system property, to
+	 *         which the timing of each pipeline component is written, or null if it is not set
+	 */
+	private static File getMetricsDirectory() {
+		String directory = System.getProperty(METRICS_DIRECTORY_PROPERTY);
+		return (directory == null) ? null : new File(directory);
+	}
+	
+	/**
+	 * @return the file named by the {@value #STATUS_FILE_PROPERTY} system property, to which the
+	 *         progress of the evaluation is written, or null if it is not set
+	 */
+	private static File getStatusFile() {
+		String file = System.getProperty(STATUS_FILE_PROPERTY);
+		return (file == null) ? null : new File(file);
+	}
+	
 	/**
 	 * @return a reference to the GO obo file. It will be copied from the classpath to a temporary
 	 *         file.
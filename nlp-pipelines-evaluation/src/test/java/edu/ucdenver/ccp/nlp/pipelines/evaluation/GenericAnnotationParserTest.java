@@ -0,0 +1,207 @@
+package edu.ucdenver.ccp.nlp.pipelines.evaluation;
+
+/*
+ * #%L
+ * Colorado Computational Pharmacology's NLP pipelines
+ * 							module
+ * %%
+ * Copyright (C) 2014 Regents of the University of Colorado
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Regents of the University of Colorado nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Center for Computational Pharmacology, UC Denver; ccpsupport@ucdenver.edu
+ * 
+ */
+public class GenericAnnotationParserTest {
+
+	private static final File CL_ANNOTATIONS = new File("src" + File.separator + "test" + File.separator
+			+ "resources" + File.separator + "genericCLAnnotations");
+
+	@Test
+	public void testParserMatchesSplitOnFixtures() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		File[] files = CL_ANNOTATIONS.listFiles();
+		assertTrue(files.length > 0);
+		int total = 0;
+		int scoreAtLeast1000 = 0;
+		for (File file : files) {
+			List<String> expected = new ArrayList<String>();
+			BufferedReader lines = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = lines.readLine()) != null) {
+					String[] elements = line.split("\t");
+					expected.add(elements[0] + " " + Integer.parseInt(elements[2]) + " "
+							+ Integer.parseInt(elements[3]) + " "
+							+ ((elements.length == 5) ? Integer.parseInt(elements[4]) : "-"));
+				}
+			} finally {
+				lines.close();
+			}
+
+			List<String> observed = new ArrayList<String>();
+			FileReader reader = new FileReader(file);
+			try {
+				parser.reset(reader);
+			} finally {
+				reader.close();
+			}
+			while (parser.next()) {
+				observed.add(parser.getConceptId() + " " + parser.getSpanStart() + " " + parser.getSpanEnd() + " "
+						+ (parser.hasScore() ? Integer.toString(parser.getScore()) : "-"));
+				if (parser.getScore() >= 1000) {
+					scoreAtLeast1000++;
+				}
+			}
+			assertEquals(file.getName(), expected, observed);
+			total += observed.size();
+		}
+		assertEquals(11214, total);
+		assertTrue(scoreAtLeast1000 > 0 && scoreAtLeast1000 < total);
+	}
+
+	@Test
+	public void testLineEndingsAndFieldCounts() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.reset(new StringReader("CL:1\tcell\t1\t5\t700\r\n\nCL:2\tcell\t-2\t+7\t\t\rCL:1\t\t10\t15\textra\tfield"));
+		assertTrue(parser.next());
+		String first = parser.getConceptId();
+		assertEquals("CL:1", first);
+		assertTrue(parser.hasScore());
+		assertEquals(700, parser.getScore());
+
+		assertTrue(parser.next());
+		assertEquals("CL:2", parser.getConceptId());
+		assertEquals(-2, parser.getSpanStart());
+		assertEquals(7, parser.getSpanEnd());
+		assertFalse("trailing empty fields are ignored", parser.hasScore());
+
+		assertTrue(parser.next());
+		assertSame("concept ids are interned", first, parser.getConceptId());
+		assertEquals(10, parser.getSpanStart());
+		assertEquals(15, parser.getSpanEnd());
+		assertFalse("a score is only read from exactly five fields", parser.hasScore());
+		assertFalse(parser.next());
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidOffset() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.reset(new StringReader("CL:1\tcell\t1x\t5\n"));
+		parser.next();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooFewFields() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.reset(new StringReader("CL:1\tcell\t1\n"));
+		parser.next();
+	}
+
+	@Test
+	public void testA1Records() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.resetA1(new StringReader("T1\tontology_term 12 20\tNeuronal\nN1\tReference T1 CL:0000540\t\n"
+				+ "#1\tAnnotatorNotes T1\tnote\nT2\tontology_term 45 49;52 60\tCell bodies\r\n"
+				+ "N2\tReference T2 CL:0000000\tcell\nN3\tReference T1 CL:0000000"));
+		List<String> observed = new ArrayList<String>();
+		while (parser.next()) {
+			assertFalse(parser.hasScore());
+			observed.add(parser.getConceptId() + " " + parser.getSpanStart() + " " + parser.getSpanEnd());
+		}
+		assertEquals(Arrays.asList("CL:0000540 12 20", "CL:0000000 45 60", "CL:0000000 12 20"), observed);
+
+		/* T ids are only valid within their record */
+		parser.resetA1(new StringReader("T1\tontology_term 0 4\tcell\nN1\tReference T1 CL:0000000\t\n"));
+		assertTrue(parser.next());
+		assertEquals(0, parser.getSpanStart());
+		assertFalse(parser.next());
+		parser.resetA1(new StringReader("N1\tReference T1 CL:0000000\t\n"));
+		try {
+			parser.next();
+			fail("A normalization of an undefined text-bound annotation should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("(T1)"));
+		}
+
+		/* the tab-separated format is parsed again after a reset */
+		parser.reset(new StringReader("CL:1\tcell\t1\t5\n"));
+		assertTrue(parser.next());
+		assertEquals("CL:1", parser.getConceptId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testA1TextBoundWithoutSpan() throws IOException {
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.resetA1(new StringReader("T1\tontology_term\tcell\n"));
+		parser.next();
+	}
+
+	@Test
+	public void testManyConceptIdsAndLongInput() throws IOException {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			input.append("CL:").append(i % 3000).append("\tcell\t").append(i).append('\t').append(i + 4).append('\n');
+		}
+		GenericAnnotationParser parser = new GenericAnnotationParser();
+		parser.reset(new StringReader(input.toString()));
+		String[] ids = new String[3000];
+		int count = 0;
+		while (parser.next()) {
+			String id = parser.getConceptId();
+			assertEquals("CL:" + (count % 3000), id);
+			if (count < 3000) {
+				ids[count] = id;
+			} else {
+				assertSame(ids[count % 3000], id);
+			}
+			assertEquals(count, parser.getSpanStart());
+			count++;
+		}
+		assertEquals(5000, count);
+	}
+
+}
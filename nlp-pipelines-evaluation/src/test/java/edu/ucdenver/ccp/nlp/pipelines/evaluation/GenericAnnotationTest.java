@@ -35,6 +35,7 @@ package edu.ucdenver.ccp.nlp.pipelines.evaluation;
  */
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
@@ -116,6 +117,18 @@ public class GenericAnnotationTest extends DefaultUIMATestCase {
         assertTrue("loaded all annotations",count == 384);
 	}
 	
+	@Test
+	public void testA1NormalizationOfUndefinedTextBoundIsRejected() {
+		jcas.setDocumentText("Neuronal cells");
+		try {
+			GenericAnnotationLoader.addA1Annotations("T1\tontology_term 0 8\tNeuronal\nN1\tReference T2 CL:0000540\t\n",
+					jcas);
+			fail("A normalization of an undefined text-bound annotation should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("T2"));
+		}
+	}
+	
 	@Test
 	public void testGenericAnnotationLoaderWithScore() throws UIMAException, IOException {
 		aed = GenericAnnotationLoader.createAnalysisEngineDescription(getTypeSystem(), singleAnnotation, 0);